@@ -1,20 +1,35 @@
 package orioni.jz.checksum;
 
 /**
- * This class is designed to produce CRC16 values for blocks of data.  The CRC16 lookup table is constructed lazily.
+ * This class is designed to produce CRC16 values for blocks of data.  It computes the CRC-16 used by ARC and LHA: the
+ * reflected polynomial <code>0xA001</code> with an initial value of zero and no final XOR.  Data may be provided
+ * incrementally through the {@link java.util.zip.Checksum} interface or all at once via {@link #checksum(byte[])}.
+ * The lookup tables are constructed when the class is initialized.
  *
  * @author Zachary Palmer
  */
-public class CRC16
+public class CRC16 extends ReflectedCRC
 {
 // STATIC FIELDS /////////////////////////////////////////////////////////////////
 
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
     /**
-     * The CRC16 lookup table.
+     * The width of this CRC in bits.
      */
-    private static short[] crcLookupTable = null;
-
-// CONSTANTS /////////////////////////////////////////////////////////////////////
+    private static final int WIDTH = 16;
+    /**
+     * The CRC16 polynomial in reflected form.
+     */
+    private static final int POLYNOMIAL = 0xA001;
+    /**
+     * The CRC16 lookup tables.
+     */
+    private static final int[][] TABLES = createTables(POLYNOMIAL);
+    /**
+     * The power table used to combine CRC16 values.
+     */
+    private static final int[] POWERS = createPowers(POLYNOMIAL, WIDTH);
 
 // NON-STATIC FIELDS /////////////////////////////////////////////////////////////
 
@@ -23,9 +38,9 @@ public class CRC16
     /**
      * General constructor.
      */
-    private CRC16()
+    public CRC16()
     {
-        super();
+        super(WIDTH, TABLES, 0, 0);
     }
 
 // NON-STATIC METHODS ////////////////////////////////////////////////////////////
@@ -36,36 +51,26 @@ public class CRC16
      * Creates a CRC16 checksum for the provided data.
      *
      * @param data The <code>byte[]</code> for which a checksum is desired.
+     * @return The CRC16 checksum of the data.
      */
     public static short checksum(byte[] data)
     {
-        if (crcLookupTable == null)
-        {
-            crcLookupTable = new short[256];
-            for (int b = 0; b < 256; b++)
-            {
-                int tmp = ~b;
-                int crc = 0;
-                for (int i = 0; i < 8; i++)
-                {
-                    if (((tmp ^ crc) & 0x1) == 0)
-                    {
-                        crc = (crc >>> 1) ^ 0xA001;
-                    } else
-                    {
-                        crc >>>= 1;
-                    }
-                    tmp >>>= 1;
-                }
-                crcLookupTable[b] = (short) crc;
-            }
-        }
-        short ret = 0;
-        for (byte b : data)
-        {
-            ret = (short) (((ret >>> 8) & 0xFF) ^ crcLookupTable[(ret ^ b) & 0xFF]);
-        }
-        return ret;
+        return (short) update(TABLES, 0, data, 0, data.length);
+    }
+
+    /**
+     * Combines the CRC16 values of two adjacent blocks of data.
+     *
+     * @param crcA    The CRC16 of the first block.
+     * @param crcB    The CRC16 of the second block.
+     * @param lengthB The length of the second block in bytes.
+     * @return The CRC16 of the first block followed by the second block.
+     * @throws IllegalArgumentException If the length is negative.
+     */
+    public static long combine(long crcA, long crcB, long lengthB)
+            throws IllegalArgumentException
+    {
+        return combine(POWERS, POLYNOMIAL, WIDTH, 0, crcA & 0xFFFF, crcB & 0xFFFF, lengthB);
     }
 }
 
@@ -0,0 +1,83 @@
+package orioni.jz.checksum;
+
+/**
+ * This class is designed to produce CRC-32C (Castagnoli) values for blocks of data.  This is the CRC used by iSCSI,
+ * SCTP, ext4, and many storage formats: the reflected polynomial <code>0x82F63B78</code> with an initial value and
+ * final XOR of <code>0xFFFFFFFF</code>.  Data may be provided incrementally through the {@link java.util.zip.Checksum}
+ * interface or all at once via {@link #checksum(byte[])}.  The lookup tables are constructed when the class is
+ * initialized.
+ *
+ * @author Zachary Palmer
+ */
+public class CRC32C extends ReflectedCRC
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+    /**
+     * The width of this CRC in bits.
+     */
+    private static final int WIDTH = 32;
+    /**
+     * The CRC-32C polynomial in reflected form.
+     */
+    private static final int POLYNOMIAL = 0x82F63B78;
+    /**
+     * The initial register value and final XOR value of this CRC.
+     */
+    private static final int INVERSION = 0xFFFFFFFF;
+    /**
+     * The CRC-32C lookup tables.
+     */
+    private static final int[][] TABLES = createTables(POLYNOMIAL);
+    /**
+     * The power table used to combine CRC-32C values.
+     */
+    private static final int[] POWERS = createPowers(POLYNOMIAL, WIDTH);
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * General constructor.
+     */
+    public CRC32C()
+    {
+        super(WIDTH, TABLES, INVERSION, INVERSION);
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+    /**
+     * Creates a CRC-32C checksum for the provided data.
+     *
+     * @param data The <code>byte[]</code> for which a checksum is desired.
+     * @return The CRC-32C checksum of the data.
+     */
+    public static int checksum(byte[] data)
+    {
+        return ~update(TABLES, INVERSION, data, 0, data.length);
+    }
+
+    /**
+     * Combines the CRC-32C values of two adjacent blocks of data.
+     *
+     * @param crcA    The CRC-32C of the first block.
+     * @param crcB    The CRC-32C of the second block.
+     * @param lengthB The length of the second block in bytes.
+     * @return The CRC-32C of the first block followed by the second block.
+     * @throws IllegalArgumentException If the length is negative.
+     */
+    public static long combine(long crcA, long crcB, long lengthB)
+            throws IllegalArgumentException
+    {
+        // The initial value and the final XOR cancel one another, so no adjustment is required.
+        return combine(POWERS, POLYNOMIAL, WIDTH, 0, crcA, crcB, lengthB);
+    }
+}
+
+// END OF FILE
@@ -0,0 +1,324 @@
+package orioni.jz.checksum;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.Checksum;
+
+/**
+ * This class is the basis for incremental calculation of reflected (least significant bit first) cyclic redundancy
+ * checks of up to 32 bits.  Data is processed eight bytes at a time using the "slicing-by-8" technique, which requires
+ * eight lookup tables per polynomial.  Subclasses are expected to build these tables (using {@link
+ * #createTables(int)}) in a static initializer so that they are shared by all instances and are safely published to
+ * all threads.
+ * <p/>
+ * CRCs computed over adjacent blocks of data may be merged with {@link #combine(int[], int, int, int, long, long,
+ * long)}, allowing a CRC to be computed over several blocks in parallel.
+ *
+ * @author Zachary Palmer
+ */
+public abstract class ReflectedCRC implements Checksum
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+    /**
+     * The number of entries in a power table created by {@link #createPowers(int, int)}.  This allows byte lengths up
+     * to {@link Long#MAX_VALUE} to be processed by {@link #combine(int[], int, int, int, long, long, long)}.
+     */
+    private static final int POWER_COUNT = 66;
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The width of this CRC in bits.
+     */
+    private final int width;
+    /**
+     * The slicing-by-8 lookup tables for this CRC.
+     */
+    private final int[][] tables;
+    /**
+     * The value with which the register is initialized.
+     */
+    private final int initial;
+    /**
+     * The value with which the register is XORed to produce the CRC.
+     */
+    private final int finalXor;
+    /**
+     * The current register value.
+     */
+    private int register;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * General constructor.
+     *
+     * @param width    The width of the CRC in bits.
+     * @param tables   The lookup tables for the CRC's polynomial, as created by {@link #createTables(int)}.
+     * @param initial  The value with which the register is initialized.
+     * @param finalXor The value with which the register is XORed to produce the CRC.
+     */
+    protected ReflectedCRC(int width, int[][] tables, int initial, int finalXor)
+    {
+        super();
+        this.width = width;
+        this.tables = tables;
+        this.initial = initial;
+        this.finalXor = finalXor;
+        register = initial;
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Updates this CRC with a single byte.
+     *
+     * @param b The byte to add to the CRC.  Only the low eight bits are used.
+     */
+    public void update(int b)
+    {
+        register = (register >>> 8) ^ tables[0][(register ^ b) & 0xFF];
+    }
+
+    /**
+     * Updates this CRC with an array of bytes.
+     *
+     * @param data The data to add to the CRC.
+     */
+    public void update(byte[] data)
+    {
+        register = update(tables, register, data, 0, data.length);
+    }
+
+    /**
+     * Updates this CRC with a portion of an array of bytes.
+     *
+     * @param data   The array containing the data to add to the CRC.
+     * @param offset The offset of the first byte to add.
+     * @param length The number of bytes to add.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void update(byte[] data, int offset, int length)
+            throws IndexOutOfBoundsException
+    {
+        if ((offset < 0) || (length < 0) || (offset > data.length - length))
+        {
+            throw new IndexOutOfBoundsException(
+                    "Range [" + offset + ", " + offset + "+" + length + ") invalid for array of length " +
+                    data.length);
+        }
+        register = update(tables, register, data, offset, length);
+    }
+
+    /**
+     * Updates this CRC with the remaining bytes in the provided buffer.  The buffer's position is advanced to its
+     * limit.
+     *
+     * @param buffer The {@link ByteBuffer} containing the data to add to the CRC.
+     */
+    public void update(ByteBuffer buffer)
+    {
+        if (buffer.hasArray())
+        {
+            register = update(tables, register, buffer.array(), buffer.arrayOffset() + buffer.position(),
+                              buffer.remaining());
+            buffer.position(buffer.limit());
+            return;
+        }
+        ByteBuffer source = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int[] t0 = tables[0];
+        int[] t1 = tables[1];
+        int[] t2 = tables[2];
+        int[] t3 = tables[3];
+        int[] t4 = tables[4];
+        int[] t5 = tables[5];
+        int[] t6 = tables[6];
+        int[] t7 = tables[7];
+        int crc = register;
+        while (source.remaining() >= 8)
+        {
+            int one = source.getInt() ^ crc;
+            int two = source.getInt();
+            crc = t7[one & 0xFF] ^ t6[(one >>> 8) & 0xFF] ^ t5[(one >>> 16) & 0xFF] ^ t4[one >>> 24] ^
+                  t3[two & 0xFF] ^ t2[(two >>> 8) & 0xFF] ^ t1[(two >>> 16) & 0xFF] ^ t0[two >>> 24];
+        }
+        while (source.hasRemaining())
+        {
+            crc = (crc >>> 8) ^ t0[(crc ^ source.get()) & 0xFF];
+        }
+        register = crc;
+        buffer.position(buffer.limit());
+    }
+
+    /**
+     * Retrieves the CRC of the data provided since this object was created or last reset.
+     *
+     * @return The current CRC value.
+     */
+    public long getValue()
+    {
+        return (register ^ finalXor) & mask(width);
+    }
+
+    /**
+     * Resets this CRC to its initial value.
+     */
+    public void reset()
+    {
+        register = initial;
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+    /**
+     * Creates the slicing-by-8 lookup tables for the specified polynomial.
+     *
+     * @param polynomial The polynomial in reflected form (with the coefficient of <i>x<sup>0</sup></i> in the most
+     *                   significant bit of the CRC's width and the leading coefficient omitted).
+     * @return An <code>int[8][256]</code> containing the lookup tables.
+     */
+    protected static int[][] createTables(int polynomial)
+    {
+        int[][] ret = new int[8][256];
+        for (int b = 0; b < 256; b++)
+        {
+            int crc = b;
+            for (int i = 0; i < 8; i++)
+            {
+                crc = ((crc & 1) != 0) ? (crc >>> 1) ^ polynomial : crc >>> 1;
+            }
+            ret[0][b] = crc;
+        }
+        for (int t = 1; t < 8; t++)
+        {
+            for (int b = 0; b < 256; b++)
+            {
+                int previous = ret[t - 1][b];
+                ret[t][b] = (previous >>> 8) ^ ret[0][previous & 0xFF];
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Creates the table of powers of <i>x</i> used by {@link #combine(int[], int, int, int, long, long, long)}.  Entry
+     * <i>k</i> of the table is <i>x<sup>2<sup>k</sup></sup></i> modulo the polynomial.
+     *
+     * @param polynomial The polynomial in reflected form.
+     * @param width      The width of the CRC in bits.
+     * @return The power table.
+     */
+    protected static int[] createPowers(int polynomial, int width)
+    {
+        int[] ret = new int[POWER_COUNT];
+        ret[0] = 1 << (width - 2);
+        for (int i = 1; i < ret.length; i++)
+        {
+            ret[i] = multiply(ret[i - 1], ret[i - 1], polynomial, width);
+        }
+        return ret;
+    }
+
+    /**
+     * Advances a CRC register over a portion of an array of bytes.  Bounds are not checked.
+     *
+     * @param tables The lookup tables for the CRC's polynomial.
+     * @param crc    The current register value.
+     * @param data   The array containing the data.
+     * @param offset The offset of the first byte.
+     * @param length The number of bytes.
+     * @return The new register value.
+     */
+    protected static int update(int[][] tables, int crc, byte[] data, int offset, int length)
+    {
+        int[] t0 = tables[0];
+        int[] t1 = tables[1];
+        int[] t2 = tables[2];
+        int[] t3 = tables[3];
+        int[] t4 = tables[4];
+        int[] t5 = tables[5];
+        int[] t6 = tables[6];
+        int[] t7 = tables[7];
+        int end = offset + length;
+        while (end - offset >= 8)
+        {
+            int one = ((data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8) | ((data[offset + 2] & 0xFF) << 16) |
+                       (data[offset + 3] << 24)) ^ crc;
+            int two = (data[offset + 4] & 0xFF) | ((data[offset + 5] & 0xFF) << 8) |
+                      ((data[offset + 6] & 0xFF) << 16) | (data[offset + 7] << 24);
+            crc = t7[one & 0xFF] ^ t6[(one >>> 8) & 0xFF] ^ t5[(one >>> 16) & 0xFF] ^ t4[one >>> 24] ^
+                  t3[two & 0xFF] ^ t2[(two >>> 8) & 0xFF] ^ t1[(two >>> 16) & 0xFF] ^ t0[two >>> 24];
+            offset += 8;
+        }
+        while (offset < end)
+        {
+            crc = (crc >>> 8) ^ t0[(crc ^ data[offset++]) & 0xFF];
+        }
+        return crc;
+    }
+
+    /**
+     * Combines the CRCs of two adjacent blocks of data.  This is done in time logarithmic in the length of the second
+     * block and without access to the data itself.
+     *
+     * @param powers     The power table for the CRC's polynomial, as created by {@link #createPowers(int, int)}.
+     * @param polynomial The polynomial in reflected form.
+     * @param width      The width of the CRC in bits.
+     * @param adjustment The initial register value of the CRC XORed with its final XOR value.
+     * @param crcA       The CRC of the first block.
+     * @param crcB       The CRC of the second block.
+     * @param lengthB    The length of the second block in bytes.
+     * @return The CRC of the first block followed by the second block.
+     * @throws IllegalArgumentException If the length is negative.
+     */
+    protected static long combine(int[] powers, int polynomial, int width, int adjustment, long crcA, long crcB,
+                                  long lengthB)
+            throws IllegalArgumentException
+    {
+        if (lengthB < 0) throw new IllegalArgumentException("Negative length: " + lengthB);
+        // Shifting the first CRC through the second block's length of zero bytes is multiplication by x^(8*lengthB).
+        int shift = 1 << (width - 1);
+        int k = 3;
+        for (long n = lengthB; n != 0; n >>>= 1, k++)
+        {
+            if ((n & 1) != 0) shift = multiply(powers[k], shift, polynomial, width);
+        }
+        return (multiply(shift, (int) crcA ^ adjustment, polynomial, width) ^ (int) crcB) & mask(width);
+    }
+
+    /**
+     * Multiplies two polynomials modulo the CRC polynomial.  All values are in reflected form.
+     *
+     * @param a          The first polynomial.
+     * @param b          The second polynomial.
+     * @param polynomial The CRC polynomial.
+     * @param width      The width of the CRC in bits.
+     * @return The product modulo the CRC polynomial.
+     */
+    private static int multiply(int a, int b, int polynomial, int width)
+    {
+        int ret = 0;
+        for (int m = 1 << (width - 1); m != 0; m >>>= 1)
+        {
+            if ((a & m) != 0) ret ^= b;
+            b = ((b & 1) != 0) ? (b >>> 1) ^ polynomial : b >>> 1;
+        }
+        return ret;
+    }
+
+    /**
+     * Retrieves a mask covering the specified number of low bits.
+     *
+     * @param width The number of bits.
+     * @return The mask.
+     */
+    private static long mask(int width)
+    {
+        return (1L << width) - 1;
+    }
+}
+
+// END OF FILE
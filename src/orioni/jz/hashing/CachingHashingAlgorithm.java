@@ -0,0 +1,471 @@
+package orioni.jz.hashing;
+
+import orioni.jz.io.PrimitiveInputStream;
+import orioni.jz.io.PrimitiveOutputStream;
+import orioni.jz.io.files.BlockDataFile;
+import orioni.jz.util.BlockDataMap;
+import orioni.jz.util.ProgressTracker;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This {@link HashingAlgorithm} decorates another {@link HashingAlgorithm}, caching the hashes it produces for files.
+ * Cached hashes are keyed by the canonical path of the file and are considered valid only as long as the length and
+ * last modification time of the file remain unchanged.  Streams and arrays are never cached.
+ * <p/>
+ * The cache may optionally be persisted in a {@link BlockDataMap} file, in which case the underlying algorithm must
+ * support {@link HashingAlgorithm#toBytes(Object)} and {@link HashingAlgorithm#fromBytes(byte[])}.  Each cached hash
+ * is written to the file as soon as it is computed.  A hash which replaces one of the same size overwrites it in place;
+ * other replacements and removals leave wasted space in the file, which is recovered when the file is next opened if it
+ * makes up more than half of the file.
+ * <p/>
+ * Lookups are threadsafe and do not block one another.  If several threads request the hash of the same uncached file
+ * at once, each may hash the file; the cache will hold one of the results.
+ *
+ * @author Zachary Palmer
+ */
+public class CachingHashingAlgorithm<T> extends HashingAlgorithm<T>
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The {@link HashingAlgorithm} which produces the hashes to cache.
+     */
+    protected HashingAlgorithm<T> algorithm;
+    /**
+     * The {@link BlockDataMap} in which the cache is persisted, or <code>null</code> if the cache is not persisted.
+     */
+    protected BlockDataMap store;
+    /**
+     * The cache entries, keyed by canonical path.
+     */
+    protected ConcurrentMap<String, Entry<T>> entries;
+    /**
+     * The next unused mapping in the persistent store.
+     */
+    protected AtomicInteger nextMapping;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * Skeleton constructor.  The resulting cache is held only in memory.
+     *
+     * @param algorithm The {@link HashingAlgorithm} which produces the hashes to cache.
+     */
+    public CachingHashingAlgorithm(HashingAlgorithm<T> algorithm)
+    {
+        super();
+        this.algorithm = algorithm;
+        store = null;
+        entries = new ConcurrentHashMap<String, Entry<T>>();
+        nextMapping = new AtomicInteger(0);
+    }
+
+    /**
+     * General constructor.  The resulting cache is persisted in the specified file.  If the file already exists, the
+     * cache entries it contains are loaded; any entries which cannot be read are discarded.  If more than half of the
+     * file is then wasted space, the file is repacked.
+     *
+     * @param algorithm The {@link HashingAlgorithm} which produces the hashes to cache.
+     * @param cacheFile The file in which the cache is persisted.
+     * @throws IOException If an I/O error occurs while opening or reading the cache file.
+     */
+    public CachingHashingAlgorithm(HashingAlgorithm<T> algorithm, File cacheFile)
+            throws IOException
+    {
+        this(algorithm);
+        store = new BlockDataMap(new BlockDataFile(new RandomAccessFile(cacheFile, "rw")));
+        int highest = -1;
+        for (int mapping : store.getMappings())
+        {
+            highest = Math.max(highest, mapping);
+            byte[] data = store.read(mapping);
+            try
+            {
+                PrimitiveInputStream pis = new PrimitiveInputStream(new ByteArrayInputStream(data),
+                                                                    PrimitiveInputStream.BIG_ENDIAN);
+                byte[] pathBytes = new byte[pis.readInt()];
+                pis.readFully(pathBytes);
+                long length = pis.readLong();
+                long lastModified = pis.readLong();
+                byte[] hashBytes = new byte[pis.readInt()];
+                pis.readFully(hashBytes);
+                entries.put(new String(pathBytes, StandardCharsets.UTF_8),
+                            new Entry<T>(mapping, length, lastModified, algorithm.fromBytes(hashBytes)));
+            } catch (IOException e)
+            {
+                store.delete(mapping);
+            } catch (RuntimeException e)
+            {
+                // negative array sizes, malformed hashes, and the like
+                store.delete(mapping);
+            }
+        }
+        nextMapping.set(highest + 1);
+        if (store.getWastedSpace() > cacheFile.length() / 2)
+        {
+            if (store.getMappings().isEmpty())
+            {
+                // An empty map cannot be repacked; the file is cleared instead
+                store.close();
+                store = new BlockDataMap(new BlockDataFile(new RandomAccessFile(cacheFile, "rw")), true);
+            } else
+            {
+                // Room is left in the table of contents for the entries of newly hashed files
+                store.repack(entries.size() / 4 + 16);
+            }
+        }
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Performs the underlying {@link HashingAlgorithm} on a set of input data provided through an {@link InputStream}.
+     * The result is not cached.
+     *
+     * @param source The {@link InputStream} which will be used as a source for the data.  This {@link InputStream} will
+     *               be read until it is exhausted.
+     * @return The hash of the provided data.
+     * @throws IOException If an I/O error occurs while retrieving data from the provided stream.
+     */
+    public T hash(InputStream source)
+            throws IOException
+    {
+        return algorithm.hash(source);
+    }
+
+    /**
+     * Retrieves the hash of the given file.  If the cache contains a hash for the file and the file's length and last
+     * modification time match those recorded in the cache, the cached hash is returned.  Otherwise, the file is hashed
+     * with the underlying algorithm and the result is cached.
+     *
+     * @param file The {@link File} used as a source for the data.
+     * @return The hash of the provided data.
+     * @throws IOException If an I/O error occurs while retrieving data from the file or writing to the cache file.
+     */
+    public T hash(File file)
+            throws IOException
+    {
+        String path = file.getCanonicalPath();
+        long length = file.length();
+        long lastModified = file.lastModified();
+        Entry<T> entry = entries.get(path);
+        if ((entry != null) && (entry.matches(length, lastModified))) return entry.getHash();
+
+        T hash = algorithm.hash(file);
+        // Only cache the hash if the file did not change while it was being hashed.
+        if ((file.length() == length) && (file.lastModified() == lastModified))
+        {
+            store(path, length, lastModified, hash);
+        }
+        return hash;
+    }
+
+    /**
+     * Retrieves the cached hash of the given file without hashing it.
+     *
+     * @param file The {@link File} whose hash is desired.
+     * @return The cached hash of the file, or <code>null</code> if the cache does not contain a valid hash for it.
+     * @throws IOException If the canonical path of the file cannot be determined.
+     */
+    public T getCachedHash(File file)
+            throws IOException
+    {
+        Entry<T> entry = entries.get(file.getCanonicalPath());
+        if ((entry != null) && (entry.matches(file.length(), file.lastModified()))) return entry.getHash();
+        return null;
+    }
+
+    /**
+     * Ensures that the cache contains a valid hash for each of the provided files.  Files without a valid cached hash
+     * are hashed in parallel on the provided {@link ForkJoinPool}.
+     *
+     * @param files   The files to hash.
+     * @param pool    The {@link ForkJoinPool} on which the files are hashed.
+     * @param tracker The {@link ProgressTracker} to which progress is reported, or <code>null</code> if progress should
+     *                not be reported.  One file's share of the tracker's range is reported as each file is completed.
+     * @throws IOException If an I/O error occurs while hashing any of the files.  The files which were hashed
+     *                     successfully remain cached.
+     */
+    public void warm(Collection<File> files, ForkJoinPool pool, final ProgressTracker tracker)
+            throws IOException
+    {
+        final double share = 100.0 / Math.max(1, files.size());
+        List<Future<T>> futures = new ArrayList<Future<T>>(files.size());
+        for (final File file : files)
+        {
+            futures.add(pool.submit(new Callable<T>()
+            {
+                public T call()
+                        throws IOException
+                {
+                    try
+                    {
+                        return hash(file);
+                    } finally
+                    {
+                        if (tracker != null)
+                        {
+                            synchronized (tracker)
+                            {
+                                tracker.incrementPercentage(share);
+                            }
+                        }
+                    }
+                }
+            }));
+        }
+        IOException failure = null;
+        for (Future<T> future : futures)
+        {
+            try
+            {
+                future.get();
+            } catch (InterruptedException e)
+            {
+                for (Future<T> f : futures) f.cancel(true);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while warming hash cache.");
+            } catch (ExecutionException e)
+            {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                if (failure == null)
+                {
+                    failure = (cause instanceof IOException) ? (IOException) cause :
+                              new IOException("Hashing failed.", cause);
+                }
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * Removes the cached hash of the given file, if any.
+     *
+     * @param file The {@link File} whose hash should be removed.
+     * @throws IOException If an I/O error occurs while updating the cache file.
+     */
+    public void invalidate(File file)
+            throws IOException
+    {
+        remove(file.getCanonicalPath());
+    }
+
+    /**
+     * Removes every cache entry whose file no longer exists or no longer matches the recorded length and modification
+     * time.
+     *
+     * @return The number of entries removed.
+     * @throws IOException If an I/O error occurs while updating the cache file.
+     */
+    public int prune()
+            throws IOException
+    {
+        int ret = 0;
+        for (Map.Entry<String, Entry<T>> mapEntry : entries.entrySet())
+        {
+            File file = new File(mapEntry.getKey());
+            if ((!file.isFile()) || (!mapEntry.getValue().matches(file.length(), file.lastModified())))
+            {
+                remove(mapEntry.getKey());
+                ret++;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Retrieves the number of entries in this cache.
+     *
+     * @return The number of cached hashes.
+     */
+    public int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Closes the cache file, if any.  This {@link CachingHashingAlgorithm} should not be used afterward.
+     *
+     * @throws IOException If an I/O error occurs while closing the cache file.
+     */
+    public void close()
+            throws IOException
+    {
+        if (store != null) store.close();
+    }
+
+    /**
+     * Converts a hash into a <code>byte[]</code> using the underlying algorithm.
+     *
+     * @param hash The hash to convert.
+     * @return A <code>byte[]</code> representing that hash.
+     * @throws UnsupportedOperationException If the underlying algorithm does not support this operation.
+     */
+    public byte[] toBytes(T hash)
+            throws UnsupportedOperationException
+    {
+        return algorithm.toBytes(hash);
+    }
+
+    /**
+     * Converts a <code>byte[]</code> into a hash using the underlying algorithm.
+     *
+     * @param data The <code>byte[]</code> to convert.
+     * @return The hash represented by that data.
+     * @throws UnsupportedOperationException If the underlying algorithm does not support this operation.
+     * @throws IllegalArgumentException      If the provided data does not represent a hash.
+     */
+    public T fromBytes(byte[] data)
+            throws UnsupportedOperationException, IllegalArgumentException
+    {
+        return algorithm.fromBytes(data);
+    }
+
+    /**
+     * Records a hash in the cache, writing it to the cache file if the cache is persisted.
+     *
+     * @param path         The canonical path of the hashed file.
+     * @param length       The length of the file when it was hashed.
+     * @param lastModified The last modification time of the file when it was hashed.
+     * @param hash         The hash of the file.
+     * @throws IOException If an I/O error occurs while writing to the cache file.
+     */
+    protected void store(String path, long length, long lastModified, T hash)
+            throws IOException
+    {
+        Entry<T> old = entries.get(path);
+        int mapping = (old == null) ? nextMapping.getAndIncrement() : old.getMapping();
+        Entry<T> entry = new Entry<T>(mapping, length, lastModified, hash);
+        if (store != null)
+        {
+            byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+            byte[] hashBytes = algorithm.toBytes(hash);
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(pathBytes.length + hashBytes.length + 24);
+            PrimitiveOutputStream pos = new PrimitiveOutputStream(baos, PrimitiveOutputStream.BIG_ENDIAN);
+            pos.writeInt(pathBytes.length);
+            pos.write(pathBytes);
+            pos.writeLong(length);
+            pos.writeLong(lastModified);
+            pos.writeInt(hashBytes.length);
+            pos.write(hashBytes);
+            pos.close();
+            synchronized (store)
+            {
+                // Another thread may have stored this path in the meantime; reuse its mapping if so.
+                Entry<T> current = entries.get(path);
+                if ((current != null) && (current.getMapping() != mapping))
+                {
+                    entry = new Entry<T>(current.getMapping(), length, lastModified, hash);
+                }
+                store.write(entry.getMapping(), baos.toByteArray());
+                entries.put(path, entry);
+            }
+        } else
+        {
+            entries.put(path, entry);
+        }
+    }
+
+    /**
+     * Removes the entry for the specified path from the cache.
+     *
+     * @param path The canonical path of the file.
+     * @throws IOException If an I/O error occurs while updating the cache file.
+     */
+    protected void remove(String path)
+            throws IOException
+    {
+        if (store != null)
+        {
+            synchronized (store)
+            {
+                Entry<T> entry = entries.remove(path);
+                if (entry != null) store.delete(entry.getMapping());
+            }
+        } else
+        {
+            entries.remove(path);
+        }
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+// CONTAINED CLASSES /////////////////////////////////////////////////////////////
+
+    /**
+     * Represents a single cached hash.
+     *
+     * @author Zachary Palmer
+     */
+    protected static class Entry<T>
+    {
+        /**
+         * The mapping of this entry in the persistent store.
+         */
+        protected int mapping;
+        /**
+         * The length of the file when it was hashed.
+         */
+        protected long length;
+        /**
+         * The last modification time of the file when it was hashed.
+         */
+        protected long lastModified;
+        /**
+         * The hash of the file.
+         */
+        protected T hash;
+
+        /**
+         * General constructor.
+         *
+         * @param mapping      The mapping of this entry in the persistent store.
+         * @param length       The length of the file when it was hashed.
+         * @param lastModified The last modification time of the file when it was hashed.
+         * @param hash         The hash of the file.
+         */
+        public Entry(int mapping, long length, long lastModified, T hash)
+        {
+            super();
+            this.mapping = mapping;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+
+        public int getMapping()
+        {
+            return mapping;
+        }
+
+        public T getHash()
+        {
+            return hash;
+        }
+
+        /**
+         * Determines whether or not this entry is valid for a file with the specified attributes.
+         *
+         * @param length       The current length of the file.
+         * @param lastModified The current last modification time of the file.
+         * @return <code>true</code> if the attributes match those recorded in this entry; <code>false</code> otherwise.
+         */
+        public boolean matches(long length, long lastModified)
+        {
+            return (this.length == length) && (this.lastModified == lastModified);
+        }
+    }
+}
+
+// END OF FILE
@@ -0,0 +1,127 @@
+package orioni.jz.hashing;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * This {@link HashingEngine} adapts a {@link Checksum}, such as {@link orioni.jz.checksum.CRC16}, {@link
+ * orioni.jz.checksum.CRC32C}, or {@link java.util.zip.CRC32}, so that it may be used wherever an incremental hashing
+ * engine is accepted.  The resulting hash is the value of the checksum.
+ *
+ * @author Zachary Palmer
+ */
+public class ChecksumHashingEngine implements HashingEngine<Long>
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+    /**
+     * The maximum size of the array through which the contents of direct buffers are passed to the checksum.
+     */
+    protected static final int SCRATCH_SIZE = 8192;
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The underlying {@link Checksum}.
+     */
+    protected Checksum checksum;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * General constructor.
+     *
+     * @param checksum The underlying {@link Checksum}.  It is reset before use.
+     */
+    public ChecksumHashingEngine(Checksum checksum)
+    {
+        super();
+        this.checksum = checksum;
+        checksum.reset();
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Retrieves the underlying {@link Checksum}.
+     *
+     * @return The underlying {@link Checksum}.
+     */
+    public Checksum getChecksum()
+    {
+        return checksum;
+    }
+
+    /**
+     * Adds a single byte to the data being checksummed.
+     *
+     * @param b The byte to add.  Only the lowest eight bits of this value are used.
+     */
+    public void update(int b)
+    {
+        checksum.update(b);
+    }
+
+    /**
+     * Adds a series of bytes to the data being checksummed.
+     *
+     * @param data   The <code>byte[]</code> containing the data to add.
+     * @param offset The offset of the first byte to add.
+     * @param length The number of bytes to add.
+     */
+    public void update(byte[] data, int offset, int length)
+    {
+        checksum.update(data, offset, length);
+    }
+
+    /**
+     * Adds the remaining contents of the provided {@link ByteBuffer} to the data being checksummed.
+     *
+     * @param buffer The {@link ByteBuffer} containing the data to add.
+     */
+    public void update(ByteBuffer buffer)
+    {
+        if (buffer.hasArray())
+        {
+            checksum.update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+        } else
+        {
+            byte[] scratch = new byte[Math.min(buffer.remaining(), SCRATCH_SIZE)];
+            while (buffer.hasRemaining())
+            {
+                int length = Math.min(buffer.remaining(), scratch.length);
+                buffer.get(scratch, 0, length);
+                checksum.update(scratch, 0, length);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the checksum of all data provided since this engine was created or last reset.  The engine is reset
+     * afterward.
+     *
+     * @return The value of the checksum.
+     */
+    public Long digest()
+    {
+        long ret = checksum.getValue();
+        checksum.reset();
+        return ret;
+    }
+
+    /**
+     * Discards all of the data provided to this engine.
+     */
+    public void reset()
+    {
+        checksum.reset();
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+}
+
+// END OF FILE
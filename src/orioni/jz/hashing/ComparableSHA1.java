@@ -1,18 +1,17 @@
 package orioni.jz.hashing;
 
-import orioni.jz.util.ComparableList;
-
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 
 /**
- * This {@link HashingAlgorithm} uses the SHA1 code from {@link SHA1} but returns the result as a list of integers
- * rather than an array.  This is slightly less efficient but more compatible with the Java object structure (since the
- * list properly provides hash and equals functionality).
+ * This {@link HashingAlgorithm} uses the SHA1 code from {@link SHA1} but returns the result as a {@link Digest160}
+ * rather than an array.  Unlike an array, a {@link Digest160} properly provides hash, equals, and comparison
+ * functionality, so it is suitable for use in collections such as {@link DigestMap} and {@link DigestSet}.
  *
  * @author Zachary Palmer
  */
-public class ComparableSHA1 extends HashingAlgorithm<ComparableList<Integer>>
+public class ComparableSHA1 extends HashingAlgorithm<Digest160>
 {
 // STATIC FIELDS /////////////////////////////////////////////////////////////////
 
@@ -46,13 +45,48 @@ public class ComparableSHA1 extends HashingAlgorithm<ComparableList<Integer>>
      * @return The hash of the provided data.
      * @throws java.io.IOException If an I/O error occurs while retrieving data from the provided stream.
      */
-    public ComparableList<Integer> hash(InputStream source)
+    public Digest160 hash(InputStream source)
             throws IOException
     {
-        int[] hash = SHA1.SINGLETON.hash(source);
-        ComparableList<Integer> ret = new ComparableList<Integer>();
-        for (int i : hash) ret.add(i);
-        return ret;
+        return new Digest160(SHA1.SINGLETON.hash(source));
+    }
+
+    /**
+     * Performs this {@link HashingAlgorithm} on a given file.  This uses the file hashing mechanism of {@link SHA1}
+     * rather than reading the file as a stream.
+     *
+     * @param file The {@link File} used as a source for the data.
+     * @return The hash of the provided data.
+     * @throws IOException If an I/O error occurs while retrieving data from the file.
+     */
+    public Digest160 hash(File file)
+            throws IOException
+    {
+        return new Digest160(SHA1.SINGLETON.hash(file));
+    }
+
+    /**
+     * Converts a SHA-1 hash into its conventional twenty-byte big-endian form.
+     *
+     * @param hash The hash to convert.
+     * @return A <code>byte[20]</code> representing that hash.
+     */
+    public byte[] toBytes(Digest160 hash)
+    {
+        return hash.toBytes();
+    }
+
+    /**
+     * Converts a twenty-byte big-endian SHA-1 hash into the form produced by this class.
+     *
+     * @param data The <code>byte[20]</code> to convert.
+     * @return The hash represented by that data.
+     * @throws IllegalArgumentException If the provided array is not twenty bytes long.
+     */
+    public Digest160 fromBytes(byte[] data)
+            throws IllegalArgumentException
+    {
+        return Digest160.fromBytes(data);
     }
 
 // STATIC METHODS ////////////////////////////////////////////////////////////////
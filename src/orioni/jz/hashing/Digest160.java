@@ -0,0 +1,347 @@
+package orioni.jz.hashing;
+
+/**
+ * This class represents an immutable 160-bit digest, such as that produced by {@link SHA1}.  The digest is held in
+ * primitive fields rather than in an array or collection, keeping instances small and making comparisons cheap.  Its
+ * natural ordering is that of the digest as an unsigned 160-bit big-endian integer, which is also the lexicographic
+ * ordering of its bytes.
+ *
+ * @author Zachary Palmer
+ */
+public final class Digest160 implements Comparable<Digest160>
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+    /**
+     * The length of a {@link Digest160} in bytes.
+     */
+    public static final int BYTE_LENGTH = 20;
+
+    /**
+     * The characters used for hexadecimal encoding.
+     */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The first 64 bits of the digest.
+     */
+    private final long high;
+    /**
+     * The second 64 bits of the digest.
+     */
+    private final long middle;
+    /**
+     * The final 32 bits of the digest.
+     */
+    private final int low;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * General constructor.
+     *
+     * @param high   The first 64 bits of the digest.
+     * @param middle The second 64 bits of the digest.
+     * @param low    The final 32 bits of the digest.
+     */
+    public Digest160(long high, long middle, int low)
+    {
+        super();
+        this.high = high;
+        this.middle = middle;
+        this.low = low;
+    }
+
+    /**
+     * Word constructor.
+     *
+     * @param words The five 32-bit words of the digest, most significant first, as produced by {@link SHA1}.
+     * @throws IllegalArgumentException If the array does not contain exactly five words.
+     */
+    public Digest160(int[] words)
+            throws IllegalArgumentException
+    {
+        super();
+        if (words.length != 5)
+        {
+            throw new IllegalArgumentException("A 160-bit digest has five words; " + words.length + " provided.");
+        }
+        high = ((long) words[0] << 32) | (words[1] & 0xFFFFFFFFL);
+        middle = ((long) words[2] << 32) | (words[3] & 0xFFFFFFFFL);
+        low = words[4];
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Retrieves the first 64 bits of this digest.
+     *
+     * @return The first 64 bits of this digest.
+     */
+    public long getHigh()
+    {
+        return high;
+    }
+
+    /**
+     * Retrieves the second 64 bits of this digest.
+     *
+     * @return The second 64 bits of this digest.
+     */
+    public long getMiddle()
+    {
+        return middle;
+    }
+
+    /**
+     * Retrieves the final 32 bits of this digest.
+     *
+     * @return The final 32 bits of this digest.
+     */
+    public int getLow()
+    {
+        return low;
+    }
+
+    /**
+     * Retrieves one of the five 32-bit words of this digest.
+     *
+     * @param index The index of the word, from <code>0</code> (most significant) to <code>4</code>.
+     * @return The requested word.
+     * @throws IndexOutOfBoundsException If the index is not in the range <code>[0, 4]</code>.
+     */
+    public int getWord(int index)
+            throws IndexOutOfBoundsException
+    {
+        switch (index)
+        {
+            case 0:
+                return (int) (high >>> 32);
+            case 1:
+                return (int) high;
+            case 2:
+                return (int) (middle >>> 32);
+            case 3:
+                return (int) middle;
+            case 4:
+                return low;
+            default:
+                throw new IndexOutOfBoundsException("Invalid word index: " + index);
+        }
+    }
+
+    /**
+     * Retrieves the five 32-bit words of this digest.
+     *
+     * @return An <code>int[5]</code> containing the words of this digest, most significant first.
+     */
+    public int[] toWords()
+    {
+        return new int[]{(int) (high >>> 32), (int) high, (int) (middle >>> 32), (int) middle, low};
+    }
+
+    /**
+     * Retrieves the bytes of this digest.
+     *
+     * @return A <code>byte[20]</code> containing this digest in big-endian order.
+     */
+    public byte[] toBytes()
+    {
+        byte[] ret = new byte[BYTE_LENGTH];
+        for (int i = 0; i < 8; i++)
+        {
+            ret[i] = (byte) (high >>> (56 - i * 8));
+            ret[i + 8] = (byte) (middle >>> (56 - i * 8));
+        }
+        for (int i = 0; i < 4; i++)
+        {
+            ret[i + 16] = (byte) (low >>> (24 - i * 8));
+        }
+        return ret;
+    }
+
+    /**
+     * Encodes this digest in hexadecimal.
+     *
+     * @return A forty-character lowercase hexadecimal representation of this digest.
+     */
+    public String toHex()
+    {
+        char[] ret = new char[BYTE_LENGTH * 2];
+        for (int i = 0; i < 16; i++)
+        {
+            ret[i] = HEX_DIGITS[(int) (high >>> (60 - i * 4)) & 0xF];
+            ret[i + 16] = HEX_DIGITS[(int) (middle >>> (60 - i * 4)) & 0xF];
+        }
+        for (int i = 0; i < 8; i++)
+        {
+            ret[i + 32] = HEX_DIGITS[(low >>> (28 - i * 4)) & 0xF];
+        }
+        return new String(ret);
+    }
+
+    /**
+     * Compares this digest to another as unsigned 160-bit integers.
+     *
+     * @param o The digest to compare.
+     * @return A negative value, zero, or a positive value as this digest is less than, equal to, or greater than the
+     *         provided digest.
+     */
+    public int compareTo(Digest160 o)
+    {
+        if (high != o.high) return Long.compareUnsigned(high, o.high);
+        if (middle != o.middle) return Long.compareUnsigned(middle, o.middle);
+        return Integer.compareUnsigned(low, o.low);
+    }
+
+    /**
+     * Determines whether or not this digest is equal to another object.
+     *
+     * @param o The object to compare.
+     * @return <code>true</code> if the object is a {@link Digest160} with the same value; <code>false</code> otherwise.
+     */
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (!(o instanceof Digest160)) return false;
+        Digest160 other = (Digest160) o;
+        return (high == other.high) && (middle == other.middle) && (low == other.low);
+    }
+
+    /**
+     * Retrieves a hash code for this digest.
+     *
+     * @return A hash code for this digest.
+     */
+    public int hashCode()
+    {
+        return hashCode(high, middle, low);
+    }
+
+    /**
+     * Retrieves a string representation of this digest.
+     *
+     * @return The hexadecimal encoding of this digest.
+     */
+    public String toString()
+    {
+        return toHex();
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+    /**
+     * Creates a {@link Digest160} from its bytes.
+     *
+     * @param data   The array containing the digest in big-endian order.
+     * @param offset The offset of the first byte of the digest.
+     * @return The resulting digest.
+     * @throws IndexOutOfBoundsException If fewer than twenty bytes follow the offset.
+     */
+    public static Digest160 fromBytes(byte[] data, int offset)
+            throws IndexOutOfBoundsException
+    {
+        if ((offset < 0) || (offset + BYTE_LENGTH > data.length))
+        {
+            throw new IndexOutOfBoundsException(
+                    "Twenty bytes required at offset " + offset + " of array of length " + data.length);
+        }
+        long high = 0;
+        long middle = 0;
+        int low = 0;
+        for (int i = 0; i < 8; i++)
+        {
+            high = (high << 8) | (data[offset + i] & 0xFF);
+            middle = (middle << 8) | (data[offset + i + 8] & 0xFF);
+        }
+        for (int i = 16; i < 20; i++)
+        {
+            low = (low << 8) | (data[offset + i] & 0xFF);
+        }
+        return new Digest160(high, middle, low);
+    }
+
+    /**
+     * Creates a {@link Digest160} from its bytes.
+     *
+     * @param data A <code>byte[20]</code> containing the digest in big-endian order.
+     * @return The resulting digest.
+     * @throws IllegalArgumentException If the array is not twenty bytes long.
+     */
+    public static Digest160 fromBytes(byte[] data)
+            throws IllegalArgumentException
+    {
+        if (data.length != BYTE_LENGTH)
+        {
+            throw new IllegalArgumentException("A 160-bit digest has 20 bytes; " + data.length + " provided.");
+        }
+        return fromBytes(data, 0);
+    }
+
+    /**
+     * Decodes a {@link Digest160} from hexadecimal.
+     *
+     * @param hex A forty-character hexadecimal string.  Both upper- and lowercase digits are accepted.
+     * @return The resulting digest.
+     * @throws IllegalArgumentException If the string is not forty hexadecimal digits.
+     */
+    public static Digest160 fromHex(String hex)
+            throws IllegalArgumentException
+    {
+        if (hex.length() != BYTE_LENGTH * 2)
+        {
+            throw new IllegalArgumentException("A 160-bit digest has 40 hexadecimal digits: " + hex);
+        }
+        long high = 0;
+        long middle = 0;
+        int low = 0;
+        for (int i = 0; i < 16; i++)
+        {
+            high = (high << 4) | hexValue(hex, i);
+            middle = (middle << 4) | hexValue(hex, i + 16);
+        }
+        for (int i = 32; i < 40; i++)
+        {
+            low = (low << 4) | hexValue(hex, i);
+        }
+        return new Digest160(high, middle, low);
+    }
+
+    /**
+     * Computes the hash code of a digest from its fields.  This is exposed so that collections which store digests in
+     * primitive form can hash them without creating {@link Digest160} objects.
+     *
+     * @param high   The first 64 bits of the digest.
+     * @param middle The second 64 bits of the digest.
+     * @param low    The final 32 bits of the digest.
+     * @return The hash code of the digest.
+     */
+    public static int hashCode(long high, long middle, int low)
+    {
+        // Digests are usually already well-distributed; this only guards against those which are not.
+        long mixed = (high ^ Long.rotateLeft(middle, 21) ^ ((long) low << 42)) * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+
+    /**
+     * Retrieves the value of a hexadecimal digit.
+     *
+     * @param hex   The string containing the digit.
+     * @param index The index of the digit.
+     * @return The value of the digit.
+     * @throws IllegalArgumentException If the character is not a hexadecimal digit.
+     */
+    private static int hexValue(String hex, int index)
+            throws IllegalArgumentException
+    {
+        int value = Character.digit(hex.charAt(index), 16);
+        if (value == -1) throw new IllegalArgumentException("Invalid hexadecimal digit at " + index + ": " + hex);
+        return value;
+    }
+}
+
+// END OF FILE
@@ -0,0 +1,430 @@
+package orioni.jz.hashing;
+
+import java.util.*;
+
+/**
+ * This {@link Map} implementation is keyed by {@link Digest160} objects.  It uses open addressing with linear probing
+ * and stores the keys in primitive arrays, so that no entry or key objects are retained for each mapping.  This makes
+ * it considerably smaller and faster than a {@link HashMap} for large numbers of digests.
+ * <p/>
+ * Keys are recreated as {@link Digest160} objects when they are iterated.  The iterators of this map and its views do
+ * not support removal, and this map does not accept <code>null</code> keys.  This class is not threadsafe.
+ *
+ * @author Zachary Palmer
+ */
+public class DigestMap<V> extends AbstractMap<Digest160, V>
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+    /**
+     * The default initial capacity of a {@link DigestMap}.
+     */
+    public static final int DEFAULT_CAPACITY = 16;
+    /**
+     * The proportion of slots which may be occupied before the table grows.
+     */
+    private static final double LOAD_FACTOR = 0.6;
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The first 64 bits of each key.
+     */
+    protected long[] highs;
+    /**
+     * The second 64 bits of each key.
+     */
+    protected long[] middles;
+    /**
+     * The final 32 bits of each key.
+     */
+    protected int[] lows;
+    /**
+     * The value of each mapping.
+     */
+    protected Object[] values;
+    /**
+     * Whether or not each slot is occupied.
+     */
+    protected boolean[] occupied;
+    /**
+     * The number of mappings in this map.
+     */
+    protected int size;
+    /**
+     * The number of mappings at which the table will grow.
+     */
+    protected int threshold;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * General constructor.
+     */
+    public DigestMap()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Sized constructor.
+     *
+     * @param expectedSize The number of mappings this map is expected to hold.  The map will not need to grow until
+     *                     this number is exceeded.
+     */
+    public DigestMap(int expectedSize)
+    {
+        super();
+        allocate(tableSizeFor(expectedSize));
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Retrieves the number of mappings in this map.
+     *
+     * @return The number of mappings in this map.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Determines whether or not this map contains a mapping for the specified key.
+     *
+     * @param key The key to find.
+     * @return <code>true</code> if the key is mapped; <code>false</code> otherwise.
+     */
+    public boolean containsKey(Object key)
+    {
+        return (key instanceof Digest160) && (find((Digest160) key) >= 0);
+    }
+
+    /**
+     * Retrieves the value mapped to the specified key.
+     *
+     * @param key The key to find.
+     * @return The value mapped to that key, or <code>null</code> if the key is not mapped.
+     */
+    public V get(Object key)
+    {
+        if (!(key instanceof Digest160)) return null;
+        int slot = find((Digest160) key);
+        return (slot < 0) ? null : getValue(slot);
+    }
+
+    /**
+     * Maps the specified key to the specified value.
+     *
+     * @param key   The key.
+     * @param value The value.
+     * @return The value previously mapped to that key, or <code>null</code> if the key was not mapped.
+     * @throws NullPointerException If the key is <code>null</code>.
+     */
+    public V put(Digest160 key, V value)
+    {
+        if (key == null) throw new NullPointerException("DigestMap does not accept null keys.");
+        long high = key.getHigh();
+        long middle = key.getMiddle();
+        int low = key.getLow();
+        int mask = highs.length - 1;
+        int slot = Digest160.hashCode(high, middle, low) & mask;
+        while (occupied[slot])
+        {
+            if ((highs[slot] == high) && (middles[slot] == middle) && (lows[slot] == low))
+            {
+                V ret = getValue(slot);
+                values[slot] = value;
+                return ret;
+            }
+            slot = (slot + 1) & mask;
+        }
+        occupied[slot] = true;
+        highs[slot] = high;
+        middles[slot] = middle;
+        lows[slot] = low;
+        values[slot] = value;
+        if (++size > threshold) allocateAndRehash(highs.length * 2);
+        return null;
+    }
+
+    /**
+     * Removes the mapping for the specified key.
+     *
+     * @param key The key.
+     * @return The value previously mapped to that key, or <code>null</code> if the key was not mapped.
+     */
+    public V remove(Object key)
+    {
+        if (!(key instanceof Digest160)) return null;
+        int slot = find((Digest160) key);
+        if (slot < 0) return null;
+        V ret = getValue(slot);
+        removeSlot(slot);
+        return ret;
+    }
+
+    /**
+     * Removes all mappings from this map.  The table retains its current capacity.
+     */
+    public void clear()
+    {
+        Arrays.fill(occupied, false);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Retrieves a view of the mappings in this map.
+     *
+     * @return A {@link Set} view of the mappings in this map.
+     */
+    public Set<Map.Entry<Digest160, V>> entrySet()
+    {
+        return new AbstractSet<Map.Entry<Digest160, V>>()
+        {
+            public int size()
+            {
+                return size;
+            }
+
+            public Iterator<Map.Entry<Digest160, V>> iterator()
+            {
+                return new SlotIterator<Map.Entry<Digest160, V>>()
+                {
+                    protected Map.Entry<Digest160, V> get(final int slot)
+                    {
+                        return new SimpleEntry<Digest160, V>(getKey(slot), DigestMap.this.<V>getValue(slot))
+                        {
+                            public V setValue(V value)
+                            {
+                                values[slot] = value;
+                                return super.setValue(value);
+                            }
+                        };
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Retrieves a view of the keys in this map.
+     *
+     * @return A {@link Set} view of the keys in this map.
+     */
+    public Set<Digest160> keySet()
+    {
+        return new AbstractSet<Digest160>()
+        {
+            public int size()
+            {
+                return size;
+            }
+
+            public boolean contains(Object o)
+            {
+                return containsKey(o);
+            }
+
+            public Iterator<Digest160> iterator()
+            {
+                return keyIterator();
+            }
+        };
+    }
+
+    /**
+     * Creates an iterator over the keys of this map.
+     *
+     * @return An {@link Iterator} over the keys of this map.
+     */
+    protected Iterator<Digest160> keyIterator()
+    {
+        return new SlotIterator<Digest160>()
+        {
+            protected Digest160 get(int slot)
+            {
+                return getKey(slot);
+            }
+        };
+    }
+
+    /**
+     * Finds the slot containing the specified key.
+     *
+     * @param key The key to find.
+     * @return The slot containing the key, or <code>-1</code> if the key is not present.
+     */
+    protected int find(Digest160 key)
+    {
+        long high = key.getHigh();
+        long middle = key.getMiddle();
+        int low = key.getLow();
+        int mask = highs.length - 1;
+        int slot = Digest160.hashCode(high, middle, low) & mask;
+        while (occupied[slot])
+        {
+            if ((highs[slot] == high) && (middles[slot] == middle) && (lows[slot] == low)) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Empties the specified slot, moving later entries of the same probe sequence back to fill the gap.
+     *
+     * @param slot The slot to empty.
+     */
+    protected void removeSlot(int slot)
+    {
+        int mask = highs.length - 1;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (occupied[next])
+        {
+            int home = Digest160.hashCode(highs[next], middles[next], lows[next]) & mask;
+            // Move the entry into the gap unless its home slot lies cyclically within (gap, next].
+            if (((next - home) & mask) >= ((next - gap) & mask))
+            {
+                highs[gap] = highs[next];
+                middles[gap] = middles[next];
+                lows[gap] = lows[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        occupied[gap] = false;
+        values[gap] = null;
+        size--;
+    }
+
+    /**
+     * Retrieves the key in the specified slot.
+     *
+     * @param slot The slot.
+     * @return The key in that slot.
+     */
+    protected Digest160 getKey(int slot)
+    {
+        return new Digest160(highs[slot], middles[slot], lows[slot]);
+    }
+
+    /**
+     * Retrieves the value in the specified slot.
+     *
+     * @param slot The slot.
+     * @return The value in that slot.
+     */
+    @SuppressWarnings("unchecked")
+    protected <X> X getValue(int slot)
+    {
+        return (X) values[slot];
+    }
+
+    /**
+     * Allocates empty tables of the specified size.
+     *
+     * @param tableSize The number of slots.  This must be a power of two.
+     */
+    private void allocate(int tableSize)
+    {
+        highs = new long[tableSize];
+        middles = new long[tableSize];
+        lows = new int[tableSize];
+        values = new Object[tableSize];
+        occupied = new boolean[tableSize];
+        threshold = (int) (tableSize * LOAD_FACTOR);
+    }
+
+    /**
+     * Allocates tables of the specified size and reinserts every mapping into them.
+     *
+     * @param tableSize The number of slots.  This must be a power of two.
+     */
+    private void allocateAndRehash(int tableSize)
+    {
+        long[] oldHighs = highs;
+        long[] oldMiddles = middles;
+        int[] oldLows = lows;
+        Object[] oldValues = values;
+        boolean[] oldOccupied = occupied;
+        allocate(tableSize);
+        int mask = tableSize - 1;
+        for (int i = 0; i < oldOccupied.length; i++)
+        {
+            if (!oldOccupied[i]) continue;
+            int slot = Digest160.hashCode(oldHighs[i], oldMiddles[i], oldLows[i]) & mask;
+            while (occupied[slot]) slot = (slot + 1) & mask;
+            occupied[slot] = true;
+            highs[slot] = oldHighs[i];
+            middles[slot] = oldMiddles[i];
+            lows[slot] = oldLows[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+    /**
+     * Determines the table size required to hold the specified number of mappings without growing.
+     *
+     * @param expectedSize The number of mappings.
+     * @return The table size, which is a power of two.
+     */
+    private static int tableSizeFor(int expectedSize)
+    {
+        int size = DEFAULT_CAPACITY;
+        while (size * LOAD_FACTOR < expectedSize) size <<= 1;
+        return size;
+    }
+
+// CONTAINED CLASSES /////////////////////////////////////////////////////////////
+
+    /**
+     * An {@link Iterator} over the occupied slots of this map.
+     */
+    protected abstract class SlotIterator<E> implements Iterator<E>
+    {
+        /**
+         * The next slot to examine.
+         */
+        protected int slot = 0;
+        /**
+         * The number of mappings returned so far.
+         */
+        protected int returned = 0;
+
+        public boolean hasNext()
+        {
+            return returned < size;
+        }
+
+        public E next()
+        {
+            if (returned >= size) throw new NoSuchElementException();
+            while (!occupied[slot]) slot++;
+            returned++;
+            return get(slot++);
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException("DigestMap iterators do not support removal.");
+        }
+
+        /**
+         * Retrieves the element representing the specified slot.
+         *
+         * @param slot The slot.
+         * @return The element.
+         */
+        protected abstract E get(int slot);
+    }
+}
+
+// END OF FILE
@@ -0,0 +1,129 @@
+package orioni.jz.hashing;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * This {@link java.util.Set} implementation contains {@link Digest160} objects.  It is backed by a {@link DigestMap}
+ * and shares its characteristics: digests are stored in primitive arrays, the iterator does not support removal,
+ * <code>null</code> is not accepted, and the set is not threadsafe.  It is considerably smaller and faster than a
+ * {@link java.util.HashSet} for large numbers of digests.
+ *
+ * @author Zachary Palmer
+ */
+public class DigestSet extends AbstractSet<Digest160>
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The {@link DigestMap} whose keys are the contents of this set.
+     */
+    protected DigestMap<Boolean> map;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * General constructor.
+     */
+    public DigestSet()
+    {
+        this(DigestMap.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Sized constructor.
+     *
+     * @param expectedSize The number of digests this set is expected to hold.  The set will not need to grow until
+     *                     this number is exceeded.
+     */
+    public DigestSet(int expectedSize)
+    {
+        super();
+        map = new DigestMap<Boolean>(expectedSize);
+    }
+
+    /**
+     * Copying constructor.
+     *
+     * @param digests The digests with which to populate this set.
+     */
+    public DigestSet(Collection<Digest160> digests)
+    {
+        this(digests.size());
+        addAll(digests);
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Retrieves the number of digests in this set.
+     *
+     * @return The number of digests in this set.
+     */
+    public int size()
+    {
+        return map.size();
+    }
+
+    /**
+     * Determines whether or not this set contains the specified digest.
+     *
+     * @param o The digest to find.
+     * @return <code>true</code> if this set contains the digest; <code>false</code> otherwise.
+     */
+    public boolean contains(Object o)
+    {
+        return map.containsKey(o);
+    }
+
+    /**
+     * Adds a digest to this set.
+     *
+     * @param digest The digest to add.
+     * @return <code>true</code> if the digest was added; <code>false</code> if it was already present.
+     * @throws NullPointerException If the digest is <code>null</code>.
+     */
+    public boolean add(Digest160 digest)
+    {
+        return map.put(digest, Boolean.TRUE) == null;
+    }
+
+    /**
+     * Removes a digest from this set.
+     *
+     * @param o The digest to remove.
+     * @return <code>true</code> if the digest was removed; <code>false</code> if it was not present.
+     */
+    public boolean remove(Object o)
+    {
+        return map.remove(o) != null;
+    }
+
+    /**
+     * Removes all digests from this set.
+     */
+    public void clear()
+    {
+        map.clear();
+    }
+
+    /**
+     * Retrieves an iterator over the digests in this set.  The iterator does not support removal.
+     *
+     * @return An {@link Iterator} over this set.
+     */
+    public Iterator<Digest160> iterator()
+    {
+        return map.keyIterator();
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+}
+
+// END OF FILE
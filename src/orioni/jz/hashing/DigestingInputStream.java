@@ -0,0 +1,174 @@
+package orioni.jz.hashing;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * This {@link InputStream} passes every byte read from an underlying stream to a {@link HashingEngine}, allowing the
+ * hash of the data to be computed in the same pass in which it is consumed.  Skipped bytes are read and hashed as well
+ * so that the hash always reflects the entire stream.  Marking is not supported.
+ *
+ * @author Zachary Palmer
+ */
+public class DigestingInputStream<T> extends FilterInputStream
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The {@link HashingEngine} which receives the data read from this stream.
+     */
+    protected HashingEngine<T> engine;
+    /**
+     * The number of bytes which have passed through this stream.
+     */
+    protected long byteCount;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * General constructor.
+     *
+     * @param in     The underlying {@link InputStream}.
+     * @param engine The {@link HashingEngine} which receives the data read from this stream.
+     */
+    public DigestingInputStream(InputStream in, HashingEngine<T> engine)
+    {
+        super(in);
+        this.engine = engine;
+        byteCount = 0;
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Reads a single byte from the underlying stream and hashes it.
+     *
+     * @return The byte read, or <code>-1</code> if the stream is exhausted.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int read()
+            throws IOException
+    {
+        int ret = in.read();
+        if (ret != -1)
+        {
+            engine.update(ret);
+            byteCount++;
+        }
+        return ret;
+    }
+
+    /**
+     * Reads bytes from the underlying stream and hashes them.
+     *
+     * @param b   The array into which the data is read.
+     * @param off The offset at which to store the first byte.
+     * @param len The maximum number of bytes to read.
+     * @return The number of bytes read, or <code>-1</code> if the stream is exhausted.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int read(byte[] b, int off, int len)
+            throws IOException
+    {
+        int ret = in.read(b, off, len);
+        if (ret > 0)
+        {
+            engine.update(b, off, ret);
+            byteCount += ret;
+        }
+        return ret;
+    }
+
+    /**
+     * Skips bytes from the underlying stream.  The bytes are read and hashed.
+     *
+     * @param n The number of bytes to skip.
+     * @return The number of bytes skipped.
+     * @throws IOException If an I/O error occurs.
+     */
+    public long skip(long n)
+            throws IOException
+    {
+        byte[] buffer = new byte[(int) Math.min(Math.max(n, 0), 8192)];
+        long ret = 0;
+        while (ret < n)
+        {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - ret));
+            if (read == -1) break;
+            ret += read;
+        }
+        return ret;
+    }
+
+    /**
+     * Indicates that marking is not supported.
+     *
+     * @return <code>false</code>, always.
+     */
+    public boolean markSupported()
+    {
+        return false;
+    }
+
+    /**
+     * Does nothing; marking is not supported.
+     *
+     * @param readlimit Ignored.
+     */
+    public void mark(int readlimit)
+    {
+    }
+
+    /**
+     * Throws an exception; marking is not supported.
+     *
+     * @throws IOException Always.
+     */
+    public void reset()
+            throws IOException
+    {
+        throw new IOException("DigestingInputStream does not support marking.");
+    }
+
+    /**
+     * Retrieves the {@link HashingEngine} which receives the data read from this stream.
+     *
+     * @return The {@link HashingEngine} used by this stream.
+     */
+    public HashingEngine<T> getEngine()
+    {
+        return engine;
+    }
+
+    /**
+     * Retrieves the number of bytes which have been read through this stream.
+     *
+     * @return The number of bytes read.
+     */
+    public long getByteCount()
+    {
+        return byteCount;
+    }
+
+    /**
+     * Completes the hash of the data read through this stream since it was created or since this method was last
+     * called.
+     *
+     * @return The hash of the data.
+     */
+    public T digest()
+    {
+        byteCount = 0;
+        return engine.digest();
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+}
+
+// END OF FILE
@@ -0,0 +1,114 @@
+package orioni.jz.hashing;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This {@link OutputStream} passes every byte written to an underlying stream to a {@link HashingEngine}, allowing the
+ * hash of the data to be computed in the same pass in which it is written.  Data is hashed only after the underlying
+ * stream has accepted it.
+ *
+ * @author Zachary Palmer
+ */
+public class DigestingOutputStream<T> extends FilterOutputStream
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The {@link HashingEngine} which receives the data written to this stream.
+     */
+    protected HashingEngine<T> engine;
+    /**
+     * The number of bytes which have passed through this stream.
+     */
+    protected long byteCount;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * General constructor.
+     *
+     * @param out    The underlying {@link OutputStream}.
+     * @param engine The {@link HashingEngine} which receives the data written to this stream.
+     */
+    public DigestingOutputStream(OutputStream out, HashingEngine<T> engine)
+    {
+        super(out);
+        this.engine = engine;
+        byteCount = 0;
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Writes a single byte to the underlying stream and hashes it.
+     *
+     * @param b The byte to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void write(int b)
+            throws IOException
+    {
+        out.write(b);
+        engine.update(b);
+        byteCount++;
+    }
+
+    /**
+     * Writes bytes to the underlying stream and hashes them.
+     *
+     * @param b   The array containing the data.
+     * @param off The offset of the first byte to write.
+     * @param len The number of bytes to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void write(byte[] b, int off, int len)
+            throws IOException
+    {
+        out.write(b, off, len);
+        engine.update(b, off, len);
+        byteCount += len;
+    }
+
+    /**
+     * Retrieves the {@link HashingEngine} which receives the data written to this stream.
+     *
+     * @return The {@link HashingEngine} used by this stream.
+     */
+    public HashingEngine<T> getEngine()
+    {
+        return engine;
+    }
+
+    /**
+     * Retrieves the number of bytes which have been written through this stream.
+     *
+     * @return The number of bytes written.
+     */
+    public long getByteCount()
+    {
+        return byteCount;
+    }
+
+    /**
+     * Completes the hash of the data written through this stream since it was created or since this method was last
+     * called.
+     *
+     * @return The hash of the data.
+     */
+    public T digest()
+    {
+        byteCount = 0;
+        return engine.digest();
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+}
+
+// END OF FILE
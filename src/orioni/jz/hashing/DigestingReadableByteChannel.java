@@ -0,0 +1,131 @@
+package orioni.jz.hashing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * This {@link ReadableByteChannel} passes every byte read from an underlying channel to a {@link HashingEngine},
+ * allowing the hash of the data to be computed in the same pass in which it is consumed.
+ *
+ * @author Zachary Palmer
+ */
+public class DigestingReadableByteChannel<T> implements ReadableByteChannel
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The underlying {@link ReadableByteChannel}.
+     */
+    protected ReadableByteChannel channel;
+    /**
+     * The {@link HashingEngine} which receives the data read from this channel.
+     */
+    protected HashingEngine<T> engine;
+    /**
+     * The number of bytes which have passed through this channel.
+     */
+    protected long byteCount;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * General constructor.
+     *
+     * @param channel The underlying {@link ReadableByteChannel}.
+     * @param engine  The {@link HashingEngine} which receives the data read from this channel.
+     */
+    public DigestingReadableByteChannel(ReadableByteChannel channel, HashingEngine<T> engine)
+    {
+        super();
+        this.channel = channel;
+        this.engine = engine;
+        byteCount = 0;
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Reads bytes from the underlying channel and hashes them.
+     *
+     * @param dst The {@link ByteBuffer} into which bytes are read.
+     * @return The number of bytes read, or <code>-1</code> if the channel has reached end-of-stream.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int read(ByteBuffer dst)
+            throws IOException
+    {
+        int start = dst.position();
+        int ret = channel.read(dst);
+        if (ret > 0)
+        {
+            ByteBuffer read = dst.duplicate();
+            read.limit(dst.position()).position(start);
+            engine.update(read);
+            byteCount += ret;
+        }
+        return ret;
+    }
+
+    /**
+     * Determines whether or not the underlying channel is open.
+     *
+     * @return <code>true</code> if the underlying channel is open; <code>false</code> otherwise.
+     */
+    public boolean isOpen()
+    {
+        return channel.isOpen();
+    }
+
+    /**
+     * Closes the underlying channel.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void close()
+            throws IOException
+    {
+        channel.close();
+    }
+
+    /**
+     * Retrieves the {@link HashingEngine} which receives the data read from this channel.
+     *
+     * @return The {@link HashingEngine} used by this channel.
+     */
+    public HashingEngine<T> getEngine()
+    {
+        return engine;
+    }
+
+    /**
+     * Retrieves the number of bytes which have been read through this channel.
+     *
+     * @return The number of bytes read.
+     */
+    public long getByteCount()
+    {
+        return byteCount;
+    }
+
+    /**
+     * Completes the hash of the data read through this channel since it was created or since this method was last
+     * called.
+     *
+     * @return The hash of the data.
+     */
+    public T digest()
+    {
+        byteCount = 0;
+        return engine.digest();
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+}
+
+// END OF FILE
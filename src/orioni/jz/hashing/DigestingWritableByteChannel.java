@@ -0,0 +1,131 @@
+package orioni.jz.hashing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * This {@link WritableByteChannel} passes every byte written to an underlying channel to a {@link HashingEngine},
+ * allowing the hash of the data to be computed in the same pass in which it is written.
+ *
+ * @author Zachary Palmer
+ */
+public class DigestingWritableByteChannel<T> implements WritableByteChannel
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The underlying {@link WritableByteChannel}.
+     */
+    protected WritableByteChannel channel;
+    /**
+     * The {@link HashingEngine} which receives the data written to this channel.
+     */
+    protected HashingEngine<T> engine;
+    /**
+     * The number of bytes which have passed through this channel.
+     */
+    protected long byteCount;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * General constructor.
+     *
+     * @param channel The underlying {@link WritableByteChannel}.
+     * @param engine  The {@link HashingEngine} which receives the data written to this channel.
+     */
+    public DigestingWritableByteChannel(WritableByteChannel channel, HashingEngine<T> engine)
+    {
+        super();
+        this.channel = channel;
+        this.engine = engine;
+        byteCount = 0;
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Writes bytes to the underlying channel and hashes those which were written.
+     *
+     * @param src The {@link ByteBuffer} from which bytes are written.
+     * @return The number of bytes written.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int write(ByteBuffer src)
+            throws IOException
+    {
+        int start = src.position();
+        int ret = channel.write(src);
+        if (ret > 0)
+        {
+            ByteBuffer written = src.duplicate();
+            written.limit(src.position()).position(start);
+            engine.update(written);
+            byteCount += ret;
+        }
+        return ret;
+    }
+
+    /**
+     * Determines whether or not the underlying channel is open.
+     *
+     * @return <code>true</code> if the underlying channel is open; <code>false</code> otherwise.
+     */
+    public boolean isOpen()
+    {
+        return channel.isOpen();
+    }
+
+    /**
+     * Closes the underlying channel.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void close()
+            throws IOException
+    {
+        channel.close();
+    }
+
+    /**
+     * Retrieves the {@link HashingEngine} which receives the data written to this channel.
+     *
+     * @return The {@link HashingEngine} used by this channel.
+     */
+    public HashingEngine<T> getEngine()
+    {
+        return engine;
+    }
+
+    /**
+     * Retrieves the number of bytes which have been written through this channel.
+     *
+     * @return The number of bytes written.
+     */
+    public long getByteCount()
+    {
+        return byteCount;
+    }
+
+    /**
+     * Completes the hash of the data written through this channel since it was created or since this method was last
+     * called.
+     *
+     * @return The hash of the data.
+     */
+    public T digest()
+    {
+        byteCount = 0;
+        return engine.digest();
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+}
+
+// END OF FILE
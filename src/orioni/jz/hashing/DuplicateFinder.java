@@ -0,0 +1,656 @@
+package orioni.jz.hashing;
+
+import orioni.jz.io.files.FileUtilities;
+import orioni.jz.util.ProgressTracker;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class is designed to find groups of files with identical contents.  Candidate files are narrowed down in a
+ * series of increasingly expensive stages; only those files which share their result in one stage with at least one
+ * other file proceed to the next.  The stages are: <ol> <li>grouping by length,</li> <li>grouping by a {@link
+ * SampledHashingAlgorithm} hash of the first and last few kilobytes of each file,</li> <li>grouping by a hash of the
+ * entire file, and</li> <li>optionally, grouping by byte-for-byte comparison using {@link
+ * FileUtilities#compareFiles(File, File)}.</li> </ol> The full hash is skipped for files small enough that the sampled
+ * hash already covers their entire contents.  Empty files are grouped by length alone.
+ * <p/>
+ * Every stage runs in parallel on a {@link ForkJoinPool}.  Each group of candidates proceeds through the stages
+ * independently, so groups of duplicates are reported to the {@link Listener} as soon as they are confirmed rather than
+ * when the entire search is complete.  Files which cannot be read are reported to the {@link Listener} and excluded
+ * from the search.
+ * <p/>
+ * Hashes of array type (such as those produced by {@link SHA1}) are compared through {@link
+ * HashingAlgorithm#toBytes(Object)}; hashes of other types are compared with their own <code>equals</code> and
+ * <code>hashCode</code> methods.
+ *
+ * @author Zachary Palmer
+ */
+public class DuplicateFinder<T>
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+    /**
+     * The default number of bytes sampled from each end of a file.
+     */
+    public static final int DEFAULT_SAMPLE_SIZE = 4096;
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The {@link HashingAlgorithm} used to sample files.
+     */
+    protected SampledHashingAlgorithm<T> sampledAlgorithm;
+    /**
+     * The {@link HashingAlgorithm} used to hash entire files.
+     */
+    protected HashingAlgorithm<T> fullAlgorithm;
+    /**
+     * Whether or not files with equal hashes are compared byte for byte.
+     */
+    protected boolean compareContents;
+    /**
+     * The {@link ForkJoinPool} on which the stages are run.
+     */
+    protected ForkJoinPool pool;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * Skeleton constructor.  Uses the default sample size, does not compare files byte for byte, and runs on the common
+     * {@link ForkJoinPool}.
+     *
+     * @param algorithm The {@link HashingAlgorithm} used to hash samples and entire files.
+     */
+    public DuplicateFinder(HashingAlgorithm<T> algorithm)
+    {
+        this(algorithm, DEFAULT_SAMPLE_SIZE, false, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * General constructor.
+     *
+     * @param algorithm       The {@link HashingAlgorithm} used to hash samples and entire files.  This may be a {@link
+     *                        CachingHashingAlgorithm} to avoid rehashing unchanged files.
+     * @param sampleSize      The number of bytes sampled from each end of a file.
+     * @param compareContents <code>true</code> if files with equal hashes should be compared byte for byte before they
+     *                        are reported as duplicates; <code>false</code> if equal hashes are sufficient.
+     * @param pool            The {@link ForkJoinPool} on which the stages are run.
+     */
+    public DuplicateFinder(HashingAlgorithm<T> algorithm, int sampleSize, boolean compareContents, ForkJoinPool pool)
+    {
+        super();
+        sampledAlgorithm = new SampledHashingAlgorithm<T>(algorithm, sampleSize);
+        fullAlgorithm = algorithm;
+        this.compareContents = compareContents;
+        this.pool = pool;
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Finds the groups of duplicate files among those provided.
+     *
+     * @param files    The files to search.  Each file should appear only once.
+     * @param listener The {@link Listener} to which results are reported as they are found, or <code>null</code> if
+     *                 results should only be returned.  The listener is called from the worker threads of this
+     *                 finder's {@link ForkJoinPool} and must be threadsafe.
+     * @param tracker  The {@link ProgressTracker} to which progress is reported, or <code>null</code> if progress
+     *                 should not be reported.  One file's share of the tracker's range is reported as each file is
+     *                 either eliminated or confirmed as a duplicate.
+     * @return A {@link List} of the groups of duplicate files.  Each group contains at least two files.
+     */
+    public List<Set<File>> findDuplicates(Collection<File> files, Listener listener, ProgressTracker tracker)
+    {
+        Search search = new Search(files.size(), listener, tracker);
+        pool.invoke(new LengthStage(search, new ArrayList<File>(files)));
+        return search.getResults();
+    }
+
+    /**
+     * Determines the key used to group files by the provided hash.
+     *
+     * @param algorithm The {@link HashingAlgorithm} which produced the hash.
+     * @param hash      The hash.
+     * @return An object suitable for use as a {@link Map} key.
+     */
+    protected Object getKey(HashingAlgorithm<T> algorithm, T hash)
+    {
+        if (hash.getClass().isArray()) return ByteBuffer.wrap(algorithm.toBytes(hash));
+        return hash;
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+// CONTAINED CLASSES /////////////////////////////////////////////////////////////
+
+    /**
+     * This interface is implemented by objects which receive the results of a {@link DuplicateFinder} as they are
+     * found.
+     *
+     * @author Zachary Palmer
+     */
+    public static interface Listener
+    {
+        /**
+         * Indicates that a group of duplicate files has been found.
+         *
+         * @param duplicates The files, all of which have identical contents.
+         */
+        public void duplicatesFound(Set<File> duplicates);
+
+        /**
+         * Indicates that a file could not be read and has been excluded from the search.
+         *
+         * @param file      The file which could not be read.
+         * @param exception The exception which occurred.
+         */
+        public void fileFailed(File file, IOException exception);
+    }
+
+    /**
+     * Contains the state of a single call to {@link DuplicateFinder#findDuplicates(Collection, Listener,
+     * ProgressTracker)}.
+     */
+    protected class Search
+    {
+        /**
+         * The groups of duplicates found so far.
+         */
+        protected List<Set<File>> results;
+        /**
+         * The listener to inform of results, or <code>null</code>.
+         */
+        protected Listener listener;
+        /**
+         * The tracker to inform of progress, or <code>null</code>.
+         */
+        protected ProgressTracker tracker;
+        /**
+         * The percentage of progress represented by one file.
+         */
+        protected double share;
+
+        /**
+         * General constructor.
+         *
+         * @param count    The number of files being searched.
+         * @param listener The listener to inform of results, or <code>null</code>.
+         * @param tracker  The tracker to inform of progress, or <code>null</code>.
+         */
+        public Search(int count, Listener listener, ProgressTracker tracker)
+        {
+            super();
+            results = new ArrayList<Set<File>>();
+            this.listener = listener;
+            this.tracker = tracker;
+            share = 100.0 / Math.max(1, count);
+        }
+
+        public synchronized List<Set<File>> getResults()
+        {
+            return new ArrayList<Set<File>>(results);
+        }
+
+        /**
+         * Records a group of duplicates.
+         *
+         * @param files The duplicate files.
+         */
+        public void found(List<File> files)
+        {
+            Set<File> group = Collections.unmodifiableSet(new HashSet<File>(files));
+            synchronized (this)
+            {
+                results.add(group);
+            }
+            if (listener != null) listener.duplicatesFound(group);
+            finished(files.size());
+        }
+
+        /**
+         * Records that a file could not be read.
+         *
+         * @param file      The file.
+         * @param exception The exception which occurred.
+         */
+        public void failed(File file, IOException exception)
+        {
+            if (listener != null) listener.fileFailed(file, exception);
+            finished(1);
+        }
+
+        /**
+         * Records that files have been eliminated or confirmed.
+         *
+         * @param count The number of files.
+         */
+        public void finished(int count)
+        {
+            if (tracker != null)
+            {
+                synchronized (tracker)
+                {
+                    tracker.incrementPercentage(share * count);
+                }
+            }
+        }
+    }
+
+    /**
+     * Groups the files of a search by length and starts the next stage for each group.
+     */
+    protected class LengthStage extends RecursiveAction
+    {
+        /**
+         * The search being performed.
+         */
+        protected Search search;
+        /**
+         * The files to group.
+         */
+        protected List<File> files;
+
+        /**
+         * General constructor.
+         *
+         * @param search The search being performed.
+         * @param files  The files to group.
+         */
+        public LengthStage(Search search, List<File> files)
+        {
+            super();
+            this.search = search;
+            this.files = files;
+        }
+
+        protected void compute()
+        {
+            long[] lengths = new long[files.size()];
+            invokeAll(new LengthTask(files, lengths, 0, lengths.length));
+            Map<Long, List<File>> groups = new HashMap<Long, List<File>>();
+            for (int i = 0; i < lengths.length; i++)
+            {
+                if (lengths[i] == -1)
+                {
+                    search.failed(files.get(i), new FileNotFoundException(files.get(i) + " is not a readable file."));
+                    continue;
+                }
+                List<File> group = groups.get(lengths[i]);
+                if (group == null)
+                {
+                    group = new ArrayList<File>(2);
+                    groups.put(lengths[i], group);
+                }
+                group.add(files.get(i));
+            }
+            List<RecursiveAction> next = new ArrayList<RecursiveAction>();
+            for (Map.Entry<Long, List<File>> entry : groups.entrySet())
+            {
+                List<File> group = entry.getValue();
+                if (group.size() < 2)
+                {
+                    search.finished(group.size());
+                } else if (entry.getKey() == 0)
+                {
+                    search.found(group);
+                } else
+                {
+                    next.add(new HashStage(search, group, entry.getKey(), true));
+                }
+            }
+            invokeAll(next);
+        }
+    }
+
+    /**
+     * Determines the lengths of a range of files in parallel.
+     */
+    protected static class LengthTask extends RecursiveAction
+    {
+        /**
+         * The number of files below which the range is not split.
+         */
+        private static final int THRESHOLD = 256;
+
+        /**
+         * The files.
+         */
+        protected List<File> files;
+        /**
+         * The array into which the lengths are stored.  The length of a file which does not exist is stored as
+         * <code>-1</code>.
+         */
+        protected long[] lengths;
+        /**
+         * The first index of the range.
+         */
+        protected int start;
+        /**
+         * The index after the last index of the range.
+         */
+        protected int end;
+
+        /**
+         * General constructor.
+         *
+         * @param files   The files.
+         * @param lengths The array into which the lengths are stored.
+         * @param start   The first index of the range.
+         * @param end     The index after the last index of the range.
+         */
+        public LengthTask(List<File> files, long[] lengths, int start, int end)
+        {
+            super();
+            this.files = files;
+            this.lengths = lengths;
+            this.start = start;
+            this.end = end;
+        }
+
+        protected void compute()
+        {
+            if (end - start <= THRESHOLD)
+            {
+                for (int i = start; i < end; i++)
+                {
+                    File file = files.get(i);
+                    lengths[i] = file.length();
+                    // A length of zero is also reported for files which do not exist.
+                    if ((lengths[i] == 0) && (!file.isFile())) lengths[i] = -1;
+                }
+            } else
+            {
+                int middle = (start + end) >>> 1;
+                invokeAll(new LengthTask(files, lengths, start, middle), new LengthTask(files, lengths, middle, end));
+            }
+        }
+    }
+
+    /**
+     * Groups a set of candidate files of equal length by either their sampled or their full hash and starts the next
+     * stage for each resulting group.
+     */
+    protected class HashStage extends RecursiveAction
+    {
+        /**
+         * The search being performed.
+         */
+        protected Search search;
+        /**
+         * The candidate files.
+         */
+        protected List<File> files;
+        /**
+         * The length of each candidate file.
+         */
+        protected long length;
+        /**
+         * <code>true</code> if the files should be sampled; <code>false</code> if they should be hashed in full.
+         */
+        protected boolean sampled;
+
+        /**
+         * General constructor.
+         *
+         * @param search  The search being performed.
+         * @param files   The candidate files.
+         * @param length  The length of each candidate file.
+         * @param sampled <code>true</code> if the files should be sampled; <code>false</code> if they should be hashed
+         *                in full.
+         */
+        public HashStage(Search search, List<File> files, long length, boolean sampled)
+        {
+            super();
+            this.search = search;
+            this.files = files;
+            this.length = length;
+            this.sampled = sampled;
+        }
+
+        protected void compute()
+        {
+            HashingAlgorithm<T> algorithm = sampled ? sampledAlgorithm : fullAlgorithm;
+            List<HashTask> tasks = new ArrayList<HashTask>(files.size());
+            for (File file : files) tasks.add(new HashTask(algorithm, file));
+            invokeAll(tasks);
+
+            Map<Object, List<File>> groups = new HashMap<Object, List<File>>();
+            for (HashTask task : tasks)
+            {
+                if (task.getFailure() != null)
+                {
+                    search.failed(task.getFile(), task.getFailure());
+                } else
+                {
+                    Object key = getKey(algorithm, task.getHash());
+                    List<File> group = groups.get(key);
+                    if (group == null)
+                    {
+                        group = new ArrayList<File>(2);
+                        groups.put(key, group);
+                    }
+                    group.add(task.getFile());
+                }
+            }
+
+            // A sample which covers the entire file is as good as a full hash.
+            boolean complete = (!sampled) || (sampledAlgorithm.isComplete(length));
+            List<RecursiveAction> next = new ArrayList<RecursiveAction>();
+            for (List<File> group : groups.values())
+            {
+                if (group.size() < 2)
+                {
+                    search.finished(group.size());
+                } else if (!complete)
+                {
+                    next.add(new HashStage(search, group, length, false));
+                } else if (compareContents)
+                {
+                    next.add(new CompareStage(search, group));
+                } else
+                {
+                    search.found(group);
+                }
+            }
+            invokeAll(next);
+        }
+    }
+
+    /**
+     * Hashes a single file.
+     */
+    protected class HashTask extends RecursiveAction
+    {
+        /**
+         * The algorithm used to hash the file.
+         */
+        protected HashingAlgorithm<T> algorithm;
+        /**
+         * The file to hash.
+         */
+        protected File file;
+        /**
+         * The resulting hash.
+         */
+        protected T hash;
+        /**
+         * The exception which occurred while hashing the file, or <code>null</code> if none occurred.
+         */
+        protected IOException exception;
+
+        /**
+         * General constructor.
+         *
+         * @param algorithm The algorithm used to hash the file.
+         * @param file      The file to hash.
+         */
+        public HashTask(HashingAlgorithm<T> algorithm, File file)
+        {
+            super();
+            this.algorithm = algorithm;
+            this.file = file;
+        }
+
+        protected void compute()
+        {
+            try
+            {
+                hash = algorithm.hash(file);
+            } catch (IOException e)
+            {
+                exception = e;
+            }
+        }
+
+        public File getFile()
+        {
+            return file;
+        }
+
+        public T getHash()
+        {
+            return hash;
+        }
+
+        public IOException getFailure()
+        {
+            return exception;
+        }
+    }
+
+    /**
+     * Partitions a group of files with equal hashes by comparing their contents.
+     */
+    protected class CompareStage extends RecursiveAction
+    {
+        /**
+         * The search being performed.
+         */
+        protected Search search;
+        /**
+         * The candidate files.
+         */
+        protected List<File> files;
+
+        /**
+         * General constructor.
+         *
+         * @param search The search being performed.
+         * @param files  The candidate files.
+         */
+        public CompareStage(Search search, List<File> files)
+        {
+            super();
+            this.search = search;
+            this.files = files;
+        }
+
+        protected void compute()
+        {
+            // Each file is compared against the first file of each partition found so far.  As the files have equal
+            // hashes, there is almost always exactly one partition.
+            List<List<File>> partitions = new ArrayList<List<File>>();
+            for (File file : files) place(partitions, file);
+            for (List<File> partition : partitions)
+            {
+                if (partition.size() < 2)
+                {
+                    search.finished(partition.size());
+                } else
+                {
+                    search.found(partition);
+                }
+            }
+        }
+
+        /**
+         * Places a file into the partition whose first file has the same contents, or into a new partition if there is
+         * no such partition.  If a comparison fails, each of the two files is read to determine which of them caused
+         * the failure.  A file which cannot be read is reported as failed and is not placed; if that file is the first
+         * of its partition, the next file of the partition takes its place and the comparison is repeated.
+         *
+         * @param partitions The partitions found so far.
+         * @param file       The file to place.
+         */
+        protected void place(List<List<File>> partitions, File file)
+        {
+            int index = 0;
+            while (index < partitions.size())
+            {
+                List<File> partition = partitions.get(index);
+                File representative = partition.get(0);
+                try
+                {
+                    if (FileUtilities.compareFiles(representative, file))
+                    {
+                        partition.add(file);
+                        return;
+                    }
+                    index++;
+                } catch (IOException e)
+                {
+                    IOException representativeFailure = getReadFailure(representative);
+                    IOException fileFailure = getReadFailure(file);
+                    if (representativeFailure != null)
+                    {
+                        search.failed(representative, representativeFailure);
+                        partition.remove(0);
+                        if (partition.isEmpty()) partitions.remove(index);
+                    }
+                    if ((fileFailure != null) || (representativeFailure == null))
+                    {
+                        // If neither file fails on its own, the file being placed is blamed for the comparison
+                        search.failed(file, (fileFailure == null) ? e : fileFailure);
+                        return;
+                    }
+                }
+            }
+            List<File> partition = new ArrayList<File>();
+            partition.add(file);
+            partitions.add(partition);
+        }
+
+        /**
+         * Reads the entire contents of a file to determine whether or not it can be read.
+         *
+         * @param file The file to read.
+         * @return The exception which occurred while reading the file, or <code>null</code> if it was read
+         *         successfully.
+         */
+        protected IOException getReadFailure(File file)
+        {
+            FileInputStream stream = null;
+            try
+            {
+                stream = new FileInputStream(file);
+                byte[] buffer = new byte[65536];
+                while (stream.read(buffer) != -1)
+                {
+                }
+                return null;
+            } catch (IOException e)
+            {
+                return e;
+            } finally
+            {
+                try
+                {
+                    if (stream != null) stream.close();
+                } catch (IOException e)
+                {
+                }
+            }
+        }
+    }
+}
+
+// END OF FILE
@@ -69,6 +69,37 @@ public abstract class HashingAlgorithm<T>
             }
         }
     }
+
+    /**
+     * Converts a hash produced by this {@link HashingAlgorithm} into a <code>byte[]</code>.  This representation is used
+     * when hashes must be combined or stored.  The default implementation does not support this operation.
+     *
+     * @param hash The hash to convert.
+     * @return A <code>byte[]</code> representing that hash.
+     * @throws UnsupportedOperationException If this {@link HashingAlgorithm} does not support the conversion of its
+     *                                       hashes to bytes.
+     */
+    public byte[] toBytes(T hash)
+            throws UnsupportedOperationException
+    {
+        throw new UnsupportedOperationException(getClass().getName() + " does not support conversion to bytes.");
+    }
+
+    /**
+     * Converts a <code>byte[]</code> produced by {@link HashingAlgorithm#toBytes(Object)} back into a hash.  The default
+     * implementation does not support this operation.
+     *
+     * @param data The <code>byte[]</code> to convert.
+     * @return The hash represented by that data.
+     * @throws UnsupportedOperationException If this {@link HashingAlgorithm} does not support the conversion of its
+     *                                       hashes from bytes.
+     * @throws IllegalArgumentException      If the provided data does not represent a hash of this algorithm.
+     */
+    public T fromBytes(byte[] data)
+            throws UnsupportedOperationException, IllegalArgumentException
+    {
+        throw new UnsupportedOperationException(getClass().getName() + " does not support conversion from bytes.");
+    }
 }
 
 // END OF FILE
\ No newline at end of file
@@ -0,0 +1,55 @@
+package orioni.jz.hashing;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This interface is meant to be implemented by incremental forms of the hashing algorithms in the {@link
+ * orioni.jz.hashing} package.  Whereas a {@link HashingAlgorithm} consumes an entire stream of data in one call, a
+ * {@link HashingEngine} accepts the data in arbitrarily-sized pieces as it becomes available and produces the hash
+ * only when requested.
+ * <p/>
+ * {@link HashingEngine}s are not threadsafe.
+ *
+ * @author Zachary Palmer
+ */
+public interface HashingEngine<T>
+{
+    /**
+     * Adds a single byte to the data being hashed.
+     *
+     * @param b The byte to add.  Only the lowest eight bits of this value are used.
+     */
+    public void update(int b);
+
+    /**
+     * Adds a series of bytes to the data being hashed.
+     *
+     * @param data   The <code>byte[]</code> containing the data to add.
+     * @param offset The offset of the first byte to add.
+     * @param length The number of bytes to add.
+     */
+    public void update(byte[] data, int offset, int length);
+
+    /**
+     * Adds the remaining contents of the provided {@link ByteBuffer} to the data being hashed.  When this method
+     * returns, the buffer's position will be equal to its limit.
+     *
+     * @param buffer The {@link ByteBuffer} containing the data to add.
+     */
+    public void update(ByteBuffer buffer);
+
+    /**
+     * Completes the hash of all data provided since this {@link HashingEngine} was created or last reset.  This {@link
+     * HashingEngine} is reset afterward and may be used to produce another hash.
+     *
+     * @return The hash of the provided data.
+     */
+    public T digest();
+
+    /**
+     * Discards all of the data provided to this {@link HashingEngine}, returning it to its initial state.
+     */
+    public void reset();
+}
+
+// END OF FILE
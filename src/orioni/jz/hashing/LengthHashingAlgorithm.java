@@ -1,5 +1,7 @@
 package orioni.jz.hashing;
 
+import orioni.jz.util.DataConversion;
+
 import java.io.File;
 import java.io.InputStream;
 import java.io.IOException;
@@ -57,6 +59,34 @@ public class LengthHashingAlgorithm extends HashingAlgorithm<Long>
         return source.skip(Long.MAX_VALUE);
     }
 
+    /**
+     * Converts a length hash into an eight-byte big-endian form.
+     *
+     * @param hash The hash to convert.
+     * @return A <code>byte[8]</code> representing that hash.
+     */
+    public byte[] toBytes(Long hash)
+    {
+        return DataConversion.longToByteArray(hash);
+    }
+
+    /**
+     * Converts an eight-byte big-endian length hash into a {@link Long}.
+     *
+     * @param data The <code>byte[8]</code> to convert.
+     * @return The hash represented by that data.
+     * @throws IllegalArgumentException If the provided array is not eight bytes long.
+     */
+    public Long fromBytes(byte[] data)
+            throws IllegalArgumentException
+    {
+        if (data.length != 8)
+        {
+            throw new IllegalArgumentException("Length hashes are 8 bytes long; " + data.length + " bytes provided.");
+        }
+        return DataConversion.byteArrayToLong(data);
+    }
+
 // STATIC METHODS ////////////////////////////////////////////////////////////////
 
 }
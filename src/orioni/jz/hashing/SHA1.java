@@ -1,7 +1,12 @@
 package orioni.jz.hashing;
 
+import orioni.jz.util.DataConversion;
+
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 
 /**
  * This class is an implementation of the SHA1 hashing algorithm.  Note that it is impossible for this class to encrypt
@@ -19,6 +24,18 @@ public class SHA1 extends HashingAlgorithm<int[]>
      * A singleton instance of this hashing algorithm.
      */
     public static final SHA1 SINGLETON = new SHA1();
+    /**
+     * The size of the buffer used when hashing an {@link InputStream}.
+     */
+    public static final int STREAM_BUFFER_SIZE = 65536;
+    /**
+     * The minimum size of a file, in bytes, before it is memory-mapped for hashing.
+     */
+    public static final long MAPPING_THRESHOLD = 1048576;
+    /**
+     * The largest number of bytes of a file which will be memory-mapped at once.
+     */
+    public static final long MAPPING_WINDOW_SIZE = 67108864;
 
 // NON-STATIC FIELDS /////////////////////////////////////////////////////////////
 
@@ -34,10 +51,23 @@ public class SHA1 extends HashingAlgorithm<int[]>
 
 // NON-STATIC METHODS ////////////////////////////////////////////////////////////
 
-// STATIC METHODS ////////////////////////////////////////////////////////////////
+    /**
+     * Performs the SHA-1 hashing algorithm on a set of input data contained within a <code>byte[]</code>.
+     *
+     * @param data The <code>byte[]</code> from which the data should be retrieved.
+     * @return An <code>int[5]</code> containing the SHA-1 hash, with the first byte of the message in offset
+     *         <code>0</code>.
+     */
+    public int[] hash(byte[] data)
+    {
+        SHA1Engine engine = new SHA1Engine();
+        engine.update(data, 0, data.length);
+        return engine.digest();
+    }
 
     /**
-     * Performs the SHA-1 hashing algorithm on a set of input data provided through an {@link InputStream}.
+     * Performs the SHA-1 hashing algorithm on a set of input data provided through an {@link InputStream}.  Short
+     * reads are tolerated; the stream is read until it reports that it is exhausted.
      *
      * @param source The {@link InputStream} which will be used as a source for the data.  This {@link InputStream} will
      *               be read until it is exhausted.
@@ -48,92 +78,125 @@ public class SHA1 extends HashingAlgorithm<int[]>
     public int[] hash(InputStream source)
             throws IOException
     {
-        byte[] messageBlock = new byte[64];
-        int[] registers = new int[]{0x67452301, 0xEFCDAB89, 0x98BADCFE, 0x10325476, 0xC3D2E1F0};
-        int read = source.read(messageBlock);
-        if (read == -1) read = 0;
-        long lengthCounter = read;
-        while (read == 64)
+        SHA1Engine engine = new SHA1Engine();
+        byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+        int read;
+        while ((read = source.read(buffer)) != -1)
         {
-            processOnePass(registers, messageBlock);
-            read = source.read(messageBlock);
-            if (read == -1) read = 0;
-            lengthCounter += read;
+            engine.update(buffer, 0, read);
         }
-        // perform padding
-        messageBlock[read] = (byte) (0x80);
-        lengthCounter *= 8;
-        if (read > 55)
+        return engine.digest();
+    }
+
+    /**
+     * Performs the SHA-1 hashing algorithm on a given file.  Files of sufficient size are memory-mapped in windows of
+     * {@link #MAPPING_WINDOW_SIZE} bytes and hashed in place; smaller files are simply read.
+     *
+     * @param file The {@link File} used as a source for the data.
+     * @return An <code>int[5]</code> containing the SHA-1 hash, with the first byte of the message in offset
+     *         <code>0</code>.
+     * @throws IOException If an I/O error occurs while retrieving data from the file.
+     */
+    public int[] hash(File file)
+            throws IOException
+    {
+        FileInputStream fis = new FileInputStream(file);
+        try
+        {
+            FileChannel channel = fis.getChannel();
+            long size = channel.size();
+            if (size < MAPPING_THRESHOLD) return hash(fis);
+            SHA1Engine engine = new SHA1Engine();
+            long position = 0;
+            while (position < size)
+            {
+                long length = Math.min(MAPPING_WINDOW_SIZE, size - position);
+                engine.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+                position += length;
+            }
+            return engine.digest();
+        } finally
         {
-            // pad a whole message block
-            for (int i = read + 1; i < messageBlock.length; i++) messageBlock[i] = 0;
-            processOnePass(registers, messageBlock);
-            // now create final message block
-            for (int i = 0; i < messageBlock.length - 8; i++)
+            try
+            {
+                fis.close();
+            } catch (IOException e)
             {
-                messageBlock[i] = 0;
             }
-        } else
+        }
+    }
+
+    /**
+     * Converts a SHA-1 hash into its conventional twenty-byte big-endian form.
+     *
+     * @param hash The <code>int[5]</code> hash to convert.
+     * @return A <code>byte[20]</code> representing that hash.
+     */
+    public byte[] toBytes(int[] hash)
+    {
+        byte[] ret = new byte[20];
+        for (int i = 0; i < 5; i++)
         {
-            // pad final message block
-            for (int i = read + 1; i < messageBlock.length - 8; i++) messageBlock[i] = 0;
+            DataConversion.storeIntInByteArray(hash[i], ret, i * 4);
         }
-        // incorporate the length counter as a little-endian 64-bit integer
-        for (int i = messageBlock.length - 1; i >= messageBlock.length - 8; i--)
+        return ret;
+    }
+
+    /**
+     * Converts a twenty-byte big-endian SHA-1 hash into the form produced by this class.
+     *
+     * @param data The <code>byte[20]</code> to convert.
+     * @return The <code>int[5]</code> hash represented by that data.
+     * @throws IllegalArgumentException If the provided array is not twenty bytes long.
+     */
+    public int[] fromBytes(byte[] data)
+            throws IllegalArgumentException
+    {
+        if (data.length != 20)
+        {
+            throw new IllegalArgumentException("SHA-1 hashes are 20 bytes long; " + data.length + " bytes provided.");
+        }
+        int[] ret = new int[5];
+        for (int i = 0; i < 5; i++)
         {
-            messageBlock[i] = (byte) (lengthCounter % 256);
-            lengthCounter /= 256;
+            ret[i] = DataConversion.byteArrayToInt(data, i * 4);
         }
-        processOnePass(registers, messageBlock);
-        return registers;
+        return ret;
     }
 
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
     /**
      * Processes one pass of the SHA-1 algorithm.  This is possible because passes are only dependent upon the values in
      * the return registers; the other data expires in usefulness at the end of each pass.
      *
-     * @param registers    The five H-registers which contain the return data between passes.
-     * @param messageBytes A <code>byte[64]</code> containing the message_bytes block to be used in this pass.
+     * @param registers The five H-registers which contain the return data between passes.
+     * @param words     An <code>int[16]</code> containing the message block to be used in this pass as big-endian
+     *                  words.
      */
-    private static void processOnePass(int[] registers, byte[] messageBytes)
+    static void processOnePass(int[] registers, int[] words)
     {
         int a, b, c, d, e, t;
         int w0, w1, w2, w3, w4, w5, w6, w7, w8, w9, w10, w11, w12, w13, w14, w15, w16, w17, w18, w19,
                 w20, w21, w22, w23, w24, w25, w26, w27, w28, w29, w30, w31, w32, w33, w34, w35, w36, w37, w38, w39,
                 w40, w41, w42, w43, w44, w45, w46, w47, w48, w49, w50, w51, w52, w53, w54, w55, w56, w57, w58, w59,
                 w60, w61, w62, w63, w64, w65, w66, w67, w68, w69, w70, w71, w72, w73, w74, w75, w76, w77, w78, w79;
-        w0 = ((messageBytes[0] & 0xFF) << 24) | ((messageBytes[1] & 0xFF) << 16) |
-             ((messageBytes[2] & 0xFF) << 8) | ((messageBytes[3] & 0xFF));
-        w1 = ((messageBytes[4] & 0xFF) << 24) | ((messageBytes[5] & 0xFF) << 16) |
-             ((messageBytes[6] & 0xFF) << 8) | ((messageBytes[7] & 0xFF));
-        w2 = ((messageBytes[8] & 0xFF) << 24) | ((messageBytes[9] & 0xFF) << 16) |
-             ((messageBytes[10] & 0xFF) << 8) | ((messageBytes[11] & 0xFF));
-        w3 = ((messageBytes[12] & 0xFF) << 24) | ((messageBytes[13] & 0xFF) << 16) |
-             ((messageBytes[14] & 0xFF) << 8) | ((messageBytes[15] & 0xFF));
-        w4 = ((messageBytes[16] & 0xFF) << 24) | ((messageBytes[17] & 0xFF) << 16) |
-             ((messageBytes[18] & 0xFF) << 8) | ((messageBytes[19] & 0xFF));
-        w5 = ((messageBytes[20] & 0xFF) << 24) | ((messageBytes[21] & 0xFF) << 16) |
-             ((messageBytes[22] & 0xFF) << 8) | ((messageBytes[23] & 0xFF));
-        w6 = ((messageBytes[24] & 0xFF) << 24) | ((messageBytes[25] & 0xFF) << 16) |
-             ((messageBytes[26] & 0xFF) << 8) | ((messageBytes[27] & 0xFF));
-        w7 = ((messageBytes[28] & 0xFF) << 24) | ((messageBytes[29] & 0xFF) << 16) |
-             ((messageBytes[30] & 0xFF) << 8) | ((messageBytes[31] & 0xFF));
-        w8 = ((messageBytes[32] & 0xFF) << 24) | ((messageBytes[33] & 0xFF) << 16) |
-             ((messageBytes[34] & 0xFF) << 8) | ((messageBytes[35] & 0xFF));
-        w9 = ((messageBytes[36] & 0xFF) << 24) | ((messageBytes[37] & 0xFF) << 16) |
-             ((messageBytes[38] & 0xFF) << 8) | ((messageBytes[39] & 0xFF));
-        w10 = ((messageBytes[40] & 0xFF) << 24) | ((messageBytes[41] & 0xFF) << 16) |
-              ((messageBytes[42] & 0xFF) << 8) | ((messageBytes[43] & 0xFF));
-        w11 = ((messageBytes[44] & 0xFF) << 24) | ((messageBytes[45] & 0xFF) << 16) |
-              ((messageBytes[46] & 0xFF) << 8) | ((messageBytes[47] & 0xFF));
-        w12 = ((messageBytes[48] & 0xFF) << 24) | ((messageBytes[49] & 0xFF) << 16) |
-              ((messageBytes[50] & 0xFF) << 8) | ((messageBytes[51] & 0xFF));
-        w13 = ((messageBytes[52] & 0xFF) << 24) | ((messageBytes[53] & 0xFF) << 16) |
-              ((messageBytes[54] & 0xFF) << 8) | ((messageBytes[55] & 0xFF));
-        w14 = ((messageBytes[56] & 0xFF) << 24) | ((messageBytes[57] & 0xFF) << 16) |
-              ((messageBytes[58] & 0xFF) << 8) | ((messageBytes[59] & 0xFF));
-        w15 = ((messageBytes[60] & 0xFF) << 24) | ((messageBytes[61] & 0xFF) << 16) |
-              ((messageBytes[62] & 0xFF) << 8) | ((messageBytes[63] & 0xFF));
+        w0 = words[0];
+        w1 = words[1];
+        w2 = words[2];
+        w3 = words[3];
+        w4 = words[4];
+        w5 = words[5];
+        w6 = words[6];
+        w7 = words[7];
+        w8 = words[8];
+        w9 = words[9];
+        w10 = words[10];
+        w11 = words[11];
+        w12 = words[12];
+        w13 = words[13];
+        w14 = words[14];
+        w15 = words[15];
         t = w13 ^ w8 ^ w2 ^ w0;
         w16 = (t << 1) | (t >>> 31);
         t = w14 ^ w9 ^ w3 ^ w1;
@@ -0,0 +1,259 @@
+package orioni.jz.hashing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * This {@link HashingEngine} incrementally computes the SHA-1 hash of the data provided to it.  Data may be provided in
+ * pieces of any size; partial message blocks are buffered internally until enough data arrives to complete them.
+ * Whole message blocks are processed directly from the caller's array or buffer, so no allocation is performed for
+ * any block of data.
+ * <p/>
+ * The hash produced by this engine is identical to that produced by {@link SHA1}.
+ *
+ * @author Zachary Palmer
+ */
+public class SHA1Engine implements HashingEngine<int[]>
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+    /**
+     * The size of a SHA-1 message block, in bytes.
+     */
+    public static final int BLOCK_SIZE = 64;
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The five H-registers which contain the intermediate hash.
+     */
+    protected int[] registers;
+    /**
+     * The sixteen words of the message block currently being processed.
+     */
+    protected int[] words;
+    /**
+     * The buffer containing a partial message block.
+     */
+    protected byte[] block;
+    /**
+     * The number of bytes in the partial message block.
+     */
+    protected int blockLength;
+    /**
+     * The number of bytes provided to this engine since it was last reset.
+     */
+    protected long byteCount;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * General constructor.
+     */
+    public SHA1Engine()
+    {
+        super();
+        registers = new int[5];
+        words = new int[16];
+        block = new byte[BLOCK_SIZE];
+        reset();
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Adds a single byte to the data being hashed.
+     *
+     * @param b The byte to add.  Only the lowest eight bits of this value are used.
+     */
+    public void update(int b)
+    {
+        block[blockLength++] = (byte) b;
+        byteCount++;
+        if (blockLength == BLOCK_SIZE)
+        {
+            processBlock(block, 0);
+            blockLength = 0;
+        }
+    }
+
+    /**
+     * Adds the contents of a <code>byte[]</code> to the data being hashed.
+     *
+     * @param data The <code>byte[]</code> containing the data to add.
+     */
+    public void update(byte[] data)
+    {
+        update(data, 0, data.length);
+    }
+
+    /**
+     * Adds a series of bytes to the data being hashed.
+     *
+     * @param data   The <code>byte[]</code> containing the data to add.
+     * @param offset The offset of the first byte to add.
+     * @param length The number of bytes to add.
+     */
+    public void update(byte[] data, int offset, int length)
+    {
+        if ((offset < 0) || (length < 0) || (offset + length > data.length))
+        {
+            throw new IndexOutOfBoundsException(
+                    "Invalid range " + offset + "+" + length + " for array of length " + data.length);
+        }
+        byteCount += length;
+        if (blockLength > 0)
+        {
+            int count = Math.min(BLOCK_SIZE - blockLength, length);
+            System.arraycopy(data, offset, block, blockLength, count);
+            blockLength += count;
+            offset += count;
+            length -= count;
+            if (blockLength < BLOCK_SIZE) return;
+            processBlock(block, 0);
+            blockLength = 0;
+        }
+        while (length >= BLOCK_SIZE)
+        {
+            processBlock(data, offset);
+            offset += BLOCK_SIZE;
+            length -= BLOCK_SIZE;
+        }
+        if (length > 0)
+        {
+            System.arraycopy(data, offset, block, 0, length);
+            blockLength = length;
+        }
+    }
+
+    /**
+     * Adds the remaining contents of the provided {@link ByteBuffer} to the data being hashed.  When this method
+     * returns, the buffer's position will be equal to its limit.  Buffers which are not backed by an array (such as
+     * direct or memory-mapped buffers) are read in place.
+     *
+     * @param buffer The {@link ByteBuffer} containing the data to add.
+     */
+    public void update(ByteBuffer buffer)
+    {
+        if (buffer.hasArray())
+        {
+            update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+            return;
+        }
+        byteCount += buffer.remaining();
+        if (blockLength > 0)
+        {
+            int count = Math.min(BLOCK_SIZE - blockLength, buffer.remaining());
+            buffer.get(block, blockLength, count);
+            blockLength += count;
+            if (blockLength < BLOCK_SIZE) return;
+            processBlock(block, 0);
+            blockLength = 0;
+        }
+        boolean swap = (buffer.order() != ByteOrder.BIG_ENDIAN);
+        int position = buffer.position();
+        int limit = buffer.limit();
+        while (limit - position >= BLOCK_SIZE)
+        {
+            for (int i = 0; i < 16; i++)
+            {
+                int word = buffer.getInt(position);
+                words[i] = swap ? Integer.reverseBytes(word) : word;
+                position += 4;
+            }
+            SHA1.processOnePass(registers, words);
+        }
+        buffer.position(position);
+        blockLength = buffer.remaining();
+        buffer.get(block, 0, blockLength);
+    }
+
+    /**
+     * Completes the hash of all data provided since this {@link SHA1Engine} was created or last reset.  This engine is
+     * reset afterward.
+     *
+     * @return An <code>int[5]</code> containing the SHA-1 hash, with the first byte of the message in offset
+     *         <code>0</code>.
+     */
+    public int[] digest()
+    {
+        int[] ret = new int[5];
+        digest(ret);
+        return ret;
+    }
+
+    /**
+     * Completes the hash of all data provided since this {@link SHA1Engine} was created or last reset, storing it in
+     * the provided array.  This engine is reset afterward.
+     *
+     * @param target The <code>int[]</code> into which the five words of the hash should be written.
+     */
+    public void digest(int[] target)
+    {
+        long bitLength = byteCount * 8;
+        block[blockLength++] = (byte) (0x80);
+        if (blockLength > BLOCK_SIZE - 8)
+        {
+            // pad a whole message block
+            while (blockLength < BLOCK_SIZE) block[blockLength++] = 0;
+            processBlock(block, 0);
+            blockLength = 0;
+        }
+        while (blockLength < BLOCK_SIZE - 8) block[blockLength++] = 0;
+        // incorporate the length counter as a big-endian 64-bit integer
+        for (int i = BLOCK_SIZE - 1; i >= BLOCK_SIZE - 8; i--)
+        {
+            block[i] = (byte) bitLength;
+            bitLength >>>= 8;
+        }
+        processBlock(block, 0);
+        System.arraycopy(registers, 0, target, 0, 5);
+        reset();
+    }
+
+    /**
+     * Discards all of the data provided to this {@link SHA1Engine}, returning it to its initial state.
+     */
+    public void reset()
+    {
+        registers[0] = 0x67452301;
+        registers[1] = 0xEFCDAB89;
+        registers[2] = 0x98BADCFE;
+        registers[3] = 0x10325476;
+        registers[4] = 0xC3D2E1F0;
+        blockLength = 0;
+        byteCount = 0;
+    }
+
+    /**
+     * Retrieves the number of bytes which have been provided to this engine since it was last reset.
+     *
+     * @return The number of bytes hashed thus far.
+     */
+    public long getByteCount()
+    {
+        return byteCount;
+    }
+
+    /**
+     * Processes a single message block.
+     *
+     * @param data   The <code>byte[]</code> containing the message block.
+     * @param offset The offset of the first byte of the message block.
+     */
+    private void processBlock(byte[] data, int offset)
+    {
+        for (int i = 0; i < 16; i++)
+        {
+            words[i] = ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) |
+                       ((data[offset + 2] & 0xFF) << 8) | ((data[offset + 3] & 0xFF));
+            offset += 4;
+        }
+        SHA1.processOnePass(registers, words);
+    }
+}
+
+// END OF FILE
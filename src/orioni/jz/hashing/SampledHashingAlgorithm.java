@@ -0,0 +1,209 @@
+package orioni.jz.hashing;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This {@link HashingAlgorithm} hashes only a sample of its data: the first and last <i>n</i> bytes, where <i>n</i> is
+ * the sample size.  The two samples are concatenated (without overlap) and hashed with an underlying {@link
+ * HashingAlgorithm}.  The result is much cheaper to compute than a hash of the whole data and is useful for quickly
+ * ruling out data which cannot be identical.  If the data is no longer than twice the sample size, the entire data is
+ * sampled and the result is the underlying algorithm's hash of the data.
+ * <p/>
+ * Files are sampled with positional reads and are never read in their entirety.  Streams must be read until they are
+ * exhausted in order to find their final bytes.
+ *
+ * @author Zachary Palmer
+ */
+public class SampledHashingAlgorithm<T> extends HashingAlgorithm<T>
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The {@link HashingAlgorithm} used to hash the samples.
+     */
+    protected HashingAlgorithm<T> algorithm;
+    /**
+     * The number of bytes sampled from each end of the data.
+     */
+    protected int sampleSize;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * General constructor.
+     *
+     * @param algorithm  The {@link HashingAlgorithm} used to hash the samples.
+     * @param sampleSize The number of bytes sampled from each end of the data.
+     * @throws IllegalArgumentException If the sample size is negative.
+     */
+    public SampledHashingAlgorithm(HashingAlgorithm<T> algorithm, int sampleSize)
+            throws IllegalArgumentException
+    {
+        super();
+        if (sampleSize < 0) throw new IllegalArgumentException("Negative sample size: " + sampleSize);
+        this.algorithm = algorithm;
+        this.sampleSize = sampleSize;
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Retrieves the number of bytes sampled from each end of the data.
+     *
+     * @return The sample size.
+     */
+    public int getSampleSize()
+    {
+        return sampleSize;
+    }
+
+    /**
+     * Determines whether or not this algorithm samples the entirety of data of the specified length.
+     *
+     * @param length The length of the data.
+     * @return <code>true</code> if all of the data would be hashed; <code>false</code> otherwise.
+     */
+    public boolean isComplete(long length)
+    {
+        return length <= 2L * sampleSize;
+    }
+
+    /**
+     * Performs this {@link HashingAlgorithm} on a set of input data provided through an {@link InputStream}.
+     *
+     * @param source The {@link InputStream} which will be used as a source for the data.  This {@link InputStream} will
+     *               be read until it is exhausted.
+     * @return The hash of the sampled data.
+     * @throws IOException If an I/O error occurs while retrieving data from the provided stream.
+     */
+    public T hash(InputStream source)
+            throws IOException
+    {
+        byte[] head = new byte[sampleSize];
+        int headLength = 0;
+        int read = 0;
+        while ((headLength < sampleSize) && ((read = source.read(head, headLength, sampleSize - headLength)) != -1))
+        {
+            headLength += read;
+        }
+        // The tail is kept in a ring buffer; tailStart is the offset of its oldest byte.
+        byte[] tail = new byte[sampleSize];
+        int tailStart = 0;
+        long tailLength = 0;
+        byte[] buffer = new byte[65536];
+        while ((read != -1) && ((read = source.read(buffer)) != -1))
+        {
+            for (int offset = Math.max(0, read - sampleSize); offset < read; )
+            {
+                int count = Math.min(read - offset, sampleSize - tailStart);
+                System.arraycopy(buffer, offset, tail, tailStart, count);
+                tailStart = (tailStart + count) % sampleSize;
+                offset += count;
+            }
+            tailLength += read;
+        }
+        int tailCount = (int) Math.min(tailLength, sampleSize);
+        byte[] sample = new byte[headLength + tailCount];
+        System.arraycopy(head, 0, sample, 0, headLength);
+        if (tailCount == sampleSize)
+        {
+            System.arraycopy(tail, tailStart, sample, headLength, sampleSize - tailStart);
+            System.arraycopy(tail, 0, sample, headLength + sampleSize - tailStart, tailStart);
+        } else
+        {
+            System.arraycopy(tail, 0, sample, headLength, tailCount);
+        }
+        return algorithm.hash(sample);
+    }
+
+    /**
+     * Performs this {@link HashingAlgorithm} on a given file.  Only the sampled regions of the file are read.
+     *
+     * @param file The {@link File} used as a source for the data.
+     * @return The hash of the sampled data.
+     * @throws IOException If an I/O error occurs while retrieving data from the file.
+     */
+    public T hash(File file)
+            throws IOException
+    {
+        FileInputStream fis = new FileInputStream(file);
+        try
+        {
+            FileChannel channel = fis.getChannel();
+            long length = channel.size();
+            int headLength = (int) Math.min(length, sampleSize);
+            int tailLength = (int) Math.min(length - headLength, sampleSize);
+            ByteBuffer sample = ByteBuffer.allocate(headLength + tailLength);
+            sample.limit(headLength);
+            readFully(channel, sample, 0);
+            sample.limit(headLength + tailLength);
+            readFully(channel, sample, length - tailLength - headLength);
+            return algorithm.hash(sample.array());
+        } finally
+        {
+            try
+            {
+                fis.close();
+            } catch (IOException e)
+            {
+            }
+        }
+    }
+
+    /**
+     * Converts a hash into a <code>byte[]</code> using the underlying algorithm.
+     *
+     * @param hash The hash to convert.
+     * @return A <code>byte[]</code> representing that hash.
+     * @throws UnsupportedOperationException If the underlying algorithm does not support this operation.
+     */
+    public byte[] toBytes(T hash)
+            throws UnsupportedOperationException
+    {
+        return algorithm.toBytes(hash);
+    }
+
+    /**
+     * Converts a <code>byte[]</code> into a hash using the underlying algorithm.
+     *
+     * @param data The <code>byte[]</code> to convert.
+     * @return The hash represented by that data.
+     * @throws UnsupportedOperationException If the underlying algorithm does not support this operation.
+     * @throws IllegalArgumentException      If the provided data does not represent a hash.
+     */
+    public T fromBytes(byte[] data)
+            throws UnsupportedOperationException, IllegalArgumentException
+    {
+        return algorithm.fromBytes(data);
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+    /**
+     * Fills the remainder of the provided buffer from the channel using positional reads.
+     *
+     * @param channel The {@link FileChannel} from which to read.
+     * @param buffer  The {@link ByteBuffer} to fill up to its limit.
+     * @param skew    The difference between the channel position read and the buffer position written.
+     * @throws IOException If an I/O error occurs or the channel ends before the buffer is filled.
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long skew)
+            throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, buffer.position() + skew) == -1)
+            {
+                throw new EOFException("File was truncated while being sampled.");
+            }
+        }
+    }
+}
+
+// END OF FILE
@@ -0,0 +1,211 @@
+package orioni.jz.hashing;
+
+import java.util.*;
+
+/**
+ * This class represents the result of a {@link TreeHashingAlgorithm}: the hashes of each fixed-size chunk of some data
+ * along with the Merkle root computed from them.  Retaining a {@link TreeHash} allows a later verification of the same
+ * data to rehash only those chunks which are suspected to have changed.
+ * <p/>
+ * Instances of this class are immutable.
+ *
+ * @author Zachary Palmer
+ */
+public class TreeHash<T>
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The size of each chunk, in bytes.  The final chunk may be smaller.
+     */
+    protected int chunkSize;
+    /**
+     * The total length of the hashed data, in bytes.
+     */
+    protected long length;
+    /**
+     * The hashes of each chunk, in order.
+     */
+    protected List<T> chunkHashes;
+    /**
+     * The Merkle root of the chunk hashes.
+     */
+    protected T root;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * General constructor.
+     *
+     * @param chunkSize   The size of each chunk, in bytes.
+     * @param length      The total length of the hashed data, in bytes.
+     * @param chunkHashes The hashes of each chunk, in order.
+     * @param root        The Merkle root of the chunk hashes.
+     * @throws IllegalArgumentException If the number of chunk hashes does not match the number of chunks implied by the
+     *                                  length and chunk size.
+     */
+    public TreeHash(int chunkSize, long length, List<T> chunkHashes, T root)
+            throws IllegalArgumentException
+    {
+        super();
+        if (chunkHashes.size() != getChunkCount(length, chunkSize))
+        {
+            throw new IllegalArgumentException(
+                    chunkHashes.size() + " chunk hashes provided; " + getChunkCount(length, chunkSize) +
+                    " chunks expected.");
+        }
+        this.chunkSize = chunkSize;
+        this.length = length;
+        this.chunkHashes = Collections.unmodifiableList(new ArrayList<T>(chunkHashes));
+        this.root = root;
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Retrieves the size of each chunk.
+     *
+     * @return The size of each chunk, in bytes.  The final chunk may be smaller.
+     */
+    public int getChunkSize()
+    {
+        return chunkSize;
+    }
+
+    /**
+     * Retrieves the length of the hashed data.
+     *
+     * @return The total length of the hashed data, in bytes.
+     */
+    public long getLength()
+    {
+        return length;
+    }
+
+    /**
+     * Retrieves the number of chunks in the hashed data.
+     *
+     * @return The number of chunks.  This is always at least one; empty data is treated as a single empty chunk.
+     */
+    public int getChunkCount()
+    {
+        return chunkHashes.size();
+    }
+
+    /**
+     * Retrieves the offset of the specified chunk.
+     *
+     * @param index The index of the chunk.
+     * @return The offset of the first byte of that chunk.
+     */
+    public long getChunkOffset(int index)
+    {
+        return (long) index * chunkSize;
+    }
+
+    /**
+     * Retrieves the length of the specified chunk.
+     *
+     * @param index The index of the chunk.
+     * @return The number of bytes in that chunk.
+     */
+    public int getChunkLength(int index)
+    {
+        return getChunkLength(length, chunkSize, index);
+    }
+
+    /**
+     * Retrieves the hash of the specified chunk.
+     *
+     * @param index The index of the chunk.
+     * @return The hash of that chunk.
+     */
+    public T getChunkHash(int index)
+    {
+        return chunkHashes.get(index);
+    }
+
+    /**
+     * Retrieves the hashes of all of the chunks.
+     *
+     * @return An unmodifiable {@link List} of the chunk hashes, in order.
+     */
+    public List<T> getChunkHashes()
+    {
+        return chunkHashes;
+    }
+
+    /**
+     * Retrieves the Merkle root of this {@link TreeHash}.
+     *
+     * @return The root hash.
+     */
+    public T getRoot()
+    {
+        return root;
+    }
+
+    /**
+     * Determines which chunks differ between this {@link TreeHash} and another.  Chunks which exist in only one of the
+     * two hashes are considered to differ.  Hashes are compared with {@link Objects#deepEquals(Object, Object)}, so
+     * array-typed hashes are compared by content.
+     *
+     * @param other The {@link TreeHash} to compare against.
+     * @return A {@link SortedSet} containing the indices of the differing chunks.
+     * @throws IllegalArgumentException If the other {@link TreeHash} uses a different chunk size.
+     */
+    public SortedSet<Integer> getDifferingChunks(TreeHash<T> other)
+            throws IllegalArgumentException
+    {
+        if (other.getChunkSize() != chunkSize)
+        {
+            throw new IllegalArgumentException(
+                    "Chunk sizes differ (" + chunkSize + " and " + other.getChunkSize() + ").");
+        }
+        SortedSet<Integer> ret = new TreeSet<Integer>();
+        int count = Math.max(getChunkCount(), other.getChunkCount());
+        for (int i = 0; i < count; i++)
+        {
+            if ((i >= getChunkCount()) || (i >= other.getChunkCount()) ||
+                (getChunkLength(i) != other.getChunkLength(i)) ||
+                (!Objects.deepEquals(getChunkHash(i), other.getChunkHash(i))))
+            {
+                ret.add(i);
+            }
+        }
+        return ret;
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+    /**
+     * Calculates the number of chunks in data of the specified length.
+     *
+     * @param length    The length of the data, in bytes.
+     * @param chunkSize The size of each chunk, in bytes.
+     * @return The number of chunks.  Empty data is considered to have a single empty chunk.
+     */
+    public static int getChunkCount(long length, int chunkSize)
+    {
+        return (int) Math.max(1, (length + chunkSize - 1) / chunkSize);
+    }
+
+    /**
+     * Calculates the length of the specified chunk in data of the specified length.
+     *
+     * @param length    The length of the data, in bytes.
+     * @param chunkSize The size of each chunk, in bytes.
+     * @param index     The index of the chunk.
+     * @return The number of bytes in that chunk.
+     */
+    public static int getChunkLength(long length, int chunkSize, int index)
+    {
+        return (int) Math.max(0, Math.min(chunkSize, length - (long) index * chunkSize));
+    }
+}
+
+// END OF FILE
@@ -0,0 +1,314 @@
+package orioni.jz.hashing;
+
+import orioni.jz.io.SizeLimitedInputStream;
+import orioni.jz.io.files.FileChannelRegionInputStream;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * This {@link HashingAlgorithm} splits its data into fixed-size chunks, hashes each chunk with an underlying {@link
+ * HashingAlgorithm}, and combines the chunk hashes into a Merkle root.  When hashing a {@link File}, the chunks are read
+ * with positional reads and hashed in parallel on a {@link ForkJoinPool}; other sources are hashed sequentially.
+ * <p/>
+ * The leaves of the tree are the plain hashes of each chunk.  Each interior node is the hash of a <code>0x01</code>
+ * byte followed by the byte forms (see {@link HashingAlgorithm#toBytes(Object)}) of its two children; a node without
+ * a sibling is promoted to the next level unchanged.  Data which fits into a single chunk therefore has the same hash
+ * under this algorithm as under the underlying algorithm.  The underlying algorithm must support {@link
+ * HashingAlgorithm#toBytes(Object)}.
+ * <p/>
+ * The {@link TreeHashingAlgorithm#hashTree(File)} method exposes the individual chunk hashes as a {@link TreeHash}.
+ * Given such a {@link TreeHash}, {@link TreeHashingAlgorithm#rehash(File, TreeHash, Collection)} recomputes the tree
+ * while rehashing only the chunks which are known or suspected to have changed.
+ *
+ * @author Zachary Palmer
+ */
+public class TreeHashingAlgorithm<T> extends HashingAlgorithm<T>
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+    /**
+     * The default chunk size, in bytes.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 16777216;
+    /**
+     * The prefix byte used when hashing an interior node of the tree.
+     */
+    private static final byte INTERIOR_NODE_PREFIX = 0x01;
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The {@link HashingAlgorithm} used to hash chunks and interior nodes.
+     */
+    protected HashingAlgorithm<T> algorithm;
+    /**
+     * The size of each chunk, in bytes.
+     */
+    protected int chunkSize;
+    /**
+     * The {@link ForkJoinPool} on which chunks are hashed.
+     */
+    protected ForkJoinPool pool;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * Skeleton constructor.  Uses the default chunk size and the common {@link ForkJoinPool}.
+     *
+     * @param algorithm The {@link HashingAlgorithm} used to hash chunks and interior nodes.
+     */
+    public TreeHashingAlgorithm(HashingAlgorithm<T> algorithm)
+    {
+        this(algorithm, DEFAULT_CHUNK_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * General constructor.
+     *
+     * @param algorithm The {@link HashingAlgorithm} used to hash chunks and interior nodes.
+     * @param chunkSize The size of each chunk, in bytes.
+     * @param pool      The {@link ForkJoinPool} on which chunks are hashed.
+     * @throws IllegalArgumentException If the chunk size is less than one.
+     */
+    public TreeHashingAlgorithm(HashingAlgorithm<T> algorithm, int chunkSize, ForkJoinPool pool)
+            throws IllegalArgumentException
+    {
+        super();
+        if (chunkSize < 1) throw new IllegalArgumentException("Chunk size must be positive (" + chunkSize + ").");
+        this.algorithm = algorithm;
+        this.chunkSize = chunkSize;
+        this.pool = pool;
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Retrieves the size of the chunks hashed by this algorithm.
+     *
+     * @return The chunk size, in bytes.
+     */
+    public int getChunkSize()
+    {
+        return chunkSize;
+    }
+
+    /**
+     * Performs this {@link HashingAlgorithm} on a set of input data provided through an {@link InputStream}.  The
+     * chunks of a stream are hashed sequentially.
+     *
+     * @param source The {@link InputStream} which will be used as a source for the data.  This {@link InputStream} will
+     *               be read until it is exhausted.
+     * @return The Merkle root of the provided data.
+     * @throws IOException If an I/O error occurs while retrieving data from the provided stream.
+     */
+    public T hash(InputStream source)
+            throws IOException
+    {
+        PushbackInputStream pis = new PushbackInputStream(source);
+        List<T> chunkHashes = new ArrayList<T>();
+        while (true)
+        {
+            chunkHashes.add(algorithm.hash(new SizeLimitedInputStream(pis, chunkSize)));
+            int next = pis.read();
+            if (next == -1) break;
+            pis.unread(next);
+        }
+        return combine(chunkHashes);
+    }
+
+    /**
+     * Performs this {@link HashingAlgorithm} on a given file.  The chunks of the file are hashed in parallel.
+     *
+     * @param file The {@link File} used as a source for the data.
+     * @return The Merkle root of the file's contents.
+     * @throws IOException If an I/O error occurs while retrieving data from the file.
+     */
+    public T hash(File file)
+            throws IOException
+    {
+        return hashTree(file).getRoot();
+    }
+
+    /**
+     * Hashes the provided file, retaining the hash of each of its chunks.  The chunks are hashed in parallel.
+     *
+     * @param file The {@link File} to hash.
+     * @return The {@link TreeHash} of the file's contents.
+     * @throws IOException If an I/O error occurs while retrieving data from the file.
+     */
+    public TreeHash<T> hashTree(File file)
+            throws IOException
+    {
+        return rehash(file, null, Collections.<Integer>emptySet());
+    }
+
+    /**
+     * Rehashes the provided file given a previously computed {@link TreeHash} of it.  Chunks are rehashed only if they
+     * are named in the provided collection, if they did not exist in the previous hash, or if their length has changed
+     * (as happens to the final chunk when the file grows or shrinks); the hashes of all other chunks are taken from the
+     * previous hash.  The rehashed chunks are hashed in parallel.
+     *
+     * @param file     The {@link File} to hash.
+     * @param previous The previous {@link TreeHash} of the file, or <code>null</code> to hash every chunk.
+     * @param changed  The indices of the chunks which are known or suspected to have changed.
+     * @return The new {@link TreeHash} of the file's contents.
+     * @throws IOException              If an I/O error occurs while retrieving data from the file.
+     * @throws IllegalArgumentException If the previous hash was computed with a different chunk size.
+     */
+    public TreeHash<T> rehash(File file, TreeHash<T> previous, Collection<Integer> changed)
+            throws IOException, IllegalArgumentException
+    {
+        if ((previous != null) && (previous.getChunkSize() != chunkSize))
+        {
+            throw new IllegalArgumentException(
+                    "Previous hash used chunk size " + previous.getChunkSize() + "; this algorithm uses " + chunkSize +
+                    ".");
+        }
+        FileInputStream fis = new FileInputStream(file);
+        try
+        {
+            final FileChannel channel = fis.getChannel();
+            final long length = channel.size();
+            int count = TreeHash.getChunkCount(length, chunkSize);
+            List<T> chunkHashes = new ArrayList<T>(count);
+            Map<Integer, Future<T>> futures = new HashMap<Integer, Future<T>>();
+            for (int i = 0; i < count; i++)
+            {
+                final int chunkLength = TreeHash.getChunkLength(length, chunkSize, i);
+                if ((previous != null) && (i < previous.getChunkCount()) && (!changed.contains(i)) &&
+                    (previous.getChunkLength(i) == chunkLength))
+                {
+                    chunkHashes.add(previous.getChunkHash(i));
+                } else
+                {
+                    chunkHashes.add(null);
+                    final long offset = (long) i * chunkSize;
+                    futures.put(i, pool.submit(new Callable<T>()
+                    {
+                        public T call()
+                                throws IOException
+                        {
+                            return algorithm.hash(new FileChannelRegionInputStream(channel, offset, chunkLength));
+                        }
+                    }));
+                }
+            }
+            for (Map.Entry<Integer, Future<T>> entry : futures.entrySet())
+            {
+                chunkHashes.set(entry.getKey(), getResult(entry.getValue(), futures.values()));
+            }
+            return new TreeHash<T>(chunkSize, length, chunkHashes, combine(chunkHashes));
+        } finally
+        {
+            try
+            {
+                fis.close();
+            } catch (IOException e)
+            {
+            }
+        }
+    }
+
+    /**
+     * Combines a series of chunk hashes into a Merkle root.
+     *
+     * @param chunkHashes The hashes of each chunk, in order.  At least one hash must be provided.
+     * @return The Merkle root of the provided hashes.
+     */
+    public T combine(List<T> chunkHashes)
+    {
+        List<T> level = chunkHashes;
+        while (level.size() > 1)
+        {
+            List<T> next = new ArrayList<T>((level.size() + 1) / 2);
+            for (int i = 0; i < level.size(); i += 2)
+            {
+                if (i + 1 < level.size())
+                {
+                    byte[] left = algorithm.toBytes(level.get(i));
+                    byte[] right = algorithm.toBytes(level.get(i + 1));
+                    byte[] node = new byte[1 + left.length + right.length];
+                    node[0] = INTERIOR_NODE_PREFIX;
+                    System.arraycopy(left, 0, node, 1, left.length);
+                    System.arraycopy(right, 0, node, 1 + left.length, right.length);
+                    next.add(algorithm.hash(node));
+                } else
+                {
+                    next.add(level.get(i));
+                }
+            }
+            level = next;
+        }
+        return level.get(0);
+    }
+
+    /**
+     * Converts a hash produced by this algorithm into a <code>byte[]</code> using the underlying algorithm.
+     *
+     * @param hash The hash to convert.
+     * @return A <code>byte[]</code> representing that hash.
+     * @throws UnsupportedOperationException If the underlying algorithm does not support this operation.
+     */
+    public byte[] toBytes(T hash)
+            throws UnsupportedOperationException
+    {
+        return algorithm.toBytes(hash);
+    }
+
+    /**
+     * Converts a <code>byte[]</code> into a hash using the underlying algorithm.
+     *
+     * @param data The <code>byte[]</code> to convert.
+     * @return The hash represented by that data.
+     * @throws UnsupportedOperationException If the underlying algorithm does not support this operation.
+     * @throws IllegalArgumentException      If the provided data does not represent a hash.
+     */
+    public T fromBytes(byte[] data)
+            throws UnsupportedOperationException, IllegalArgumentException
+    {
+        return algorithm.fromBytes(data);
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+    /**
+     * Waits for the result of a chunk hashing task.  If the task failed, the remaining tasks are cancelled and the
+     * failure is rethrown.
+     *
+     * @param future The {@link Future} representing the task.
+     * @param all    All of the outstanding tasks.
+     * @return The result of the task.
+     * @throws IOException If the task failed with an {@link IOException} or was interrupted.
+     */
+    private static <T> T getResult(Future<T> future, Collection<Future<T>> all)
+            throws IOException
+    {
+        try
+        {
+            return future.get();
+        } catch (InterruptedException e)
+        {
+            for (Future<T> f : all) f.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while hashing chunks.");
+        } catch (ExecutionException e)
+        {
+            for (Future<T> f : all) f.cancel(true);
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException("Chunk hashing failed.", cause);
+        }
+    }
+}
+
+// END OF FILE
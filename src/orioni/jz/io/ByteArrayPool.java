@@ -0,0 +1,127 @@
+package orioni.jz.io;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class maintains a pool of <code>byte[]</code> buffers of a single size.  It is the heap counterpart of {@link
+ * DirectBufferPool}, intended for stream copying loops which would otherwise allocate a fresh buffer on every call.
+ * Buffers are created on demand; at most a fixed number of released buffers are retained.  The contents of an acquired
+ * buffer are unspecified.
+ * <p/>
+ * This class is threadsafe.
+ *
+ * @author Zachary Palmer
+ */
+public class ByteArrayPool
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+    /**
+     * A pool of 16KB buffers shared by the classes in this package.
+     */
+    public static final ByteArrayPool SHARED = new ByteArrayPool(16384, 32);
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The size of the buffers in this pool.
+     */
+    protected int bufferSize;
+    /**
+     * The maximum number of released buffers which will be retained.
+     */
+    protected int capacity;
+    /**
+     * The released buffers.
+     */
+    protected ConcurrentLinkedQueue<byte[]> buffers;
+    /**
+     * The number of buffers in the queue.
+     */
+    protected AtomicInteger pooled;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * General constructor.
+     *
+     * @param bufferSize The size of the buffers in this pool.
+     * @param capacity   The maximum number of released buffers which will be retained.
+     * @throws IllegalArgumentException If the buffer size is not positive or the capacity is negative.
+     */
+    public ByteArrayPool(int bufferSize, int capacity)
+            throws IllegalArgumentException
+    {
+        super();
+        if (bufferSize < 1) throw new IllegalArgumentException("Invalid buffer size: " + bufferSize);
+        if (capacity < 0) throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        this.bufferSize = bufferSize;
+        this.capacity = capacity;
+        buffers = new ConcurrentLinkedQueue<byte[]>();
+        pooled = new AtomicInteger(0);
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Retrieves the size of the buffers in this pool.
+     *
+     * @return The size of the buffers in this pool.
+     */
+    public int getBufferSize()
+    {
+        return bufferSize;
+    }
+
+    /**
+     * Acquires a buffer from this pool.
+     *
+     * @return A <code>byte[]</code> of this pool's buffer size.
+     */
+    public byte[] acquire()
+    {
+        byte[] ret = buffers.poll();
+        if (ret == null) return new byte[bufferSize];
+        pooled.decrementAndGet();
+        return ret;
+    }
+
+    /**
+     * Acquires a buffer of at least the specified size.  If the size does not exceed this pool's buffer size, the
+     * buffer is taken from this pool; otherwise, a new buffer of exactly the requested size is allocated.  In either
+     * case, the buffer may be passed to {@link #release(byte[])} when it is no longer needed.
+     *
+     * @param size The minimum size of the buffer.
+     * @return A <code>byte[]</code> of at least the specified size.
+     */
+    public byte[] acquire(int size)
+    {
+        return (size <= bufferSize) ? acquire() : new byte[size];
+    }
+
+    /**
+     * Returns a buffer to this pool.  The caller must not use the buffer afterward.  Buffers which are not of this
+     * pool's size are ignored, as are buffers released while the pool is full.
+     *
+     * @param buffer The buffer to release.
+     */
+    public void release(byte[] buffer)
+    {
+        if ((buffer == null) || (buffer.length != bufferSize)) return;
+        if (pooled.incrementAndGet() <= capacity)
+        {
+            buffers.offer(buffer);
+        } else
+        {
+            pooled.decrementAndGet();
+        }
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+}
+
+// END OF FILE
@@ -0,0 +1,542 @@
+package orioni.jz.io;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * This class is a utility that automatically feeds any data in the {@link ReadableByteChannel} provided upon
+ * construction into the {@link WritableByteChannel} provided upon construction.  Like a {@link StreamPump}, this object
+ * starts a new thread when the {@link ChannelPump#start()} method is called which performs the processing of data.
+ * Unlike a {@link StreamPump}, this pump never polls; the pump thread is idle until data is available.  The manner in
+ * which data is moved depends upon the channels involved: <ul> <li>If the source is a {@link FileChannel}, data is sent
+ * using {@link FileChannel#transferTo(long, long, WritableByteChannel)}.  When the target is a {@link FileChannel} or a
+ * socket, this allows the operating system to move the data without copying it into the virtual machine.</li> <li>If
+ * the source is a {@link SelectableChannel} (such as a socket or a pipe), it is placed in non-blocking mode and the
+ * pump thread waits on a {@link Selector} until data is available.  The source is returned to its original mode when
+ * the pump finishes.</li> <li>If the target is a {@link FileChannel} and
+ * the pump closes its channels on completion, data is received using {@link FileChannel#transferFrom
+ * (ReadableByteChannel, long, long)}.  Such a transfer waits for its full length of data and so can only be stopped by
+ * interrupting it.</li> <li>Otherwise, the pump performs blocking reads into a buffer taken from {@link
+ * DirectBufferPool#SHARED}.</li> </ul> The pump thread terminates when the end of the source is reached, when {@link
+ * ChannelPump#stop()} is called, or when either channel throws an exception.  The exception, if any, is available from
+ * {@link ChannelPump#getFailure()}.
+ * <p/>
+ * The transfer of a file channel uses and updates that channel's position.  A pump in either of the last two of the
+ * above modes may be blocked in a read.  If the pump closes its channels on completion, {@link ChannelPump#stop()}
+ * interrupts the pump thread so that it stops at once; as specified by {@link
+ * java.nio.channels.InterruptibleChannel}, this closes the channel on which the thread is blocked.  Otherwise, the pump
+ * thread is not interrupted, so that the caller's channels remain open, and the pump stops once its current read or
+ * transfer completes.
+ *
+ * @author Zachary Palmer
+ */
+public class ChannelPump implements Runnable
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+    /**
+     * The maximum number of bytes moved by a single call to {@link FileChannel#transferTo(long, long,
+     * WritableByteChannel)} or {@link FileChannel#transferFrom(ReadableByteChannel, long, long)}.  Transfers are
+     * limited so that the pump checks for a stop request regularly.
+     */
+    protected static final long TRANSFER_SIZE = 8 * 1024 * 1024;
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The {@link Thread} that is pumping the channel data.
+     */
+    protected Thread thread;
+    /**
+     * The channel from which the pump is drawing information.
+     */
+    protected ReadableByteChannel source;
+    /**
+     * The channel to which the pump is sending read information.
+     */
+    protected WritableByteChannel target;
+    /**
+     * The manner in which this pump moves data.
+     */
+    protected Mode mode;
+    /**
+     * The {@link Selector} on which the pump thread waits for its channels, or <code>null</code> if neither channel is
+     * selectable or the pump is not active.
+     */
+    protected volatile Selector selector;
+    /**
+     * The source channel which the pump thread placed in non-blocking mode and must return to blocking mode when it
+     * finishes, or <code>null</code> if there is no such channel.
+     */
+    protected SelectableChannel unblocked;
+    /**
+     * Whether or not the thread should be operating.
+     */
+    protected volatile boolean pumpOn;
+    /**
+     * Whether or not the participating channels are closed when pumping is complete.
+     */
+    protected boolean closeOnFinish;
+    /**
+     * The exception which terminated the most recent run of the pump, or <code>null</code> if no such exception was
+     * thrown.
+     */
+    protected volatile IOException failure;
+    /**
+     * The lifetime and throughput statistics of this pump.
+     */
+    protected PumpStatistics statistics;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * Skeleton constructor.  Assumes that channels will not be closed upon completion; {@link #stop()} therefore waits
+     * for the current read or transfer to complete.
+     *
+     * @param source The channel from which the pump will draw information.
+     * @param target The channel to which the pump will send information.
+     */
+    public ChannelPump(ReadableByteChannel source, WritableByteChannel target)
+    {
+        this(source, target, false);
+    }
+
+    /**
+     * Skeleton constructor.  The streams are converted to channels; the channels of file streams are used directly so
+     * that their data may be transferred without copying.
+     *
+     * @param is            The {@link InputStream} from which the pump will draw information.
+     * @param os            The {@link OutputStream} to which the pump will send information.
+     * @param closeOnFinish <code>true</code> if this pump should close the streams on completion (and may close them
+     *                      early by interrupting the pump thread when stopped); <code>false</code> if it should not
+     *                      close them at all.
+     */
+    public ChannelPump(InputStream is, OutputStream os, boolean closeOnFinish)
+    {
+        this((is instanceof FileInputStream) ? ((FileInputStream) is).getChannel() : Channels.newChannel(is),
+             (os instanceof FileOutputStream) ? ((FileOutputStream) os).getChannel() : Channels.newChannel(os),
+             closeOnFinish);
+    }
+
+    /**
+     * General constructor.
+     *
+     * @param source        The channel from which the pump will draw information.
+     * @param target        The channel to which the pump will send information.
+     * @param closeOnFinish <code>true</code> if this pump should close the channels on completion (and may close them
+     *                      early by interrupting the pump thread when stopped); <code>false</code> if it should not
+     *                      close them at all.
+     */
+    public ChannelPump(ReadableByteChannel source, WritableByteChannel target, boolean closeOnFinish)
+    {
+        super();
+        this.source = source;
+        this.target = target;
+        this.closeOnFinish = closeOnFinish;
+        if (source instanceof FileChannel)
+        {
+            mode = Mode.TRANSFER_TO;
+        } else if (source instanceof SelectableChannel)
+        {
+            mode = Mode.SELECT;
+        } else if ((target instanceof FileChannel) && (closeOnFinish))
+        {
+            mode = Mode.TRANSFER_FROM;
+        } else
+        {
+            mode = Mode.COPY;
+        }
+        pumpOn = false;
+        selector = null;
+        unblocked = null;
+        failure = null;
+        statistics = new PumpStatistics();
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Activates the pump, starting the thread which reads information from the source channel and sends it to the
+     * target channel.  If the pump is already active, this method does nothing.
+     *
+     * @throws IOException If a {@link Selector} is required and could not be opened.
+     */
+    public synchronized void start()
+            throws IOException
+    {
+        if (!pumpOn)
+        {
+            // The selector is opened here so that a stop request cannot miss it.
+            if ((source instanceof SelectableChannel) || (target instanceof SelectableChannel))
+            {
+                selector = Selector.open();
+            }
+            failure = null;
+            statistics.recordStart();
+            pumpOn = true;
+            thread = new Thread(this);
+            thread.start();
+        }
+    }
+
+    /**
+     * Shuts down the pump, sending a signal to the pump thread to halt execution.  If the pump is not active, this
+     * method does nothing.  This method will block until the pump has halted.
+     * <p/>
+     * A pump which waits on a {@link Selector} is woken and stops immediately.  Otherwise, if this pump closes its
+     * channels on completion, the pump thread is interrupted; a thread blocked on an interruptible channel is released
+     * by that channel being closed.  If this pump does not close its channels, the thread is never interrupted and the
+     * channels are left open; the pump stops after the read or transfer in progress completes, which for a blocking
+     * source may not be until data arrives or the source ends.
+     */
+    public synchronized void stop()
+    {
+        if (pumpOn)
+        {
+            pumpOn = false;
+            Selector s = selector;
+            if (s != null) s.wakeup();
+            // Interrupting a thread blocked on an interruptible channel closes the channel
+            if ((closeOnFinish) && ((mode == Mode.TRANSFER_FROM) || (mode == Mode.COPY))) thread.interrupt();
+            try
+            {
+                thread.join();
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Waits for the pump to complete execution.  If the pump is stopped, this method immediately returns.
+     */
+    public void join()
+    {
+        Thread t;
+        synchronized (this)
+        {
+            t = thread;
+        }
+        if (t != null)
+        {
+            try
+            {
+                t.join();
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Determines whether or not this pump is active.
+     *
+     * @return <code>true</code> if the pump thread is running; <code>false</code> otherwise.
+     */
+    public boolean isRunning()
+    {
+        return pumpOn;
+    }
+
+    /**
+     * Retrieves the manner in which this pump moves data.
+     *
+     * @return The {@link Mode} of this pump.
+     */
+    public Mode getMode()
+    {
+        return mode;
+    }
+
+    /**
+     * Retrieves the exception which terminated the pump.
+     *
+     * @return The exception which terminated the most recent run of this pump, or <code>null</code> if the pump is
+     *         running or stopped without error.
+     */
+    public IOException getFailure()
+    {
+        return failure;
+    }
+
+    /**
+     * Retrieves the statistics for this pump.  The statistics describe the current run of the pump or, if the pump is
+     * not active, the most recent run.
+     *
+     * @return The {@link PumpStatistics} for this pump.
+     */
+    public PumpStatistics getStatistics()
+    {
+        return statistics;
+    }
+
+// NON-STATIC METHODS : RUNNABLE IMPLEMENTATION //////////////////////////////////
+
+    /**
+     * Performs the data pumping.
+     */
+    public void run()
+    {
+        try
+        {
+            switch (mode)
+            {
+                case TRANSFER_TO:
+                    transferTo((FileChannel) source);
+                    break;
+                case TRANSFER_FROM:
+                    transferFrom((FileChannel) target);
+                    break;
+                default:
+                    copy();
+                    break;
+            }
+        } catch (IOException ioe)
+        {
+            // A stop request may close the source of an interruptible pump; that is not a failure.
+            if (pumpOn) failure = ioe;
+        } finally
+        {
+            Selector s = selector;
+            selector = null;
+            // Closing the selector deregisters the source, which must be done before its blocking mode can be restored
+            if (s != null) close(s);
+            if (unblocked != null)
+            {
+                try
+                {
+                    unblocked.configureBlocking(true);
+                } catch (IOException e)
+                {
+                    // The source has been closed
+                }
+                unblocked = null;
+            }
+            if (closeOnFinish)
+            {
+                close(source);
+                close(target);
+            }
+            statistics.recordFinish();
+            pumpOn = false;
+        }
+    }
+
+    /**
+     * Pumps data from a file channel using {@link FileChannel#transferTo(long, long, WritableByteChannel)}.
+     *
+     * @param file The source channel.
+     * @throws IOException If an I/O error occurs.
+     */
+    protected void transferTo(FileChannel file)
+            throws IOException
+    {
+        long position = file.position();
+        while (pumpOn)
+        {
+            long count = file.transferTo(position, TRANSFER_SIZE, target);
+            if (count > 0)
+            {
+                position += count;
+                file.position(position);
+                statistics.recordTransfer(count);
+            } else
+            {
+                if (position >= file.size()) break;
+                // The target is non-blocking and full.
+                awaitWritable();
+            }
+        }
+    }
+
+    /**
+     * Pumps data into a file channel using {@link FileChannel#transferFrom(ReadableByteChannel, long, long)}.  The
+     * source is known not to be selectable and is therefore a blocking channel; a transfer of zero bytes indicates the
+     * end of its data.
+     *
+     * @param file The target channel.
+     * @throws IOException If an I/O error occurs.
+     */
+    protected void transferFrom(FileChannel file)
+            throws IOException
+    {
+        long position = file.position();
+        while (pumpOn)
+        {
+            long count = file.transferFrom(source, position, TRANSFER_SIZE);
+            if (count <= 0) break;
+            position += count;
+            file.position(position);
+            statistics.recordTransfer(count);
+        }
+    }
+
+    /**
+     * Pumps data through an intermediate buffer.  If the source is selectable, it is placed in non-blocking mode and
+     * the pump thread waits on the selector whenever no data is available.  A source which was in blocking mode is
+     * returned to it when the pump finishes.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    protected void copy()
+            throws IOException
+    {
+        SelectableChannel selectable = null;
+        if (mode == Mode.SELECT)
+        {
+            selectable = (SelectableChannel) source;
+            if (selectable.isBlocking())
+            {
+                selectable.configureBlocking(false);
+                unblocked = selectable;
+            }
+        }
+        ByteBuffer buffer = DirectBufferPool.SHARED.acquire();
+        try
+        {
+            while (pumpOn)
+            {
+                buffer.clear();
+                int count = source.read(buffer);
+                if (count == -1) break;
+                if (count == 0)
+                {
+                    if (selectable != null) await(selectable, SelectionKey.OP_READ);
+                    continue;
+                }
+                buffer.flip();
+                while (buffer.hasRemaining())
+                {
+                    if ((target.write(buffer) == 0) && (!awaitWritable())) return;
+                }
+                statistics.recordTransfer(count);
+            }
+        } finally
+        {
+            DirectBufferPool.SHARED.release(buffer);
+        }
+    }
+
+    /**
+     * Waits until the target channel can accept more data.  If the target is a non-blocking {@link
+     * SelectableChannel}, the pump thread waits on the selector; otherwise, it yields.
+     *
+     * @return <code>true</code> if the pump should continue; <code>false</code> if it has been stopped.
+     * @throws IOException If an I/O error occurs.
+     */
+    protected boolean awaitWritable()
+            throws IOException
+    {
+        if ((target instanceof SelectableChannel) && (!((SelectableChannel) target).isBlocking()))
+        {
+            await((SelectableChannel) target, SelectionKey.OP_WRITE);
+        } else
+        {
+            Thread.yield();
+        }
+        return pumpOn;
+    }
+
+    /**
+     * Waits until the provided channel is ready for the specified operation or the pump is stopped.
+     *
+     * @param channel   The non-blocking channel on which to wait.
+     * @param operation The {@link SelectionKey} operation for which to wait.
+     * @throws IOException If an I/O error occurs.
+     */
+    protected void await(SelectableChannel channel, int operation)
+            throws IOException
+    {
+        Selector s = selector;
+        if (s == null) return;
+        SelectionKey key = channel.keyFor(s);
+        if (key == null)
+        {
+            key = channel.register(s, operation);
+        } else
+        {
+            key.interestOps(operation);
+        }
+        s.select();
+        s.selectedKeys().clear();
+        if (key.isValid()) key.interestOps(0);
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+    /**
+     * Closes a channel, ignoring any exception that results.
+     *
+     * @param channel The channel to close.
+     */
+    private static void close(Channel channel)
+    {
+        try
+        {
+            channel.close();
+        } catch (IOException e)
+        {
+        }
+    }
+
+    /**
+     * Closes a selector, ignoring any exception that results.
+     *
+     * @param s The selector to close.
+     */
+    private static void close(Selector s)
+    {
+        try
+        {
+            s.close();
+        } catch (IOException e)
+        {
+        }
+    }
+
+// CONTAINED CLASSES /////////////////////////////////////////////////////////////
+
+    /**
+     * This enumeration describes the manner in which a {@link ChannelPump} moves data.
+     *
+     * @author Zachary Palmer
+     */
+    public static enum Mode
+    {
+        /**
+         * Data is sent from a file channel using {@link FileChannel#transferTo(long, long, WritableByteChannel)}.
+         */
+        TRANSFER_TO,
+        /**
+         * Data is received into a file channel using {@link FileChannel#transferFrom(ReadableByteChannel, long,
+         * long)}.  This mode is only used by pumps which close their channels on completion.
+         */
+        TRANSFER_FROM,
+        /**
+         * Data is read from a non-blocking channel whenever a {@link Selector} indicates that it is available.
+         */
+        SELECT,
+        /**
+         * Data is read from a blocking channel into a buffer.
+         */
+        COPY
+    }
+}
+
+// END OF FILE
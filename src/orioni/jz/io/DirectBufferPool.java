@@ -0,0 +1,118 @@
+package orioni.jz.io;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class maintains a pool of direct {@link ByteBuffer}s of a single size.  Direct buffers are expensive to allocate
+ * and are reclaimed only when garbage collected, so objects which need a direct buffer for a short time should
+ * acquire one from a pool and release it when they are finished.  Buffers are created on demand; at most a fixed
+ * number of released buffers are retained.
+ * <p/>
+ * This class is threadsafe.
+ *
+ * @author Zachary Palmer
+ */
+public class DirectBufferPool
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+    /**
+     * A pool of 64KB buffers shared by the classes in this package.
+     */
+    public static final DirectBufferPool SHARED = new DirectBufferPool(65536, 32);
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The size of the buffers in this pool.
+     */
+    protected int bufferSize;
+    /**
+     * The maximum number of released buffers which will be retained.
+     */
+    protected int capacity;
+    /**
+     * The released buffers.
+     */
+    protected ConcurrentLinkedQueue<ByteBuffer> buffers;
+    /**
+     * The number of buffers in the queue.
+     */
+    protected AtomicInteger pooled;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * General constructor.
+     *
+     * @param bufferSize The size of the buffers in this pool.
+     * @param capacity   The maximum number of released buffers which will be retained.
+     * @throws IllegalArgumentException If the buffer size is not positive or the capacity is negative.
+     */
+    public DirectBufferPool(int bufferSize, int capacity)
+            throws IllegalArgumentException
+    {
+        super();
+        if (bufferSize < 1) throw new IllegalArgumentException("Invalid buffer size: " + bufferSize);
+        if (capacity < 0) throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        this.bufferSize = bufferSize;
+        this.capacity = capacity;
+        buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+        pooled = new AtomicInteger(0);
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Retrieves the size of the buffers in this pool.
+     *
+     * @return The size of the buffers in this pool.
+     */
+    public int getBufferSize()
+    {
+        return bufferSize;
+    }
+
+    /**
+     * Acquires a buffer from this pool.  The buffer is cleared and is in big-endian order.
+     *
+     * @return A direct {@link ByteBuffer} of this pool's buffer size.
+     */
+    public ByteBuffer acquire()
+    {
+        ByteBuffer ret = buffers.poll();
+        if (ret == null) return ByteBuffer.allocateDirect(bufferSize);
+        pooled.decrementAndGet();
+        ret.clear();
+        ret.order(ByteOrder.BIG_ENDIAN);
+        return ret;
+    }
+
+    /**
+     * Returns a buffer to this pool.  The caller must not use the buffer afterward.  Buffers which did not come from a
+     * pool of this size are ignored, as are buffers released while the pool is full.
+     *
+     * @param buffer The buffer to release.
+     */
+    public void release(ByteBuffer buffer)
+    {
+        if ((buffer == null) || (!buffer.isDirect()) || (buffer.capacity() != bufferSize)) return;
+        if (pooled.incrementAndGet() <= capacity)
+        {
+            buffers.offer(buffer);
+        } else
+        {
+            pooled.decrementAndGet();
+        }
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+}
+
+// END OF FILE
@@ -1,7 +1,13 @@
 package orioni.jz.io;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This {@link OutputStream} implementation takes a number of {@link OutputStream}s as its targets.  The data which is
@@ -12,6 +18,19 @@ import java.io.OutputStream;
  * <code>C</code>.  If data is written to this stream, all three streams receive a write call.  If <code>B</code> throws
  * an {@link IOException} on write, <code>C</code> never has data written to it but <code>A</code> has.  This makes the
  * ordering of the {@link OutputStream}s provided to the constructor significant.
+ * <p/>
+ * If a queue depth is specified on construction, this stream is asynchronous.  Data written to it is collected into
+ * shared buffers; each full buffer is queued for every target, and each target has a writer thread which writes the
+ * buffers in its queue to that target.  A buffer is returned to a pool once every target has written it, so data is
+ * copied only once regardless of the number of targets.  Each target receives the data in the order in which it was
+ * written, and is only ever used by its own writer thread.  The targets of an asynchronous stream must therefore be
+ * distinct.  {@link #flush()} queues any partial buffer and waits until the targets have written and flushed all of
+ * the data written before it; {@link #close()} does the same and then closes the targets.
+ * <p/>
+ * A full queue normally makes the writing thread wait.  The {@link TargetPolicy} of an asynchronous stream determines
+ * what happens when a target's queue remains full for longer than the stream's slow-target timeout or a target fails.
+ * Each target's lag (the number of bytes queued for it but not yet written) is available from {@link
+ * #getLag(int)}.
  *
  * @author Zachary Palmer
  */
@@ -23,22 +42,143 @@ public class ForkingOutputStream extends OutputStream
 
 // NON-STATIC FIELDS /////////////////////////////////////////////////////////////
 
+    /**
+     * The default size of the shared buffers of an asynchronous stream.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 65536;
+    /**
+     * The default number of milliseconds for which a target's queue may remain full before the target is considered to
+     * have fallen behind.
+     */
+    public static final long DEFAULT_SLOW_TARGET_TIMEOUT = 10000;
+
     /**
      * The {@link OutputStream}s over which this {@link ForkingOutputStream} should fork its calls.
      */
     protected OutputStream[] streams;
+    /**
+     * The number of bytes written to this stream by the synchronous write methods.
+     */
+    protected long written;
+
+    /**
+     * The policy for slow and failed targets.
+     */
+    protected TargetPolicy policy;
+    /**
+     * The number of milliseconds for which a target's queue may remain full before the target has fallen behind.
+     */
+    protected long slowTargetTimeout;
+    /**
+     * The writer threads, in the same order as the targets, or <code>null</code> if this stream is synchronous.
+     */
+    protected TargetWriter[] writers;
+    /**
+     * The pool from which shared buffers are drawn, or <code>null</code> if this stream is synchronous.
+     */
+    protected ByteArrayPool bufferPool;
+    /**
+     * The buffer currently collecting written data, or <code>null</code> if this stream is synchronous or closed.
+     */
+    protected byte[] buffer;
+    /**
+     * The number of bytes in the current buffer.
+     */
+    protected int bufferUsed;
+    /**
+     * The failure which has caused this stream to fail, or <code>null</code> if it has not failed.
+     */
+    protected volatile IOException failure;
+    /**
+     * Whether or not all targets have been told to discard their queued data.
+     */
+    protected volatile boolean aborted;
 
 // CONSTRUCTORS //////////////////////////////////////////////////////////////////
 
     /**
-     * General constructor.
+     * Skeleton constructor.  Creates a synchronous stream.
      *
      * @param streams The target {@link OutputStream}s to use.
      */
     public ForkingOutputStream(OutputStream... streams)
+    {
+        this(0, TargetPolicy.BLOCK, streams);
+    }
+
+    /**
+     * Skeleton constructor.  Uses the default buffer size.
+     *
+     * @param queueDepth The number of buffers which may be queued for each target, or <code>0</code> if this stream
+     *                   should write synchronously.
+     * @param policy     The policy for slow and failed targets.  This is ignored if the stream is synchronous.
+     * @param streams    The target {@link OutputStream}s to use.
+     * @throws IllegalArgumentException If the queue depth is negative.
+     */
+    public ForkingOutputStream(int queueDepth, TargetPolicy policy, OutputStream... streams)
+            throws IllegalArgumentException
+    {
+        this(queueDepth, DEFAULT_BUFFER_SIZE, policy, streams);
+    }
+
+    /**
+     * Skeleton constructor.  Uses the default slow-target timeout.
+     *
+     * @param queueDepth The number of buffers which may be queued for each target, or <code>0</code> if this stream
+     *                   should write synchronously.
+     * @param bufferSize The size of the shared buffers.  This is ignored if the stream is synchronous.
+     * @param policy     The policy for slow and failed targets.  This is ignored if the stream is synchronous.
+     * @param streams    The target {@link OutputStream}s to use.
+     * @throws IllegalArgumentException If the queue depth is negative or the buffer size is not positive.
+     */
+    public ForkingOutputStream(int queueDepth, int bufferSize, TargetPolicy policy, OutputStream... streams)
+            throws IllegalArgumentException
+    {
+        this(queueDepth, bufferSize, policy, DEFAULT_SLOW_TARGET_TIMEOUT, streams);
+    }
+
+    /**
+     * General constructor.
+     *
+     * @param queueDepth        The number of buffers which may be queued for each target, or <code>0</code> if this
+     *                          stream should write synchronously.
+     * @param bufferSize        The size of the shared buffers.  This is ignored if the stream is synchronous.
+     * @param policy            The policy for slow and failed targets.  This is ignored if the stream is synchronous.
+     * @param slowTargetTimeout The number of milliseconds for which the writing thread waits on a target's full queue
+     *                          before the target is considered to have fallen behind.  This is ignored if the stream
+     *                          is synchronous or the policy is {@link TargetPolicy#BLOCK}.
+     * @param streams           The target {@link OutputStream}s to use.
+     * @throws IllegalArgumentException If the queue depth or the timeout is negative or the buffer size is not
+     *                                  positive.
+     */
+    public ForkingOutputStream(int queueDepth, int bufferSize, TargetPolicy policy, long slowTargetTimeout,
+                               OutputStream... streams)
+            throws IllegalArgumentException
     {
         super();
+        if (queueDepth < 0) throw new IllegalArgumentException("Invalid queue depth: " + queueDepth);
+        if (slowTargetTimeout < 0) throw new IllegalArgumentException("Invalid timeout: " + slowTargetTimeout);
         this.streams = streams;
+        this.policy = policy;
+        this.slowTargetTimeout = slowTargetTimeout;
+        written = 0;
+        failure = null;
+        aborted = false;
+        if (queueDepth > 0)
+        {
+            // Every queue may be full while each writer holds one more buffer and the caller fills another
+            bufferPool = new ByteArrayPool(bufferSize, streams.length * (queueDepth + 1) + 1);
+            buffer = bufferPool.acquire();
+            bufferUsed = 0;
+            writers = new TargetWriter[streams.length];
+            for (int i = 0; i < streams.length; i++) writers[i] = new TargetWriter(i, queueDepth);
+            for (TargetWriter writer : writers) writer.start();
+        } else
+        {
+            bufferPool = null;
+            buffer = null;
+            writers = null;
+        }
     }
 
 // NON-STATIC METHODS ////////////////////////////////////////////////////////////
@@ -55,21 +195,36 @@ public class ForkingOutputStream extends OutputStream
     public void write(int b)
             throws IOException
     {
+        if (writers != null)
+        {
+            write(new byte[]{(byte) b}, 0, 1);
+            return;
+        }
         for (OutputStream o : streams)
         {
             o.write(b);
         }
+        written++;
     }
 
     /**
      * Closes the underlying output streams in order.  If an I/O error occurs while closing a given stream, any streams
      * which were specified after it are left in an indeterminate state.
+     * <p/>
+     * If this stream is asynchronous, each target is closed by its writer thread once it has written its queued data,
+     * and this method waits for the writers to finish (except those of dropped targets).  Every target is closed even
+     * if some fail.
      *
      * @throws IOException if an I/O error occurs.
      */
     public void close()
             throws IOException
     {
+        if (writers != null)
+        {
+            closeAsynchronous();
+            return;
+        }
         flush();
         for (OutputStream o : streams)
         {
@@ -86,6 +241,18 @@ public class ForkingOutputStream extends OutputStream
     public void flush()
             throws IOException
     {
+        if (writers != null)
+        {
+            checkOpen();
+            publish();
+            for (TargetWriter writer : writers)
+            {
+                if (!writer.dropped) writer.submit(new Command(null, CommandType.FLUSH));
+            }
+            for (TargetWriter writer : writers) writer.drain();
+            checkOpen();
+            return;
+        }
         for (OutputStream o : streams)
         {
             o.flush();
@@ -103,10 +270,16 @@ public class ForkingOutputStream extends OutputStream
     public void write(byte[] b)
             throws IOException
     {
+        if (writers != null)
+        {
+            write(b, 0, b.length);
+            return;
+        }
         for (OutputStream o : streams)
         {
             o.write(b);
         }
+        written += b.length;
     }
 
     /**
@@ -124,14 +297,590 @@ public class ForkingOutputStream extends OutputStream
     public void write(byte[] b, int off, int len)
             throws IOException
     {
+        if (writers != null)
+        {
+            checkOpen();
+            while (len > 0)
+            {
+                int size = Math.min(len, buffer.length - bufferUsed);
+                System.arraycopy(b, off, buffer, bufferUsed, size);
+                bufferUsed += size;
+                off += size;
+                len -= size;
+                if (bufferUsed == buffer.length) publish();
+            }
+            return;
+        }
         for (OutputStream o : streams)
         {
             o.write(b, off, len);
         }
+        written += len;
+    }
+
+    /**
+     * Retrieves the number of targets.
+     *
+     * @return The number of targets of this stream.
+     */
+    public int getTargetCount()
+    {
+        return streams.length;
+    }
+
+    /**
+     * Retrieves the lag of a target.
+     *
+     * @param index The index of the target.
+     * @return The number of bytes which have been queued for the target but not yet written to it.  This is always
+     *         <code>0</code> for a synchronous stream.
+     */
+    public long getLag(int index)
+    {
+        return (writers == null) ? 0 : writers[index].queued.get();
+    }
+
+    /**
+     * Retrieves the number of bytes written to a target.
+     *
+     * @param index The index of the target.
+     * @return The number of bytes which have been written to the target.  For a synchronous stream, this is the number
+     *         of bytes which have been written to every target.
+     */
+    public long getBytesWritten(int index)
+    {
+        return (writers == null) ? written : writers[index].written.get();
+    }
+
+    /**
+     * Determines whether or not a target has been dropped.
+     *
+     * @param index The index of the target.
+     * @return <code>true</code> if the target no longer receives data; <code>false</code> otherwise.
+     */
+    public boolean isDropped(int index)
+    {
+        return (writers != null) && (writers[index].dropped);
+    }
+
+    /**
+     * Retrieves the failure of a target.
+     *
+     * @param index The index of the target.
+     * @return The exception thrown by the target or the reason it was dropped, or <code>null</code> if the target has
+     *         not failed.  This is always <code>null</code> for a synchronous stream.
+     */
+    public IOException getFailure(int index)
+    {
+        return (writers == null) ? null : writers[index].failure;
+    }
+
+    /**
+     * Queues the current buffer for every target which has not been dropped.  If the buffer is empty, nothing happens.
+     *
+     * @throws IOException If a target's queue remains full for the slow-target timeout and the policy is {@link
+     *                     TargetPolicy#FAIL}, if every target has been dropped, or if the calling thread is
+     *                     interrupted.
+     */
+    protected void publish()
+            throws IOException
+    {
+        if (bufferUsed == 0) return;
+        int active = 0;
+        for (TargetWriter writer : writers) if (!writer.dropped) active++;
+        if (active == 0) fail(new IOException("Every target has been dropped."));
+        checkOpen();
+
+        SharedBuffer shared = new SharedBuffer(buffer, bufferUsed, active);
+        buffer = bufferPool.acquire();
+        bufferUsed = 0;
+        for (TargetWriter writer : writers)
+        {
+            if (writer.dropped)
+            {
+                // The target was dropped after the references were counted
+                shared.release();
+                continue;
+            }
+            Command command = new Command(shared, CommandType.WRITE);
+            if (policy == TargetPolicy.BLOCK)
+            {
+                writer.submit(command);
+            } else if (!writer.offer(command, slowTargetTimeout))
+            {
+                shared.release();
+                IOException e = new IOException("Target " + writer.index + " fell behind.");
+                if (policy == TargetPolicy.DROP)
+                {
+                    writer.drop(e);
+                } else
+                {
+                    fail(e);
+                }
+            }
+        }
+        checkOpen();
+    }
+
+    /**
+     * Closes an asynchronous stream.
+     *
+     * @throws IOException If this stream has failed or an I/O error occurs while closing a target.
+     */
+    protected void closeAsynchronous()
+            throws IOException
+    {
+        if (buffer == null) return;
+        IOException ret = null;
+        try
+        {
+            flush();
+        } catch (IOException e)
+        {
+            ret = e;
+        }
+        buffer = null;
+        for (TargetWriter writer : writers)
+        {
+            // A dropped target may be stuck in a write; it is not waited for
+            if ((writer.dropped) && (!writer.offer(new Command(null, CommandType.CLOSE))))
+            {
+                writer.interrupt();
+            } else if (!writer.dropped)
+            {
+                writer.submit(new Command(null, CommandType.CLOSE));
+            }
+        }
+        for (TargetWriter writer : writers)
+        {
+            if (writer.dropped) continue;
+            try
+            {
+                writer.join();
+            } catch (InterruptedException e)
+            {
+                throw new InterruptedIOException("Interrupted while closing targets.");
+            }
+        }
+        if (ret == null) ret = failure;
+        if (ret != null) throw ret;
+    }
+
+    /**
+     * Causes this stream to fail.  Only the first failure is kept.  If the policy is {@link TargetPolicy#FAIL}, every
+     * target discards its queued data.
+     *
+     * @param e The failure.
+     */
+    protected void fail(IOException e)
+    {
+        synchronized (this)
+        {
+            if (failure == null) failure = e;
+        }
+        if (policy == TargetPolicy.FAIL) aborted = true;
+    }
+
+    /**
+     * Ensures that this stream is open and has not failed.
+     *
+     * @throws IOException If this stream is closed or has failed.
+     */
+    protected void checkOpen()
+            throws IOException
+    {
+        IOException e = failure;
+        if (e != null) throw e;
+        if (buffer == null) throw new IOException("Stream closed.");
     }
 
 // STATIC METHODS ////////////////////////////////////////////////////////////////
 
+// CONTAINED CLASSES /////////////////////////////////////////////////////////////
+
+    /**
+     * This enumeration describes how an asynchronous {@link ForkingOutputStream} handles targets which fall behind or
+     * fail.
+     *
+     * @author Zachary Palmer
+     */
+    public static enum TargetPolicy
+    {
+        /**
+         * A target whose queue is full blocks the writing thread for as long as it takes to catch up.  If a target
+         * fails, this stream fails: the failure is thrown by the next call, and the other targets still write
+         * everything queued before the failure and are closed normally.
+         */
+        BLOCK,
+        /**
+         * A target whose queue remains full for the slow-target timeout or which fails is dropped: it receives no
+         * further data and the other targets continue.  This stream only fails once every target has been dropped.
+         */
+        DROP,
+        /**
+         * A target whose queue remains full for the slow-target timeout or which fails causes this stream to fail, and
+         * every target discards the data queued for it.
+         */
+        FAIL
+    }
+
+    /**
+     * The kinds of {@link Command}s sent to a writer thread.
+     *
+     * @author Zachary Palmer
+     */
+    protected static enum CommandType
+    {
+        /**
+         * The command's buffer is written to the target.
+         */
+        WRITE,
+        /**
+         * The target is flushed.
+         */
+        FLUSH,
+        /**
+         * The target is closed and the writer thread stops.
+         */
+        CLOSE
+    }
+
+    /**
+     * A command queued for a writer thread.
+     *
+     * @author Zachary Palmer
+     */
+    protected static class Command
+    {
+        /**
+         * The buffer to write, or <code>null</code> if this command does not write.
+         */
+        protected SharedBuffer buffer;
+        /**
+         * The type of this command.
+         */
+        protected CommandType type;
+
+        /**
+         * General constructor.
+         *
+         * @param buffer The buffer to write, or <code>null</code> if this command does not write.
+         * @param type   The type of this command.
+         */
+        public Command(SharedBuffer buffer, CommandType type)
+        {
+            super();
+            this.buffer = buffer;
+            this.type = type;
+        }
+    }
+
+    /**
+     * A buffer of written data shared by the queues of several targets.  The buffer is returned to the pool once every
+     * target has released it.
+     *
+     * @author Zachary Palmer
+     */
+    protected class SharedBuffer
+    {
+        /**
+         * The buffer containing the data.
+         */
+        protected byte[] data;
+        /**
+         * The number of bytes of data in the buffer.
+         */
+        protected int length;
+        /**
+         * The number of targets which have not yet released the buffer.
+         */
+        protected AtomicInteger references;
+
+        /**
+         * General constructor.
+         *
+         * @param data       The buffer containing the data.
+         * @param length     The number of bytes of data in the buffer.
+         * @param references The number of targets which will release the buffer.
+         */
+        public SharedBuffer(byte[] data, int length, int references)
+        {
+            super();
+            this.data = data;
+            this.length = length;
+            this.references = new AtomicInteger(references);
+        }
+
+        /**
+         * Releases this buffer on behalf of one target.
+         */
+        public void release()
+        {
+            if (references.decrementAndGet() == 0) bufferPool.release(data);
+        }
+    }
+
+    /**
+     * This thread executes the commands queued for a single target.
+     *
+     * @author Zachary Palmer
+     */
+    protected class TargetWriter extends Thread
+    {
+        /**
+         * The index of the target.
+         */
+        protected int index;
+        /**
+         * The target.
+         */
+        protected OutputStream target;
+        /**
+         * The queue of commands.
+         */
+        protected BlockingQueue<Command> queue;
+        /**
+         * The number of commands which have been submitted but not yet executed.  Guarded by this object.
+         */
+        protected int pending;
+        /**
+         * The number of bytes which have been queued but not yet written.
+         */
+        protected AtomicLong queued;
+        /**
+         * The number of bytes which have been written to the target.
+         */
+        protected AtomicLong written;
+        /**
+         * Whether or not the target has been dropped.
+         */
+        protected volatile boolean dropped;
+        /**
+         * The failure of the target, or <code>null</code> if it has not failed.
+         */
+        protected volatile IOException failure;
+
+        /**
+         * General constructor.
+         *
+         * @param index      The index of the target.
+         * @param queueDepth The number of buffers which may be queued.
+         */
+        public TargetWriter(int index, int queueDepth)
+        {
+            super(ForkingOutputStream.this.toString() + " Writer " + index);
+            setDaemon(true);
+            this.index = index;
+            target = streams[index];
+            queue = new ArrayBlockingQueue<Command>(queueDepth);
+            pending = 0;
+            queued = new AtomicLong(0);
+            written = new AtomicLong(0);
+            dropped = false;
+            failure = null;
+        }
+
+        /**
+         * Executes commands until the target is closed.
+         */
+        public void run()
+        {
+            boolean closed = false;
+            try
+            {
+                while (!closed)
+                {
+                    Command command = queue.take();
+                    try
+                    {
+                        boolean skip = (failure != null) || (aborted);
+                        switch (command.type)
+                        {
+                            case WRITE:
+                                if (!skip)
+                                {
+                                    target.write(command.buffer.data, 0, command.buffer.length);
+                                    written.addAndGet(command.buffer.length);
+                                }
+                                break;
+                            case FLUSH:
+                                if (!skip) target.flush();
+                                break;
+                            case CLOSE:
+                                closed = true;
+                                target.close();
+                                break;
+                        }
+                    } catch (IOException e)
+                    {
+                        targetFailed(e);
+                    } finally
+                    {
+                        finish(command);
+                    }
+                }
+            } catch (InterruptedException e)
+            {
+                // The target was dropped and could not be told to close
+                try
+                {
+                    target.close();
+                } catch (IOException ioe)
+                {
+                }
+            }
+        }
+
+        /**
+         * Records a failure of the target and applies the stream's policy.
+         *
+         * @param e The failure.
+         */
+        protected void targetFailed(IOException e)
+        {
+            if (failure == null) failure = e;
+            if (policy == TargetPolicy.DROP)
+            {
+                dropped = true;
+            } else
+            {
+                fail(e);
+            }
+        }
+
+        /**
+         * Drops the target.
+         *
+         * @param e The reason the target was dropped.
+         */
+        public void drop(IOException e)
+        {
+            if (failure == null) failure = e;
+            dropped = true;
+        }
+
+        /**
+         * Completes a command, releasing its buffer.
+         *
+         * @param command The command.
+         */
+        protected void finish(Command command)
+        {
+            if (command.buffer != null)
+            {
+                queued.addAndGet(-command.buffer.length);
+                command.buffer.release();
+            }
+            synchronized (this)
+            {
+                pending--;
+                notifyAll();
+            }
+        }
+
+        /**
+         * Queues a command, waiting for space in the queue if necessary.
+         *
+         * @param command The command.
+         * @throws IOException If the calling thread is interrupted while waiting.
+         */
+        public void submit(Command command)
+                throws IOException
+        {
+            added(command);
+            try
+            {
+                queue.put(command);
+            } catch (InterruptedException e)
+            {
+                removed(command);
+                throw new InterruptedIOException("Interrupted while queueing data.");
+            }
+        }
+
+        /**
+         * Queues a command if there is space in the queue.
+         *
+         * @param command The command.
+         * @return <code>true</code> if the command was queued; <code>false</code> if the queue was full.
+         */
+        public boolean offer(Command command)
+        {
+            added(command);
+            if (queue.offer(command)) return true;
+            removed(command);
+            return false;
+        }
+
+        /**
+         * Queues a command, waiting a limited time for space in the queue if necessary.
+         *
+         * @param command The command.
+         * @param timeout The number of milliseconds to wait for space in the queue.
+         * @return <code>true</code> if the command was queued; <code>false</code> if the queue remained full.
+         * @throws IOException If the calling thread is interrupted while waiting.
+         */
+        public boolean offer(Command command, long timeout)
+                throws IOException
+        {
+            added(command);
+            try
+            {
+                if (queue.offer(command, timeout, TimeUnit.MILLISECONDS)) return true;
+            } catch (InterruptedException e)
+            {
+                removed(command);
+                throw new InterruptedIOException("Interrupted while queueing data.");
+            }
+            removed(command);
+            return false;
+        }
+
+        /**
+         * Records that a command is about to be queued.
+         *
+         * @param command The command.
+         */
+        protected void added(Command command)
+        {
+            if (command.buffer != null) queued.addAndGet(command.buffer.length);
+            synchronized (this)
+            {
+                pending++;
+            }
+        }
+
+        /**
+         * Records that a command could not be queued.
+         *
+         * @param command The command.
+         */
+        protected void removed(Command command)
+        {
+            if (command.buffer != null) queued.addAndGet(-command.buffer.length);
+            synchronized (this)
+            {
+                pending--;
+            }
+        }
+
+        /**
+         * Waits until every submitted command has been executed.  Dropped targets are not waited for.
+         *
+         * @throws IOException If the calling thread is interrupted while waiting.
+         */
+        public synchronized void drain()
+                throws IOException
+        {
+            try
+            {
+                while ((pending > 0) && (!dropped)) wait();
+            } catch (InterruptedException e)
+            {
+                throw new InterruptedIOException("Interrupted while waiting for data to be written.");
+            }
+        }
+    }
 }
 
 // END OF FILE
\ No newline at end of file
@@ -1,10 +1,13 @@
 package orioni.jz.io;
 
-import orioni.jz.util.Utilities;
+import orioni.jz.hashing.HashingEngine;
 
 import java.io.*;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.Random;
 
 /**
@@ -18,6 +21,12 @@ public class IOUtilities
 
 // CONSTANTS /////////////////////////////////////////////////////////////////////
 
+    /**
+     * The largest array which {@link #readStreamContents(InputStream)} will attempt to allocate.  Some virtual machines
+     * reserve header words in an array, so arrays of exactly {@link Integer#MAX_VALUE} elements cannot be created.
+     */
+    private static final int MAXIMUM_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
 // NON-STATIC FIELDS /////////////////////////////////////////////////////////////
 
 // CONSTRUCTORS //////////////////////////////////////////////////////////////////
@@ -46,17 +55,79 @@ public class IOUtilities
     public static boolean compareStreams(InputStream a, InputStream b)
             throws IOException
     {
-        byte[] bufferA = new byte[16384];
-        byte[] bufferB = new byte[16384];
-        int readA = a.read(bufferA);
-        int readB = b.read(bufferB);
-        while ((readA == readB) && (readA != -1))
+        return findMismatch(a, b) == -1;
+    }
+
+    /**
+     * Finds the first difference between the contents of two streams.  The streams are read in equal blocks, so the
+     * result does not depend upon how many bytes each stream returns from a single read.
+     *
+     * @param a The first stream to compare.
+     * @param b The second stream to compare.
+     * @return The offset of the first byte which differs between the streams, or <code>-1</code> if the streams'
+     *         contents are equal.  If one stream's contents are a prefix of the other's, the length of the shorter
+     *         stream is returned.
+     * @throws IOException If an I/O error occurs while reading from the streams.
+     */
+    public static long findMismatch(InputStream a, InputStream b)
+            throws IOException
+    {
+        byte[] bufferA = ByteArrayPool.SHARED.acquire();
+        byte[] bufferB = ByteArrayPool.SHARED.acquire();
+        try
+        {
+            long offset = 0;
+            while (true)
+            {
+                int readA = fill(a, bufferA);
+                int readB = fill(b, bufferB);
+                int common = Math.min(readA, readB);
+                int index = findMismatch(ByteBuffer.wrap(bufferA, 0, common), ByteBuffer.wrap(bufferB, 0, common));
+                if (index != -1) return offset + index;
+                if (readA != readB) return offset + common;
+                if (readA < bufferA.length) return -1;
+                offset += readA;
+            }
+        } finally
         {
-            if (!Utilities.deepEquals(bufferA, bufferB)) return false;
-            readA = a.read(bufferA);
-            readB = b.read(bufferB);
+            ByteArrayPool.SHARED.release(bufferA);
+            ByteArrayPool.SHARED.release(bufferB);
         }
-        return (readA == -1) && (readB == -1);
+    }
+
+    /**
+     * Finds the first difference between the remaining contents of two buffers.  The positions of the buffers are not
+     * changed.
+     *
+     * @param a The first buffer to compare.
+     * @param b The second buffer to compare.  This buffer must have the same number of bytes remaining as the first.
+     * @return The index, relative to the buffers' positions, of the first byte which differs between the buffers, or
+     *         <code>-1</code> if the remaining contents are equal.
+     * @throws IllegalArgumentException If the buffers do not have the same number of bytes remaining.
+     */
+    public static int findMismatch(ByteBuffer a, ByteBuffer b)
+            throws IllegalArgumentException
+    {
+        int length = a.remaining();
+        if (b.remaining() != length)
+        {
+            throw new IllegalArgumentException("Buffers of " + length + " and " + b.remaining() + " bytes compared.");
+        }
+        // The virtual machine compares whole buffers much faster than this method can; the slower search below is
+        // only needed once a difference is known to exist.
+        if (a.equals(b)) return -1;
+        int positionA = a.position();
+        int positionB = b.position();
+        int index = 0;
+        while ((index <= length - 8) && (a.getLong(positionA + index) == b.getLong(positionB + index)))
+        {
+            index += 8;
+        }
+        while (a.get(positionA + index) == b.get(positionB + index))
+        {
+            index++;
+        }
+        return index;
     }
 
     /**
@@ -141,7 +212,9 @@ public class IOUtilities
     }
 
     /**
-     * Exhausts the provided stream, returning all of the data read from it.
+     * Exhausts the provided stream, returning all of the data read from it.  The array is sized in advance from the
+     * remaining length of a {@link FileInputStream}'s channel or from {@link InputStream#available()}; if that estimate
+     * is correct, the data is read directly into the returned array and never copied.
      *
      * @param stream The {@link InputStream} from which to read the data.
      * @return The <code>byte[]</code> containing the data which was read.
@@ -150,9 +223,34 @@ public class IOUtilities
     public static byte[] readStreamContents(InputStream stream)
             throws IOException
     {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        pumpStream(stream, baos);
-        return baos.toByteArray();
+        long estimate = 0;
+        if (stream.getClass() == FileInputStream.class)
+        {
+            FileChannel channel = ((FileInputStream) stream).getChannel();
+            estimate = channel.size() - channel.position();
+        }
+        if (estimate <= 0) estimate = stream.available();
+        byte[] data = new byte[(int) Math.min(Math.max(estimate, 8192), MAXIMUM_ARRAY_SIZE)];
+        int count = 0;
+        while (true)
+        {
+            if (count == data.length)
+            {
+                // Check for the end of the stream before growing so that a correctly sized array is returned as-is.
+                int b = stream.read();
+                if (b == -1) return data;
+                if (data.length == MAXIMUM_ARRAY_SIZE)
+                {
+                    throw new OutOfMemoryError("Stream contents exceed the maximum array size.");
+                }
+                data = Arrays.copyOf(data, (int) Math.min(data.length * 2L, MAXIMUM_ARRAY_SIZE));
+                data[count++] = (byte) b;
+            }
+            int read = stream.read(data, count, data.length - count);
+            if (read == -1) break;
+            count += read;
+        }
+        return (count == data.length) ? data : Arrays.copyOf(data, count);
     }
 
     /**
@@ -191,6 +289,11 @@ public class IOUtilities
     /**
      * Reads all of the data from the provided {@link InputStream}, writing it to the provided {@link OutputStream}.
      * This operation will continue until the {@link InputStream} is exhausted or an {@link IOException} is thrown.
+     * <p/>
+     * If the streams are a {@link FileInputStream} and a {@link FileOutputStream}, the data is moved with {@link
+     * FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, allowing the operating system to copy
+     * it without passing it through the virtual machine.  Otherwise, a buffer from {@link ByteArrayPool#SHARED} is used
+     * if it is large enough.
      *
      * @param is            The {@link InputStream} containing data.
      * @param os            The {@link OutputStream} to receive the data.
@@ -207,24 +310,27 @@ public class IOUtilities
     public static long pumpStream(InputStream is, OutputStream os, int bufferSize, Long maxBytes, boolean closeOnFinish)
             throws IOException
     {
-        byte[] buffer = new byte[bufferSize];
+        long limit = (maxBytes == null) ? Long.MAX_VALUE : maxBytes;
         long totalPumped = 0;
-        int read;
-        // Branch here instead of inside of the loop for sake of efficiency
-        if (maxBytes == null)
+        // Subclasses may override the read and write methods, so only the exact classes are transferred directly
+        if ((is.getClass() == FileInputStream.class) && (os.getClass() == FileOutputStream.class))
         {
-            while ((read = is.read(buffer)) != -1)
-            {
-                os.write(buffer, 0, read);
-                totalPumped += read;
-            }
-        } else
+            totalPumped = transferFile(((FileInputStream) is).getChannel(), ((FileOutputStream) os).getChannel(), limit);
+        }
+        // The rest of the data is copied; for a file, this picks up anything appended since its size was checked
+        byte[] buffer = ByteArrayPool.SHARED.acquire(bufferSize);
+        try
         {
-            while ((read = is.read(buffer, 0, (int) (Math.min(buffer.length, maxBytes - totalPumped)))) != -1)
+            int read;
+            while ((totalPumped < limit) &&
+                   ((read = is.read(buffer, 0, (int) Math.min(bufferSize, limit - totalPumped))) != -1))
             {
                 os.write(buffer, 0, read);
                 totalPumped += read;
             }
+        } finally
+        {
+            ByteArrayPool.SHARED.release(buffer);
         }
         if (closeOnFinish)
         {
@@ -244,6 +350,85 @@ public class IOUtilities
         return totalPumped;
     }
 
+    /**
+     * Reads all of the data from the provided {@link InputStream}, writing it to the provided {@link OutputStream} and
+     * hashing it with the provided {@link HashingEngine}.  This allows the integrity of the transfer to be verified
+     * without reading the data a second time.  This operation will continue until the {@link InputStream} is exhausted
+     * or an {@link IOException} is thrown.
+     *
+     * @param is     The {@link InputStream} containing data.
+     * @param os     The {@link OutputStream} to receive the data.
+     * @param engine The {@link HashingEngine} with which to hash the data.  Any data previously provided to the engine
+     *               is included in the hash.
+     * @return The hash of the data pumped.
+     * @throws IOException If an I/O error occurs during the operation.
+     */
+    public static <T> T pumpStream(InputStream is, OutputStream os, HashingEngine<T> engine)
+            throws IOException
+    {
+        return pumpStream(is, os, 16384, engine);
+    }
+
+    /**
+     * Reads all of the data from the provided {@link InputStream}, writing it to the provided {@link OutputStream} and
+     * hashing it with the provided {@link HashingEngine}.  This allows the integrity of the transfer to be verified
+     * without reading the data a second time.  This operation will continue until the {@link InputStream} is exhausted
+     * or an {@link IOException} is thrown.
+     *
+     * @param is         The {@link InputStream} containing data.
+     * @param os         The {@link OutputStream} to receive the data.
+     * @param bufferSize The size of the buffer to use when pumping the stream.
+     * @param engine     The {@link HashingEngine} with which to hash the data.  Any data previously provided to the
+     *                   engine is included in the hash.
+     * @return The hash of the data pumped.
+     * @throws IOException If an I/O error occurs during the operation.
+     */
+    public static <T> T pumpStream(InputStream is, OutputStream os, int bufferSize, HashingEngine<T> engine)
+            throws IOException
+    {
+        byte[] buffer = ByteArrayPool.SHARED.acquire(bufferSize);
+        try
+        {
+            int read;
+            while ((read = is.read(buffer, 0, bufferSize)) != -1)
+            {
+                os.write(buffer, 0, read);
+                engine.update(buffer, 0, read);
+            }
+        } finally
+        {
+            ByteArrayPool.SHARED.release(buffer);
+        }
+        return engine.digest();
+    }
+
+    /**
+     * Transfers the remaining contents of one file channel to another using {@link FileChannel#transferTo(long, long,
+     * java.nio.channels.WritableByteChannel)}.  The amount of data transferred is determined by the size of the source
+     * when this method is called.  The position of the source channel is advanced past the transferred data.
+     *
+     * @param source The channel from which to read.
+     * @param target The channel to which to write.
+     * @param limit  The maximum number of bytes to transfer.
+     * @return The number of bytes transferred.
+     * @throws IOException If an I/O error occurs during the operation.
+     */
+    private static long transferFile(FileChannel source, FileChannel target, long limit)
+            throws IOException
+    {
+        long start = source.position();
+        long end = start + Math.min(limit, Math.max(source.size() - start, 0));
+        long position = start;
+        while (position < end)
+        {
+            long count = source.transferTo(position, end - position, target);
+            if (count <= 0) break;
+            position += count;
+        }
+        source.position(position);
+        return position - start;
+    }
+
     /**
      * Pumps a stream as per {@link IOUtilities#pumpStream(java.io.InputStream, java.io.OutputStream)} but does not
      * block.  A new thread is created which performs the pumping operation.  If an I/O error occurs while reading or
@@ -314,6 +499,27 @@ public class IOUtilities
         }.start();
     }
 
+    /**
+     * Reads data from the provided {@link InputStream} until the provided array is filled or the stream is exhausted.
+     *
+     * @param is   The {@link InputStream} from which to read.
+     * @param data The array into which data should be read.
+     * @return The number of bytes read, which is less than the length of the array only if the stream was exhausted.
+     * @throws IOException If the {@link InputStream} throws an {@link IOException} during reading.
+     */
+    private static int fill(InputStream is, byte[] data)
+            throws IOException
+    {
+        int offset = 0;
+        while (offset < data.length)
+        {
+            int read = is.read(data, offset, data.length - offset);
+            if (read == -1) break;
+            offset += read;
+        }
+        return offset;
+    }
+
     /**
      * Reads data from the provided {@link InputStream} until the provided array is filled or the stream is exhausted.
      *
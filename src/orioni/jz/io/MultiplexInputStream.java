@@ -127,7 +127,7 @@ public abstract class MultiplexInputStream extends InputStream
             {
                 cleanUpStream(currentSource);
                 currentSource = null;
-                if (!ensureSource()) return totalRead;
+                if (!ensureSource()) return (totalRead == 0) ? -1 : totalRead;
             } else
             {
                 len -= read;
@@ -1,9 +1,14 @@
 package orioni.jz.io;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
  * This extension of <code>MultiplexInputStream</code> allows a user to draw data from several interleaved input sources
@@ -18,6 +23,12 @@ import java.util.HashSet;
  * <p/>
  * Note that, on specification of a stream during construction, a single stream can be specified multiple times to
  * change the pattern with which the streams are used.
+ * <p/>
+ * The data ends with the first block which is shorter than the block size, as written by {@link
+ * MultiplexInterleavingOutputStream}.  By default, blocks are read from the sources on the caller's thread as they are
+ * needed.  If a read-ahead depth is specified on construction, each unique source is given a reader thread which reads
+ * up to that many blocks ahead of the caller, so that the sources are read in parallel.  The reader threads are
+ * started on construction; closing this stream stops them and closes the sources.
  *
  * @author Zachary Palmer
  */
@@ -41,18 +52,60 @@ public class MultiplexInterleavingInputStream extends MultiplexInputStream
      * The block size of the reads for this stream.
      */
     protected int blockSize;
+    /**
+     * The index of the source which provides the next block.
+     */
+    protected int sourceIndex;
+    /**
+     * Whether or not a short block has been provided, ending the data.
+     */
+    protected boolean exhausted;
+
+    /**
+     * The reader threads, keyed by source, or <code>null</code> if this stream reads synchronously.
+     */
+    protected Map<InputStream, SourceReader> readers;
+    /**
+     * The pool from which block buffers are drawn, or <code>null</code> if this stream reads synchronously.
+     */
+    protected ByteArrayPool blockPool;
+    /**
+     * The buffer backing the stream most recently provided by {@link #getMoreStreams()}, or <code>null</code> if there
+     * is no such buffer.
+     */
+    protected byte[] currentBlock;
+    /**
+     * The failure reported by a reader thread, or <code>null</code> if no reader has failed.
+     */
+    protected IOException failure;
 
 // CONSTRUCTORS //////////////////////////////////////////////////////////////////
 
     /**
-     * General constructor.
+     * Skeleton constructor.  Creates a stream which reads synchronously.
      *
      * @param sources    The <code>InputStream</code>s from which data will be read in an interleaving fashion.
      * @param blockSize The number of bytes to read from a given stream before moving to the next one.
      */
     public MultiplexInterleavingInputStream(InputStream[] sources, int blockSize)
+    {
+        this(sources, blockSize, 0);
+    }
+
+    /**
+     * General constructor.
+     *
+     * @param sources   The <code>InputStream</code>s from which data will be read in an interleaving fashion.
+     * @param blockSize The number of bytes to read from a given stream before moving to the next one.
+     * @param readAhead The number of blocks which each source may read ahead of the caller, or <code>0</code> if this
+     *                  stream should read synchronously.
+     * @throws IllegalArgumentException If the read-ahead depth is negative.
+     */
+    public MultiplexInterleavingInputStream(InputStream[] sources, int blockSize, int readAhead)
+            throws IllegalArgumentException
     {
         super();
+        if (readAhead < 0) throw new IllegalArgumentException("Invalid read-ahead: " + readAhead);
         this.blockSize = blockSize;
         this.sources = sources;
         HashSet<InputStream> set = new HashSet<InputStream>();
@@ -62,6 +115,27 @@ public class MultiplexInterleavingInputStream extends MultiplexInputStream
         }
 
         uniqueSources = set.toArray(new InputStream[0]);
+        sourceIndex = 0;
+        exhausted = false;
+        currentBlock = null;
+        failure = null;
+
+        if (readAhead > 0)
+        {
+            // Each reader may hold its queue and the block it is reading; the caller holds one more
+            blockPool = new ByteArrayPool(blockSize, uniqueSources.length * (readAhead + 1) + 1);
+            readers = new HashMap<InputStream, SourceReader>();
+            for (InputStream source : uniqueSources)
+            {
+                SourceReader reader = new SourceReader(source, readAhead);
+                readers.put(source, reader);
+                reader.start();
+            }
+        } else
+        {
+            blockPool = null;
+            readers = null;
+        }
     }
 
 // NON-STATIC METHODS ////////////////////////////////////////////////////////////
@@ -74,9 +148,34 @@ public class MultiplexInterleavingInputStream extends MultiplexInputStream
     public void close()
             throws IOException
     {
+        super.close();
+        exhausted = true;
+        if (readers != null)
+        {
+            for (SourceReader reader : readers.values()) reader.interrupt();
+        }
         for (final InputStream source : uniqueSources) source.close();
     }
 
+    /**
+     * Cleans up a stream provided by {@link #getMoreStreams()}.  The underlying source is not closed, as it provides
+     * later blocks; if the stream ended before a full block was read, the data is exhausted.
+     *
+     * @param stream The input stream to clean up.
+     */
+    public void cleanUpStream(InputStream stream)
+    {
+        if ((stream instanceof SizeLimitedInputStream) && (((SizeLimitedInputStream) stream).left > 0))
+        {
+            exhausted = true;
+        }
+        if (currentBlock != null)
+        {
+            blockPool.release(currentBlock);
+            currentBlock = null;
+        }
+    }
+
     /**
      * Returns an array of unique references to the data sources that were provided on construction.  Note that, if a
      * single source was provided twice upon construction, it will only appear once here.
@@ -103,16 +202,151 @@ public class MultiplexInterleavingInputStream extends MultiplexInputStream
     public InputStream[] getMoreStreams()
             throws IOException
     {
-        ArrayList<InputStream> ret = new ArrayList<InputStream>();
-        for (InputStream is : sources)
+        if (failure != null) throw failure;
+        if (exhausted) return null;
+        InputStream source = sources[sourceIndex];
+        sourceIndex = (sourceIndex + 1) % sources.length;
+        if (readers == null) return new InputStream[]{new SizeLimitedInputStream(source, blockSize)};
+
+        Block block = readers.get(source).take();
+        if (block.failure != null)
+        {
+            failure = block.failure;
+            throw failure;
+        }
+        if (block.length < blockSize) exhausted = true;
+        if (block.length == 0)
         {
-            ret.add(new SizeLimitedInputStream(is, blockSize));
+            blockPool.release(block.data);
+            return null;
         }
-        return ret.toArray(new InputStream[0]);
+        currentBlock = block.data;
+        return new InputStream[]{new ByteArrayInputStream(block.data, 0, block.length)};
     }
 
 // STATIC METHODS ////////////////////////////////////////////////////////////////
 
+// CONTAINED CLASSES /////////////////////////////////////////////////////////////
+
+    /**
+     * Represents a block of data read by a reader thread.
+     *
+     * @author Zachary Palmer
+     */
+    protected static class Block
+    {
+        /**
+         * The buffer containing the data.
+         */
+        protected byte[] data;
+        /**
+         * The number of bytes of data in the buffer.  This is less than the block size only for the last block.
+         */
+        protected int length;
+        /**
+         * The failure which occurred while reading this block, or <code>null</code> if the read succeeded.
+         */
+        protected IOException failure;
+
+        /**
+         * General constructor.
+         *
+         * @param data    The buffer containing the data.
+         * @param length  The number of bytes of data in the buffer.
+         * @param failure The failure which occurred while reading this block, or <code>null</code> if the read
+         *                succeeded.
+         */
+        public Block(byte[] data, int length, IOException failure)
+        {
+            super();
+            this.data = data;
+            this.length = length;
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * This thread reads blocks from a single source ahead of the stream's caller.  It stops after reading a short
+     * block or failing.
+     *
+     * @author Zachary Palmer
+     */
+    protected class SourceReader extends Thread
+    {
+        /**
+         * The source from which blocks are read.
+         */
+        protected InputStream source;
+        /**
+         * The queue of blocks which have been read.
+         */
+        protected BlockingQueue<Block> queue;
+
+        /**
+         * General constructor.
+         *
+         * @param source    The source from which blocks are read.
+         * @param readAhead The number of blocks which may be queued.
+         */
+        public SourceReader(InputStream source, int readAhead)
+        {
+            super(MultiplexInterleavingInputStream.this.toString() + " Reader");
+            setDaemon(true);
+            this.source = source;
+            queue = new ArrayBlockingQueue<Block>(readAhead);
+        }
+
+        /**
+         * Reads blocks until the source is exhausted or fails.
+         */
+        public void run()
+        {
+            try
+            {
+                while (true)
+                {
+                    byte[] data = blockPool.acquire();
+                    int length = 0;
+                    IOException failure = null;
+                    try
+                    {
+                        int read = 0;
+                        while ((length < blockSize) && (read != -1))
+                        {
+                            read = source.read(data, length, blockSize - length);
+                            if (read > 0) length += read;
+                        }
+                    } catch (IOException e)
+                    {
+                        failure = e;
+                    }
+                    queue.put(new Block(data, length, failure));
+                    if ((failure != null) || (length < blockSize)) return;
+                }
+            } catch (InterruptedException e)
+            {
+                // The stream has been closed
+            }
+        }
+
+        /**
+         * Retrieves the next block from this reader, waiting for it to be read if necessary.
+         *
+         * @return The next block.
+         * @throws IOException If the calling thread is interrupted while waiting.
+         */
+        public Block take()
+                throws IOException
+        {
+            try
+            {
+                return queue.take();
+            } catch (InterruptedException e)
+            {
+                throw new InterruptedIOException("Interrupted while waiting for a block.");
+            }
+        }
+    }
 }
 
 // END OF FILE //
\ No newline at end of file
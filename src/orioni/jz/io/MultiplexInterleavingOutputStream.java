@@ -3,8 +3,13 @@ package orioni.jz.io;
 import orioni.jz.util.Pair;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
  * This extension of the <code>MultiplexOutputStream</code> allows the user to interleave output to multiple output
@@ -14,6 +19,14 @@ import java.util.HashSet;
  * all targets have receieved one block, the process starts anew. <P> Note that, on construction, the same
  * <code>OutputStream</code> can be specified multiple times as a target within the target array.  The array is still
  * processed in order and the target in question receives proportionally more data.
+ * <p/>
+ * By default, each block is written to its target on the caller's thread, so writing to several targets is no faster
+ * than writing to one.  If a queue depth is specified on construction, this stream is asynchronous: each unique target
+ * is given a writer thread with a queue of up to that many blocks, and data written to this stream is collected into
+ * blocks which are handed to the writers as they fill.  The blocks for each target are written in order.  A call to
+ * {@link #flush()} hands any partial block to its writer, waits for every writer to finish its queue, and then flushes
+ * the targets; {@link #close()} does the same before stopping the writers and closing the targets.  If a writer fails,
+ * the failure is thrown by the next write, flush, or close.
  *
  * @author Zachary Palmer
  */
@@ -47,16 +60,54 @@ public class MultiplexInterleavingOutputStream extends MultiplexOutputStream
      */
     protected int blockIndex;
 
+    /**
+     * The writer threads, keyed by target, or <code>null</code> if this stream is synchronous.
+     */
+    protected Map<OutputStream, TargetWriter> writers;
+    /**
+     * The pool from which block buffers are drawn, or <code>null</code> if this stream is synchronous.
+     */
+    protected ByteArrayPool blockPool;
+    /**
+     * The buffer collecting data for the current target, or <code>null</code> if this stream is synchronous.
+     */
+    protected byte[] block;
+    /**
+     * The number of bytes in the block buffer which have not yet been handed to a writer.
+     */
+    protected int blockUsed;
+    /**
+     * The first failure reported by a writer thread, or <code>null</code> if no writer has failed.
+     */
+    protected volatile IOException failure;
+
 // CONSTRUCTORS //////////////////////////////////////////////////////////////////
 
     /**
-     * General constructor.
+     * Skeleton constructor.  Creates a synchronous stream.
      *
      * @param targets    The <code>OutputStream[]</code> containing all targets for writing by this stream.
      * @param blockSize The size of a block of data to write to a target before moving to the next target.
      */
     public MultiplexInterleavingOutputStream(OutputStream[] targets, int blockSize)
     {
+        this(targets, blockSize, 0);
+    }
+
+    /**
+     * General constructor.
+     *
+     * @param targets    The <code>OutputStream[]</code> containing all targets for writing by this stream.
+     * @param blockSize  The size of a block of data to write to a target before moving to the next target.
+     * @param queueDepth The number of blocks which may be queued for each target, or <code>0</code> if this stream
+     *                   should write synchronously.
+     * @throws IllegalArgumentException If the queue depth is negative.
+     */
+    public MultiplexInterleavingOutputStream(OutputStream[] targets, int blockSize, int queueDepth)
+            throws IllegalArgumentException
+    {
+        super();
+        if (queueDepth < 0) throw new IllegalArgumentException("Invalid queue depth: " + queueDepth);
         this.targets = targets;
         this.blockSize = blockSize;
         blockIndex = 0;
@@ -68,6 +119,27 @@ public class MultiplexInterleavingOutputStream extends MultiplexOutputStream
             set.add(target);
         }
         uniqueTargets = set.toArray(new OutputStream[0]);
+
+        failure = null;
+        if (queueDepth > 0)
+        {
+            // Each writer may hold its queue, the block it is writing, and the block being filled
+            blockPool = new ByteArrayPool(blockSize, uniqueTargets.length * (queueDepth + 1) + 1);
+            block = blockPool.acquire();
+            blockUsed = 0;
+            writers = new HashMap<OutputStream, TargetWriter>();
+            for (OutputStream target : uniqueTargets)
+            {
+                TargetWriter writer = new TargetWriter(target, queueDepth);
+                writers.put(target, writer);
+                writer.start();
+            }
+        } else
+        {
+            writers = null;
+            blockPool = null;
+            block = null;
+        }
     }
 
 // NON-STATIC METHODS ////////////////////////////////////////////////////////////
@@ -100,15 +172,112 @@ public class MultiplexInterleavingOutputStream extends MultiplexOutputStream
     }
 
     /**
-     * This method closes all of the underlying target streams that this stream is using.
+     * Writes <code>len</code> bytes from the specified byte array starting at offset <code>off</code> to this output
+     * stream.  If this stream is asynchronous, the data is collected into blocks for the writer threads.
+     *
+     * @param b   the data.
+     * @param off the start offset in the data.
+     * @param len the number of bytes to write.
+     * @throws IOException If an I/O error occurs, or if a writer thread has failed.
+     */
+    public void write(byte[] b, int off, int len)
+            throws IOException
+    {
+        if (writers == null)
+        {
+            super.write(b, off, len);
+            return;
+        }
+        checkFailure();
+        if (block == null) throw new IOException("Stream closed.");
+        while (len > 0)
+        {
+            int size = Math.min(len, blockSize - blockIndex);
+            System.arraycopy(b, off, block, blockUsed, size);
+            blockUsed += size;
+            blockIndex += size;
+            off += size;
+            len -= size;
+            if (blockIndex == blockSize)
+            {
+                submitBlock();
+                blockIndex = 0;
+                targetIndex++;
+                if (targetIndex >= targets.length) targetIndex = 0;
+            }
+        }
+    }
+
+    /**
+     * Flushes this stream.  If this stream is asynchronous, any partial block is handed to its writer and this method
+     * waits until every writer has written its queued blocks.  The targets are then flushed.
      *
-     * @throws IOException If closing one of the output targets throws an I/O exception.
+     * @throws IOException If an I/O error occurs while flushing a target, or if a writer thread has failed.
+     */
+    public void flush()
+            throws IOException
+    {
+        if (writers != null)
+        {
+            checkFailure();
+            if (block == null) throw new IOException("Stream closed.");
+            submitBlock();
+            for (TargetWriter writer : writers.values()) writer.drain();
+            checkFailure();
+        }
+        for (final OutputStream target : uniqueTargets) target.flush();
+    }
+
+    /**
+     * This method closes all of the underlying target streams that this stream is using.  If this stream is
+     * asynchronous, its writer threads are stopped once their queues have been written.
+     *
+     * @throws IOException If closing one of the output targets throws an I/O exception, or if a writer thread has
+     *                     failed.
      */
     public void close()
             throws IOException
     {
-        flush();
-        for (final OutputStream target : uniqueTargets) target.close();
+        if ((writers != null) && (block == null)) return;
+        try
+        {
+            flush();
+        } finally
+        {
+            if (writers != null)
+            {
+                for (TargetWriter writer : writers.values()) writer.finish();
+                block = null;
+            }
+            for (final OutputStream target : uniqueTargets) target.close();
+        }
+    }
+
+    /**
+     * Hands the unwritten contents of the block buffer to the writer for the current target.  If the buffer is empty,
+     * nothing happens.
+     *
+     * @throws IOException If this thread is interrupted while waiting for space in the writer's queue.
+     */
+    protected void submitBlock()
+            throws IOException
+    {
+        if (blockUsed == 0) return;
+        writers.get(targets[targetIndex]).submit(new Block(block, blockUsed));
+        block = blockPool.acquire();
+        blockUsed = 0;
+    }
+
+    /**
+     * Throws the first failure reported by a writer thread, if any.
+     *
+     * @throws IOException If a writer thread has failed.
+     */
+    protected void checkFailure()
+            throws IOException
+    {
+        IOException e = failure;
+        if (e != null) throw e;
     }
 
     /**
@@ -125,6 +294,172 @@ public class MultiplexInterleavingOutputStream extends MultiplexOutputStream
 
 // STATIC METHODS ////////////////////////////////////////////////////////////////
 
+// CONTAINED CLASSES /////////////////////////////////////////////////////////////
+
+    /**
+     * Represents a block of data queued for a writer thread.
+     *
+     * @author Zachary Palmer
+     */
+    protected static class Block
+    {
+        /**
+         * The buffer containing the data, or <code>null</code> if this block tells the writer to stop.
+         */
+        protected byte[] data;
+        /**
+         * The number of bytes of data in the buffer.
+         */
+        protected int length;
+
+        /**
+         * General constructor.
+         *
+         * @param data   The buffer containing the data, or <code>null</code> if this block tells the writer to stop.
+         * @param length The number of bytes of data in the buffer.
+         */
+        public Block(byte[] data, int length)
+        {
+            super();
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    /**
+     * This thread writes the blocks queued for a single target.  Once a write fails, the remaining blocks are
+     * discarded so that the queue does not block the stream's caller.
+     *
+     * @author Zachary Palmer
+     */
+    protected class TargetWriter extends Thread
+    {
+        /**
+         * The target to which blocks are written.
+         */
+        protected OutputStream target;
+        /**
+         * The queue of blocks to write.
+         */
+        protected BlockingQueue<Block> queue;
+        /**
+         * The number of blocks which have been submitted but not yet written.  Guarded by this object.
+         */
+        protected int pending;
+
+        /**
+         * General constructor.
+         *
+         * @param target     The target to which blocks are written.
+         * @param queueDepth The number of blocks which may be queued.
+         */
+        public TargetWriter(OutputStream target, int queueDepth)
+        {
+            super(MultiplexInterleavingOutputStream.this.toString() + " Writer");
+            setDaemon(true);
+            this.target = target;
+            queue = new ArrayBlockingQueue<Block>(queueDepth);
+            pending = 0;
+        }
+
+        /**
+         * Writes blocks until told to stop.
+         */
+        public void run()
+        {
+            try
+            {
+                while (true)
+                {
+                    Block block = queue.take();
+                    if (block.data == null) return;
+                    try
+                    {
+                        if (failure == null) target.write(block.data, 0, block.length);
+                    } catch (IOException e)
+                    {
+                        synchronized (MultiplexInterleavingOutputStream.this)
+                        {
+                            if (failure == null) failure = e;
+                        }
+                    } finally
+                    {
+                        blockPool.release(block.data);
+                        synchronized (this)
+                        {
+                            pending--;
+                            notifyAll();
+                        }
+                    }
+                }
+            } catch (InterruptedException e)
+            {
+                // The stream is being abandoned
+            }
+        }
+
+        /**
+         * Queues a block for writing, waiting for space in the queue if necessary.
+         *
+         * @param block The block to write.
+         * @throws IOException If the calling thread is interrupted while waiting.
+         */
+        public void submit(Block block)
+                throws IOException
+        {
+            synchronized (this)
+            {
+                pending++;
+            }
+            try
+            {
+                queue.put(block);
+            } catch (InterruptedException e)
+            {
+                synchronized (this)
+                {
+                    pending--;
+                }
+                throw new InterruptedIOException("Interrupted while queueing a block.");
+            }
+        }
+
+        /**
+         * Waits until every submitted block has been written.
+         *
+         * @throws IOException If the calling thread is interrupted while waiting.
+         */
+        public synchronized void drain()
+                throws IOException
+        {
+            try
+            {
+                while (pending > 0) wait();
+            } catch (InterruptedException e)
+            {
+                throw new InterruptedIOException("Interrupted while waiting for blocks to be written.");
+            }
+        }
+
+        /**
+         * Stops this writer once its queued blocks have been written and waits for it to terminate.
+         *
+         * @throws IOException If the calling thread is interrupted while waiting.
+         */
+        public void finish()
+                throws IOException
+        {
+            try
+            {
+                queue.put(new Block(null, 0));
+                join();
+            } catch (InterruptedException e)
+            {
+                interrupt();
+                throw new InterruptedIOException("Interrupted while stopping a writer.");
+            }
+        }
+    }
 }
 
 // END OF FILE //
\ No newline at end of file
@@ -0,0 +1,1041 @@
+package orioni.jz.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * This class is designed to allow the reading of primitive values from a {@link ReadableByteChannel}.  It provides the
+ * same endian-selectable operations as {@link PrimitiveInputStream} but reads the channel into a direct {@link
+ * ByteBuffer} acquired from a {@link DirectBufferPool}, avoiding copies through the Java heap.  The endian form of the
+ * data is specified on construction but can be overridden on each method call.
+ * <p/>
+ * A reader constructed over a {@link FileChannel} with a starting position uses positional reads; it does not use or
+ * modify the channel's own position, so several readers may share a channel, and it supports {@link #seek(long)} for
+ * random-access formats.  Any other reader reads ahead from its channel, which should not be read directly while the
+ * reader is in use.  The channel must be in blocking mode.
+ * <p/>
+ * Closing this reader closes the underlying channel and returns its buffer to the pool.  This class is not threadsafe.
+ *
+ * @author Zachary Palmer
+ */
+public class PrimitiveChannelReader implements ReadableByteChannel
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+    /**
+     * The constant representing big-endian format.
+     */
+    public static final boolean BIG_ENDIAN = true;
+    /**
+     * The constant representing little-endian format.
+     */
+    public static final boolean LITTLE_ENDIAN = false;
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The underlying {@link ReadableByteChannel}.
+     */
+    protected ReadableByteChannel channel;
+    /**
+     * The underlying channel if positional reads are used; <code>null</code> otherwise.
+     */
+    protected FileChannel fileChannel;
+    /**
+     * The default endian format.
+     */
+    protected boolean bigEndian;
+    /**
+     * The {@link DirectBufferPool} from which the buffer was acquired.
+     */
+    protected DirectBufferPool pool;
+    /**
+     * The buffer containing data read from the channel but not yet consumed.  The buffer's position is that of the
+     * next byte to consume and its limit is the end of the data read.
+     */
+    protected ByteBuffer buffer;
+    /**
+     * The position in the channel of the byte following the last one read into the buffer.
+     */
+    protected long fillPosition;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * General constructor.  The buffer is acquired from {@link DirectBufferPool#SHARED}.
+     *
+     * @param channel   The underlying channel from which data should be read.
+     * @param bigEndian Whether or not the channel should be read in big endian form by default.  You may also use one
+     *                  of the <code>XXX_ENDIAN</code> constants on this class.
+     */
+    public PrimitiveChannelReader(ReadableByteChannel channel, boolean bigEndian)
+    {
+        this(channel, bigEndian, DirectBufferPool.SHARED);
+    }
+
+    /**
+     * Pooling constructor.
+     *
+     * @param channel   The underlying channel from which data should be read.
+     * @param bigEndian Whether or not the channel should be read in big endian form by default.
+     * @param pool      The {@link DirectBufferPool} from which to acquire a buffer.
+     */
+    public PrimitiveChannelReader(ReadableByteChannel channel, boolean bigEndian, DirectBufferPool pool)
+    {
+        this(channel, null, 0, bigEndian, pool);
+    }
+
+    /**
+     * Positional constructor.  The buffer is acquired from {@link DirectBufferPool#SHARED}.
+     *
+     * @param channel   The {@link FileChannel} from which data should be read.
+     * @param position  The position in the channel at which to begin reading.
+     * @param bigEndian Whether or not the channel should be read in big endian form by default.
+     */
+    public PrimitiveChannelReader(FileChannel channel, long position, boolean bigEndian)
+    {
+        this(channel, position, bigEndian, DirectBufferPool.SHARED);
+    }
+
+    /**
+     * Positional pooling constructor.
+     *
+     * @param channel   The {@link FileChannel} from which data should be read.
+     * @param position  The position in the channel at which to begin reading.
+     * @param bigEndian Whether or not the channel should be read in big endian form by default.
+     * @param pool      The {@link DirectBufferPool} from which to acquire a buffer.
+     */
+    public PrimitiveChannelReader(FileChannel channel, long position, boolean bigEndian, DirectBufferPool pool)
+    {
+        this(channel, channel, position, bigEndian, pool);
+    }
+
+    /**
+     * Skeleton constructor.
+     *
+     * @param channel     The underlying channel.
+     * @param fileChannel The underlying channel if positional reads are used; <code>null</code> otherwise.
+     * @param position    The position at which to begin reading.
+     * @param bigEndian   The default endian format.
+     * @param pool        The {@link DirectBufferPool} from which to acquire a buffer.
+     * @throws IllegalArgumentException If the position is negative.
+     */
+    private PrimitiveChannelReader(ReadableByteChannel channel, FileChannel fileChannel, long position,
+                                   boolean bigEndian, DirectBufferPool pool)
+            throws IllegalArgumentException
+    {
+        super();
+        if (position < 0) throw new IllegalArgumentException("Negative position: " + position);
+        this.channel = channel;
+        this.fileChannel = fileChannel;
+        this.bigEndian = bigEndian;
+        this.pool = pool;
+        buffer = pool.acquire();
+        buffer.limit(0);
+        fillPosition = position;
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Retrieves the position of the next byte this reader will return.  For a positional reader, this is a position in
+     * the channel; otherwise, it is the number of bytes this reader has returned or skipped.
+     *
+     * @return The position of the next byte.
+     */
+    public long getPosition()
+    {
+        return fillPosition - buffer.remaining();
+    }
+
+    /**
+     * Moves this reader to the specified position.  Data already buffered is reused if possible.
+     *
+     * @param position The position in the channel of the next byte to read.
+     * @throws UnsupportedOperationException If this reader does not use positional reads.
+     * @throws IllegalArgumentException      If the position is negative.
+     */
+    public void seek(long position)
+            throws UnsupportedOperationException, IllegalArgumentException
+    {
+        if (fileChannel == null)
+        {
+            throw new UnsupportedOperationException("Only positional readers may seek.");
+        }
+        if (position < 0) throw new IllegalArgumentException("Negative position: " + position);
+        long bufferStart = fillPosition - buffer.limit();
+        if ((position >= bufferStart) && (position <= fillPosition))
+        {
+            buffer.position((int) (position - bufferStart));
+        } else
+        {
+            buffer.position(0).limit(0);
+            fillPosition = position;
+        }
+    }
+
+    /**
+     * Reads the next byte of data from the channel.
+     *
+     * @return The next byte of data as an unsigned value, or <code>-1</code> if the end of the channel is reached.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int read()
+            throws IOException
+    {
+        if ((!buffer.hasRemaining()) && (!refill())) return -1;
+        return buffer.get() & 0xFF;
+    }
+
+    /**
+     * Reads up to <code>len</code> bytes of data from the channel into an array of bytes.  Data which is already
+     * buffered is returned first; large reads bypass the buffer.
+     *
+     * @param b   The buffer into which the data is read.
+     * @param off The start offset in the array at which the data is written.
+     * @param len The maximum number of bytes to read.
+     * @return The number of bytes read, or <code>-1</code> if the end of the channel is reached.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int read(byte[] b, int off, int len)
+            throws IOException
+    {
+        return read(ByteBuffer.wrap(b, off, len));
+    }
+
+    /**
+     * Reads bytes from the channel into the provided buffer.  Data which is already buffered is returned first; large
+     * reads bypass the internal buffer.
+     *
+     * @param dst The {@link ByteBuffer} into which bytes are read.
+     * @return The number of bytes read, or <code>-1</code> if the end of the channel is reached.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int read(ByteBuffer dst)
+            throws IOException
+    {
+        if (!dst.hasRemaining()) return 0;
+        if (!buffer.hasRemaining())
+        {
+            if (dst.remaining() >= buffer.capacity())
+            {
+                // The buffer must not appear to hold the data preceding the position the direct read advances to
+                buffer.position(0).limit(0);
+                return readChannel(dst);
+            }
+            if (!refill()) return -1;
+        }
+        int count = Math.min(buffer.remaining(), dst.remaining());
+        int limit = buffer.limit();
+        buffer.limit(buffer.position() + count);
+        dst.put(buffer);
+        buffer.limit(limit);
+        return count;
+    }
+
+    /**
+     * Reads the specified array "fully."
+     *
+     * @param buf The buffer into which to read data.
+     * @throws EOFException If the channel is exhausted before the read is complete.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public void readFully(byte[] buf)
+            throws EOFException, IOException
+    {
+        readFully(buf, 0, buf.length);
+    }
+
+    /**
+     * Reads the specified part of the array "fully."
+     *
+     * @param buf The buffer into which to read data.
+     * @param off The first byte in the array to fill.
+     * @param len The number of bytes in the array to fill.
+     * @throws EOFException If the channel is exhausted before the read is complete.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public void readFully(byte[] buf, int off, int len)
+            throws EOFException, IOException
+    {
+        ByteBuffer target = ByteBuffer.wrap(buf, off, len);
+        while (target.hasRemaining())
+        {
+            if (read(target) == -1) throw new EOFException("Not enough data in the channel to perform read.");
+        }
+    }
+
+    /**
+     * Skips over and discards exactly <code>n</code> bytes of data.  A positional reader simply moves its position.
+     *
+     * @param n The number of bytes to be skipped.
+     * @throws EOFException If the channel is exhausted before the skip is complete.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public void skipFully(long n)
+            throws EOFException, IOException
+    {
+        if (n <= 0) return;
+        if (fileChannel != null)
+        {
+            seek(getPosition() + n);
+            return;
+        }
+        while (n > 0)
+        {
+            if ((!buffer.hasRemaining()) && (!refill()))
+            {
+                throw new EOFException("Not enough data in the channel to perform skip.");
+            }
+            int count = (int) Math.min(n, buffer.remaining());
+            buffer.position(buffer.position() + count);
+            n -= count;
+        }
+    }
+
+    /**
+     * Determines whether or not this reader is open.
+     *
+     * @return <code>true</code> if this reader and its channel are open; <code>false</code> otherwise.
+     */
+    public boolean isOpen()
+    {
+        return (pool != null) && channel.isOpen();
+    }
+
+    /**
+     * Closes the underlying channel and returns this reader's buffer to its pool.
+     *
+     * @throws IOException If an I/O error occurs while closing the channel.
+     */
+    public void close()
+            throws IOException
+    {
+        if (pool == null) return;
+        try
+        {
+            channel.close();
+        } finally
+        {
+            pool.release(buffer);
+            pool = null;
+        }
+    }
+
+    /**
+     * Reads a signed <code>byte</code> from the channel.
+     *
+     * @return The <code>byte</code> which was read.
+     * @throws EOFException If the channel is exhausted before the read is completed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public byte readByte()
+            throws IOException
+    {
+        return prepare(1, bigEndian).get();
+    }
+
+    /**
+     * Reads an unsigned <code>byte</code> from the channel.
+     *
+     * @return The <code>byte</code> which was read as an unsigned value.
+     * @throws EOFException If the channel is exhausted before the read is completed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public int readUnsignedByte()
+            throws IOException
+    {
+        return prepare(1, bigEndian).get() & 0xFF;
+    }
+
+    /**
+     * Reads a <code>boolean</code> from the channel.
+     *
+     * @return The <code>boolean</code> which was read.
+     * @throws EOFException If the channel is exhausted before the read is completed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public boolean readBoolean()
+            throws IOException
+    {
+        return prepare(1, bigEndian).get() != 0;
+    }
+
+    /**
+     * Reads a <code>short</code> from the channel in the default endian format for this reader.
+     *
+     * @return The <code>short</code> which was read.
+     * @throws EOFException If the channel is exhausted before the read is completed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public short readShort()
+            throws IOException
+    {
+        return readShort(bigEndian);
+    }
+
+    /**
+     * Reads a <code>short</code> from the channel in the specified endian format.
+     *
+     * @param bigEndian The endian format in which to read.
+     * @return The <code>short</code> which was read.
+     * @throws EOFException If the channel is exhausted before the read is completed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public short readShort(boolean bigEndian)
+            throws IOException
+    {
+        return prepare(2, bigEndian).getShort();
+    }
+
+    /**
+     * Reads a <code>char</code> from the channel in the default endian format for this reader.
+     *
+     * @return The <code>char</code> which was read.
+     * @throws EOFException If the channel is exhausted before the read is completed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public char readChar()
+            throws IOException
+    {
+        return readChar(bigEndian);
+    }
+
+    /**
+     * Reads a <code>char</code> from the channel in the specified endian format.
+     *
+     * @param bigEndian The endian format in which to read.
+     * @return The <code>char</code> which was read.
+     * @throws EOFException If the channel is exhausted before the read is completed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public char readChar(boolean bigEndian)
+            throws IOException
+    {
+        return prepare(2, bigEndian).getChar();
+    }
+
+    /**
+     * Reads a <code>int</code> from the channel in the default endian format for this reader.
+     *
+     * @return The <code>int</code> which was read.
+     * @throws EOFException If the channel is exhausted before the read is completed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public int readInt()
+            throws IOException
+    {
+        return readInt(bigEndian);
+    }
+
+    /**
+     * Reads a <code>int</code> from the channel in the specified endian format.
+     *
+     * @param bigEndian The endian format in which to read.
+     * @return The <code>int</code> which was read.
+     * @throws EOFException If the channel is exhausted before the read is completed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public int readInt(boolean bigEndian)
+            throws IOException
+    {
+        return prepare(4, bigEndian).getInt();
+    }
+
+    /**
+     * Reads a <code>long</code> from the channel in the default endian format for this reader.
+     *
+     * @return The <code>long</code> which was read.
+     * @throws EOFException If the channel is exhausted before the read is completed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public long readLong()
+            throws IOException
+    {
+        return readLong(bigEndian);
+    }
+
+    /**
+     * Reads a <code>long</code> from the channel in the specified endian format.
+     *
+     * @param bigEndian The endian format in which to read.
+     * @return The <code>long</code> which was read.
+     * @throws EOFException If the channel is exhausted before the read is completed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public long readLong(boolean bigEndian)
+            throws IOException
+    {
+        return prepare(8, bigEndian).getLong();
+    }
+
+    /**
+     * Reads a <code>float</code> from the channel in the default endian format for this reader.
+     *
+     * @return The <code>float</code> which was read.
+     * @throws EOFException If the channel is exhausted before the read is completed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public float readFloat()
+            throws IOException
+    {
+        return readFloat(bigEndian);
+    }
+
+    /**
+     * Reads a <code>float</code> from the channel in the specified endian format.
+     *
+     * @param bigEndian The endian format in which to read.
+     * @return The <code>float</code> which was read.
+     * @throws EOFException If the channel is exhausted before the read is completed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public float readFloat(boolean bigEndian)
+            throws IOException
+    {
+        return prepare(4, bigEndian).getFloat();
+    }
+
+    /**
+     * Reads a <code>double</code> from the channel in the default endian format for this reader.
+     *
+     * @return The <code>double</code> which was read.
+     * @throws EOFException If the channel is exhausted before the read is completed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public double readDouble()
+            throws IOException
+    {
+        return readDouble(bigEndian);
+    }
+
+    /**
+     * Reads a <code>double</code> from the channel in the specified endian format.
+     *
+     * @param bigEndian The endian format in which to read.
+     * @return The <code>double</code> which was read.
+     * @throws EOFException If the channel is exhausted before the read is completed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public double readDouble(boolean bigEndian)
+            throws IOException
+    {
+        return prepare(8, bigEndian).getDouble();
+    }
+
+    /**
+     * Reads an unsigned <code>short</code> from the channel in the default endian format for this reader.
+     *
+     * @return The value which was read.
+     * @throws EOFException If the channel is exhausted before the read is completed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public int readUnsignedShort()
+            throws IOException
+    {
+        return readUnsignedShort(bigEndian);
+    }
+
+    /**
+     * Reads an unsigned <code>short</code> from the channel in the specified endian format.
+     *
+     * @param bigEndian The endian format in which to read.
+     * @return The value which was read.
+     * @throws EOFException If the channel is exhausted before the read is completed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public int readUnsignedShort(boolean bigEndian)
+            throws IOException
+    {
+        return prepare(2, bigEndian).getShort() & 0xFFFF;
+    }
+
+    /**
+     * Reads the specified number of bytes as an <code>int</code> using the default endian format for this reader.  The
+     * higher order bytes which are not read are treated as zeroes.
+     *
+     * @param bytes The number of bytes to read.
+     * @return The <code>int</code> containing the read data.
+     * @throws EOFException If the channel is exhausted before the read is completed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public int readUnsignedInteger(int bytes)
+            throws IOException
+    {
+        return readUnsignedInteger(bytes, bigEndian);
+    }
+
+    /**
+     * Reads the specified number of bytes as an <code>int</code> using the specified endian format.  The higher order
+     * bytes which are not read are treated as zeroes.  If more than four bytes are read, only the four least
+     * significant bytes are retained.
+     *
+     * @param bytes     The number of bytes to read.
+     * @param bigEndian The endian format in which to read.
+     * @return The <code>int</code> containing the read data.
+     * @throws EOFException If the channel is exhausted before the read is completed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public int readUnsignedInteger(int bytes, boolean bigEndian)
+            throws IOException
+    {
+        return (int) readUnsignedLongInteger(bytes, bigEndian);
+    }
+
+    /**
+     * Reads the specified number of bytes as a sign-extended <code>int</code> using the default endian format for this
+     * reader.
+     *
+     * @param bytes The number of bytes to read.
+     * @return The <code>int</code> containing the read data.
+     * @throws EOFException If the channel is exhausted before the read is completed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public int readSignedInteger(int bytes)
+            throws IOException
+    {
+        return readSignedInteger(bytes, bigEndian);
+    }
+
+    /**
+     * Reads the specified number of bytes as an <code>int</code> using the specified endian format.  The higher order
+     * bytes which are not read are filled with the highest bit of the highest read byte.
+     *
+     * @param bytes     The number of bytes to read.
+     * @param bigEndian The endian format in which to read.
+     * @return The <code>int</code> containing the read data.
+     * @throws EOFException If the channel is exhausted before the read is completed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public int readSignedInteger(int bytes, boolean bigEndian)
+            throws IOException
+    {
+        int ret = readUnsignedInteger(bytes, bigEndian);
+        if ((bytes > 0) && (bytes < 4))
+        {
+            int shift = 32 - bytes * 8;
+            ret = (ret << shift) >> shift;
+        }
+        return ret;
+    }
+
+    /**
+     * Reads the specified number of bytes as a <code>long</code> using the default endian format for this reader.  The
+     * higher order bytes which are not read are treated as zeroes.
+     *
+     * @param bytes The number of bytes to read.
+     * @return The <code>long</code> containing the read data.
+     * @throws EOFException If the channel is exhausted before the read is completed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public long readUnsignedLongInteger(int bytes)
+            throws IOException
+    {
+        return readUnsignedLongInteger(bytes, bigEndian);
+    }
+
+    /**
+     * Reads the specified number of bytes as a <code>long</code> using the specified endian format.  The higher order
+     * bytes which are not read are treated as zeroes.  If more than eight bytes are read, only the eight least
+     * significant bytes are retained.
+     *
+     * @param bytes     The number of bytes to read.
+     * @param bigEndian The endian format in which to read.
+     * @return The <code>long</code> containing the read data.
+     * @throws EOFException If the channel is exhausted before the read is completed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public long readUnsignedLongInteger(int bytes, boolean bigEndian)
+            throws IOException
+    {
+        long ret = 0;
+        for (int i = 0; i < bytes; i++)
+        {
+            long b = readUnsignedByte();
+            if (bigEndian)
+            {
+                ret = (ret << 8) | b;
+            } else if (i < 8)
+            {
+                ret |= b << (i * 8);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Reads the specified number of bytes as a sign-extended <code>long</code> using the default endian format for
+     * this reader.
+     *
+     * @param bytes The number of bytes to read.
+     * @return The <code>long</code> containing the read data.
+     * @throws EOFException If the channel is exhausted before the read is completed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public long readSignedLongInteger(int bytes)
+            throws IOException
+    {
+        return readSignedLongInteger(bytes, bigEndian);
+    }
+
+    /**
+     * Reads the specified number of bytes as a <code>long</code> using the specified endian format.  The higher order
+     * bytes which are not read are filled with the highest bit of the highest read byte.
+     *
+     * @param bytes     The number of bytes to read.
+     * @param bigEndian The endian format in which to read.
+     * @return The <code>long</code> containing the read data.
+     * @throws EOFException If the channel is exhausted before the read is completed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public long readSignedLongInteger(int bytes, boolean bigEndian)
+            throws IOException
+    {
+        long ret = readUnsignedLongInteger(bytes, bigEndian);
+        if ((bytes > 0) && (bytes < 8))
+        {
+            int shift = 64 - bytes * 8;
+            ret = (ret << shift) >> shift;
+        }
+        return ret;
+    }
+
+    /**
+     * Reads an array of <code>short</code>s from the channel in the default endian format for this reader.
+     *
+     * @param data   The array into which to read the values.
+     * @param offset The index of the first value to read.
+     * @param length The number of values to read.
+     * @throws EOFException              If the channel is exhausted before the read is completed.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void readShorts(short[] data, int offset, int length)
+            throws IOException
+    {
+        readShorts(data, offset, length, bigEndian);
+    }
+
+    /**
+     * Reads an array of <code>short</code>s from the channel in the specified endian format.
+     *
+     * @param data      The array into which to read the values.
+     * @param offset    The index of the first value to read.
+     * @param length    The number of values to read.
+     * @param bigEndian The endian format in which to read.
+     * @throws EOFException              If the channel is exhausted before the read is completed.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void readShorts(short[] data, int offset, int length, boolean bigEndian)
+            throws IOException
+    {
+        checkRange(data.length, offset, length);
+        while (length > 0)
+        {
+            int count = Math.min(length, buffer.capacity() / 2);
+            prepare(count * 2, bigEndian).asShortBuffer().get(data, offset, count);
+            buffer.position(buffer.position() + count * 2);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Reads an array of <code>int</code>s from the channel in the default endian format for this reader.
+     *
+     * @param data   The array into which to read the values.
+     * @param offset The index of the first value to read.
+     * @param length The number of values to read.
+     * @throws EOFException              If the channel is exhausted before the read is completed.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void readInts(int[] data, int offset, int length)
+            throws IOException
+    {
+        readInts(data, offset, length, bigEndian);
+    }
+
+    /**
+     * Reads an array of <code>int</code>s from the channel in the specified endian format.
+     *
+     * @param data      The array into which to read the values.
+     * @param offset    The index of the first value to read.
+     * @param length    The number of values to read.
+     * @param bigEndian The endian format in which to read.
+     * @throws EOFException              If the channel is exhausted before the read is completed.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void readInts(int[] data, int offset, int length, boolean bigEndian)
+            throws IOException
+    {
+        checkRange(data.length, offset, length);
+        while (length > 0)
+        {
+            int count = Math.min(length, buffer.capacity() / 4);
+            prepare(count * 4, bigEndian).asIntBuffer().get(data, offset, count);
+            buffer.position(buffer.position() + count * 4);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Reads an array of <code>long</code>s from the channel in the default endian format for this reader.
+     *
+     * @param data   The array into which to read the values.
+     * @param offset The index of the first value to read.
+     * @param length The number of values to read.
+     * @throws EOFException              If the channel is exhausted before the read is completed.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void readLongs(long[] data, int offset, int length)
+            throws IOException
+    {
+        readLongs(data, offset, length, bigEndian);
+    }
+
+    /**
+     * Reads an array of <code>long</code>s from the channel in the specified endian format.
+     *
+     * @param data      The array into which to read the values.
+     * @param offset    The index of the first value to read.
+     * @param length    The number of values to read.
+     * @param bigEndian The endian format in which to read.
+     * @throws EOFException              If the channel is exhausted before the read is completed.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void readLongs(long[] data, int offset, int length, boolean bigEndian)
+            throws IOException
+    {
+        checkRange(data.length, offset, length);
+        while (length > 0)
+        {
+            int count = Math.min(length, buffer.capacity() / 8);
+            prepare(count * 8, bigEndian).asLongBuffer().get(data, offset, count);
+            buffer.position(buffer.position() + count * 8);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Reads an array of <code>float</code>s from the channel in the default endian format for this reader.
+     *
+     * @param data   The array into which to read the values.
+     * @param offset The index of the first value to read.
+     * @param length The number of values to read.
+     * @throws EOFException              If the channel is exhausted before the read is completed.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void readFloats(float[] data, int offset, int length)
+            throws IOException
+    {
+        readFloats(data, offset, length, bigEndian);
+    }
+
+    /**
+     * Reads an array of <code>float</code>s from the channel in the specified endian format.
+     *
+     * @param data      The array into which to read the values.
+     * @param offset    The index of the first value to read.
+     * @param length    The number of values to read.
+     * @param bigEndian The endian format in which to read.
+     * @throws EOFException              If the channel is exhausted before the read is completed.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void readFloats(float[] data, int offset, int length, boolean bigEndian)
+            throws IOException
+    {
+        checkRange(data.length, offset, length);
+        while (length > 0)
+        {
+            int count = Math.min(length, buffer.capacity() / 4);
+            prepare(count * 4, bigEndian).asFloatBuffer().get(data, offset, count);
+            buffer.position(buffer.position() + count * 4);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Reads an array of <code>double</code>s from the channel in the default endian format for this reader.
+     *
+     * @param data   The array into which to read the values.
+     * @param offset The index of the first value to read.
+     * @param length The number of values to read.
+     * @throws EOFException              If the channel is exhausted before the read is completed.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void readDoubles(double[] data, int offset, int length)
+            throws IOException
+    {
+        readDoubles(data, offset, length, bigEndian);
+    }
+
+    /**
+     * Reads an array of <code>double</code>s from the channel in the specified endian format.
+     *
+     * @param data      The array into which to read the values.
+     * @param offset    The index of the first value to read.
+     * @param length    The number of values to read.
+     * @param bigEndian The endian format in which to read.
+     * @throws EOFException              If the channel is exhausted before the read is completed.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void readDoubles(double[] data, int offset, int length, boolean bigEndian)
+            throws IOException
+    {
+        checkRange(data.length, offset, length);
+        while (length > 0)
+        {
+            int count = Math.min(length, buffer.capacity() / 8);
+            prepare(count * 8, bigEndian).asDoubleBuffer().get(data, offset, count);
+            buffer.position(buffer.position() + count * 8);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Reads a {@link BigInteger} from the channel.  The {@link BigInteger} is assumed to be prefixed with an
+     * <code>int</code> describing the length of its big endian <code>byte[]</code> representation.
+     *
+     * @return The {@link BigInteger} which was read.
+     * @throws EOFException If the channel is exhausted before the read is completed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public BigInteger readBigInteger()
+            throws IOException
+    {
+        byte[] bytes = new byte[readInt()];
+        readFully(bytes);
+        return new BigInteger(bytes);
+    }
+
+    /**
+     * Reads a {@link String} from the channel.  The {@link String} is assumed to be prefixed with an <code>int</code>
+     * describing its length in bytes; the platform's default encoding is used.
+     *
+     * @return The {@link String} which was read.
+     * @throws EOFException If the channel is exhausted before the read is completed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public String readString()
+            throws IOException
+    {
+        int length = readInt();
+        if (length < 0) throw new IOException("String length indicator was " + length + "; probable corruption?");
+        byte[] data = new byte[length];
+        readFully(data);
+        return new String(data);
+    }
+
+    /**
+     * Ensures that the specified number of bytes are buffered and sets the buffer's byte order.
+     *
+     * @param length    The number of bytes required.  This may not exceed the capacity of the buffer.
+     * @param bigEndian The endian format in which the bytes will be decoded.
+     * @return The buffer, positioned at the first of the required bytes.
+     * @throws EOFException If the channel is exhausted before enough data is read.
+     * @throws IOException  If an I/O error occurs.
+     */
+    protected ByteBuffer prepare(int length, boolean bigEndian)
+            throws IOException
+    {
+        if (buffer.remaining() < length)
+        {
+            buffer.compact();
+            try
+            {
+                while (buffer.position() < length)
+                {
+                    if (readChannel(buffer) == -1)
+                    {
+                        throw new EOFException("Not enough data in the channel to perform read.");
+                    }
+                }
+            } finally
+            {
+                buffer.flip();
+            }
+        }
+        return buffer.order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Refills the empty buffer from the channel.
+     *
+     * @return <code>true</code> if data was read; <code>false</code> if the end of the channel was reached.
+     * @throws IOException If an I/O error occurs.
+     */
+    protected boolean refill()
+            throws IOException
+    {
+        buffer.clear();
+        int read;
+        try
+        {
+            do
+            {
+                read = readChannel(buffer);
+            } while (read == 0);
+        } finally
+        {
+            buffer.flip();
+        }
+        return read != -1;
+    }
+
+    /**
+     * Reads from the channel into the provided buffer, using a positional read if appropriate.
+     *
+     * @param target The buffer into which to read.
+     * @return The number of bytes read, or <code>-1</code> if the end of the channel was reached.
+     * @throws IOException If an I/O error occurs.
+     */
+    protected int readChannel(ByteBuffer target)
+            throws IOException
+    {
+        int ret = (fileChannel == null) ? channel.read(target) : fileChannel.read(target, fillPosition);
+        if (ret > 0) fillPosition += ret;
+        return ret;
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+    /**
+     * Ensures that the specified range lies within an array.
+     *
+     * @param arrayLength The length of the array.
+     * @param offset      The first index of the range.
+     * @param length      The length of the range.
+     * @throws IndexOutOfBoundsException If the range does not lie within the array.
+     */
+    private static void checkRange(int arrayLength, int offset, int length)
+            throws IndexOutOfBoundsException
+    {
+        if ((offset < 0) || (length < 0) || (offset > arrayLength - length))
+        {
+            throw new IndexOutOfBoundsException(
+                    "Range [" + offset + ", " + offset + "+" + length + ") invalid for array of length " + arrayLength);
+        }
+    }
+}
+
+// END OF FILE
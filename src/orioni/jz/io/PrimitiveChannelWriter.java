@@ -0,0 +1,890 @@
+package orioni.jz.io;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * This class is designed to allow the writing of primitive values to a {@link WritableByteChannel}.  It provides the
+ * same endian-selectable operations as {@link PrimitiveOutputStream} but encodes values into a direct {@link
+ * ByteBuffer} acquired from a {@link DirectBufferPool}, avoiding copies through the Java heap.  The endian form of the
+ * data is specified on construction but can be overridden on each method call.
+ * <p/>
+ * Data is collected in the buffer and written when the buffer fills or when this writer is flushed or closed.  A
+ * writer constructed over a {@link FileChannel} with a starting position uses positional writes; it does not use or
+ * modify the channel's own position and supports {@link #seek(long)} for random-access formats.  The channel must be
+ * in blocking mode.
+ * <p/>
+ * Closing this writer flushes it, closes the underlying channel, and returns its buffer to the pool.  This class is not
+ * threadsafe.
+ *
+ * @author Zachary Palmer
+ */
+public class PrimitiveChannelWriter implements WritableByteChannel
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+    /**
+     * The constant representing big-endian format.
+     */
+    public static final boolean BIG_ENDIAN = true;
+    /**
+     * The constant representing little-endian format.
+     */
+    public static final boolean LITTLE_ENDIAN = false;
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The underlying {@link WritableByteChannel}.
+     */
+    protected WritableByteChannel channel;
+    /**
+     * The underlying channel if positional writes are used; <code>null</code> otherwise.
+     */
+    protected FileChannel fileChannel;
+    /**
+     * The default endian format.
+     */
+    protected boolean bigEndian;
+    /**
+     * The {@link DirectBufferPool} from which the buffer was acquired.
+     */
+    protected DirectBufferPool pool;
+    /**
+     * The buffer containing data which has not yet been written to the channel.
+     */
+    protected ByteBuffer buffer;
+    /**
+     * The position in the channel at which the buffered data will be written.
+     */
+    protected long drainPosition;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * General constructor.  The buffer is acquired from {@link DirectBufferPool#SHARED}.
+     *
+     * @param channel   The underlying channel to which data should be written.
+     * @param bigEndian Whether or not the channel should be written in big endian form by default.  You may also use
+     *                  one of the <code>XXX_ENDIAN</code> constants on this class.
+     */
+    public PrimitiveChannelWriter(WritableByteChannel channel, boolean bigEndian)
+    {
+        this(channel, bigEndian, DirectBufferPool.SHARED);
+    }
+
+    /**
+     * Pooling constructor.
+     *
+     * @param channel   The underlying channel to which data should be written.
+     * @param bigEndian Whether or not the channel should be written in big endian form by default.
+     * @param pool      The {@link DirectBufferPool} from which to acquire a buffer.
+     */
+    public PrimitiveChannelWriter(WritableByteChannel channel, boolean bigEndian, DirectBufferPool pool)
+    {
+        this(channel, null, 0, bigEndian, pool);
+    }
+
+    /**
+     * Positional constructor.  The buffer is acquired from {@link DirectBufferPool#SHARED}.
+     *
+     * @param channel   The {@link FileChannel} to which data should be written.
+     * @param position  The position in the channel at which to begin writing.
+     * @param bigEndian Whether or not the channel should be written in big endian form by default.
+     */
+    public PrimitiveChannelWriter(FileChannel channel, long position, boolean bigEndian)
+    {
+        this(channel, position, bigEndian, DirectBufferPool.SHARED);
+    }
+
+    /**
+     * Positional pooling constructor.
+     *
+     * @param channel   The {@link FileChannel} to which data should be written.
+     * @param position  The position in the channel at which to begin writing.
+     * @param bigEndian Whether or not the channel should be written in big endian form by default.
+     * @param pool      The {@link DirectBufferPool} from which to acquire a buffer.
+     */
+    public PrimitiveChannelWriter(FileChannel channel, long position, boolean bigEndian, DirectBufferPool pool)
+    {
+        this(channel, channel, position, bigEndian, pool);
+    }
+
+    /**
+     * Skeleton constructor.
+     *
+     * @param channel     The underlying channel.
+     * @param fileChannel The underlying channel if positional writes are used; <code>null</code> otherwise.
+     * @param position    The position at which to begin writing.
+     * @param bigEndian   The default endian format.
+     * @param pool        The {@link DirectBufferPool} from which to acquire a buffer.
+     * @throws IllegalArgumentException If the position is negative.
+     */
+    private PrimitiveChannelWriter(WritableByteChannel channel, FileChannel fileChannel, long position,
+                                   boolean bigEndian, DirectBufferPool pool)
+            throws IllegalArgumentException
+    {
+        super();
+        if (position < 0) throw new IllegalArgumentException("Negative position: " + position);
+        this.channel = channel;
+        this.fileChannel = fileChannel;
+        this.bigEndian = bigEndian;
+        this.pool = pool;
+        buffer = pool.acquire();
+        drainPosition = position;
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Retrieves the position at which the next byte will be written.  For a positional writer, this is a position in
+     * the channel; otherwise, it is the number of bytes which have been written to this writer.
+     *
+     * @return The position of the next byte.
+     */
+    public long getPosition()
+    {
+        return drainPosition + buffer.position();
+    }
+
+    /**
+     * Flushes this writer and moves it to the specified position.
+     *
+     * @param position The position in the channel at which the next byte will be written.
+     * @throws UnsupportedOperationException If this writer does not use positional writes.
+     * @throws IllegalArgumentException      If the position is negative.
+     * @throws IOException                   If an I/O error occurs while flushing.
+     */
+    public void seek(long position)
+            throws UnsupportedOperationException, IllegalArgumentException, IOException
+    {
+        if (fileChannel == null)
+        {
+            throw new UnsupportedOperationException("Only positional writers may seek.");
+        }
+        if (position < 0) throw new IllegalArgumentException("Negative position: " + position);
+        flush();
+        drainPosition = position;
+    }
+
+    /**
+     * Writes a single byte.
+     *
+     * @param b The byte to write.  Only the lowest eight bits are used.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void write(int b)
+            throws IOException
+    {
+        prepare(1, bigEndian).put((byte) b);
+    }
+
+    /**
+     * Writes an array of bytes.
+     *
+     * @param b The data.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void write(byte[] b)
+            throws IOException
+    {
+        write(ByteBuffer.wrap(b));
+    }
+
+    /**
+     * Writes a portion of an array of bytes.
+     *
+     * @param b   The data.
+     * @param off The start offset in the data.
+     * @param len The number of bytes to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void write(byte[] b, int off, int len)
+            throws IOException
+    {
+        write(ByteBuffer.wrap(b, off, len));
+    }
+
+    /**
+     * Writes the remaining contents of the provided buffer.  Large writes bypass the internal buffer.
+     *
+     * @param src The {@link ByteBuffer} containing the data to write.
+     * @return The number of bytes written, which is always the number of bytes which were remaining in the buffer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int write(ByteBuffer src)
+            throws IOException
+    {
+        int ret = src.remaining();
+        if (ret > buffer.remaining()) flush();
+        if (ret >= buffer.capacity())
+        {
+            while (src.hasRemaining()) writeChannel(src);
+        } else
+        {
+            buffer.put(src);
+        }
+        return ret;
+    }
+
+    /**
+     * Writes all buffered data to the channel.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void flush()
+            throws IOException
+    {
+        buffer.flip();
+        try
+        {
+            while (buffer.hasRemaining()) writeChannel(buffer);
+        } finally
+        {
+            buffer.compact();
+        }
+    }
+
+    /**
+     * Determines whether or not this writer is open.
+     *
+     * @return <code>true</code> if this writer and its channel are open; <code>false</code> otherwise.
+     */
+    public boolean isOpen()
+    {
+        return (pool != null) && channel.isOpen();
+    }
+
+    /**
+     * Flushes this writer, closes the underlying channel, and returns this writer's buffer to its pool.
+     *
+     * @throws IOException If an I/O error occurs while flushing or closing the channel.
+     */
+    public void close()
+            throws IOException
+    {
+        if (pool == null) return;
+        try
+        {
+            flush();
+        } finally
+        {
+            try
+            {
+                channel.close();
+            } finally
+            {
+                pool.release(buffer);
+                pool = null;
+            }
+        }
+    }
+
+    /**
+     * Writes a <code>byte</code>.
+     *
+     * @param data The <code>byte</code> to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeByte(byte data)
+            throws IOException
+    {
+        write(data);
+    }
+
+    /**
+     * Writes an unsigned <code>byte</code>.
+     *
+     * @param data The value to write.  The lowest eight bits of this <code>int</code> are used.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeUnsignedByte(int data)
+            throws IOException
+    {
+        write(data);
+    }
+
+    /**
+     * Writes a <code>boolean</code>.
+     *
+     * @param data The <code>boolean</code> to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeBoolean(boolean data)
+            throws IOException
+    {
+        write(data ? 1 : 0);
+    }
+
+    /**
+     * Writes a <code>short</code> in the default endian format for this writer.
+     *
+     * @param data The <code>short</code> to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeShort(short data)
+            throws IOException
+    {
+        writeShort(data, bigEndian);
+    }
+
+    /**
+     * Writes a <code>short</code> in the specified endian format.
+     *
+     * @param data      The <code>short</code> to write.
+     * @param bigEndian The endian format in which to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeShort(short data, boolean bigEndian)
+            throws IOException
+    {
+        prepare(2, bigEndian).putShort(data);
+    }
+
+    /**
+     * Writes a <code>char</code> in the default endian format for this writer.
+     *
+     * @param data The <code>char</code> to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeChar(char data)
+            throws IOException
+    {
+        writeChar(data, bigEndian);
+    }
+
+    /**
+     * Writes a <code>char</code> in the specified endian format.
+     *
+     * @param data      The <code>char</code> to write.
+     * @param bigEndian The endian format in which to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeChar(char data, boolean bigEndian)
+            throws IOException
+    {
+        prepare(2, bigEndian).putChar(data);
+    }
+
+    /**
+     * Writes a <code>int</code> in the default endian format for this writer.
+     *
+     * @param data The <code>int</code> to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeInt(int data)
+            throws IOException
+    {
+        writeInt(data, bigEndian);
+    }
+
+    /**
+     * Writes a <code>int</code> in the specified endian format.
+     *
+     * @param data      The <code>int</code> to write.
+     * @param bigEndian The endian format in which to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeInt(int data, boolean bigEndian)
+            throws IOException
+    {
+        prepare(4, bigEndian).putInt(data);
+    }
+
+    /**
+     * Writes a <code>long</code> in the default endian format for this writer.
+     *
+     * @param data The <code>long</code> to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeLong(long data)
+            throws IOException
+    {
+        writeLong(data, bigEndian);
+    }
+
+    /**
+     * Writes a <code>long</code> in the specified endian format.
+     *
+     * @param data      The <code>long</code> to write.
+     * @param bigEndian The endian format in which to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeLong(long data, boolean bigEndian)
+            throws IOException
+    {
+        prepare(8, bigEndian).putLong(data);
+    }
+
+    /**
+     * Writes a <code>float</code> in the default endian format for this writer.
+     *
+     * @param data The <code>float</code> to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeFloat(float data)
+            throws IOException
+    {
+        writeFloat(data, bigEndian);
+    }
+
+    /**
+     * Writes a <code>float</code> in the specified endian format.
+     *
+     * @param data      The <code>float</code> to write.
+     * @param bigEndian The endian format in which to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeFloat(float data, boolean bigEndian)
+            throws IOException
+    {
+        prepare(4, bigEndian).putFloat(data);
+    }
+
+    /**
+     * Writes a <code>double</code> in the default endian format for this writer.
+     *
+     * @param data The <code>double</code> to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeDouble(double data)
+            throws IOException
+    {
+        writeDouble(data, bigEndian);
+    }
+
+    /**
+     * Writes a <code>double</code> in the specified endian format.
+     *
+     * @param data      The <code>double</code> to write.
+     * @param bigEndian The endian format in which to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeDouble(double data, boolean bigEndian)
+            throws IOException
+    {
+        prepare(8, bigEndian).putDouble(data);
+    }
+
+    /**
+     * Writes an unsigned <code>short</code> in the default endian format for this writer.
+     *
+     * @param data The value to write.  The lowest sixteen bits of this <code>int</code> are used.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeUnsignedShort(int data)
+            throws IOException
+    {
+        writeUnsignedShort(data, bigEndian);
+    }
+
+    /**
+     * Writes an unsigned <code>short</code> in the specified endian format.
+     *
+     * @param data      The value to write.  The lowest sixteen bits of this <code>int</code> are used.
+     * @param bigEndian The endian format in which to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeUnsignedShort(int data, boolean bigEndian)
+            throws IOException
+    {
+        prepare(2, bigEndian).putShort((short) data);
+    }
+
+    /**
+     * Writes an <code>int</code> as a variable of the specified number of bytes in the default endian format for this
+     * writer.  Sign is not preserved.
+     *
+     * @param data  The value to write.
+     * @param bytes The number of bytes in which to write it.  If this value exceeds the size of the variable, zeroes
+     *              are used as padding.  If this value is less than the size of the variable, the higher order bytes
+     *              are ignored.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeUnsignedInteger(int data, int bytes)
+            throws IOException
+    {
+        writeUnsignedInteger(data, bytes, bigEndian);
+    }
+
+    /**
+     * Writes an <code>int</code> as a variable of the specified number of bytes in the specified endian format.  Sign
+     * is not preserved.
+     *
+     * @param data      The value to write.
+     * @param bytes     The number of bytes in which to write it.  If this value exceeds the size of the variable,
+     *                  zeroes are used as padding.  If this value is less than the size of the variable, the higher
+     *                  order bytes are ignored.
+     * @param bigEndian The endian format in which to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeUnsignedInteger(int data, int bytes, boolean bigEndian)
+            throws IOException
+    {
+        writeLongInteger(data & 0xFFFFFFFFL, bytes, bigEndian);
+    }
+
+    /**
+     * Writes an <code>int</code> as a variable of the specified number of bytes in the default endian format for this
+     * writer.  Sign is preserved.
+     *
+     * @param data  The value to write.
+     * @param bytes The number of bytes in which to write it.  If this value exceeds the size of the variable, the sign
+     *              bit is used as padding.  If this value is less than the size of the variable, the higher order
+     *              bytes are ignored.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeSignedInteger(int data, int bytes)
+            throws IOException
+    {
+        writeSignedInteger(data, bytes, bigEndian);
+    }
+
+    /**
+     * Writes an <code>int</code> as a variable of the specified number of bytes in the specified endian format.  Sign
+     * is preserved.
+     *
+     * @param data      The value to write.
+     * @param bytes     The number of bytes in which to write it.  If this value exceeds the size of the variable,
+     *                  the sign bit is used as padding.  If this value is less than the size of the variable, the
+     *                  higher order bytes are ignored.
+     * @param bigEndian The endian format in which to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeSignedInteger(int data, int bytes, boolean bigEndian)
+            throws IOException
+    {
+        writeLongInteger(data, bytes, bigEndian);
+    }
+
+    /**
+     * Writes a <code>long</code> as a variable of the specified number of bytes in the default endian format for this
+     * writer.  Sign is preserved.
+     *
+     * @param data  The value to write.
+     * @param bytes The number of bytes in which to write it.  If this value exceeds the size of the variable, the sign
+     *              bit is used as padding.  If this value is less than the size of the variable, the higher order
+     *              bytes are ignored.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeSignedLongInteger(long data, int bytes)
+            throws IOException
+    {
+        writeLongInteger(data, bytes, bigEndian);
+    }
+
+    /**
+     * Writes a <code>long</code> as a variable of the specified number of bytes in the specified endian format.  Sign
+     * is preserved.
+     *
+     * @param data      The value to write.
+     * @param bytes     The number of bytes in which to write it.  If this value exceeds the size of the variable,
+     *                  the sign bit is used as padding.  If this value is less than the size of the variable, the
+     *                  higher order bytes are ignored.
+     * @param bigEndian The endian format in which to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeSignedLongInteger(long data, int bytes, boolean bigEndian)
+            throws IOException
+    {
+        writeLongInteger(data, bytes, bigEndian);
+    }
+
+    /**
+     * Writes an array of <code>short</code>s in the default endian format for this writer.
+     *
+     * @param data   The array containing the values to write.
+     * @param offset The index of the first value to write.
+     * @param length The number of values to write.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void writeShorts(short[] data, int offset, int length)
+            throws IOException
+    {
+        writeShorts(data, offset, length, bigEndian);
+    }
+
+    /**
+     * Writes an array of <code>short</code>s in the specified endian format.
+     *
+     * @param data      The array containing the values to write.
+     * @param offset    The index of the first value to write.
+     * @param length    The number of values to write.
+     * @param bigEndian The endian format in which to write.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void writeShorts(short[] data, int offset, int length, boolean bigEndian)
+            throws IOException
+    {
+        checkRange(data.length, offset, length);
+        while (length > 0)
+        {
+            int count = Math.min(length, buffer.capacity() / 2);
+            prepare(count * 2, bigEndian).asShortBuffer().put(data, offset, count);
+            buffer.position(buffer.position() + count * 2);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Writes an array of <code>int</code>s in the default endian format for this writer.
+     *
+     * @param data   The array containing the values to write.
+     * @param offset The index of the first value to write.
+     * @param length The number of values to write.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void writeInts(int[] data, int offset, int length)
+            throws IOException
+    {
+        writeInts(data, offset, length, bigEndian);
+    }
+
+    /**
+     * Writes an array of <code>int</code>s in the specified endian format.
+     *
+     * @param data      The array containing the values to write.
+     * @param offset    The index of the first value to write.
+     * @param length    The number of values to write.
+     * @param bigEndian The endian format in which to write.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void writeInts(int[] data, int offset, int length, boolean bigEndian)
+            throws IOException
+    {
+        checkRange(data.length, offset, length);
+        while (length > 0)
+        {
+            int count = Math.min(length, buffer.capacity() / 4);
+            prepare(count * 4, bigEndian).asIntBuffer().put(data, offset, count);
+            buffer.position(buffer.position() + count * 4);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Writes an array of <code>long</code>s in the default endian format for this writer.
+     *
+     * @param data   The array containing the values to write.
+     * @param offset The index of the first value to write.
+     * @param length The number of values to write.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void writeLongs(long[] data, int offset, int length)
+            throws IOException
+    {
+        writeLongs(data, offset, length, bigEndian);
+    }
+
+    /**
+     * Writes an array of <code>long</code>s in the specified endian format.
+     *
+     * @param data      The array containing the values to write.
+     * @param offset    The index of the first value to write.
+     * @param length    The number of values to write.
+     * @param bigEndian The endian format in which to write.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void writeLongs(long[] data, int offset, int length, boolean bigEndian)
+            throws IOException
+    {
+        checkRange(data.length, offset, length);
+        while (length > 0)
+        {
+            int count = Math.min(length, buffer.capacity() / 8);
+            prepare(count * 8, bigEndian).asLongBuffer().put(data, offset, count);
+            buffer.position(buffer.position() + count * 8);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Writes an array of <code>float</code>s in the default endian format for this writer.
+     *
+     * @param data   The array containing the values to write.
+     * @param offset The index of the first value to write.
+     * @param length The number of values to write.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void writeFloats(float[] data, int offset, int length)
+            throws IOException
+    {
+        writeFloats(data, offset, length, bigEndian);
+    }
+
+    /**
+     * Writes an array of <code>float</code>s in the specified endian format.
+     *
+     * @param data      The array containing the values to write.
+     * @param offset    The index of the first value to write.
+     * @param length    The number of values to write.
+     * @param bigEndian The endian format in which to write.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void writeFloats(float[] data, int offset, int length, boolean bigEndian)
+            throws IOException
+    {
+        checkRange(data.length, offset, length);
+        while (length > 0)
+        {
+            int count = Math.min(length, buffer.capacity() / 4);
+            prepare(count * 4, bigEndian).asFloatBuffer().put(data, offset, count);
+            buffer.position(buffer.position() + count * 4);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Writes an array of <code>double</code>s in the default endian format for this writer.
+     *
+     * @param data   The array containing the values to write.
+     * @param offset The index of the first value to write.
+     * @param length The number of values to write.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void writeDoubles(double[] data, int offset, int length)
+            throws IOException
+    {
+        writeDoubles(data, offset, length, bigEndian);
+    }
+
+    /**
+     * Writes an array of <code>double</code>s in the specified endian format.
+     *
+     * @param data      The array containing the values to write.
+     * @param offset    The index of the first value to write.
+     * @param length    The number of values to write.
+     * @param bigEndian The endian format in which to write.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void writeDoubles(double[] data, int offset, int length, boolean bigEndian)
+            throws IOException
+    {
+        checkRange(data.length, offset, length);
+        while (length > 0)
+        {
+            int count = Math.min(length, buffer.capacity() / 8);
+            prepare(count * 8, bigEndian).asDoubleBuffer().put(data, offset, count);
+            buffer.position(buffer.position() + count * 8);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Writes the provided {@link BigInteger} in its smallest big endian bytewise representation, prefixed with an
+     * <code>int</code> which describes its length.
+     *
+     * @param bi The {@link BigInteger} to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeBigInteger(BigInteger bi)
+            throws IOException
+    {
+        byte[] biBytes = bi.toByteArray();
+        writeInt(biBytes.length);
+        write(biBytes);
+    }
+
+    /**
+     * Writes the provided {@link String} in the platform's default encoding, prefixed with an <code>int</code> which
+     * describes its length in bytes.
+     *
+     * @param string The {@link String} to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeString(String string)
+            throws IOException
+    {
+        byte[] data = string.getBytes();
+        writeInt(data.length);
+        write(data);
+    }
+
+    /**
+     * Writes a sign-extended value as a variable of the specified number of bytes.
+     *
+     * @param data      The value to write.
+     * @param bytes     The number of bytes in which to write it.
+     * @param bigEndian The endian format in which to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    protected void writeLongInteger(long data, int bytes, boolean bigEndian)
+            throws IOException
+    {
+        for (int i = 0; i < bytes; i++)
+        {
+            int shift = (bigEndian ? bytes - i - 1 : i) * 8;
+            write((int) (data >> Math.min(shift, 63)));
+        }
+    }
+
+    /**
+     * Ensures that the buffer has room for the specified number of bytes and sets its byte order.
+     *
+     * @param length    The number of bytes required.  This may not exceed the capacity of the buffer.
+     * @param bigEndian The endian format in which the bytes will be encoded.
+     * @return The buffer, positioned at the first free byte.
+     * @throws IOException If an I/O error occurs while flushing.
+     */
+    protected ByteBuffer prepare(int length, boolean bigEndian)
+            throws IOException
+    {
+        if (buffer.remaining() < length) flush();
+        return buffer.order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Writes from the provided buffer to the channel, using a positional write if appropriate.
+     *
+     * @param source The buffer from which to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    protected void writeChannel(ByteBuffer source)
+            throws IOException
+    {
+        drainPosition += (fileChannel == null) ? channel.write(source) : fileChannel.write(source, drainPosition);
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+    /**
+     * Ensures that the specified range lies within an array.
+     *
+     * @param arrayLength The length of the array.
+     * @param offset      The first index of the range.
+     * @param length      The length of the range.
+     * @throws IndexOutOfBoundsException If the range does not lie within the array.
+     */
+    private static void checkRange(int arrayLength, int offset, int length)
+            throws IndexOutOfBoundsException
+    {
+        if ((offset < 0) || (length < 0) || (offset > arrayLength - length))
+        {
+            throw new IndexOutOfBoundsException(
+                    "Range [" + offset + ", " + offset + "+" + length + ") invalid for array of length " + arrayLength);
+        }
+    }
+}
+
+// END OF FILE
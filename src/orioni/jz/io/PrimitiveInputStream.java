@@ -1,9 +1,12 @@
 package orioni.jz.io;
 
+import java.io.BufferedInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * This class is designed to allow the reading of primitive values from an input stream.  This is accomplished by
@@ -11,7 +14,11 @@ import java.math.BigInteger;
  * endian form of the data is specified on construction but can be overridden on each method call.
  * <p/>
  * This class is similar to {@link java.io.DataInputStream} except in that it allows for streams to be read in either
- * endian form.
+ * endian form.  Each primitive is read from the underlying stream with a single bulk read into an internal buffer and
+ * decoded from there; arrays of primitives may be read at once with methods such as {@link #readInts(int[], int, int,
+ * boolean)}.  By default, this stream never reads more data from the underlying stream than is required.  If a buffer
+ * size is provided on construction, data is instead read ahead in blocks of that size, which is considerably faster
+ * for unbuffered sources such as files and sockets.
  *
  * @author Zachary Palmer
  */
@@ -32,6 +39,11 @@ public class PrimitiveInputStream extends InputStream
      */
     public static final boolean LITTLE_ENDIAN = false;
 
+    /**
+     * The largest number of bytes which will be read into the internal buffer at once by the bulk read methods.
+     */
+    private static final int BULK_BUFFER_SIZE = 8192;
+
 // NON-STATIC FIELDS /////////////////////////////////////////////////////////////
 
     /**
@@ -42,6 +54,18 @@ public class PrimitiveInputStream extends InputStream
      * The default endian format.
      */
     protected boolean bigEndian;
+    /**
+     * The buffer into which encoded primitives are read before they are decoded.
+     */
+    protected byte[] buffer;
+    /**
+     * A big-endian view of the buffer.
+     */
+    protected ByteBuffer bigEndianView;
+    /**
+     * A little-endian view of the buffer.
+     */
+    protected ByteBuffer littleEndianView;
 
 // CONSTRUCTORS //////////////////////////////////////////////////////////////////
 
@@ -53,10 +77,26 @@ public class PrimitiveInputStream extends InputStream
      *                    may also use one of the <code>XXX_ENDIAN</code> constants on this class.
      */
     public PrimitiveInputStream(InputStream inputStream, boolean bigEndian)
+    {
+        this(inputStream, bigEndian, 0);
+    }
+
+    /**
+     * Buffering constructor.
+     *
+     * @param inputStream The underlying input stream from which data should be read.
+     * @param bigEndian   Whether or not the underlying input stream should be read in big endian form by default.  You
+     *                    may also use one of the <code>XXX_ENDIAN</code> constants on this class.
+     * @param bufferSize  The number of bytes to read ahead from the underlying stream at once, or <code>0</code> if no
+     *                    data should be read ahead.  If data is read ahead, the underlying stream should not be read
+     *                    directly once this stream has been used.
+     */
+    public PrimitiveInputStream(InputStream inputStream, boolean bigEndian, int bufferSize)
     {
         super();
-        this.inputStream = inputStream;
+        this.inputStream = (bufferSize > 0) ? new BufferedInputStream(inputStream, bufferSize) : inputStream;
         this.bigEndian = bigEndian;
+        allocateBuffer(8);
     }
 
 // NON-STATIC METHODS ////////////////////////////////////////////////////////////
@@ -285,17 +325,7 @@ public class PrimitiveInputStream extends InputStream
     public short readShort(boolean bigEndian)
             throws IOException
     {
-        // avoid the use of arrays
-        int first = read();
-        int second = read();
-        if ((first == -1) || (second == -1)) throw new EOFException("Not enough data in the stream to perform read.");
-        if (bigEndian)
-        {
-            return (short) (((first & 0xFF) << 8) | (second & 0xFF));
-        } else
-        {
-            return (short) (((second & 0xFF) << 8) | (first & 0xFF));
-        }
+        return readEncoded(2, bigEndian).getShort(0);
     }
 
     /**
@@ -346,21 +376,7 @@ public class PrimitiveInputStream extends InputStream
     public int readInt(boolean bigEndian)
             throws IOException
     {
-        int first = read();
-        int second = read();
-        int third = read();
-        int fourth = read();
-        if ((first == -1) || (second == -1) || (third == -1) || (fourth == -1))
-        {
-            throw new EOFException("Not enough data in the stream to perform read.");
-        }
-        if (bigEndian)
-        {
-            return ((first & 0xFF) << 24) | ((second & 0xFF) << 16) | ((third & 0xFF) << 8) | (fourth & 0xFF);
-        } else
-        {
-            return ((fourth & 0xFF) << 24) | ((third & 0xFF) << 16) | ((second & 0xFF) << 8) | (first & 0xFF);
-        }
+        return readEncoded(4, bigEndian).getInt(0);
     }
 
     /**
@@ -386,30 +402,7 @@ public class PrimitiveInputStream extends InputStream
     public long readLong(boolean bigEndian)
             throws IOException
     {
-        int first = read();
-        int second = read();
-        int third = read();
-        int fourth = read();
-        int fifth = read();
-        int sixth = read();
-        int seventh = read();
-        int eighth = read();
-        if ((first == -1) || (second == -1) || (third == -1) || (fourth == -1) || (fifth == -1) || (sixth == -1) ||
-            (seventh == -1) || (eighth == -1))
-        {
-            throw new EOFException("Not enough data in the stream to perform read.");
-        }
-        if (bigEndian)
-        {
-            return ((first & 0xFFL) << 56) | ((second & 0xFFL) << 48) | ((third & 0xFFL) << 40) |
-                   ((fourth & 0xFFL) << 32) | ((fifth & 0xFFL) << 24) | ((sixth & 0xFF) << 16) |
-                   ((seventh & 0xFF) << 8) | (eighth & 0xFF);
-        } else
-        {
-            return ((eighth & 0xFFL) << 56) | ((seventh & 0xFFL) << 48) | ((sixth & 0xFFL) << 40) |
-                   ((fifth & 0xFFL) << 32) | ((fourth & 0xFF) << 24) | ((third & 0xFF) << 16) | ((second & 0xFF) << 8) |
-                   (first & 0xFF);
-        }
+        return readEncoded(8, bigEndian).getLong(0);
     }
 
     /**
@@ -531,9 +524,7 @@ public class PrimitiveInputStream extends InputStream
     public int readUnsignedInteger(int bytes, boolean bigEndian)
             throws IOException
     {
-        byte[] buffer = new byte[bytes];
-        int bufferRead = inputStream.read(buffer);
-        if (bufferRead < buffer.length) throw new EOFException("Not enough data in the stream to perform read.");
+        readEncoded(bytes, bigEndian);
         if (bigEndian)
         {
             switch (bytes)
@@ -547,9 +538,9 @@ public class PrimitiveInputStream extends InputStream
                 case 3:
                     return (buffer[0] & 0xFF) << 16 | (buffer[1] & 0xFF) << 8 | (buffer[2] & 0xFF);
                 default:
-                    return (buffer[buffer.length - 4] & 0xFF) << 24 | (buffer[buffer.length - 3] & 0xFF) << 16 |
-                           (buffer[buffer.length - 2] & 0xFF) << 8 |
-                           (buffer[buffer.length - 1] & 0xFF);
+                    return (buffer[bytes - 4] & 0xFF) << 24 | (buffer[bytes - 3] & 0xFF) << 16 |
+                           (buffer[bytes - 2] & 0xFF) << 8 |
+                           (buffer[bytes - 1] & 0xFF);
             }
         } else
         {
@@ -598,9 +589,7 @@ public class PrimitiveInputStream extends InputStream
             throws IOException
     {
         long ret = 0;
-        byte[] buffer = new byte[bytes];
-        int bufferRead = inputStream.read(buffer);
-        if (bufferRead < buffer.length) throw new EOFException("Not enough data in the stream to perform read.");
+        readEncoded(bytes, bigEndian);
         int bufferIndex = 0;
         if (bigEndian)
         {
@@ -615,7 +604,7 @@ public class PrimitiveInputStream extends InputStream
             int bits = 0;
             while ((bytes > 0) && (bits < 64))
             {
-                ret |= ((buffer[bufferIndex++] & 0xFF) << bits);
+                ret |= ((buffer[bufferIndex++] & 0xFFL) << bits);
                 bits += 8;
                 bytes--;
             }
@@ -665,7 +654,7 @@ public class PrimitiveInputStream extends InputStream
     public long readSignedLongInteger(int bytes)
             throws IOException
     {
-        return readUnsignedLongInteger(bytes, bigEndian);
+        return readSignedLongInteger(bytes, bigEndian);
     }
 
     /**
@@ -685,6 +674,206 @@ public class PrimitiveInputStream extends InputStream
         return ret;
     }
 
+    /**
+     * Reads an array of <code>short</code>s from the underlying stream in the default endian format for this stream.
+     *
+     * @param data   The array into which to read the values.
+     * @param offset The index of the first value to read.
+     * @param length The number of values to read.
+     * @throws EOFException              If the stream is exhausted before the read is completed.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void readShorts(short[] data, int offset, int length)
+            throws IOException
+    {
+        readShorts(data, offset, length, bigEndian);
+    }
+
+    /**
+     * Reads an array of <code>short</code>s from the underlying stream in the specified endian format.
+     *
+     * @param data      The array into which to read the values.
+     * @param offset    The index of the first value to read.
+     * @param length    The number of values to read.
+     * @param bigEndian The endian format in which to read.
+     * @throws EOFException              If the stream is exhausted before the read is completed.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void readShorts(short[] data, int offset, int length, boolean bigEndian)
+            throws IOException
+    {
+        checkRange(data.length, offset, length);
+        while (length > 0)
+        {
+            int count = Math.min(length, BULK_BUFFER_SIZE / 2);
+            readEncoded(count * 2, bigEndian).asShortBuffer().get(data, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Reads an array of <code>int</code>s from the underlying stream in the default endian format for this stream.
+     *
+     * @param data   The array into which to read the values.
+     * @param offset The index of the first value to read.
+     * @param length The number of values to read.
+     * @throws EOFException              If the stream is exhausted before the read is completed.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void readInts(int[] data, int offset, int length)
+            throws IOException
+    {
+        readInts(data, offset, length, bigEndian);
+    }
+
+    /**
+     * Reads an array of <code>int</code>s from the underlying stream in the specified endian format.
+     *
+     * @param data      The array into which to read the values.
+     * @param offset    The index of the first value to read.
+     * @param length    The number of values to read.
+     * @param bigEndian The endian format in which to read.
+     * @throws EOFException              If the stream is exhausted before the read is completed.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void readInts(int[] data, int offset, int length, boolean bigEndian)
+            throws IOException
+    {
+        checkRange(data.length, offset, length);
+        while (length > 0)
+        {
+            int count = Math.min(length, BULK_BUFFER_SIZE / 4);
+            readEncoded(count * 4, bigEndian).asIntBuffer().get(data, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Reads an array of <code>long</code>s from the underlying stream in the default endian format for this stream.
+     *
+     * @param data   The array into which to read the values.
+     * @param offset The index of the first value to read.
+     * @param length The number of values to read.
+     * @throws EOFException              If the stream is exhausted before the read is completed.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void readLongs(long[] data, int offset, int length)
+            throws IOException
+    {
+        readLongs(data, offset, length, bigEndian);
+    }
+
+    /**
+     * Reads an array of <code>long</code>s from the underlying stream in the specified endian format.
+     *
+     * @param data      The array into which to read the values.
+     * @param offset    The index of the first value to read.
+     * @param length    The number of values to read.
+     * @param bigEndian The endian format in which to read.
+     * @throws EOFException              If the stream is exhausted before the read is completed.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void readLongs(long[] data, int offset, int length, boolean bigEndian)
+            throws IOException
+    {
+        checkRange(data.length, offset, length);
+        while (length > 0)
+        {
+            int count = Math.min(length, BULK_BUFFER_SIZE / 8);
+            readEncoded(count * 8, bigEndian).asLongBuffer().get(data, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Reads an array of <code>float</code>s from the underlying stream in the default endian format for this stream.
+     *
+     * @param data   The array into which to read the values.
+     * @param offset The index of the first value to read.
+     * @param length The number of values to read.
+     * @throws EOFException              If the stream is exhausted before the read is completed.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void readFloats(float[] data, int offset, int length)
+            throws IOException
+    {
+        readFloats(data, offset, length, bigEndian);
+    }
+
+    /**
+     * Reads an array of <code>float</code>s from the underlying stream in the specified endian format.
+     *
+     * @param data      The array into which to read the values.
+     * @param offset    The index of the first value to read.
+     * @param length    The number of values to read.
+     * @param bigEndian The endian format in which to read.
+     * @throws EOFException              If the stream is exhausted before the read is completed.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void readFloats(float[] data, int offset, int length, boolean bigEndian)
+            throws IOException
+    {
+        checkRange(data.length, offset, length);
+        while (length > 0)
+        {
+            int count = Math.min(length, BULK_BUFFER_SIZE / 4);
+            readEncoded(count * 4, bigEndian).asFloatBuffer().get(data, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Reads an array of <code>double</code>s from the underlying stream in the default endian format for this stream.
+     *
+     * @param data   The array into which to read the values.
+     * @param offset The index of the first value to read.
+     * @param length The number of values to read.
+     * @throws EOFException              If the stream is exhausted before the read is completed.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void readDoubles(double[] data, int offset, int length)
+            throws IOException
+    {
+        readDoubles(data, offset, length, bigEndian);
+    }
+
+    /**
+     * Reads an array of <code>double</code>s from the underlying stream in the specified endian format.
+     *
+     * @param data      The array into which to read the values.
+     * @param offset    The index of the first value to read.
+     * @param length    The number of values to read.
+     * @param bigEndian The endian format in which to read.
+     * @throws EOFException              If the stream is exhausted before the read is completed.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void readDoubles(double[] data, int offset, int length, boolean bigEndian)
+            throws IOException
+    {
+        checkRange(data.length, offset, length);
+        while (length > 0)
+        {
+            int count = Math.min(length, BULK_BUFFER_SIZE / 8);
+            readEncoded(count * 8, bigEndian).asDoubleBuffer().get(data, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
     /**
      * Reads a {@link BigInteger} from the underlying stream.  The {@link BigInteger} is assumed to be prefixed with an
      * <code>int</code> describing the length of its smallest possible <code>byte[]</code> representation; that
@@ -727,8 +916,61 @@ public class PrimitiveInputStream extends InputStream
         }
     }
 
+    /**
+     * Reads the specified number of bytes into the beginning of the internal buffer.
+     *
+     * @param length    The number of bytes to read.
+     * @param bigEndian The endian format in which the bytes will be decoded.
+     * @return A view of the internal buffer in the specified endian format.
+     * @throws EOFException If the stream is exhausted before the read is completed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    protected ByteBuffer readEncoded(int length, boolean bigEndian)
+            throws IOException
+    {
+        if (length > buffer.length) allocateBuffer(length);
+        int offset = 0;
+        while (offset < length)
+        {
+            int read = inputStream.read(buffer, offset, length - offset);
+            if (read == -1) throw new EOFException("Not enough data in the stream to perform read.");
+            offset += read;
+        }
+        return bigEndian ? bigEndianView : littleEndianView;
+    }
+
+    /**
+     * Replaces the internal buffer with one of the specified size.
+     *
+     * @param size The size of the new buffer.
+     */
+    private void allocateBuffer(int size)
+    {
+        buffer = new byte[size];
+        bigEndianView = ByteBuffer.wrap(buffer).order(ByteOrder.BIG_ENDIAN);
+        littleEndianView = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
 // STATIC METHODS ////////////////////////////////////////////////////////////////
 
+    /**
+     * Ensures that the specified range lies within an array.
+     *
+     * @param arrayLength The length of the array.
+     * @param offset      The first index of the range.
+     * @param length      The length of the range.
+     * @throws IndexOutOfBoundsException If the range does not lie within the array.
+     */
+    private static void checkRange(int arrayLength, int offset, int length)
+            throws IndexOutOfBoundsException
+    {
+        if ((offset < 0) || (length < 0) || (offset > arrayLength - length))
+        {
+            throw new IndexOutOfBoundsException(
+                    "Range [" + offset + ", " + offset + "+" + length + ") invalid for array of length " + arrayLength);
+        }
+    }
+
 }
 
 // END OF FILE
\ No newline at end of file
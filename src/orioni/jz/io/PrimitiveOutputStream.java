@@ -1,8 +1,11 @@
 package orioni.jz.io;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * This class is designed to allow the writing of primitive values to an output stream.  This is accomplished by
@@ -10,7 +13,12 @@ import java.math.BigInteger;
  * the data is specified on construction but can be overridden on each method call.
  * <p/>
  * This class is similar to {@link java.io.DataOutputStream} except in that it allows for streams to be written in
- * either endian form.
+ * either endian form.  Each primitive is encoded into an internal buffer and written to the underlying stream with a
+ * single bulk write; arrays of primitives may be written at once with methods such as {@link #writeInts(int[], int,
+ * int, boolean)}.  By default, every write is passed to the underlying stream immediately.  If a buffer size is
+ * provided on construction, data is instead collected into blocks of that size, which is considerably faster for
+ * unbuffered targets such as files and sockets; such a stream must be flushed or closed to ensure that all data
+ * reaches the underlying stream.
  *
  * @author Zachary Palmer
  */
@@ -31,6 +39,11 @@ public class PrimitiveOutputStream extends OutputStream
      */
     public static final boolean LITTLE_ENDIAN = false;
 
+    /**
+     * The largest number of bytes which will be encoded into the internal buffer at once by the bulk write methods.
+     */
+    private static final int BULK_BUFFER_SIZE = 8192;
+
 // NON-STATIC FIELDS /////////////////////////////////////////////////////////////
 
     /**
@@ -41,6 +54,18 @@ public class PrimitiveOutputStream extends OutputStream
      * The default endian format.
      */
     protected boolean bigEndian;
+    /**
+     * The buffer into which primitives are encoded before they are written.
+     */
+    protected byte[] buffer;
+    /**
+     * A big-endian view of the buffer.
+     */
+    protected ByteBuffer bigEndianView;
+    /**
+     * A little-endian view of the buffer.
+     */
+    protected ByteBuffer littleEndianView;
 
 // CONSTRUCTORS //////////////////////////////////////////////////////////////////
 
@@ -52,10 +77,25 @@ public class PrimitiveOutputStream extends OutputStream
      *                      You may also use one of the <code>XXX_ENDIAN</code> constants on this class.
      */
     public PrimitiveOutputStream(OutputStream outputStream, boolean bigEndian)
+    {
+        this(outputStream, bigEndian, 0);
+    }
+
+    /**
+     * Buffering constructor.
+     *
+     * @param outputStream The underlying output stream to which data should be written.
+     * @param bigEndian    Whether or not the underlying output stream should be written in big endian form by default.
+     *                     You may also use one of the <code>XXX_ENDIAN</code> constants on this class.
+     * @param bufferSize   The number of bytes to collect before writing to the underlying stream, or <code>0</code> if
+     *                     writes should be passed to the underlying stream immediately.
+     */
+    public PrimitiveOutputStream(OutputStream outputStream, boolean bigEndian, int bufferSize)
     {
         super();
-        this.outputStream = outputStream;
+        this.outputStream = (bufferSize > 0) ? new BufferedOutputStream(outputStream, bufferSize) : outputStream;
         this.bigEndian = bigEndian;
+        allocateBuffer(8);
     }
 
 // NON-STATIC METHODS ////////////////////////////////////////////////////////////
@@ -73,10 +113,14 @@ public class PrimitiveOutputStream extends OutputStream
     }
 
     /**
-     * Does nothing.  Writes to this stream are automatically flushed.
+     * Flushes any buffered data to the underlying stream and flushes the underlying stream.
+     *
+     * @throws IOException If an I/O error occurs.
      */
     public void flush()
+            throws IOException
     {
+        outputStream.flush();
     }
 
     /**
@@ -143,17 +187,8 @@ public class PrimitiveOutputStream extends OutputStream
     public void writeShort(short data, boolean bigEndian)
             throws IOException
     {
-        byte[] out = new byte[2];
-        if (bigEndian)
-        {
-            out[0] = (byte) (data >>> 8);
-            out[1] = (byte) (data);
-        } else
-        {
-            out[0] = (byte) (data);
-            out[1] = (byte) (data >>> 8);
-        }
-        outputStream.write(out);
+        encodingView(2, bigEndian).putShort(0, data);
+        outputStream.write(buffer, 0, 2);
     }
 
     /**
@@ -203,24 +238,8 @@ public class PrimitiveOutputStream extends OutputStream
     public void writeInt(int data, boolean bigEndian)
             throws IOException
     {
-        byte[] out = new byte[4];
-        int shift = 0;
-        if (bigEndian)
-        {
-            for (int i = out.length - 1; i >= 0; i--)
-            {
-                out[i] = (byte) (data >>> shift);
-                shift += 8;
-            }
-        } else
-        {
-            for (int i = 0; i < out.length; i++)
-            {
-                out[i] = (byte) (data >>> shift);
-                shift += 8;
-            }
-        }
-        outputStream.write(out);
+        encodingView(4, bigEndian).putInt(0, data);
+        outputStream.write(buffer, 0, 4);
     }
 
     /**
@@ -245,24 +264,8 @@ public class PrimitiveOutputStream extends OutputStream
     public void writeLong(long data, boolean bigEndian)
             throws IOException
     {
-        byte[] out = new byte[8];
-        int shift = 0;
-        if (bigEndian)
-        {
-            for (int i = out.length - 1; i >= 0; i--)
-            {
-                out[i] = (byte) (data >>> shift);
-                shift += 8;
-            }
-        } else
-        {
-            for (int i = 0; i < out.length; i++)
-            {
-                out[i] = (byte) (data >>> shift);
-                shift += 8;
-            }
-        }
-        outputStream.write(out);
+        encodingView(8, bigEndian).putLong(0, data);
+        outputStream.write(buffer, 0, 8);
     }
 
     /**
@@ -375,17 +378,8 @@ public class PrimitiveOutputStream extends OutputStream
     public void writeUnsignedShort(int data, boolean bigEndian)
             throws IOException
     {
-        byte[] out = new byte[2];
-        if (bigEndian)
-        {
-            out[0] = (byte) (data >>> 8);
-            out[1] = (byte) (data);
-        } else
-        {
-            out[0] = (byte) (data);
-            out[1] = (byte) (data >>> 8);
-        }
-        outputStream.write(out);
+        encodingView(2, bigEndian).putShort(0, (short) data);
+        outputStream.write(buffer, 0, 2);
     }
 
     /**
@@ -416,7 +410,7 @@ public class PrimitiveOutputStream extends OutputStream
     public void writeUnsignedInteger(int data, int bytes, boolean bigEndian)
             throws IOException
     {
-        byte[] out = new byte[bytes];
+        byte[] out = encodingBuffer(bytes);
         if (bigEndian)
         {
             for (int i = 0; i < bytes; i++)
@@ -430,7 +424,7 @@ public class PrimitiveOutputStream extends OutputStream
                 out[i] = (byte) (data >>> i * 8);
             }
         }
-        outputStream.write(out);
+        outputStream.write(out, 0, bytes);
     }
 
     /**
@@ -461,10 +455,10 @@ public class PrimitiveOutputStream extends OutputStream
     public void writeSignedInteger(int data, int bytes, boolean bigEndian)
             throws IOException
     {
-        byte[] out = new byte[bytes];
+        byte[] out = encodingBuffer(bytes);
         if (data < 0)
         {
-            for (int i = 0; i < out.length; i++)
+            for (int i = 0; i < bytes; i++)
             {
                 out[i] = (byte) (0xFF);
             }
@@ -482,7 +476,202 @@ public class PrimitiveOutputStream extends OutputStream
                 out[i] = (byte) (data >>> i * 8);
             }
         }
-        outputStream.write(out);
+        outputStream.write(out, 0, bytes);
+    }
+
+    /**
+     * Writes an array of <code>short</code>s to the underlying stream in the default endian format for this stream.
+     *
+     * @param data   The array containing the values to write.
+     * @param offset The index of the first value to write.
+     * @param length The number of values to write.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void writeShorts(short[] data, int offset, int length)
+            throws IOException
+    {
+        writeShorts(data, offset, length, bigEndian);
+    }
+
+    /**
+     * Writes an array of <code>short</code>s to the underlying stream in the specified endian format.
+     *
+     * @param data      The array containing the values to write.
+     * @param offset    The index of the first value to write.
+     * @param length    The number of values to write.
+     * @param bigEndian The endian format in which to write.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void writeShorts(short[] data, int offset, int length, boolean bigEndian)
+            throws IOException
+    {
+        checkRange(data.length, offset, length);
+        while (length > 0)
+        {
+            int count = Math.min(length, BULK_BUFFER_SIZE / 2);
+            encodingView(count * 2, bigEndian).asShortBuffer().put(data, offset, count);
+            outputStream.write(buffer, 0, count * 2);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Writes an array of <code>int</code>s to the underlying stream in the default endian format for this stream.
+     *
+     * @param data   The array containing the values to write.
+     * @param offset The index of the first value to write.
+     * @param length The number of values to write.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void writeInts(int[] data, int offset, int length)
+            throws IOException
+    {
+        writeInts(data, offset, length, bigEndian);
+    }
+
+    /**
+     * Writes an array of <code>int</code>s to the underlying stream in the specified endian format.
+     *
+     * @param data      The array containing the values to write.
+     * @param offset    The index of the first value to write.
+     * @param length    The number of values to write.
+     * @param bigEndian The endian format in which to write.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void writeInts(int[] data, int offset, int length, boolean bigEndian)
+            throws IOException
+    {
+        checkRange(data.length, offset, length);
+        while (length > 0)
+        {
+            int count = Math.min(length, BULK_BUFFER_SIZE / 4);
+            encodingView(count * 4, bigEndian).asIntBuffer().put(data, offset, count);
+            outputStream.write(buffer, 0, count * 4);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Writes an array of <code>long</code>s to the underlying stream in the default endian format for this stream.
+     *
+     * @param data   The array containing the values to write.
+     * @param offset The index of the first value to write.
+     * @param length The number of values to write.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void writeLongs(long[] data, int offset, int length)
+            throws IOException
+    {
+        writeLongs(data, offset, length, bigEndian);
+    }
+
+    /**
+     * Writes an array of <code>long</code>s to the underlying stream in the specified endian format.
+     *
+     * @param data      The array containing the values to write.
+     * @param offset    The index of the first value to write.
+     * @param length    The number of values to write.
+     * @param bigEndian The endian format in which to write.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void writeLongs(long[] data, int offset, int length, boolean bigEndian)
+            throws IOException
+    {
+        checkRange(data.length, offset, length);
+        while (length > 0)
+        {
+            int count = Math.min(length, BULK_BUFFER_SIZE / 8);
+            encodingView(count * 8, bigEndian).asLongBuffer().put(data, offset, count);
+            outputStream.write(buffer, 0, count * 8);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Writes an array of <code>float</code>s to the underlying stream in the default endian format for this stream.
+     *
+     * @param data   The array containing the values to write.
+     * @param offset The index of the first value to write.
+     * @param length The number of values to write.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void writeFloats(float[] data, int offset, int length)
+            throws IOException
+    {
+        writeFloats(data, offset, length, bigEndian);
+    }
+
+    /**
+     * Writes an array of <code>float</code>s to the underlying stream in the specified endian format.
+     *
+     * @param data      The array containing the values to write.
+     * @param offset    The index of the first value to write.
+     * @param length    The number of values to write.
+     * @param bigEndian The endian format in which to write.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void writeFloats(float[] data, int offset, int length, boolean bigEndian)
+            throws IOException
+    {
+        checkRange(data.length, offset, length);
+        while (length > 0)
+        {
+            int count = Math.min(length, BULK_BUFFER_SIZE / 4);
+            encodingView(count * 4, bigEndian).asFloatBuffer().put(data, offset, count);
+            outputStream.write(buffer, 0, count * 4);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Writes an array of <code>double</code>s to the underlying stream in the default endian format for this stream.
+     *
+     * @param data   The array containing the values to write.
+     * @param offset The index of the first value to write.
+     * @param length The number of values to write.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void writeDoubles(double[] data, int offset, int length)
+            throws IOException
+    {
+        writeDoubles(data, offset, length, bigEndian);
+    }
+
+    /**
+     * Writes an array of <code>double</code>s to the underlying stream in the specified endian format.
+     *
+     * @param data      The array containing the values to write.
+     * @param offset    The index of the first value to write.
+     * @param length    The number of values to write.
+     * @param bigEndian The endian format in which to write.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void writeDoubles(double[] data, int offset, int length, boolean bigEndian)
+            throws IOException
+    {
+        checkRange(data.length, offset, length);
+        while (length > 0)
+        {
+            int count = Math.min(length, BULK_BUFFER_SIZE / 8);
+            encodingView(count * 8, bigEndian).asDoubleBuffer().put(data, offset, count);
+            outputStream.write(buffer, 0, count * 8);
+            offset += count;
+            length -= count;
+        }
     }
 
     /**
@@ -517,8 +706,63 @@ public class PrimitiveOutputStream extends OutputStream
         write(string.getBytes());
     }
 
+    /**
+     * Ensures that the internal buffer can hold the specified number of bytes.
+     *
+     * @param length The number of bytes.
+     * @return The internal buffer.
+     */
+    protected byte[] encodingBuffer(int length)
+    {
+        if (length > buffer.length) allocateBuffer(length);
+        return buffer;
+    }
+
+    /**
+     * Ensures that the internal buffer can hold the specified number of bytes and retrieves a view of it.
+     *
+     * @param length    The number of bytes.
+     * @param bigEndian The endian format in which the bytes will be encoded.
+     * @return A view of the internal buffer in the specified endian format.
+     */
+    protected ByteBuffer encodingView(int length, boolean bigEndian)
+    {
+        if (length > buffer.length) allocateBuffer(length);
+        return bigEndian ? bigEndianView : littleEndianView;
+    }
+
+    /**
+     * Replaces the internal buffer with one of the specified size.
+     *
+     * @param size The size of the new buffer.
+     */
+    private void allocateBuffer(int size)
+    {
+        buffer = new byte[size];
+        bigEndianView = ByteBuffer.wrap(buffer).order(ByteOrder.BIG_ENDIAN);
+        littleEndianView = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
 // STATIC METHODS ////////////////////////////////////////////////////////////////
 
+    /**
+     * Ensures that the specified range lies within an array.
+     *
+     * @param arrayLength The length of the array.
+     * @param offset      The first index of the range.
+     * @param length      The length of the range.
+     * @throws IndexOutOfBoundsException If the range does not lie within the array.
+     */
+    private static void checkRange(int arrayLength, int offset, int length)
+            throws IndexOutOfBoundsException
+    {
+        if ((offset < 0) || (length < 0) || (offset > arrayLength - length))
+        {
+            throw new IndexOutOfBoundsException(
+                    "Range [" + offset + ", " + offset + "+" + length + ") invalid for array of length " + arrayLength);
+        }
+    }
+
 }
 
 // END OF FILE
\ No newline at end of file
@@ -0,0 +1,181 @@
+package orioni.jz.io;
+
+/**
+ * This class records the lifetime and throughput of a pump such as a {@link StreamPump} or {@link ChannelPump}.  The
+ * pump's thread records the start of pumping, each block of data transferred, and the end of pumping; any other thread
+ * may read the statistics at any time.
+ * <p/>
+ * This class is threadsafe provided that only one thread records data at a time.
+ *
+ * @author Zachary Palmer
+ */
+public class PumpStatistics
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The number of bytes transferred.
+     */
+    protected volatile long bytesTransferred;
+    /**
+     * The number of transfer operations which moved at least one byte.
+     */
+    protected volatile long transferCount;
+    /**
+     * The time at which pumping started, in milliseconds since the epoch, or <code>-1</code> if pumping has not
+     * started.
+     */
+    protected volatile long startTime;
+    /**
+     * The time at which pumping finished, in milliseconds since the epoch, or <code>-1</code> if pumping has not
+     * finished.
+     */
+    protected volatile long finishTime;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * General constructor.
+     */
+    public PumpStatistics()
+    {
+        super();
+        bytesTransferred = 0;
+        transferCount = 0;
+        startTime = -1;
+        finishTime = -1;
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Records the start of pumping.  Any statistics from a previous run are discarded.
+     */
+    public void recordStart()
+    {
+        bytesTransferred = 0;
+        transferCount = 0;
+        finishTime = -1;
+        startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Records the transfer of a block of data.
+     *
+     * @param bytes The number of bytes transferred.
+     */
+    public void recordTransfer(long bytes)
+    {
+        if (bytes > 0)
+        {
+            bytesTransferred += bytes;
+            transferCount++;
+        }
+    }
+
+    /**
+     * Records the end of pumping.
+     */
+    public void recordFinish()
+    {
+        finishTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Retrieves the number of bytes transferred.
+     *
+     * @return The number of bytes transferred since pumping started.
+     */
+    public long getBytesTransferred()
+    {
+        return bytesTransferred;
+    }
+
+    /**
+     * Retrieves the number of transfer operations performed.
+     *
+     * @return The number of transfer operations which moved at least one byte since pumping started.
+     */
+    public long getTransferCount()
+    {
+        return transferCount;
+    }
+
+    /**
+     * Retrieves the time at which pumping started.
+     *
+     * @return The time at which pumping started, in milliseconds since the epoch, or <code>-1</code> if pumping has
+     *         not started.
+     */
+    public long getStartTime()
+    {
+        return startTime;
+    }
+
+    /**
+     * Retrieves the time at which pumping finished.
+     *
+     * @return The time at which pumping finished, in milliseconds since the epoch, or <code>-1</code> if pumping has
+     *         not finished.
+     */
+    public long getFinishTime()
+    {
+        return finishTime;
+    }
+
+    /**
+     * Determines whether or not pumping is in progress.
+     *
+     * @return <code>true</code> if pumping has started and not yet finished; <code>false</code> otherwise.
+     */
+    public boolean isActive()
+    {
+        return (startTime != -1) && (finishTime == -1);
+    }
+
+    /**
+     * Retrieves the lifetime of the pump.
+     *
+     * @return The number of milliseconds between the start of pumping and its end (or the present, if pumping has
+     *         not finished), or <code>0</code> if pumping has not started.
+     */
+    public long getElapsedTime()
+    {
+        long start = startTime;
+        if (start == -1) return 0;
+        long finish = finishTime;
+        return ((finish == -1) ? System.currentTimeMillis() : finish) - start;
+    }
+
+    /**
+     * Retrieves the average throughput of the pump over its lifetime.
+     *
+     * @return The number of bytes transferred per second, or <code>0</code> if no time has elapsed.
+     */
+    public double getThroughput()
+    {
+        long elapsed = getElapsedTime();
+        if (elapsed <= 0) return 0;
+        return bytesTransferred * 1000.0 / elapsed;
+    }
+
+    /**
+     * Produces a summary of these statistics.
+     *
+     * @return A human-readable summary of these statistics.
+     */
+    public String toString()
+    {
+        return bytesTransferred + " bytes in " + transferCount + " transfers over " + getElapsedTime() + "ms (" +
+               Math.round(getThroughput()) + " bytes/s)";
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+}
+
+// END OF FILE
@@ -2,11 +2,13 @@ package orioni.jz.io;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 
 /**
  * This class decodes a stream of input data from RLE format to uncompressed bytes.  The compressed RLE format is
  * discussed in the counterpart to this class, {@link RLEOutputStream}.  This stream may buffer up to 8K of compressed
- * data from the underlying stream.
+ * data from the underlying stream.  Array reads copy uncompressed bytes directly from that buffer and expand each
+ * compressed block with a single fill.
  *
  * @author Zachary Palmer
  */
@@ -16,6 +18,11 @@ public class RLEInputStream extends InputStream
 
 // CONSTANTS /////////////////////////////////////////////////////////////////////
 
+    /**
+     * The size of the buffer in which compressed data is held.
+     */
+    protected static final int BUFFER_SIZE = 8192;
+
 // NON-STATIC FIELDS /////////////////////////////////////////////////////////////
 
     /**
@@ -34,6 +41,18 @@ public class RLEInputStream extends InputStream
      * The underlying InputStream providing this stream with RLE data.
      */
     protected InputStream source;
+    /**
+     * The buffer holding compressed data from the underlying stream.
+     */
+    protected byte[] buffer;
+    /**
+     * The index of the next byte in the buffer.
+     */
+    protected int bufferPosition;
+    /**
+     * The number of valid bytes in the buffer.
+     */
+    protected int bufferLimit;
 
 // CONSTRUCTORS //////////////////////////////////////////////////////////////////
 
@@ -60,6 +79,9 @@ public class RLEInputStream extends InputStream
         this.signal = signal;
         data = 0;
         count = 0;
+        buffer = new byte[BUFFER_SIZE];
+        bufferPosition = 0;
+        bufferLimit = 0;
     }
 
 // NON-STATIC METHODS ////////////////////////////////////////////////////////////
@@ -77,25 +99,92 @@ public class RLEInputStream extends InputStream
         if (count > 0)
         {
             count--;
-            return data;
+            return data & 0xFF;
         }
         // Read the next byte and react appropriately.
-        int readData = source.read();
+        int readData = nextByte();
         if (readData == -1) return -1;
         if (readData != (signal & 0xFF)) return readData;
-        // A signal occurred.  Here we go...
-        int compressedBlockIndicator = source.read();
+        return readBlock();
+    }
+
+    /**
+     * Reads uncompressed data into a portion of an array.  Uncompressed bytes are copied from the buffer in bulk and
+     * compressed blocks are expanded with {@link Arrays#fill(byte[], int, int, byte)}.  This method blocks only until
+     * at least one byte is available.
+     *
+     * @param b   The array into which data is read.
+     * @param off The offset at which to store the first byte.
+     * @param len The maximum number of bytes to read.
+     * @return The number of bytes read, or <code>-1</code> if the end of the stream is reached.
+     * @throws IOException If an I/O error occurs in the underlying stream or if the RLE format is bad.
+     */
+    public int read(byte[] b, int off, int len)
+            throws IOException
+    {
+        if ((off < 0) || (len < 0) || (off > b.length - len))
+        {
+            throw new IndexOutOfBoundsException(
+                    "Range [" + off + ", " + off + "+" + len + ") invalid for array of length " + b.length);
+        }
+        if (len == 0) return 0;
+        int index = off;
+        int end = off + len;
+        while (index < end)
+        {
+            if (count > 0)
+            {
+                int run = Math.min(count, end - index);
+                Arrays.fill(b, index, index + run, data);
+                index += run;
+                count -= run;
+                continue;
+            }
+            if (bufferPosition == bufferLimit)
+            {
+                // Don't block for more data if we already have some to return.
+                if ((index > off) && (source.available() < 1)) break;
+                if (!refill()) break;
+            }
+            // Copy uncompressed bytes up to the next signal code.
+            int stop = bufferPosition;
+            int limit = Math.min(bufferLimit, bufferPosition + end - index);
+            while ((stop < limit) && (buffer[stop] != signal)) stop++;
+            System.arraycopy(buffer, bufferPosition, b, index, stop - bufferPosition);
+            index += stop - bufferPosition;
+            bufferPosition = stop;
+            if ((stop < limit) && (index < end))
+            {
+                bufferPosition++;
+                b[index++] = (byte) readBlock();
+            }
+        }
+        return (index == off) ? -1 : index - off;
+    }
+
+    /**
+     * Reads the remainder of a compressed block after its signal code.  If the block is an escaped signal code, the
+     * signal code is returned; otherwise, the first byte of the block is returned and the rest of the block is left
+     * waiting.
+     *
+     * @return The first byte of uncompressed data represented by the block.
+     * @throws IOException If an I/O error occurs in the underlying stream or if the RLE format is bad.
+     */
+    protected int readBlock()
+            throws IOException
+    {
+        int compressedBlockIndicator = nextByte();
         if (compressedBlockIndicator == -1)
         {
             throw new IOException("RLE format error: unexpected end of stream reading compressed block indicator.");
         }
-        if (compressedBlockIndicator == 0xFF) return signal;
+        if (compressedBlockIndicator == 0xFF) return signal & 0xFF;
         // This is a compressed block.  Calculate the size.
         int trailingBytes = compressedBlockIndicator >>> 6;
         count = compressedBlockIndicator & 0x3F;
         while (trailingBytes > 0)
         {
-            readData = source.read();
+            int readData = nextByte();
             if (readData == -1)
             {
                 throw new IOException(
@@ -106,7 +195,7 @@ public class RLEInputStream extends InputStream
             trailingBytes--;
         }
         // Now get the return data
-        readData = source.read();
+        int readData = nextByte();
         if (readData == -1)
         {
             throw new IOException("RLE format error: unexpected end of stream reading data value.");
@@ -115,7 +204,49 @@ public class RLEInputStream extends InputStream
 
         // Return a byte to the caller.
         count--;
-        return data;
+        return data & 0xFF;
+    }
+
+    /**
+     * Retrieves the next byte of compressed data from the buffer, refilling it if necessary.
+     *
+     * @return The next byte of compressed data, or <code>-1</code> if the end of the underlying stream is reached.
+     * @throws IOException If an I/O error occurs in the underlying stream.
+     */
+    protected int nextByte()
+            throws IOException
+    {
+        if ((bufferPosition == bufferLimit) && (!refill())) return -1;
+        return buffer[bufferPosition++] & 0xFF;
+    }
+
+    /**
+     * Refills the empty buffer from the underlying stream.
+     *
+     * @return <code>true</code> if data was read; <code>false</code> if the end of the underlying stream was reached.
+     * @throws IOException If an I/O error occurs in the underlying stream.
+     */
+    protected boolean refill()
+            throws IOException
+    {
+        int read = source.read(buffer, 0, buffer.length);
+        if (read < 1) return false;
+        bufferPosition = 0;
+        bufferLimit = read;
+        return true;
+    }
+
+    /**
+     * Returns the number of bytes that can be read from this stream without blocking.  This is the number of bytes
+     * remaining in the current compressed block.
+     *
+     * @return The number of bytes that can be read without blocking.
+     * @throws IOException If an I/O error occurs in the underlying stream.
+     */
+    public int available()
+            throws IOException
+    {
+        return Math.max(count, 0);
     }
 
     /**
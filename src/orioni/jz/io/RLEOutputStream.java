@@ -1,7 +1,15 @@
 package orioni.jz.io;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * This class encodes the data written to it in an RLE format.  The format of the stream is structured to contain a
@@ -23,6 +31,11 @@ import java.io.OutputStream;
  * <p/>
  * Note that the signal code can appear as an RLE character.  This is legal, since the reading of the result of this
  * process should be in a different state when reading a compressed block.
+ * <p/>
+ * Encoded data is gathered in an 8K buffer before being written to the underlying stream; it is written when the
+ * buffer fills and when this stream is flushed or closed.  Arrays written to this stream are scanned for runs directly.
+ * Large arrays may also be encoded on several processors with {@link #encodeParallel(byte[], int, int, OutputStream,
+ * byte, int, ForkJoinPool)}.
  *
  * @author Zachary Palmer
  */
@@ -32,6 +45,15 @@ public class RLEOutputStream extends OutputStream
 
 // CONSTANTS /////////////////////////////////////////////////////////////////////
 
+    /**
+     * The longest run which can be stored in a single compressed block.
+     */
+    protected static final int MAXIMUM_RUN = 4194303;
+    /**
+     * The size of the buffer in which encoded data is gathered.
+     */
+    protected static final int BUFFER_SIZE = 8192;
+
 // NON-STATIC FIELDS /////////////////////////////////////////////////////////////
 
     /**
@@ -50,6 +72,14 @@ public class RLEOutputStream extends OutputStream
      * The signal code for this stream.
      */
     protected byte signal;
+    /**
+     * The buffer in which encoded data is gathered before being written to the underlying stream.
+     */
+    protected byte[] buffer;
+    /**
+     * The number of bytes in the buffer.
+     */
+    protected int bufferCount;
 
 // CONSTRUCTORS //////////////////////////////////////////////////////////////////
 
@@ -78,6 +108,8 @@ public class RLEOutputStream extends OutputStream
         count = 0;
         this.target = target;
         this.signal = signal;
+        buffer = new byte[BUFFER_SIZE];
+        bufferCount = 0;
     }
 
 // NON-STATIC METHODS ////////////////////////////////////////////////////////////
@@ -94,11 +126,11 @@ public class RLEOutputStream extends OutputStream
             throws IOException
     {
         byte data = (byte) b;
-        if (data == last)
+        // As long as we don't have to force an RLE write, wait for the next byte.
+        if ((data == last) && (count < MAXIMUM_RUN))
         {
             count++;
-            // As long as we don't have to force an RLE write, wait for the next byte.
-            if (count < 4194303) return;
+            return;
         }
 
         performRLEWrite();
@@ -106,6 +138,53 @@ public class RLEOutputStream extends OutputStream
         count = 1;
     }
 
+    /**
+     * Encodes a portion of an array of bytes into RLE for this stream.  The array is scanned for runs directly; the
+     * result is the same as if each byte had been written individually.
+     *
+     * @param b   The data to encode.
+     * @param off The offset of the first byte to encode.
+     * @param len The number of bytes to encode.
+     * @throws IOException If an I/O error occurs on the underlying stream.
+     */
+    public void write(byte[] b, int off, int len)
+            throws IOException
+    {
+        if ((off < 0) || (len < 0) || (off > b.length - len))
+        {
+            throw new IndexOutOfBoundsException(
+                    "Range [" + off + ", " + off + "+" + len + ") invalid for array of length " + b.length);
+        }
+        int end = off + len;
+        int index = off;
+        while (index < end)
+        {
+            byte data = b[index];
+            int stop = index + 1;
+            while ((stop < end) && (b[stop] == data)) stop++;
+            int length = stop - index;
+            index = stop;
+
+            if (data != last)
+            {
+                performRLEWrite();
+                last = data;
+                count = 0;
+            }
+            while (length > 0)
+            {
+                if (count == MAXIMUM_RUN)
+                {
+                    performRLEWrite();
+                    count = 0;
+                }
+                int added = Math.min(length, MAXIMUM_RUN - count);
+                count += added;
+                length -= added;
+            }
+        }
+    }
+
     /**
      * This method writes the contents of the buffer to disk in the most efficient fashion.  Calling this method before
      * the last write may impair compression quality.
@@ -119,6 +198,7 @@ public class RLEOutputStream extends OutputStream
         performRLEWrite();
         last = 0;
         count = 0;
+        drain();
     }
 
     /**
@@ -134,37 +214,65 @@ public class RLEOutputStream extends OutputStream
             if (last == signal)
             {
                 // If it's the signal, we have to write an extra byte
-                target.write(signal);
-                target.write(0xFF);
+                put(signal);
+                put(0xFF);
             } else
             {
-                target.write(last);
+                put(last);
             }
         } else if ((count == 2) && (last != signal))
         {
             // It would not be efficient to write the signal byte as data twice in this manner.
-            target.write(last);
-            target.write(last);
-        } else if (count >= 3)
+            put(last);
+            put(last);
+        } else if (count >= 2)
         {
             // Write a compressed block.
-            target.write(signal);
+            put(signal);
             // Write length
             if (count < 64) // 6-bit length code
             {
-                target.write(count);
+                put(count);
             } else if (count < 8192) // 14-bit length code
             {
-                target.write(0x40 | count >>> 8);
-                target.write(count);
+                put(0x40 | count >>> 8);
+                put(count);
             } else // 22-bit length code
             {
-                target.write(0x80 | count >>> 16);
-                target.write(count >>> 8);
-                target.write(count);
+                put(0x80 | count >>> 16);
+                put(count >>> 8);
+                put(count);
             }
             // Write data
-            target.write(last);
+            put(last);
+        }
+    }
+
+    /**
+     * Adds a byte of encoded data to the buffer, writing the buffer to the underlying stream if it is full.
+     *
+     * @param b The byte to add.  Only the low eight bits are used.
+     * @throws IOException If the underlying stream encounters an I/O error.
+     */
+    protected void put(int b)
+            throws IOException
+    {
+        if (bufferCount == buffer.length) drain();
+        buffer[bufferCount++] = (byte) b;
+    }
+
+    /**
+     * Writes the contents of the buffer to the underlying stream.
+     *
+     * @throws IOException If the underlying stream encounters an I/O error.
+     */
+    protected void drain()
+            throws IOException
+    {
+        if (bufferCount > 0)
+        {
+            target.write(buffer, 0, bufferCount);
+            bufferCount = 0;
         }
     }
 
@@ -182,6 +290,86 @@ public class RLEOutputStream extends OutputStream
 
 // STATIC METHODS ////////////////////////////////////////////////////////////////
 
+    /**
+     * Encodes a portion of an array of bytes into RLE using several processors.  The data is divided into chunks of
+     * the specified size which are encoded independently on the provided {@link ForkJoinPool} and written to the
+     * target in order.  Because no run crosses a chunk boundary, the result is a valid RLE stream which may be read by
+     * an {@link RLEInputStream}; it may be slightly larger than the result of encoding the data as a whole.
+     * <p/>
+     * The returned chunk index allows decoding to begin at any chunk: an {@link RLEInputStream} positioned at the
+     * offset of chunk <code>i</code> in the encoded data produces the data starting at offset <code>i *
+     * chunkSize</code> in the original data.
+     *
+     * @param data      The array containing the data to encode.
+     * @param offset    The offset of the first byte to encode.
+     * @param length    The number of bytes to encode.
+     * @param target    The {@link OutputStream} to which the encoded data is written.
+     * @param signal    The signal code to use for compressed blocks.
+     * @param chunkSize The number of bytes in each chunk.
+     * @param pool      The {@link ForkJoinPool} on which the chunks are encoded.
+     * @return The chunk index.  Element <code>i</code> is the offset of the encoding of chunk <code>i</code> within
+     *         the data written to the target; the last element is the total number of bytes written.
+     * @throws IOException              If an I/O error occurs while writing to the target or the encoding is
+     *                                  interrupted.
+     * @throws IllegalArgumentException If the chunk size is not positive.
+     */
+    public static long[] encodeParallel(final byte[] data, int offset, int length, OutputStream target,
+                                        final byte signal, int chunkSize, ForkJoinPool pool)
+            throws IOException, IllegalArgumentException
+    {
+        if (chunkSize < 1) throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        if ((offset < 0) || (length < 0) || (offset > data.length - length))
+        {
+            throw new IndexOutOfBoundsException(
+                    "Range [" + offset + ", " + offset + "+" + length + ") invalid for array of length " +
+                    data.length);
+        }
+        int chunks = (int) (((long) length + chunkSize - 1) / chunkSize);
+        List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>(chunks);
+        for (int i = 0; i < chunks; i++)
+        {
+            final int chunkOffset = offset + i * chunkSize;
+            final int chunkLength = Math.min(chunkSize, offset + length - chunkOffset);
+            futures.add(pool.submit(new Callable<byte[]>()
+            {
+                public byte[] call()
+                        throws IOException
+                {
+                    ByteArrayOutputStream baos = new ByteArrayOutputStream(chunkLength / 2 + 16);
+                    RLEOutputStream encoder = new RLEOutputStream(baos, signal);
+                    encoder.write(data, chunkOffset, chunkLength);
+                    encoder.flush();
+                    return baos.toByteArray();
+                }
+            }));
+        }
+
+        long[] ret = new long[chunks + 1];
+        for (int i = 0; i < chunks; i++)
+        {
+            byte[] encoded;
+            try
+            {
+                encoded = futures.get(i).get();
+            } catch (InterruptedException e)
+            {
+                for (Future<byte[]> f : futures) f.cancel(true);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while encoding chunks.");
+            } catch (ExecutionException e)
+            {
+                for (Future<byte[]> f : futures) f.cancel(true);
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) throw (IOException) cause;
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw new IOException("Chunk encoding failed.", cause);
+            }
+            target.write(encoded);
+            ret[i + 1] = ret[i] + encoded.length;
+        }
+        return ret;
+    }
 }
 
 // END OF FILE //
\ No newline at end of file
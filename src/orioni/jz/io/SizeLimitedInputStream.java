@@ -114,7 +114,7 @@ public class SizeLimitedInputStream extends InputStream
         if (left > 0)
         {
             int read = inputStream.read(b, off, Math.min(left, len));
-            left -= read;
+            if (read > 0) left -= read;
             return read;
         } else
         {
@@ -136,7 +136,8 @@ public class SizeLimitedInputStream extends InputStream
     public long skip(long n)
             throws IOException
     {
-        int amount = (int) (Math.min(n, left));
+        if (n <= 0) return 0;
+        long amount = inputStream.skip(Math.min(n, left));
         left -= amount;
         return amount;
     }
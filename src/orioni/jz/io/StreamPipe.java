@@ -2,6 +2,8 @@ package orioni.jz.io;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * This {@link InputStream} and {@link OutputStream} implementation is designed to replace the {@link PipedInputStream}
@@ -12,6 +14,11 @@ import java.util.ArrayList;
  * inefficiently.  Occasionally, the pipe performs a cleanup operation to prevent this problem from getting out of hand.
  * However, if this {@link StreamPipe}'s {@link OutputStream} is expecting a large number of small writes, a great deal
  * of time can be saved by wrapping the {@link OutputStream} in a large {@link BufferedOutputStream}.
+ * <p/>
+ * Alternatively, a pipe may be constructed with {@link #StreamPipe(int, int)} to use a fixed-size ring buffer.  In this
+ * mode, the streams do not lock: the reading thread and the writing thread each advance their own index into the ring
+ * and wait for one another by spinning briefly and then parking.  This is considerably faster for small transfers, but
+ * each stream must be used by only one thread at a time.
  *
  * @author Zachary Palmer
  */
@@ -25,6 +32,11 @@ public class StreamPipe
      * A constant representing an ulimited buffer size.
      */
     public static final int UNLIMITED_BUFFER = Integer.MAX_VALUE;
+    /**
+     * The default number of times a ring buffer stream checks for progress before parking.  Spinning is pointless on a
+     * single processor, so it is disabled there.
+     */
+    public static final int DEFAULT_SPIN_COUNT = (Runtime.getRuntime().availableProcessors() > 1) ? 1000 : 0;
 
 // NON-STATIC FIELDS /////////////////////////////////////////////////////////////
 
@@ -37,11 +49,15 @@ public class StreamPipe
     /**
      * The {@link InputStream} for this {@link StreamPipe}.
      */
-    protected StreamPipeInputStream inputStream;
+    protected InputStream inputStream;
     /**
      * The {@link OutputStream} for this {@link StreamPipe}.
      */
-    protected StreamPipeOutputStream outputStream;
+    protected OutputStream outputStream;
+    /**
+     * The ring buffer used by this pipe, or <code>null</code> if this pipe uses a queue of arrays.
+     */
+    protected RingBuffer ring;
 
     /**
      * The maximum size of the buffer, in bytes.
@@ -93,10 +109,44 @@ public class StreamPipe
         queue = new ArrayList<byte[]>();
         maximumBufferSize = bufferSize;
         closed = false;
+        ring = null;
         inputStream = new StreamPipeInputStream();
         outputStream = new StreamPipeOutputStream();
     }
 
+    /**
+     * Ring buffer constructor.  The streams of the resulting pipe exchange data through a lock-free single-producer,
+     * single-consumer ring buffer.
+     *
+     * @param bufferSize The size of the buffer.  This is rounded up to a power of two.
+     * @param spinCount  The number of times a stream checks for progress by the other stream before parking its thread.
+     *                   Larger values reduce latency at the expense of processor time.
+     * @throws IllegalArgumentException If the buffer size is less than or equal to <code>0</code> or greater than
+     *                                  <code>2<sup>30</sup></code>, or if the spin count is negative.
+     */
+    public StreamPipe(int bufferSize, int spinCount)
+    {
+        super();
+
+        if ((bufferSize <= 0) || (bufferSize > 1 << 30))
+        {
+            throw new IllegalArgumentException("Illegal buffer size: " + bufferSize);
+        }
+        if (spinCount < 0) throw new IllegalArgumentException("Illegal spin count: " + spinCount);
+
+        thisValue = this;
+        available = 0;
+        nextByteIndex = 0;
+        queue = new ArrayList<byte[]>();
+        maximumBufferSize = bufferSize;
+        closed = false;
+        int capacity = Integer.highestOneBit(bufferSize);
+        if (capacity < bufferSize) capacity <<= 1;
+        ring = new RingBuffer(capacity, spinCount);
+        inputStream = new RingPipeInputStream();
+        outputStream = new RingPipeOutputStream();
+    }
+
 // NON-STATIC METHODS ////////////////////////////////////////////////////////////
 
     /**
@@ -126,6 +176,7 @@ public class StreamPipe
      */
     public synchronized boolean isClosed()
     {
+        if (ring != null) return ring.closed;
         return closed;
     }
 
@@ -134,6 +185,7 @@ public class StreamPipe
      */
     public synchronized void bufferCleanup()
     {
+        if (queue.isEmpty()) return;
         byte[] buffer = new byte[available];
         System.arraycopy(
                 queue.get(0),
@@ -469,6 +521,375 @@ public class StreamPipe
             }
         }
     }
+
+    /**
+     * The ring buffer used by a {@link StreamPipe} constructed in ring buffer mode.  The positions of the reader and
+     * the writer are byte counts which only increase; the index in the ring of a position is the position modulo the
+     * capacity.  The two positions are stored far apart in an {@link AtomicLongArray} so that they do not share a cache
+     * line.  Each position is written only by its own stream.
+     *
+     * @author Zachary Palmer
+     */
+    static class RingBuffer
+    {
+        /**
+         * The number of <code>long</code>s separating the positions, which spans two 64-byte cache lines.
+         */
+        static final int PADDING = 16;
+        /**
+         * The index of the reader's position in the position array.
+         */
+        static final int HEAD = PADDING;
+        /**
+         * The index of the writer's position in the position array.
+         */
+        static final int TAIL = PADDING * 2;
+
+        /**
+         * The contents of the ring.
+         */
+        final byte[] data;
+        /**
+         * The mask which converts a position into an index in the ring.
+         */
+        final int mask;
+        /**
+         * The number of times a stream checks for progress before parking.
+         */
+        final int spinCount;
+        /**
+         * The positions of the reader and the writer.
+         */
+        final AtomicLongArray positions;
+        /**
+         * <code>true</code> if either stream has been closed; <code>false</code> otherwise.
+         */
+        volatile boolean closed;
+        /**
+         * The thread parked while waiting for data, if any.
+         */
+        volatile Thread parkedReader;
+        /**
+         * The thread parked while waiting for space, if any.
+         */
+        volatile Thread parkedWriter;
+
+        /**
+         * General constructor.
+         *
+         * @param capacity  The capacity of the ring, which must be a power of two.
+         * @param spinCount The number of times a stream checks for progress before parking.
+         */
+        RingBuffer(int capacity, int spinCount)
+        {
+            super();
+            data = new byte[capacity];
+            mask = capacity - 1;
+            this.spinCount = spinCount;
+            positions = new AtomicLongArray(PADDING * 3);
+            closed = false;
+            parkedReader = null;
+            parkedWriter = null;
+        }
+
+        /**
+         * Closes the ring and wakes any parked thread.
+         */
+        void close()
+        {
+            closed = true;
+            LockSupport.unpark(parkedReader);
+            LockSupport.unpark(parkedWriter);
+        }
+
+        /**
+         * Waits until the writer's position passes the specified position or the ring is closed.
+         *
+         * @param head The reader's position.
+         * @return The writer's position.  This is equal to the reader's position only if the ring is closed and empty.
+         * @throws InterruptedIOException If the thread is interrupted while waiting.
+         */
+        long awaitData(long head)
+                throws InterruptedIOException
+        {
+            for (int i = 0; i < spinCount; i++)
+            {
+                long tail = positions.get(TAIL);
+                if ((tail != head) || (closed)) return positions.get(TAIL);
+            }
+            parkedReader = Thread.currentThread();
+            try
+            {
+                while (true)
+                {
+                    // The writer publishes its position before checking for a parked reader, and the reader
+                    // registers itself before checking the position, so one of them must see the other.
+                    long tail = positions.get(TAIL);
+                    if ((tail != head) || (closed)) return positions.get(TAIL);
+                    LockSupport.park(this);
+                    if (Thread.interrupted()) throw new InterruptedIOException("Interrupted while waiting for data.");
+                }
+            } finally
+            {
+                parkedReader = null;
+            }
+        }
+
+        /**
+         * Waits until the reader's position passes the specified position or the ring is closed.
+         *
+         * @param head The reader's position at which the ring was full.
+         * @return The reader's position.
+         * @throws IOException            If the ring is closed.
+         * @throws InterruptedIOException If the thread is interrupted while waiting.
+         */
+        long awaitSpace(long head)
+                throws IOException
+        {
+            for (int i = 0; i < spinCount; i++)
+            {
+                if (closed) throw new IOException("Cannot write: stream is closed.");
+                long current = positions.get(HEAD);
+                if (current != head) return current;
+            }
+            parkedWriter = Thread.currentThread();
+            try
+            {
+                while (true)
+                {
+                    if (closed) throw new IOException("Cannot write: stream is closed.");
+                    long current = positions.get(HEAD);
+                    if (current != head) return current;
+                    LockSupport.park(this);
+                    if (Thread.interrupted()) throw new InterruptedIOException("Interrupted while waiting for space.");
+                }
+            } finally
+            {
+                parkedWriter = null;
+            }
+        }
+    }
+
+    /**
+     * The {@link InputStream} for a {@link StreamPipe} in ring buffer mode.  This stream must be used by only one
+     * thread at a time.
+     *
+     * @author Zachary Palmer
+     */
+    class RingPipeInputStream extends InputStream
+    {
+        /**
+         * The reader's position.  Only this stream changes it.
+         */
+        private long head = 0;
+        /**
+         * The writer's position as last observed by this stream.
+         */
+        private long tail = 0;
+
+        /**
+         * Returns the number of bytes that can be read from this input stream without blocking.
+         *
+         * @return The number of bytes that can be read from this input stream without blocking.
+         */
+        public int available()
+        {
+            tail = ring.positions.get(RingBuffer.TAIL);
+            return (int) (tail - head);
+        }
+
+        /**
+         * Closes the pipe.  Data which has already been written may still be read.
+         */
+        public void close()
+        {
+            ring.close();
+        }
+
+        /**
+         * Reads the next byte of data from the input stream.
+         *
+         * @return the next byte of data, or <code>-1</code> if the end of the stream is reached.
+         * @throws IOException if an I/O error occurs.
+         */
+        public int read()
+                throws IOException
+        {
+            if ((tail == head) && (!awaitData())) return -1;
+            int ret = ring.data[(int) (head & ring.mask)] & 0xFF;
+            advance(1);
+            return ret;
+        }
+
+        /**
+         * Reads up to <code>len</code> bytes of data from the input stream into an array of bytes.  This method blocks
+         * until at least one byte is available or the end of the stream is reached.
+         *
+         * @param b   The buffer into which the data is read.
+         * @param off The start offset in array <code>b</code> at which the data is written.
+         * @param len The maximum number of bytes to read.
+         * @return The total number of bytes read into the buffer, or <code>-1</code> if there is no more data because
+         *         the end of the stream has been reached.
+         * @throws IOException If an I/O error occurs.
+         */
+        public int read(byte[] b, int off, int len)
+                throws IOException
+        {
+            if ((off < 0) || (len < 0) || (off > b.length - len))
+            {
+                throw new IndexOutOfBoundsException(
+                        "Range [" + off + ", " + off + "+" + len + ") invalid for array of length " + b.length);
+            }
+            if (len == 0) return 0;
+            if ((tail == head) && (!awaitData())) return -1;
+            int count = (int) (Math.min(len, tail - head));
+            int index = (int) (head & ring.mask);
+            int first = Math.min(count, ring.data.length - index);
+            System.arraycopy(ring.data, index, b, off, first);
+            System.arraycopy(ring.data, 0, b, off + first, count - first);
+            advance(count);
+            return count;
+        }
+
+        /**
+         * Skips over and discards up to <code>n</code> bytes of data which are immediately available.
+         *
+         * @param n The number of bytes to be skipped.
+         * @return The actual number of bytes skipped.
+         */
+        public long skip(long n)
+        {
+            if (n <= 0) return 0;
+            int count = (int) (Math.min(n, available()));
+            if (count > 0) advance(count);
+            return count;
+        }
+
+        /**
+         * Waits for data to become available.
+         *
+         * @return <code>true</code> if data is available; <code>false</code> if the pipe is closed and empty.
+         * @throws InterruptedIOException If the thread is interrupted while waiting.
+         */
+        private boolean awaitData()
+                throws InterruptedIOException
+        {
+            tail = ring.awaitData(head);
+            return tail != head;
+        }
+
+        /**
+         * Releases bytes which have been read to the writer.
+         *
+         * @param count The number of bytes read.
+         */
+        private void advance(int count)
+        {
+            head += count;
+            ring.positions.set(RingBuffer.HEAD, head);
+            Thread writer = ring.parkedWriter;
+            if (writer != null) LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * The {@link OutputStream} for a {@link StreamPipe} in ring buffer mode.  This stream must be used by only one
+     * thread at a time.
+     *
+     * @author Zachary Palmer
+     */
+    class RingPipeOutputStream extends OutputStream
+    {
+        /**
+         * The writer's position.  Only this stream changes it.
+         */
+        private long tail = 0;
+        /**
+         * The reader's position as last observed by this stream.
+         */
+        private long head = 0;
+
+        /**
+         * Flushes this output stream.  This method does nothing; all writes are immediately visible to the reader.
+         */
+        public void flush()
+        {
+        }
+
+        /**
+         * Writes the specified byte to this output stream.
+         *
+         * @param b the <code>byte</code>.
+         * @throws IOException If an I/O error occurs. In particular, an <code>IOException</code> is thrown if the pipe
+         *                     has been closed.
+         */
+        public void write(int b)
+                throws IOException
+        {
+            if (ring.closed) throw new IOException("Cannot write: stream is closed.");
+            if (tail - head == ring.data.length) head = ring.awaitSpace(head);
+            ring.data[(int) (tail & ring.mask)] = (byte) b;
+            publish(1);
+        }
+
+        /**
+         * Writes <code>len</code> bytes from the specified byte array starting at offset <code>off</code> to this
+         * output stream.  This method blocks until all of the bytes have been placed in the ring.
+         *
+         * @param b   The data.
+         * @param off The start offset in the data.
+         * @param len The number of bytes to write.
+         * @throws IOException If an I/O error occurs. In particular, an <code>IOException</code> is thrown if the pipe
+         *                     is closed.
+         */
+        public void write(byte[] b, int off, int len)
+                throws IOException
+        {
+            if ((off < 0) || (len < 0) || (off > b.length - len))
+            {
+                throw new IndexOutOfBoundsException(
+                        "Range [" + off + ", " + off + "+" + len + ") invalid for array of length " + b.length);
+            }
+            while (len > 0)
+            {
+                if (ring.closed) throw new IOException("Cannot write: stream is closed.");
+                if (tail - head == ring.data.length)
+                {
+                    head = ring.positions.get(RingBuffer.HEAD);
+                    if (tail - head == ring.data.length) head = ring.awaitSpace(head);
+                }
+                int count = (int) (Math.min(len, ring.data.length - (tail - head)));
+                int index = (int) (tail & ring.mask);
+                int first = Math.min(count, ring.data.length - index);
+                System.arraycopy(b, off, ring.data, index, first);
+                System.arraycopy(b, off + first, ring.data, 0, count - first);
+                publish(count);
+                off += count;
+                len -= count;
+            }
+        }
+
+        /**
+         * Closes the pipe.  Data which has already been written may still be read.
+         */
+        public void close()
+        {
+            ring.close();
+        }
+
+        /**
+         * Makes bytes which have been written visible to the reader.
+         *
+         * @param count The number of bytes written.
+         */
+        private void publish(int count)
+        {
+            tail += count;
+            ring.positions.set(RingBuffer.TAIL, tail);
+            Thread reader = ring.parkedReader;
+            if (reader != null) LockSupport.unpark(reader);
+        }
+    }
 }
 
 // END OF FILE
\ No newline at end of file
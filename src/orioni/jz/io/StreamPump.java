@@ -21,7 +21,13 @@ import java.io.OutputStream;
  * the call to {@link StreamPump#stop()}.</li> <li>Non-blocking reads cannot detect the end of the stream.  Thus, if the
  * stream is closed, a non-blocking read pump must be stopped manually.</li> <li>Non-blocking reads will not function if
  * the {@link InputStream} does not properly implement its {@link InputStream#available() available()} method.</li>
- * </ul>
+ * <li>Because an {@link InputStream} provides no notification when data arrives, a non-blocking pump must poll.  The
+ * polling interval starts at one millisecond after data is received and doubles while the stream is idle, up to {@link
+ * StreamPump#MAXIMUM_POLL_INTERVAL} milliseconds.</li> </ul> Pumps between channels, including those of file streams,
+ * should use a {@link ChannelPump}, which does not poll and can transfer data without copying it.
+ * <p/>
+ * The lifetime and throughput of the pump are recorded in the {@link PumpStatistics} available from {@link
+ * StreamPump#getStatistics()}.
  *
  * @author Zachary Palmer
  */
@@ -31,6 +37,11 @@ public class StreamPump implements Runnable
 
 // CONSTANTS /////////////////////////////////////////////////////////////////////
 
+    /**
+     * The maximum number of milliseconds for which a non-blocking pump waits before checking for data again.
+     */
+    public static final int MAXIMUM_POLL_INTERVAL = 20;
+
 // NON-STATIC FIELDS /////////////////////////////////////////////////////////////
 
     /**
@@ -48,7 +59,7 @@ public class StreamPump implements Runnable
     /**
      * Whether or not the thread should be operating.
      */
-    protected boolean pumpOn;
+    protected volatile boolean pumpOn;
     /**
      * Whether or not the pump works using blocking reads.
      */
@@ -57,6 +68,10 @@ public class StreamPump implements Runnable
      * Whether or not the participating streams are closed when pumping is complete.
      */
     protected boolean closeOnFinish;
+    /**
+     * The lifetime and throughput statistics of this pump.
+     */
+    protected PumpStatistics statistics;
 
 // CONSTRUCTORS //////////////////////////////////////////////////////////////////
 
@@ -90,6 +105,7 @@ public class StreamPump implements Runnable
         pumpOn = false;
         this.blocking = blocking;
         this.closeOnFinish = closeOnFinish;
+        statistics = new PumpStatistics();
     }
 
 // NON-STATIC METHODS ////////////////////////////////////////////////////////////
@@ -102,6 +118,7 @@ public class StreamPump implements Runnable
     {
         if (!pumpOn)
         {
+            statistics.recordStart();
             pumpOn = true;
             thread = new Thread(this);
             thread.start();
@@ -146,6 +163,17 @@ public class StreamPump implements Runnable
         }
     }
 
+    /**
+     * Retrieves the statistics for this pump.  The statistics describe the current run of the pump or, if the pump is
+     * not active, the most recent run.
+     *
+     * @return The {@link PumpStatistics} for this pump.
+     */
+    public PumpStatistics getStatistics()
+    {
+        return statistics;
+    }
+
 // NON-STATIC METHODS : RUNNABLE IMPLEMENTATION //////////////////////////////////
 
     /**
@@ -154,6 +182,7 @@ public class StreamPump implements Runnable
     public void run()
     {
         byte[] buffer = new byte[16384];
+        int pollInterval = 1;
         try
         {
             while (pumpOn)
@@ -170,15 +199,18 @@ public class StreamPump implements Runnable
                     }
                     readSize = inputStream.read(buffer, 0, readSize);
                     if (readSize == -1) break;
-                    outputStream.write(buffer);
+                    outputStream.write(buffer, 0, readSize);
+                    statistics.recordTransfer(readSize);
+                    pollInterval = 1;
                 } else
                 {
                     try
                     {
-                        Thread.sleep(20);
+                        Thread.sleep(pollInterval);
                     } catch (InterruptedException e)
                     {
                     }
+                    pollInterval = Math.min(pollInterval * 2, MAXIMUM_POLL_INTERVAL);
                 }
             }
         } catch (IOException ioe)
@@ -199,6 +231,7 @@ public class StreamPump implements Runnable
             {
             }
         }
+        statistics.recordFinish();
         pumpOn = false;
     }
 
@@ -5,7 +5,7 @@ import java.io.InputStream;
 
 /**
  * A XorInputStream is designed to simply binary XOR any bytes read from the contained InputStream.  The XOR pattern is
- * defined on construction.
+ * defined on construction.  Array reads XOR the whole block read from the contained InputStream at once.
  *
  * @author Zachary Palmer
  */
@@ -18,13 +18,9 @@ public class XorInputStream extends InputStream
 // NON-STATIC FIELDS /////////////////////////////////////////////////////////////
 
     /**
-     * The XOR pattern for this stream.
+     * The XOR pattern for this stream, which tracks this stream's position in the pattern.
      */
-    protected byte[] xorPattern;
-    /**
-     * The position for this stream.
-     */
-    protected int xorPosition;
+    protected XorPattern xorPattern;
     /**
      * The InputStream from which bytes are to be read for XORing.
      */
@@ -43,10 +39,8 @@ public class XorInputStream extends InputStream
             throws IllegalArgumentException
     {
         super();
-        if (pattern.length < 1) throw new IllegalArgumentException("XOR pattern must contain at least one byte.");
         this.stream = stream;
-        xorPattern = pattern;
-        xorPosition = 0;
+        xorPattern = new XorPattern(pattern);
     }
 
 // NON-STATIC METHODS ////////////////////////////////////////////////////////////
@@ -63,11 +57,55 @@ public class XorInputStream extends InputStream
     {
         int data = stream.read();
         if (data == -1) return data;
-        byte ret = (byte) (((byte) (data)) ^ xorPattern[xorPosition++]);
-        if (xorPosition >= xorPattern.length) xorPosition = 0;
+        return xorPattern.apply(data);
+    }
+
+    /**
+     * Reads bytes from the contained InputStream and XORs them with the pattern provided to this stream on
+     * construction.
+     *
+     * @param b   The array into which data is read.
+     * @param off The offset at which to store the first byte.
+     * @param len The maximum number of bytes to read.
+     * @return The number of bytes read, or <code>-1</code> if the end of the stream is reached.
+     * @throws IOException If the contained InputStream throws an IOException.
+     */
+    public int read(byte[] b, int off, int len)
+            throws IOException
+    {
+        int ret = stream.read(b, off, len);
+        if (ret > 0) xorPattern.apply(b, off, ret);
         return ret;
     }
 
+    /**
+     * Skips bytes in the contained InputStream.  The position in the XOR pattern advances as if the bytes had been
+     * read.
+     *
+     * @param n The number of bytes to skip.
+     * @return The number of bytes skipped.
+     * @throws IOException If the contained InputStream throws an IOException.
+     */
+    public long skip(long n)
+            throws IOException
+    {
+        long ret = stream.skip(n);
+        xorPattern.advance(ret);
+        return ret;
+    }
+
+    /**
+     * Returns the number of bytes that can be read from the contained InputStream without blocking.
+     *
+     * @return The number of bytes that can be read without blocking.
+     * @throws IOException If the contained InputStream throws an IOException.
+     */
+    public int available()
+            throws IOException
+    {
+        return stream.available();
+    }
+
     /**
      * Closes the underlying stream.
      *
@@ -5,7 +5,8 @@ import java.io.OutputStream;
 
 /**
  * A XorOutputStream is designed to simply binary XOR any bytes read from the contained OutputStream.  The XOR pattern
- * is defined on construction.
+ * is defined on construction.  Array writes are XORed into an internal buffer a block at a time, and each block is
+ * passed to the contained OutputStream in a single call.
  *
  * @author Zachary Palmer
  */
@@ -15,20 +16,25 @@ public class XorOutputStream extends OutputStream
 
 // CONSTANTS /////////////////////////////////////////////////////////////////////
 
-// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
-
     /**
-     * The XOR pattern for this stream.
+     * The largest block which is XORed and written in a single call to the contained OutputStream.
      */
-    protected byte[] xorPattern;
+    protected static final int BLOCK_SIZE = 65536;
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
     /**
-     * The position for this stream.
+     * The XOR pattern for this stream, which tracks this stream's position in the pattern.
      */
-    protected int xorPosition;
+    protected XorPattern xorPattern;
     /**
      * The OutputStream to which bytes are to be written after XORing.
      */
     protected OutputStream stream;
+    /**
+     * The buffer in which array writes are XORed, or <code>null</code> if no array write has yet been performed.
+     */
+    protected byte[] buffer;
 
 // CONSTRUCTORS //////////////////////////////////////////////////////////////////
 
@@ -43,10 +49,9 @@ public class XorOutputStream extends OutputStream
             throws IllegalArgumentException
     {
         super();
-        if (pattern.length < 1) throw new IllegalArgumentException("XOR pattern must contain at least one byte.");
         this.stream = stream;
-        xorPattern = pattern;
-        xorPosition = 0;
+        xorPattern = new XorPattern(pattern);
+        buffer = null;
     }
 
 // NON-STATIC METHODS ////////////////////////////////////////////////////////////
@@ -61,9 +66,48 @@ public class XorOutputStream extends OutputStream
     public void write(int b)
             throws IOException
     {
-        int data = ((byte) (b)) ^ (xorPattern[xorPosition++]);
-        stream.write(data);
-        if (xorPosition >= xorPattern.length) xorPosition = 0;
+        stream.write(xorPattern.apply(b));
+    }
+
+    /**
+     * Writes XORed bytes to the contained OutputStream.  The provided array is not modified.
+     *
+     * @param b   The data to be XORed and written.
+     * @param off The offset of the first byte to write.
+     * @param len The number of bytes to write.
+     * @throws IOException If the contained OutputStream throws an IOException.
+     */
+    public void write(byte[] b, int off, int len)
+            throws IOException
+    {
+        if ((off < 0) || (len < 0) || (off > b.length - len))
+        {
+            throw new IndexOutOfBoundsException(
+                    "Range [" + off + ", " + off + "+" + len + ") invalid for array of length " + b.length);
+        }
+        if ((buffer == null) || ((buffer.length < len) && (buffer.length < BLOCK_SIZE)))
+        {
+            buffer = new byte[Math.min(Math.max(len, 1024), BLOCK_SIZE)];
+        }
+        while (len > 0)
+        {
+            int block = Math.min(len, buffer.length);
+            xorPattern.apply(b, off, buffer, 0, block);
+            stream.write(buffer, 0, block);
+            off += block;
+            len -= block;
+        }
+    }
+
+    /**
+     * Flushes the contained OutputStream.
+     *
+     * @throws IOException If the contained OutputStream throws an IOException.
+     */
+    public void flush()
+            throws IOException
+    {
+        stream.flush();
     }
 
     /**
@@ -0,0 +1,240 @@
+package orioni.jz.io;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * This class applies a repeating XOR pattern to a sequence of bytes, tracking the position in the pattern at which the
+ * next byte will be XORed.  The pattern is expanded on construction to a repetition at least four kilobytes long so
+ * that blocks of data can be XORed eight bytes at a time without wrapping around the pattern.  It is used by {@link
+ * XorInputStream}, {@link XorOutputStream}, {@link XorReadableByteChannel}, and {@link XorWritableByteChannel}.
+ * <p/>
+ * This class is not threadsafe.
+ *
+ * @author Zachary Palmer
+ */
+public class XorPattern
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+    /**
+     * The minimum number of bytes which can be XORed against the expanded pattern without wrapping.
+     */
+    protected static final int SPAN = 4096;
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The XOR pattern.
+     */
+    protected byte[] pattern;
+    /**
+     * The XOR pattern, repeated until it is at least {@link #SPAN} bytes longer than a single copy.
+     */
+    protected byte[] expanded;
+    /**
+     * A native-order view of the expanded pattern.
+     */
+    protected ByteBuffer expandedView;
+    /**
+     * The index in the pattern of the byte with which the next byte of data will be XORed.
+     */
+    protected int position;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * General constructor.
+     *
+     * @param pattern The XOR pattern to use.
+     * @throws IllegalArgumentException If the XOR pattern has a length of zero.
+     */
+    public XorPattern(byte[] pattern)
+            throws IllegalArgumentException
+    {
+        super();
+        if (pattern.length < 1) throw new IllegalArgumentException("XOR pattern must contain at least one byte.");
+        this.pattern = pattern.clone();
+        expanded = new byte[pattern.length * (SPAN / pattern.length + 2)];
+        for (int i = 0; i < expanded.length; i += pattern.length)
+        {
+            System.arraycopy(pattern, 0, expanded, i, pattern.length);
+        }
+        expandedView = ByteBuffer.wrap(expanded).order(ByteOrder.nativeOrder());
+        position = 0;
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Retrieves the length of the pattern.
+     *
+     * @return The number of bytes in the pattern.
+     */
+    public int getLength()
+    {
+        return pattern.length;
+    }
+
+    /**
+     * Retrieves the current position in the pattern.
+     *
+     * @return The index in the pattern of the byte with which the next byte of data will be XORed.
+     */
+    public int getPosition()
+    {
+        return position;
+    }
+
+    /**
+     * Changes the current position in the pattern.
+     *
+     * @param position The index in the pattern of the byte with which the next byte of data should be XORed.
+     * @throws IndexOutOfBoundsException If the position is not within the pattern.
+     */
+    public void setPosition(int position)
+            throws IndexOutOfBoundsException
+    {
+        if ((position < 0) || (position >= pattern.length))
+        {
+            throw new IndexOutOfBoundsException(
+                    "Position " + position + " invalid for pattern of length " + pattern.length);
+        }
+        this.position = position;
+    }
+
+    /**
+     * Advances the current position in the pattern as if the specified number of bytes had been XORed.
+     *
+     * @param count The number of bytes to skip.
+     */
+    public void advance(long count)
+    {
+        if (count > 0) position = (int) ((position + count) % pattern.length);
+    }
+
+    /**
+     * XORs a single byte with the pattern.
+     *
+     * @param b The byte to XOR.  Only the low eight bits are used.
+     * @return The XORed byte, in the range <code>0</code> to <code>255</code>.
+     */
+    public int apply(int b)
+    {
+        int ret = (b ^ pattern[position++]) & 0xFF;
+        if (position == pattern.length) position = 0;
+        return ret;
+    }
+
+    /**
+     * XORs a portion of an array with the pattern in place.
+     *
+     * @param data   The array containing the data.
+     * @param offset The offset of the first byte to XOR.
+     * @param length The number of bytes to XOR.
+     * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+     */
+    public void apply(byte[] data, int offset, int length)
+            throws IndexOutOfBoundsException
+    {
+        apply(data, offset, data, offset, length);
+    }
+
+    /**
+     * XORs a portion of an array with the pattern, storing the result in another array.  The arrays may be the same
+     * array if the ranges are identical.
+     *
+     * @param source       The array containing the data.
+     * @param sourceOffset The offset of the first byte to XOR.
+     * @param target       The array in which to store the result.
+     * @param targetOffset The offset at which to store the first result byte.
+     * @param length       The number of bytes to XOR.
+     * @throws IndexOutOfBoundsException If either range does not lie within its array.
+     */
+    public void apply(byte[] source, int sourceOffset, byte[] target, int targetOffset, int length)
+            throws IndexOutOfBoundsException
+    {
+        checkRange(source, sourceOffset, length);
+        checkRange(target, targetOffset, length);
+        ByteBuffer sourceView = ByteBuffer.wrap(source).order(ByteOrder.nativeOrder());
+        ByteBuffer targetView = (source == target) ? sourceView :
+                                ByteBuffer.wrap(target).order(ByteOrder.nativeOrder());
+        while (length > 0)
+        {
+            int span = Math.min(length, expanded.length - position);
+            int i = 0;
+            for (; i <= span - 8; i += 8)
+            {
+                targetView.putLong(targetOffset + i, sourceView.getLong(sourceOffset + i) ^
+                                                     expandedView.getLong(position + i));
+            }
+            for (; i < span; i++)
+            {
+                target[targetOffset + i] = (byte) (source[sourceOffset + i] ^ expanded[position + i]);
+            }
+            sourceOffset += span;
+            targetOffset += span;
+            length -= span;
+            position = (position + span) % pattern.length;
+        }
+    }
+
+    /**
+     * XORs the remaining bytes of a buffer with the pattern in place.  The buffer's position and limit are not changed.
+     *
+     * @param buffer The {@link ByteBuffer} containing the data.
+     */
+    public void apply(ByteBuffer buffer)
+    {
+        if (buffer.hasArray())
+        {
+            int offset = buffer.arrayOffset() + buffer.position();
+            apply(buffer.array(), offset, buffer.array(), offset, buffer.remaining());
+            return;
+        }
+        ByteBuffer view = buffer.duplicate().order(ByteOrder.nativeOrder());
+        int index = view.position();
+        int length = view.remaining();
+        while (length > 0)
+        {
+            int span = Math.min(length, expanded.length - position);
+            int i = 0;
+            for (; i <= span - 8; i += 8)
+            {
+                view.putLong(index + i, view.getLong(index + i) ^ expandedView.getLong(position + i));
+            }
+            for (; i < span; i++)
+            {
+                view.put(index + i, (byte) (view.get(index + i) ^ expanded[position + i]));
+            }
+            index += span;
+            length -= span;
+            position = (position + span) % pattern.length;
+        }
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+    /**
+     * Ensures that a range lies within an array.
+     *
+     * @param data   The array.
+     * @param offset The offset of the range.
+     * @param length The length of the range.
+     * @throws IndexOutOfBoundsException If the range does not lie within the array.
+     */
+    private static void checkRange(byte[] data, int offset, int length)
+            throws IndexOutOfBoundsException
+    {
+        if ((offset < 0) || (length < 0) || (offset > data.length - length))
+        {
+            throw new IndexOutOfBoundsException(
+                    "Range [" + offset + ", " + offset + "+" + length + ") invalid for array of length " +
+                    data.length);
+        }
+    }
+}
+
+// END OF FILE
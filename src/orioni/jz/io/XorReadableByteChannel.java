@@ -0,0 +1,95 @@
+package orioni.jz.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * This {@link ReadableByteChannel} XORs every byte read from an underlying channel with a repeating pattern.  It is
+ * the channel counterpart of {@link XorInputStream}: the bytes read by each call are XORed in place, eight at a time.
+ *
+ * @author Zachary Palmer
+ */
+public class XorReadableByteChannel implements ReadableByteChannel
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The underlying {@link ReadableByteChannel}.
+     */
+    protected ReadableByteChannel channel;
+    /**
+     * The XOR pattern for this channel, which tracks this channel's position in the pattern.
+     */
+    protected XorPattern xorPattern;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * General constructor.
+     *
+     * @param channel The underlying {@link ReadableByteChannel}.
+     * @param pattern The XOR pattern to use.
+     * @throws IllegalArgumentException If the XOR pattern has a length of zero.
+     */
+    public XorReadableByteChannel(ReadableByteChannel channel, byte[] pattern)
+            throws IllegalArgumentException
+    {
+        super();
+        this.channel = channel;
+        xorPattern = new XorPattern(pattern);
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Reads bytes from the underlying channel and XORs those which were read.
+     *
+     * @param dst The {@link ByteBuffer} into which bytes are read.
+     * @return The number of bytes read, or <code>-1</code> if the channel has reached end of stream.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int read(ByteBuffer dst)
+            throws IOException
+    {
+        int start = dst.position();
+        int ret = channel.read(dst);
+        if (ret > 0)
+        {
+            ByteBuffer read = dst.duplicate();
+            read.limit(dst.position()).position(start);
+            xorPattern.apply(read);
+        }
+        return ret;
+    }
+
+    /**
+     * Determines whether or not the underlying channel is open.
+     *
+     * @return <code>true</code> if the underlying channel is open; <code>false</code> otherwise.
+     */
+    public boolean isOpen()
+    {
+        return channel.isOpen();
+    }
+
+    /**
+     * Closes the underlying channel.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void close()
+            throws IOException
+    {
+        channel.close();
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+}
+
+// END OF FILE
@@ -0,0 +1,115 @@
+package orioni.jz.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * This {@link WritableByteChannel} XORs every byte written to it with a repeating pattern before passing it to an
+ * underlying channel.  It is the channel counterpart of {@link XorOutputStream}.  The caller's buffer is not modified:
+ * each write XORs up to one pooled direct buffer of data, eight bytes at a time, and passes it to the underlying channel
+ * in a single call.  The pooled buffer is returned to {@link DirectBufferPool#SHARED} when this channel is closed.
+ *
+ * @author Zachary Palmer
+ */
+public class XorWritableByteChannel implements WritableByteChannel
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The underlying {@link WritableByteChannel}.
+     */
+    protected WritableByteChannel channel;
+    /**
+     * The XOR pattern for this channel, which tracks this channel's position in the pattern.
+     */
+    protected XorPattern xorPattern;
+    /**
+     * The buffer in which data is XORed, or <code>null</code> if no write has yet been performed.
+     */
+    protected ByteBuffer buffer;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * General constructor.
+     *
+     * @param channel The underlying {@link WritableByteChannel}.
+     * @param pattern The XOR pattern to use.
+     * @throws IllegalArgumentException If the XOR pattern has a length of zero.
+     */
+    public XorWritableByteChannel(WritableByteChannel channel, byte[] pattern)
+            throws IllegalArgumentException
+    {
+        super();
+        this.channel = channel;
+        xorPattern = new XorPattern(pattern);
+        buffer = null;
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * XORs bytes from the provided buffer and writes them to the underlying channel.  The position in the XOR pattern
+     * advances only by the number of bytes the underlying channel accepts.
+     *
+     * @param src The {@link ByteBuffer} from which bytes are written.
+     * @return The number of bytes written.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int write(ByteBuffer src)
+            throws IOException
+    {
+        if (buffer == null) buffer = DirectBufferPool.SHARED.acquire();
+        ByteBuffer data = src.duplicate();
+        data.limit(data.position() + Math.min(data.remaining(), buffer.capacity()));
+        buffer.clear();
+        buffer.put(data);
+        buffer.flip();
+
+        int phase = xorPattern.getPosition();
+        xorPattern.apply(buffer);
+        int ret = channel.write(buffer);
+        xorPattern.setPosition(phase);
+        xorPattern.advance(ret);
+        src.position(src.position() + ret);
+        return ret;
+    }
+
+    /**
+     * Determines whether or not the underlying channel is open.
+     *
+     * @return <code>true</code> if the underlying channel is open; <code>false</code> otherwise.
+     */
+    public boolean isOpen()
+    {
+        return channel.isOpen();
+    }
+
+    /**
+     * Closes the underlying channel and releases this channel's buffer.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void close()
+            throws IOException
+    {
+        try
+        {
+            channel.close();
+        } finally
+        {
+            DirectBufferPool.SHARED.release(buffer);
+            buffer = null;
+        }
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+}
+
+// END OF FILE
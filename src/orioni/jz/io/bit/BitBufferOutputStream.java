@@ -29,7 +29,7 @@ public class BitBufferOutputStream extends BitOutputStream
      */
     public BitBufferOutputStream(BitOrder order, EndianFormat format)
     {
-        super(new ByteArrayOutputStream(), order, format);
+        super(new BitBuffer(), order, format);
     }
 
 // NON-STATIC METHODS ////////////////////////////////////////////////////////////
@@ -43,7 +43,7 @@ public class BitBufferOutputStream extends BitOutputStream
      */
     public byte[] toByteArray()
     {
-        if (remaining == 8)
+        if (accumulatorBits == 0)
         {
             return ((ByteArrayOutputStream) target).toByteArray();
         } else
@@ -51,7 +51,7 @@ public class BitBufferOutputStream extends BitOutputStream
             byte[] wholeBytes = ((ByteArrayOutputStream) target).toByteArray();
             byte[] ret = new byte[wholeBytes.length + 1];
             System.arraycopy(wholeBytes, 0, ret, 0, wholeBytes.length);
-            ret[ret.length - 1] = buffer;
+            ret[ret.length - 1] = getPartialByte();
             return ret;
         }
     }
@@ -69,7 +69,7 @@ public class BitBufferOutputStream extends BitOutputStream
             return Integer.MAX_VALUE;
         } else
         {
-            return ((ByteArrayOutputStream) target).size() * 8 + (8 - remaining);
+            return ((ByteArrayOutputStream) target).size() * 8 + accumulatorBits;
         }
     }
 
@@ -80,7 +80,7 @@ public class BitBufferOutputStream extends BitOutputStream
      */
     public long bitsWrittenLong()
     {
-        return ((ByteArrayOutputStream) target).size() * 8 + (8 - remaining);
+        return ((ByteArrayOutputStream) target).size() * 8 + accumulatorBits;
     }
 
     /**
@@ -100,6 +100,68 @@ public class BitBufferOutputStream extends BitOutputStream
 
 // STATIC METHODS ////////////////////////////////////////////////////////////////
 
+// CONTAINED CLASSES /////////////////////////////////////////////////////////////
+
+    /**
+     * The {@link ByteArrayOutputStream} which holds the whole bytes written to a {@link BitBufferOutputStream}.  A
+     * {@link BitBufferOutputStream} is not threadsafe, so this buffer omits the synchronization of its superclass.
+     *
+     * @author Zachary Palmer
+     */
+    protected static class BitBuffer extends ByteArrayOutputStream
+    {
+        /**
+         * General constructor.
+         */
+        public BitBuffer()
+        {
+            super();
+        }
+
+        /**
+         * Writes the specified byte to this buffer.
+         *
+         * @param b The byte to write.
+         */
+        public void write(int b)
+        {
+            if (count == buf.length) grow(1);
+            buf[count++] = (byte) (b);
+        }
+
+        /**
+         * Writes a portion of an array of bytes to this buffer.
+         *
+         * @param b   The data.
+         * @param off The start offset in the data.
+         * @param len The number of bytes to write.
+         * @throws IndexOutOfBoundsException If the specified range does not lie within the array.
+         */
+        public void write(byte[] b, int off, int len)
+                throws IndexOutOfBoundsException
+        {
+            if ((off < 0) || (len < 0) || (off > b.length - len))
+            {
+                throw new IndexOutOfBoundsException(
+                        "Range [" + off + ", " + off + "+" + len + ") invalid for array of length " + b.length);
+            }
+            if (buf.length - count < len) grow(len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        /**
+         * Enlarges the array of this buffer.
+         *
+         * @param needed The number of bytes of space needed beyond the current contents.
+         */
+        private void grow(int needed)
+        {
+            byte[] larger = new byte[Math.max(buf.length * 2, count + needed)];
+            System.arraycopy(buf, 0, larger, 0, count);
+            buf = larger;
+        }
+    }
 }
 
 // END OF FILE
\ No newline at end of file
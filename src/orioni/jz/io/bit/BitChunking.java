@@ -0,0 +1,105 @@
+package orioni.jz.io.bit;
+
+/**
+ * This class contains the chunk reordering shared by {@link BitInputStream} and {@link BitOutputStream}.  A value which
+ * crosses byte boundaries is stored as a series of chunks: the bits remaining in the current byte, some number of whole
+ * bytes, and the bits used from the last byte.  When the {@link BitOrder} and {@link EndianFormat} of a stream agree
+ * ({@link BitOrder#HIGHEST_BIT_FIRST} with {@link EndianFormat#BIG_ENDIAN} or {@link BitOrder#LOWEST_BIT_FIRST} with
+ * {@link EndianFormat#LITTLE_ENDIAN}), the chunks of a value appear in the stream in the order in which the bit order
+ * naturally places them and no reordering is necessary.  Otherwise, the order of the chunks within the value must be
+ * reversed.  The tables in this class indicate which reordering applies to each combination.
+ *
+ * @author Zachary Palmer
+ */
+final class BitChunking
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+    /**
+     * Indicates that no reordering is required.
+     */
+    static final int NONE = 0;
+    /**
+     * Indicates that chunks are taken from the high end of a value and placed starting at the low end.
+     */
+    static final int HIGH_TO_LOW = 1;
+    /**
+     * Indicates that chunks are taken from the low end of a value and placed starting at the high end.
+     */
+    static final int LOW_TO_HIGH = 2;
+
+    /**
+     * The reordering which converts a value read in the natural order of a {@link BitOrder} into the specified {@link
+     * EndianFormat}.  The table is indexed first by the ordinal of the {@link BitOrder} and then by the ordinal of the
+     * {@link EndianFormat}.
+     */
+    static final int[][] READ = {{NONE, HIGH_TO_LOW}, {LOW_TO_HIGH, NONE}};
+    /**
+     * The reordering which converts a value in the specified {@link EndianFormat} into the natural order of a {@link
+     * BitOrder} for writing.  This table is indexed in the same manner as {@link #READ}; each of its reorderings is the
+     * inverse of the corresponding entry in that table.
+     */
+    static final int[][] WRITE = {{NONE, LOW_TO_HIGH}, {HIGH_TO_LOW, NONE}};
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * Private constructor.  This class is not intended to be instantiated.
+     */
+    private BitChunking()
+    {
+        super();
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+    /**
+     * Reorders the chunks of a value.
+     *
+     * @param mode  The reordering to perform: {@link #NONE}, {@link #HIGH_TO_LOW}, or {@link #LOW_TO_HIGH}.
+     * @param value The value to reorder.  Bits above the value's size are ignored.
+     * @param bits  The number of bits in the value.
+     * @param first The number of bits in the first chunk; the remaining chunks are eight bits wide, except possibly the
+     *              last.
+     * @return The reordered value.
+     */
+    static long reorder(int mode, long value, int bits, int first)
+    {
+        long ret = 0;
+        int size = Math.min(first, bits);
+        switch (mode)
+        {
+            case NONE:
+                return value;
+            case HIGH_TO_LOW:
+                int shift = 0;
+                while (bits > 0)
+                {
+                    bits -= size;
+                    ret |= ((value >>> bits) & ((1L << size) - 1)) << shift;
+                    shift += size;
+                    size = Math.min(8, bits);
+                }
+                return ret;
+            case LOW_TO_HIGH:
+                while (bits > 0)
+                {
+                    ret = (ret << size) | (value & ((1L << size) - 1));
+                    value >>>= size;
+                    bits -= size;
+                    size = Math.min(8, bits);
+                }
+                return ret;
+            default:
+                throw new IllegalArgumentException("Unrecognized reordering: " + mode);
+        }
+    }
+}
+
+// END OF FILE
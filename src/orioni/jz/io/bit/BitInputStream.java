@@ -6,6 +6,7 @@ import java.io.ByteArrayInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 
 /**
  * This wrapper {@link InputStream} implementation allows the reading of whole bytes or individual bits from the stream.
@@ -16,8 +17,9 @@ import java.io.InputStream;
  * right side of the last byte read is padded with zeroes.  This padding can be avoided if {@link
  * BitInputStream#readBit()} is called a number of times evenly divisible by eight.
  * <p/>
- * Note that, because Java has inefficient binary arithmetic operations, the performance of this class will drop
- * severely if bytes are read from a nonstandard byte boundary.
+ * Bits are held in a 64-bit accumulator, so a read of any width costs the same regardless of its alignment.  Single
+ * reads take only as many bytes from the source stream as they need; {@link #readBits(int[], int, int)} reads the
+ * source in blocks but never takes more bytes than the bulk read requires.
  *
  * @author Zachary Palmer
  */
@@ -27,6 +29,11 @@ public class BitInputStream extends InputStream
 
 // CONSTANTS /////////////////////////////////////////////////////////////////////
 
+    /**
+     * The largest number of bytes which are read from the source stream at once by a bulk read.
+     */
+    protected static final int PREFETCH_SIZE = 8192;
+
 // NON-STATIC FIELDS /////////////////////////////////////////////////////////////
 
     /**
@@ -34,13 +41,32 @@ public class BitInputStream extends InputStream
      */
     protected InputStream source;
     /**
-     * The current byte in buffer, if any.
+     * The bits which have been taken from the source stream but not yet read.  If the bit order is {@link
+     * BitOrder#HIGHEST_BIT_FIRST}, the next bit is the most significant bit of the accumulator; otherwise, it is the
+     * least significant bit.  Unused bits are zero.
+     */
+    protected long accumulator;
+    /**
+     * The number of bits currently available in the accumulator.
+     */
+    protected int accumulatorBits;
+    /**
+     * The number of bits which have been read from the current byte of the source stream.
      */
-    protected byte buffer;
+    protected int byteOffset;
     /**
-     * The number of bits currently available in the buffer.
+     * Bytes which have been read from the source stream by a bulk read but not yet placed in the accumulator, or
+     * <code>null</code> if no bulk read has been performed.
      */
-    protected byte bitsLeft;
+    protected byte[] prefetched;
+    /**
+     * The index of the next byte in the prefetch buffer.
+     */
+    protected int prefetchPosition;
+    /**
+     * The number of valid bytes in the prefetch buffer.
+     */
+    protected int prefetchLimit;
     /**
      * The bit order for this {@link BitInputStream}.
      */
@@ -49,6 +75,15 @@ public class BitInputStream extends InputStream
      * The {@link EndianFormat} in which the bits should be read.
      */
     protected EndianFormat format;
+    /**
+     * <code>true</code> if the bit order is {@link BitOrder#HIGHEST_BIT_FIRST}; <code>false</code> otherwise.
+     */
+    protected boolean highestFirst;
+    /**
+     * The {@link BitChunking} reordering which converts values from the natural order of the bit order into the
+     * endian format.
+     */
+    protected int chunking;
 
 // CONSTRUCTORS //////////////////////////////////////////////////////////////////
 
@@ -63,62 +98,163 @@ public class BitInputStream extends InputStream
     {
         super();
         this.source = source;
-        bitsLeft = 0;
+        accumulator = 0;
+        accumulatorBits = 0;
+        byteOffset = 0;
+        prefetched = null;
+        prefetchPosition = 0;
+        prefetchLimit = 0;
         this.order = order;
         this.format = format;
+        highestFirst = (order == BitOrder.HIGHEST_BIT_FIRST);
+        chunking = BitChunking.READ[order.ordinal()][format.ordinal()];
     }
 
 // NON-STATIC METHODS ////////////////////////////////////////////////////////////
 
     /**
-     * Attempts to ensure that there is at least one bit in the buffer.  If this method returns <code>false</code>, the
-     * end of the stream has been reached.
+     * Retrieves the next byte from the source stream, taking it from the prefetch buffer if one is available.
      *
-     * @return <code>true</code> if the buffer has at least one bit in it; <code>false</code> if it does not because the
-     *         end of the stream has been reached.
-     * @throws IOException If an I/O error occurs while refilling the buffer.
+     * @return The next byte, or <code>-1</code> if the end of the source stream has been reached.
+     * @throws IOException If an I/O error occurs while reading the source stream.
      */
-    protected boolean ensureBuffer()
+    protected int nextByte()
             throws IOException
     {
-        if (bitsLeft > 0) return true;
-        int data = source.read();
-        if (data == -1) return false;
+        if (prefetchPosition < prefetchLimit) return prefetched[prefetchPosition++] & 0xFF;
+        return source.read();
+    }
 
-        bitsLeft = 8;
-        buffer = (byte) (data);
+    /**
+     * Places bits from a byte of the source stream into the accumulator.  The accumulator must have room for them.
+     *
+     * @param data The byte.
+     * @param bits The number of bits of the byte to use.  These are the first bits of the byte in this stream's bit
+     *             order.
+     */
+    protected void append(int data, int bits)
+    {
+        if (highestFirst)
+        {
+            accumulator |= ((long) (data & (0xFF00 >>> bits) & 0xFF)) << (56 - accumulatorBits);
+        } else
+        {
+            accumulator |= ((long) (data & ((1 << bits) - 1))) << accumulatorBits;
+        }
+        accumulatorBits += bits;
+    }
+
+    /**
+     * Attempts to ensure that there are at least the specified number of bits in the accumulator.  If this method
+     * returns <code>false</code>, the end of the stream has been reached.  Bytes are taken from the source stream only
+     * as they are needed; bytes in the prefetch buffer are moved into the accumulator as long as there is room.
+     *
+     * @param bits The number of bits required.  This may not exceed <code>57</code>.
+     * @return <code>true</code> if the accumulator has at least that many bits in it; <code>false</code> if it does not
+     *         because the end of the stream has been reached.
+     * @throws IOException If an I/O error occurs while refilling the accumulator.
+     */
+    protected boolean fill(int bits)
+            throws IOException
+    {
+        while (accumulatorBits < bits)
+        {
+            if (prefetchPosition < prefetchLimit)
+            {
+                while ((accumulatorBits <= 56) && (prefetchPosition < prefetchLimit))
+                {
+                    append(prefetched[prefetchPosition++], 8);
+                }
+            } else
+            {
+                int data = source.read();
+                if (data == -1) return false;
+                append(data, 8);
+            }
+        }
         return true;
     }
 
     /**
-     * Attempts to retrieve the provided number of bits from the buffer.  If more bits are requested than are available,
-     * an {@link IndexOutOfBoundsException} is thrown.
+     * Reads a block of the source stream into the prefetch buffer if that buffer is empty.  At most the specified
+     * number of bytes is read; fewer may be read if the source stream does not have them available.
+     *
+     * @param bytes The number of bytes which will be needed.
+     * @throws IOException If an I/O error occurs while reading the source stream.
+     */
+    protected void prefetch(long bytes)
+            throws IOException
+    {
+        if ((prefetchPosition < prefetchLimit) || (bytes <= 0)) return;
+        if (prefetched == null) prefetched = new byte[PREFETCH_SIZE];
+        int read = source.read(prefetched, 0, (int) Math.min(bytes, prefetched.length));
+        prefetchPosition = 0;
+        prefetchLimit = Math.max(read, 0);
+    }
+
+    /**
+     * Removes the specified number of bits from the accumulator.  The accumulator must contain them.
      *
-     * @param bits The number of bits to retrieve.
-     * @return The bits from the buffer, as a big endian value.
+     * @param bits The number of bits to remove, between <code>1</code> and <code>63</code>.
+     * @return The bits, in the natural order of this stream's bit order: the first bit is the most significant if the
+     *         bit order is {@link BitOrder#HIGHEST_BIT_FIRST} and the least significant otherwise.
      */
-    protected int getBitsFromBuffer(int bits)
+    protected long take(int bits)
     {
-        if (bits > bitsLeft)
+        long ret;
+        if (highestFirst)
         {
-            throw new IndexOutOfBoundsException(
-                    "Internal buffer error: requested " + bits + " bits, only had " +
-                    bitsLeft);
+            ret = accumulator >>> (64 - bits);
+            accumulator <<= bits;
+        } else
+        {
+            ret = accumulator & ((1L << bits) - 1);
+            accumulator >>>= bits;
         }
-        int ret;
-        switch (order)
+        accumulatorBits -= bits;
+        byteOffset = (byteOffset + bits) & 7;
+        return ret;
+    }
+
+    /**
+     * Discards the contents of the accumulator and produces the exception thrown when a read passes the end of the
+     * stream.
+     *
+     * @return The {@link EOFException} to throw.
+     */
+    protected EOFException endOfStream()
+    {
+        accumulator = 0;
+        accumulatorBits = 0;
+        return new EOFException("Unexpected end of stream.");
+    }
+
+    /**
+     * Reads a value of the specified number of bits.  The bit count is not checked.
+     *
+     * @param bits The number of bits to read, between <code>1</code> and <code>64</code>.
+     * @return The value, in this stream's endian format.
+     * @throws IOException  If an I/O error occurs while reading the data.
+     * @throws EOFException If the end of stream is reached before obtaining that many bits.
+     */
+    protected long readValue(int bits)
+            throws IOException
+    {
+        int first = 8 - byteOffset;
+        long ret;
+        if (bits <= 56)
         {
-            case HIGHEST_BIT_FIRST:
-                ret = buffer >>> (bitsLeft - bits);
-                break;
-            case LOWEST_BIT_FIRST:
-                ret = buffer >>> (8 - bitsLeft);
-                break;
-            default:
-                throw new IllegalStateException("Unrecognized bit order: " + order);
+            if ((accumulatorBits < bits) && (!fill(bits))) throw endOfStream();
+            ret = take(bits);
+        } else
+        {
+            if (!fill(32)) throw endOfStream();
+            long head = take(32);
+            if (!fill(bits - 32)) throw endOfStream();
+            long tail = take(bits - 32);
+            ret = highestFirst ? (head << (bits - 32)) | tail : head | (tail << 32);
         }
-        bitsLeft -= bits;
-        return MathUtilities.setRelevantBitCount(ret, bits);
+        return (chunking == BitChunking.NONE) ? ret : BitChunking.reorder(chunking, ret, bits, first);
     }
 
     /**
@@ -127,9 +263,11 @@ public class BitInputStream extends InputStream
      */
     public void findByteBoundary()
     {
-        if (bitsLeft < 8)
+        if (byteOffset != 0)
         {
-            bitsLeft = 0;
+            int discard = Math.min(8 - byteOffset, accumulatorBits);
+            if (discard > 0) take(discard);
+            byteOffset = 0;
         }
     }
 
@@ -138,6 +276,9 @@ public class BitInputStream extends InputStream
      * <code>0</code> to <code>255</code>. If no byte is available because the end of the stream has been reached, the
      * value <code>-1</code> is returned. This method blocks until input data is available, the end of the stream is
      * detected, or an exception is thrown.
+     * <p/>
+     * If the stream is not on a byte boundary, the bits remaining in the current byte form the low bits of the result
+     * regardless of this stream's endian format.
      *
      * @return The next byte of data, or <code>-1</code> if the end of the stream is reached.
      * @throws IOException If an I/O error occurs.
@@ -145,19 +286,18 @@ public class BitInputStream extends InputStream
     public int read()
             throws IOException
     {
-        if (bitsLeft == 0)
+        if ((accumulatorBits < 8) && (!fill(8)))
         {
-            if (!ensureBuffer()) return -1;
+            accumulator = 0;
+            accumulatorBits = 0;
+            return -1;
         }
-        if (bitsLeft == 8)
+        int first = 8 - byteOffset;
+        int ret = (int) take(8);
+        if ((highestFirst) && (first != 8))
         {
-            bitsLeft = 0;
-            return buffer & 0xFF;
+            ret = (int) BitChunking.reorder(BitChunking.HIGH_TO_LOW, ret, 8, first);
         }
-        int tempBits = bitsLeft;
-        int ret = getBitsFromBuffer(tempBits);
-        if (!ensureBuffer()) return -1;
-        ret |= getBitsFromBuffer(8 - tempBits) << tempBits;
         return ret;
     }
 
@@ -171,8 +311,8 @@ public class BitInputStream extends InputStream
     public byte readBit()
             throws IOException
     {
-        if (!ensureBuffer()) return -1;
-        return (byte) (getBitsFromBuffer(1));
+        if ((accumulatorBits < 1) && (!fill(1))) return -1;
+        return (byte) (take(1));
     }
 
     /**
@@ -193,45 +333,64 @@ public class BitInputStream extends InputStream
     {
         if (bits == 0) return 0;
         if ((bits < 0) || (bits > 32)) throw new IllegalArgumentException("Bit count out of range [0,32]");
-        int ret = 0;
-        if (!ensureBuffer()) throw new EOFException("Unexpected end of stream.");
-        int shiftBits = 0;
-        if (bits > bitsLeft)
+        return (int) (readValue(bits));
+    }
+
+    /**
+     * Reads a specified number of bits in the stream and returns them as a <code>long</code>.  The bits are
+     * interpreted in the same manner as by {@link #readBits(int)}.  A read of <code>0</code> bits returns
+     * <code>0</code>.
+     *
+     * @param bits The number of bits to read.
+     * @return A <code>long</code> containing those bits, padded with zeroes.
+     * @throws IOException              If an I/O error occurs while reading the data.
+     * @throws EOFException             If the end of stream is reached before obtaining that many bits.
+     * @throws IllegalArgumentException If the read is larger than <code>64</code> bits or less than <code>0</code>
+     *                                  bits.
+     */
+    public long readLongBits(int bits)
+            throws IOException
+    {
+        if (bits == 0) return 0;
+        if ((bits < 0) || (bits > 64)) throw new IllegalArgumentException("Bit count out of range [0,64]");
+        return readValue(bits);
+    }
+
+    /**
+     * Reads a series of values of the same width, as from a packed array.  Each value is read as by {@link
+     * #readBits(int)}; the source stream is read in blocks.
+     *
+     * @param values The array in which to store the values.
+     * @param count  The number of values to read.  They are stored starting at index <code>0</code>.
+     * @param bits   The number of bits in each value.
+     * @throws IOException               If an I/O error occurs while reading the data.
+     * @throws EOFException              If the end of stream is reached before obtaining all of the values.
+     * @throws IllegalArgumentException  If the width is larger than <code>32</code> bits or less than <code>0</code>
+     *                                   bits.
+     * @throws IndexOutOfBoundsException If the count is negative or larger than the array.
+     */
+    public void readBits(int[] values, int count, int bits)
+            throws IOException
+    {
+        if ((bits < 0) || (bits > 32)) throw new IllegalArgumentException("Bit count out of range [0,32]");
+        if ((count < 0) || (count > values.length))
         {
-            switch (format)
+            throw new IndexOutOfBoundsException(
+                    "Count " + count + " invalid for array of length " + values.length);
+        }
+        if (bits == 0)
+        {
+            Arrays.fill(values, 0, count, 0);
+            return;
+        }
+        for (int i = 0; i < count; i++)
+        {
+            if ((accumulatorBits < bits) && (prefetchPosition == prefetchLimit))
             {
-                case BIG_ENDIAN:
-                    while (bits > bitsLeft)
-                    {
-                        bits -= bitsLeft;
-                        ret <<= bitsLeft;
-                        ret |= getBitsFromBuffer(bitsLeft);
-                        if (bits > 0)
-                        {
-                            if (!ensureBuffer()) throw new EOFException("Unexpected end of stream.");
-                        }
-                    }
-                    ret <<= bits;
-                    break;
-                case LITTLE_ENDIAN:
-                    while (bits > bitsLeft)
-                    {
-                        bits -= bitsLeft;
-                        int tempBits = bitsLeft;
-                        ret |= getBitsFromBuffer(bitsLeft) << shiftBits;
-                        shiftBits += tempBits;
-                        if (bits > 0)
-                        {
-                            if (!ensureBuffer()) throw new EOFException("Unexpected end of stream.");
-                        }
-                    }
-                    break;
-                default:
-                    throw new IllegalStateException("Unrecognized endian format: " + format);
+                prefetch(((long) (count - i) * bits - accumulatorBits + 7) >>> 3);
             }
+            values[i] = (int) (readValue(bits));
         }
-        ret |= getBitsFromBuffer(bits) << shiftBits;
-        return ret;
     }
 
     /**
@@ -400,7 +559,7 @@ public class BitInputStream extends InputStream
     public int available()
             throws IOException
     {
-        return (source.available() + bitsLeft / 8);
+        return (source.available() + (prefetchLimit - prefetchPosition) + accumulatorBits / 8);
     }
 
     /**
@@ -414,14 +573,8 @@ public class BitInputStream extends InputStream
     public int availableBits()
             throws IOException
     {
-        int bytesAvailable = source.available() + bitsLeft / 8;
-        if (bytesAvailable > Integer.MAX_VALUE / 8)
-        {
-            return Integer.MAX_VALUE;
-        } else
-        {
-            return bytesAvailable * 8 + bitsLeft % 8;
-        }
+        long bitsAvailable = (source.available() + (long) (prefetchLimit - prefetchPosition)) * 8 + accumulatorBits;
+        return (int) (Math.min(bitsAvailable, Integer.MAX_VALUE));
     }
 
     /**
@@ -437,4 +590,4 @@ public class BitInputStream extends InputStream
 
 // STATIC METHODS ////////////////////////////////////////////////////////////////
 
-}
\ No newline at end of file
+}
@@ -20,7 +20,7 @@ public class BitLimitedInputStream extends BitInputStream
 // NON-STATIC FIELDS /////////////////////////////////////////////////////////////
 
     /** The number of bits which can be read from this stream before it is exhausted.  This does not count data which
-     *  is already present in the buffer. */
+     *  is already present in the accumulator. */
     protected long bitsLeftToRead;
 
 // CONSTRUCTORS //////////////////////////////////////////////////////////////////
@@ -40,42 +40,43 @@ public class BitLimitedInputStream extends BitInputStream
 // NON-STATIC METHODS ////////////////////////////////////////////////////////////
 
     /**
-     * Attempts to ensure that there is at least one bit in the buffer.  If this method returns <code>false</code>, the
-     * end of the stream has been reached.
+     * Attempts to ensure that there are at least the specified number of bits in the accumulator.  If this method
+     * returns <code>false</code>, the end of the stream has been reached.  Only the permitted number of bits is taken
+     * from the underlying stream.
      *
-     * @return <code>true</code> if the buffer has at least one bit in it; <code>false</code> if it does not because the
-     *         end of the stream has been reached.
-     * @throws java.io.IOException If an I/O error occurs while refilling the buffer.
+     * @param bits The number of bits required.  This may not exceed <code>57</code>.
+     * @return <code>true</code> if the accumulator has at least that many bits in it; <code>false</code> if it does not
+     *         because the end of the stream has been reached.
+     * @throws java.io.IOException If an I/O error occurs while refilling the accumulator.
      */
-    protected boolean ensureBuffer()
+    protected boolean fill(int bits)
             throws IOException
     {
-        if (bitsLeft >0) return true;
-        if (bitsLeftToRead ==0) return false;
-        if (bitsLeftToRead <8)
+        while (accumulatorBits < bits)
         {
-            if (!super.ensureBuffer()) return false;
-            bitsLeft = (byte)(bitsLeftToRead);
-            switch (order)
-            {
-                case HIGHEST_BIT_FIRST:
-                    buffer >>>= 8 - bitsLeft;
-                    break;
-                case LOWEST_BIT_FIRST:
-                    buffer <<= 8 - bitsLeft;
-                    break;
-                default:
-                    throw new IllegalStateException("Unrecognized bit order: "+order);
-            }
-            bitsLeftToRead = 0;
-        } else
-        {
-            bitsLeftToRead -=8;
-            return super.ensureBuffer();
+            if (bitsLeftToRead == 0) return false;
+            int data = nextByte();
+            if (data == -1) return false;
+            int count = (int) (Math.min(8, bitsLeftToRead));
+            append(data, count);
+            bitsLeftToRead -= count;
         }
         return true;
     }
 
+    /**
+     * Reads a block of the source stream into the prefetch buffer if that buffer is empty.  No bytes beyond those
+     * containing the permitted number of bits are read.
+     *
+     * @param bytes The number of bytes which will be needed.
+     * @throws IOException If an I/O error occurs while reading the source stream.
+     */
+    protected void prefetch(long bytes)
+            throws IOException
+    {
+        super.prefetch(Math.min(bytes, (bitsLeftToRead + 7) / 8));
+    }
+
 // STATIC METHODS ////////////////////////////////////////////////////////////////
 
 }
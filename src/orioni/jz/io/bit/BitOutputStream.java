@@ -7,9 +7,9 @@ import java.io.OutputStream;
 
 /**
  * This wrapper {@link OutputStream} implementation allows the writing of whole bytes or individual bits to the target
- * {@link OutputStream}.  When an individual bit is written, successive bytes are written as the next eight bits.  The
- * performance of Java's binary arithmetic is poor; therefore, when bytes are written outside of the standard eight-bit
- * boundaries, this class will perform notably worse.
+ * {@link OutputStream}.  When an individual bit is written, successive bytes are written as the next eight bits.  Bits
+ * are gathered in a 64-bit accumulator, so writes cost the same regardless of their alignment.  Each byte is written to
+ * the target as soon as it is complete; the bytes completed by a single write are passed to the target together.
  * <p/>
  * When this class is flushed or closed, it must flush in terms of whole bytes.  If bits are partially written at this
  * time, the buffer will be filled out with zero bits.
@@ -29,13 +29,19 @@ public class BitOutputStream extends OutputStream
      */
     protected OutputStream target;
     /**
-     * The buffer for this output stream.
+     * The bits which have been written to this stream but not yet to the target.  If the bit order is {@link
+     * BitOrder#HIGHEST_BIT_FIRST}, the first bit is the most significant bit of the accumulator; otherwise, it is the
+     * least significant bit.  Unused bits are zero.
      */
-    protected byte buffer;
+    protected long accumulator;
     /**
-     * The number of bits which have yet to be written to the buffer.
+     * The number of bits in the accumulator.  Between writes, this is always less than eight.
      */
-    protected int remaining;
+    protected int accumulatorBits;
+    /**
+     * The buffer used to pass completed bytes to the target.
+     */
+    protected byte[] completed;
     /**
      * The {@link BitOrder} for this {@link BitOutputStream}.
      */
@@ -44,6 +50,15 @@ public class BitOutputStream extends OutputStream
      * The {@link EndianFormat} in which to write values.
      */
     protected EndianFormat format;
+    /**
+     * <code>true</code> if the bit order is {@link BitOrder#HIGHEST_BIT_FIRST}; <code>false</code> otherwise.
+     */
+    protected boolean highestFirst;
+    /**
+     * The {@link BitChunking} reordering which converts values from the endian format into the natural order of the
+     * bit order.
+     */
+    protected int chunking;
 
 // CONSTRUCTORS //////////////////////////////////////////////////////////////////
 
@@ -52,54 +67,113 @@ public class BitOutputStream extends OutputStream
      *
      * @param target The target {@link java.io.OutputStream} for the values in this {@link java.io.OutputStream}.
      * @param order  The {@link BitOrder} in which bits are written.
+     * @param format The {@link EndianFormat} in which values are written.
      */
     public BitOutputStream(OutputStream target, BitOrder order, EndianFormat format)
     {
         super();
         this.target = target;
-        remaining = 8;
+        accumulator = 0;
+        accumulatorBits = 0;
+        completed = new byte[8];
         this.order = order;
         this.format = format;
+        highestFirst = (order == BitOrder.HIGHEST_BIT_FIRST);
+        chunking = BitChunking.WRITE[order.ordinal()][format.ordinal()];
     }
 
 // NON-STATIC METHODS ////////////////////////////////////////////////////////////
 
     /**
-     * Writes the specified number of bits of the given value to the buffer using the {@link BitOrder} of this stream.
-     * If there is less space available in the buffer than the number of bits requested to be written, an exception is
-     * thrown.
+     * Adds bits to the accumulator and writes any bytes which are completed as a result.
      *
-     * @param value The value to write.
-     * @param bits  The number of bits in that value to write.
-     * @throws IndexOutOfBoundsException If the number of bits is greater than the space remaining in the buffer.
+     * @param value The bits to add, in the natural order of this stream's bit order.  Bits above the specified number
+     *              are ignored.
+     * @param bits  The number of bits to add, between <code>1</code> and <code>56</code>.
+     * @throws IOException If an I/O error occurs while writing to the target.
      */
-    protected void writeBitsToBuffer(int value, int bits)
+    protected void append(long value, int bits)
+            throws IOException
     {
-        if (bits == 0) return;
-        if (bits > remaining)
+        value &= (1L << bits) - 1;
+        if (highestFirst)
         {
-            throw new IndexOutOfBoundsException(
-                    "Internal buffer write error: tried to write " + bits + " bits, only had space for " + remaining);
+            accumulator |= value << (64 - accumulatorBits - bits);
+        } else
+        {
+            accumulator |= value << accumulatorBits;
+        }
+        accumulatorBits += bits;
+        if (accumulatorBits < 8) return;
+
+        int count = accumulatorBits >>> 3;
+        for (int i = 0; i < count; i++)
+        {
+            if (highestFirst)
+            {
+                completed[i] = (byte) (accumulator >>> 56);
+                accumulator <<= 8;
+            } else
+            {
+                completed[i] = (byte) (accumulator);
+                accumulator >>>= 8;
+            }
+        }
+        accumulatorBits &= 7;
+        if (count == 1)
+        {
+            target.write(completed[0]);
+        } else
+        {
+            target.write(completed, 0, count);
         }
-        value = MathUtilities.setRelevantBitCount(value, bits);
-        switch (order)
+    }
+
+    /**
+     * Writes a value of the specified number of bits.  The bit count is not checked.
+     *
+     * @param value The value to write, in this stream's endian format.
+     * @param bits  The number of bits to write, between <code>1</code> and <code>64</code>.
+     * @throws IOException If an I/O error occurs while writing the data.
+     */
+    protected void writeValue(long value, int bits)
+            throws IOException
+    {
+        if (chunking != BitChunking.NONE)
         {
-            case HIGHEST_BIT_FIRST:
-                buffer |= value << (remaining - bits);
-                break;
-            case LOWEST_BIT_FIRST:
-                buffer |= value << (8 - remaining);
-                break;
-            default:
-                throw new IllegalStateException("Unrecognized bit order: " + order);
+            value = BitChunking.reorder(chunking, value, bits, 8 - accumulatorBits);
         }
-        remaining -= bits;
+        if (bits <= 56)
+        {
+            append(value, bits);
+        } else if (highestFirst)
+        {
+            append(value >>> 32, bits - 32);
+            append(value, 32);
+        } else
+        {
+            append(value, 32);
+            append(value >>> 32, bits - 32);
+        }
+    }
+
+    /**
+     * Retrieves the partially written byte, padded with zeroes.
+     *
+     * @return The byte containing the bits which have been written but not yet sent to the target.
+     */
+    protected byte getPartialByte()
+    {
+        return (byte) (highestFirst ? accumulator >>> 56 : accumulator);
     }
 
     /**
      * Writes the specified byte to this output stream. The general contract for <code>write</code> is that one byte is
      * written to the output stream. The byte to be written is the eight low-order bits of the argument <code>b</code>.
      * The 24 high-order bits of <code>b</code> are ignored.
+     * <p/>
+     * If the stream is not on a byte boundary, the low bits of the byte fill out the current byte regardless of this
+     * stream's endian format.
      *
      * @param b The <code>byte</code> to write.
      * @throws IOException If an I/O error occurs.
@@ -107,10 +181,38 @@ public class BitOutputStream extends OutputStream
     public void write(int b)
             throws IOException
     {
-        int tempRemaining = remaining;
-        writeBitsToBuffer(b, tempRemaining);
-        flush();
-        writeBitsToBuffer(b >>> tempRemaining, 8 - tempRemaining);
+        long value = b & 0xFF;
+        if ((highestFirst) && (accumulatorBits != 0))
+        {
+            value = BitChunking.reorder(BitChunking.LOW_TO_HIGH, value, 8, 8 - accumulatorBits);
+        }
+        append(value, 8);
+    }
+
+    /**
+     * Writes <code>len</code> bytes from the specified byte array starting at offset <code>off</code> to this output
+     * stream.  If the stream is on a byte boundary, the bytes are passed directly to the target.
+     *
+     * @param b   The data.
+     * @param off The start offset in the data.
+     * @param len The number of bytes to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void write(byte[] b, int off, int len)
+            throws IOException
+    {
+        if ((off < 0) || (len < 0) || (off > b.length - len))
+        {
+            throw new IndexOutOfBoundsException(
+                    "Range [" + off + ", " + off + "+" + len + ") invalid for array of length " + b.length);
+        }
+        if (accumulatorBits == 0)
+        {
+            target.write(b, off, len);
+        } else
+        {
+            for (int i = off; i < off + len; i++) write(b[i]);
+        }
     }
 
     /**
@@ -123,8 +225,7 @@ public class BitOutputStream extends OutputStream
     public void writeBit(boolean value)
             throws IOException
     {
-        writeBitsToBuffer(value ? 1 : 0, 1);
-        if (remaining == 0) flush();
+        append(value ? 1 : 0, 1);
     }
 
     /**
@@ -147,36 +248,25 @@ public class BitOutputStream extends OutputStream
     {
         if (bits == 0) return;
         if ((bits < 0) || (bits > 32)) throw new IllegalArgumentException("Bit count out of range [0,32]");
-        if (remaining < 1) flush();
+        writeValue(value & 0xFFFFFFFFL, bits);
+    }
 
-        if (bits > remaining)
-        {
-            switch (format)
-            {
-                case BIG_ENDIAN:
-                    while (bits > remaining)
-                    {
-                        bits -= remaining;
-                        writeBitsToBuffer(value >>> bits, remaining);
-                        flush();
-                    }
-                    break;
-                case LITTLE_ENDIAN:
-                    while (bits > remaining)
-                    {
-                        int tempBits = remaining;
-                        bits -= tempBits;
-                        writeBitsToBuffer(value, tempBits);
-                        value >>>= tempBits;
-                        flush();
-                    }
-                    break;
-                default:
-                    throw new IllegalStateException("Unrecognized endian format: " + format);
-            }
-        }
-        writeBitsToBuffer(value, bits);
-        if (remaining == 0) flush();
+    /**
+     * Writes a specified number of bits to the stream using the provided <code>long</code>.  The bits are interpreted
+     * in the same manner as by {@link #writeBits(int, int)}.  A write of <code>0</code> bits writes nothing.
+     *
+     * @param value The value to write.
+     * @param bits  The number of bits to write.
+     * @throws IOException              If an I/O error occurs while writing the data.
+     * @throws IllegalArgumentException If the write is larger than <code>64</code> bits or less than <code>0</code>
+     *                                  bits.
+     */
+    public void writeLongBits(long value, int bits)
+            throws IOException
+    {
+        if (bits == 0) return;
+        if ((bits < 0) || (bits > 64)) throw new IllegalArgumentException("Bit count out of range [0,64]");
+        writeValue(value, bits);
     }
 
     /**
@@ -279,11 +369,11 @@ public class BitOutputStream extends OutputStream
     public void flush()
             throws IOException
     {
-        if (remaining < 8)
+        if (accumulatorBits > 0)
         {
-            target.write(buffer);
-            remaining = 8;
-            buffer = 0;
+            target.write(getPartialByte());
+            accumulator = 0;
+            accumulatorBits = 0;
         }
     }
 
@@ -1,7 +1,5 @@
 package orioni.jz.io.bit;
 
-import orioni.jz.math.MathUtilities;
-
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -10,6 +8,9 @@ import java.io.InputStream;
  * <code>01000110b 00010111b 00101111b 11101100b</code> are read from the underlying stream, this stream produces
  * <code>01100010b 11101000b 11110100b 00110111b</code>.  Note that the byte order is not changed: only the order of the
  * bits within the bytes.
+ * <p/>
+ * Reversal is performed with a lookup table.  Array reads reverse the bytes in place after reading them from the
+ * underlying stream in a single call.
  *
  * @author Zachary Palmer
  */
@@ -19,6 +20,19 @@ public class BitReversingInputStream extends InputStream
 
 // CONSTANTS /////////////////////////////////////////////////////////////////////
 
+    /**
+     * A table mapping each byte value to the value with its bits reversed.
+     */
+    private static final byte[] REVERSED = new byte[256];
+
+    static
+    {
+        for (int i = 0; i < REVERSED.length; i++)
+        {
+            REVERSED[i] = (byte) (Integer.reverse(i) >>> 24);
+        }
+    }
+
 // NON-STATIC FIELDS /////////////////////////////////////////////////////////////
 
     /**
@@ -52,7 +66,29 @@ public class BitReversingInputStream extends InputStream
     {
         int n = source.read();
         if (n == -1) return n;
-        return MathUtilities.reverseBits(n, 7, 0);
+        return REVERSED[n] & 0xFF;
+    }
+
+    /**
+     * Reads up to <code>len</code> bytes of data from the underlying stream into an array of bytes, reversing the bits
+     * of each byte.
+     *
+     * @param b   The buffer into which the data is read.
+     * @param off The start offset in the array at which the data is written.
+     * @param len The maximum number of bytes to read.
+     * @return The total number of bytes read into the buffer, or <code>-1</code> if the end of the stream has been
+     *         reached.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int read(byte[] b, int off, int len)
+            throws IOException
+    {
+        int read = source.read(b, off, len);
+        for (int i = off; i < off + read; i++)
+        {
+            b[i] = REVERSED[b[i] & 0xFF];
+        }
+        return read;
     }
 
     /**
@@ -0,0 +1,110 @@
+package orioni.jz.io.files;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * This {@link File} carries the attributes which were read when it was found, such as by a {@link FileWalker}.  The
+ * methods {@link #exists()}, {@link #isDirectory()}, {@link #isFile()}, {@link #length()}, and {@link #lastModified()}
+ * answer from those attributes rather than querying the file system again, so that {@link java.io.FileFilter}s which
+ * use them (such as {@link FileExtensionFilter} and {@link FileSizeFilter}) do not cost an additional system call per
+ * file.  The attributes are a snapshot; they are not updated if the file changes.  All other methods behave as they do
+ * for any other {@link File}.
+ *
+ * @author Zachary Palmer
+ */
+public class AttributedFile extends File
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The attributes of this file.
+     */
+    protected BasicFileAttributes attributes;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * General constructor.
+     *
+     * @param path       The path of the file.
+     * @param attributes The attributes of the file.
+     */
+    public AttributedFile(Path path, BasicFileAttributes attributes)
+    {
+        super(path.toString());
+        this.attributes = attributes;
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Retrieves the attributes of this file.
+     *
+     * @return The attributes which were read when this file was found.
+     */
+    public BasicFileAttributes getAttributes()
+    {
+        return attributes;
+    }
+
+    /**
+     * Determines whether or not this file existed when its attributes were read.
+     *
+     * @return <code>true</code>, as the attributes could not have been read otherwise.
+     */
+    public boolean exists()
+    {
+        return true;
+    }
+
+    /**
+     * Determines whether or not this file was a directory when its attributes were read.
+     *
+     * @return <code>true</code> if this file was a directory; <code>false</code> otherwise.
+     */
+    public boolean isDirectory()
+    {
+        return attributes.isDirectory();
+    }
+
+    /**
+     * Determines whether or not this file was a normal file when its attributes were read.
+     *
+     * @return <code>true</code> if this file was a regular file; <code>false</code> otherwise.
+     */
+    public boolean isFile()
+    {
+        return attributes.isRegularFile();
+    }
+
+    /**
+     * Retrieves the length of this file when its attributes were read.
+     *
+     * @return The length of this file in bytes.
+     */
+    public long length()
+    {
+        return attributes.size();
+    }
+
+    /**
+     * Retrieves the modification time of this file when its attributes were read.
+     *
+     * @return The modification time of this file, in milliseconds since the epoch.
+     */
+    public long lastModified()
+    {
+        return attributes.lastModifiedTime().toMillis();
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+}
+
+// END OF FILE //
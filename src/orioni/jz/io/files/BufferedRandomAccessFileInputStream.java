@@ -0,0 +1,362 @@
+package orioni.jz.io.files;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This {@link InputStream} provides buffered streaming input from a {@link RandomAccessFile}.  Unlike {@link
+ * RandomAccessFileInputStream}, it keeps its own position and reads through the file's {@link FileChannel} with
+ * positional reads, so the {@link RandomAccessFile}'s pointer is neither used nor modified.  Any number of these
+ * streams may therefore read the same file concurrently from different threads; each individual stream, however, is
+ * not threadsafe.
+ * <p/>
+ * Data is read ahead into a buffer.  The amount read ahead starts at a minimum; each time the buffer is refilled
+ * immediately after the data it previously held, the amount is doubled up to a maximum.  A {@link #seek(long)} outside
+ * of the buffered data returns the amount to its minimum, so random access does not read data which will not be used.
+ * Reads at least as large as the current read-ahead bypass the buffer.
+ * <p/>
+ * Data written to the file after it was buffered is not seen until the stream is positioned outside of the buffer.
+ * Closing this stream does not close the underlying {@link RandomAccessFile}.
+ *
+ * @author Zachary Palmer
+ */
+public class BufferedRandomAccessFileInputStream extends InputStream
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+    /**
+     * The default minimum number of bytes read ahead.
+     */
+    public static final int DEFAULT_MINIMUM_READ_AHEAD = 4096;
+    /**
+     * The default maximum number of bytes read ahead.
+     */
+    public static final int DEFAULT_MAXIMUM_READ_AHEAD = 262144;
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The {@link FileChannel} providing the data, or <code>null</code> if this stream is closed.
+     */
+    protected FileChannel channel;
+    /**
+     * The position in the file of the next byte to be read.
+     */
+    protected long position;
+    /**
+     * The read-ahead buffer.
+     */
+    protected byte[] buffer;
+    /**
+     * The position in the file of the first byte in the buffer.
+     */
+    protected long bufferStart;
+    /**
+     * The number of valid bytes in the buffer.
+     */
+    protected int bufferLength;
+    /**
+     * The minimum number of bytes read ahead.
+     */
+    protected int minimumReadAhead;
+    /**
+     * The number of bytes which will be read ahead when the buffer is next filled.
+     */
+    protected int readAhead;
+    /**
+     * The position in the file at which the last read from the file ended, or <code>-1</code> if no read has occurred.
+     */
+    protected long lastReadEnd;
+    /**
+     * The marked position.
+     */
+    protected long mark;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * Skeleton constructor.  Reading starts at the {@link RandomAccessFile}'s current pointer, and the default
+     * read-ahead sizes are used.
+     *
+     * @param randomAccessFile The underlying {@link RandomAccessFile} from which to read data.
+     * @throws IOException If the file's pointer could not be read.
+     */
+    public BufferedRandomAccessFileInputStream(RandomAccessFile randomAccessFile)
+            throws IOException
+    {
+        this(randomAccessFile, randomAccessFile.getFilePointer(), DEFAULT_MINIMUM_READ_AHEAD,
+             DEFAULT_MAXIMUM_READ_AHEAD);
+    }
+
+    /**
+     * General constructor.
+     *
+     * @param randomAccessFile The underlying {@link RandomAccessFile} from which to read data.
+     * @param position         The position in the file at which reading starts.
+     * @param minimumReadAhead The minimum number of bytes read ahead.
+     * @param maximumReadAhead The maximum number of bytes read ahead.
+     * @throws IllegalArgumentException If the position is negative, the minimum read-ahead is not positive, or the
+     *                                  maximum read-ahead is less than the minimum.
+     */
+    public BufferedRandomAccessFileInputStream(RandomAccessFile randomAccessFile, long position, int minimumReadAhead,
+                                               int maximumReadAhead)
+            throws IllegalArgumentException
+    {
+        super();
+        if (position < 0) throw new IllegalArgumentException("Invalid position: " + position);
+        if ((minimumReadAhead < 1) || (maximumReadAhead < minimumReadAhead))
+        {
+            throw new IllegalArgumentException(
+                    "Invalid read-ahead: " + minimumReadAhead + " to " + maximumReadAhead);
+        }
+        channel = randomAccessFile.getChannel();
+        this.position = position;
+        buffer = new byte[maximumReadAhead];
+        bufferStart = 0;
+        bufferLength = 0;
+        this.minimumReadAhead = minimumReadAhead;
+        readAhead = minimumReadAhead;
+        lastReadEnd = -1;
+        mark = position;
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Reads the next byte of data from the file.
+     *
+     * @return The next byte of data, or <code>-1</code> if the end of the stream is reached.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int read()
+            throws IOException
+    {
+        ensureOpen();
+        if ((getBuffered() <= 0) && (!fill())) return -1;
+        return buffer[(int) (position++ - bufferStart)] & 0xFF;
+    }
+
+    /**
+     * Reads up to <code>len</code> bytes of data from the file into an array of bytes.
+     *
+     * @param b   The buffer into which the data is read.
+     * @param off The start offset in array <code>b</code> at which the data is written.
+     * @param len The maximum number of bytes to read.
+     * @return The total number of bytes read into the buffer, or <code>-1</code> if there is no more data because the
+     *         end of the stream has been reached.
+     * @throws IOException               If an I/O error occurs.
+     * @throws IndexOutOfBoundsException If <code>off</code> or <code>len</code> are out of bounds.
+     */
+    public int read(byte[] b, int off, int len)
+            throws IOException
+    {
+        ensureOpen();
+        if ((off < 0) || (len < 0) || (len > b.length - off)) throw new IndexOutOfBoundsException();
+        if (len == 0) return 0;
+        int buffered = getBuffered();
+        if (buffered <= 0)
+        {
+            if (len >= readAhead)
+            {
+                // Large reads go straight to the caller's array
+                updateReadAhead();
+                int read = readFile(ByteBuffer.wrap(b, off, len));
+                if (read > 0) position += read;
+                return read;
+            }
+            if (!fill()) return -1;
+            buffered = getBuffered();
+        }
+        int read = Math.min(len, buffered);
+        System.arraycopy(buffer, (int) (position - bufferStart), b, off, read);
+        position += read;
+        return read;
+    }
+
+    /**
+     * Skips over bytes of data in the file.  This method does not skip past the end of the file.
+     *
+     * @param n The number of bytes to skip.
+     * @return The number of bytes skipped.
+     * @throws IOException If an I/O error occurs.
+     */
+    public long skip(long n)
+            throws IOException
+    {
+        ensureOpen();
+        if (n <= 0) return 0;
+        long skipped = Math.min(n, Math.max(0, channel.size() - position));
+        seek(position + skipped);
+        return skipped;
+    }
+
+    /**
+     * Determines the number of bytes which remain in the file after the current position.
+     *
+     * @return The number of bytes which remain, or {@link Integer#MAX_VALUE} if that number is larger.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int available()
+            throws IOException
+    {
+        ensureOpen();
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(getBuffered(), channel.size() - position));
+    }
+
+    /**
+     * Marks the current position in this stream.  The mark remains valid regardless of the number of bytes read.
+     *
+     * @param readlimit Ignored.
+     */
+    public void mark(int readlimit)
+    {
+        mark = position;
+    }
+
+    /**
+     * Returns this stream to the last marked position, or to its starting position if it has not been marked.
+     *
+     * @throws IOException If this stream is closed.
+     */
+    public void reset()
+            throws IOException
+    {
+        ensureOpen();
+        seek(mark);
+    }
+
+    /**
+     * Determines whether or not this stream supports marking.
+     *
+     * @return <code>true</code>, always.
+     */
+    public boolean markSupported()
+    {
+        return true;
+    }
+
+    /**
+     * Positions this stream at the specified position in the file.  If the position lies within the buffered data, the
+     * buffer is kept; otherwise, it is discarded and the read-ahead returns to its minimum.
+     *
+     * @param position The position in the file of the next byte to be read.
+     * @throws IOException If the position is negative or this stream is closed.
+     */
+    public void seek(long position)
+            throws IOException
+    {
+        ensureOpen();
+        if (position < 0) throw new IOException("Invalid position: " + position);
+        if ((position < bufferStart) || (position > bufferStart + bufferLength))
+        {
+            bufferLength = 0;
+            readAhead = minimumReadAhead;
+        }
+        this.position = position;
+    }
+
+    /**
+     * Retrieves the position of this stream.
+     *
+     * @return The position in the file of the next byte to be read.
+     */
+    public long getPosition()
+    {
+        return position;
+    }
+
+    /**
+     * Closes this stream.  The underlying {@link RandomAccessFile} is not closed.  All future reads from this stream
+     * will throw an {@link IOException}.
+     */
+    public void close()
+    {
+        channel = null;
+        buffer = null;
+    }
+
+    /**
+     * Determines the number of buffered bytes at or after the current position.
+     *
+     * @return The number of buffered bytes which may be read without accessing the file, or a non-positive number if
+     *         the position lies outside of the buffer.
+     */
+    protected int getBuffered()
+    {
+        if (position < bufferStart) return 0;
+        return (int) Math.max(-1, bufferStart + bufferLength - position);
+    }
+
+    /**
+     * Fills the buffer with data starting at the current position.
+     *
+     * @return <code>true</code> if data was read; <code>false</code> if the end of the file was reached.
+     * @throws IOException If an I/O error occurs.
+     */
+    protected boolean fill()
+            throws IOException
+    {
+        bufferLength = 0;
+        bufferStart = position;
+        updateReadAhead();
+        int read = readFile(ByteBuffer.wrap(buffer, 0, readAhead));
+        if (read <= 0) return false;
+        bufferLength = read;
+        return true;
+    }
+
+    /**
+     * Adjusts the read-ahead before a read from the file at the current position.  If the read continues where the
+     * last one ended, the read-ahead is doubled; otherwise, it returns to its minimum.
+     */
+    protected void updateReadAhead()
+    {
+        if (position == lastReadEnd)
+        {
+            readAhead = Math.min(buffer.length, readAhead * 2);
+        } else if (lastReadEnd != -1)
+        {
+            readAhead = minimumReadAhead;
+        }
+    }
+
+    /**
+     * Reads data from the file at the current position.  The position is not changed.
+     *
+     * @param target The buffer into which data is read.
+     * @return The number of bytes read, or <code>-1</code> if the end of the file was reached.
+     * @throws IOException If an I/O error occurs.
+     */
+    protected int readFile(ByteBuffer target)
+            throws IOException
+    {
+        int read;
+        do
+        {
+            read = channel.read(target, position);
+        } while (read == 0);
+        lastReadEnd = (read > 0) ? position + read : -1;
+        return read;
+    }
+
+    /**
+     * Ensures that this stream is open.
+     *
+     * @throws IOException If this stream is closed.
+     */
+    protected void ensureOpen()
+            throws IOException
+    {
+        if (channel == null) throw new IOException("Stream closed.");
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+}
+
+// END OF FILE
@@ -0,0 +1,226 @@
+package orioni.jz.io.files;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This {@link OutputStream} provides buffered streaming output to a {@link RandomAccessFile}.  Unlike {@link
+ * RandomAccessFileOutputStream}, it keeps its own position and writes through the file's {@link FileChannel} with
+ * positional writes, so the {@link RandomAccessFile}'s pointer is neither used nor modified.  Any number of these
+ * streams may therefore write to different regions of the same file concurrently from different threads; each
+ * individual stream, however, is not threadsafe.
+ * <p/>
+ * Written data is held in a buffer and written behind in units of the buffer's size.  Writes at least as large as the
+ * buffer bypass it.  The buffer is flushed whenever the stream is {@link #seek(long)}ed, so data always lands at the
+ * position at which it was written.  Buffered data is not visible to readers of the file until it is flushed.  Closing
+ * this stream flushes it but does not close the underlying {@link RandomAccessFile}.
+ *
+ * @author Zachary Palmer
+ */
+public class BufferedRandomAccessFileOutputStream extends OutputStream
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+    /**
+     * The default size of the write-behind buffer.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 65536;
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The {@link FileChannel} to which data will be written, or <code>null</code> if this stream is closed.
+     */
+    protected FileChannel channel;
+    /**
+     * The write-behind buffer.
+     */
+    protected byte[] buffer;
+    /**
+     * The number of bytes currently stored within the buffer.
+     */
+    protected int bufferUsed;
+    /**
+     * The position in the file at which the first byte in the buffer will be written.
+     */
+    protected long bufferStart;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * Skeleton constructor.  Writing starts at the {@link RandomAccessFile}'s current pointer, and the default buffer
+     * size is used.
+     *
+     * @param randomAccessFile The {@link RandomAccessFile} to which data will be written.
+     * @throws IOException If the file's pointer could not be read.
+     */
+    public BufferedRandomAccessFileOutputStream(RandomAccessFile randomAccessFile)
+            throws IOException
+    {
+        this(randomAccessFile, randomAccessFile.getFilePointer(), DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * General constructor.
+     *
+     * @param randomAccessFile The {@link RandomAccessFile} to which data will be written.
+     * @param position         The position in the file at which writing starts.
+     * @param bufferSize       The size (in bytes) of the write-behind buffer.
+     * @throws IllegalArgumentException If the position is negative or the buffer size is not positive.
+     */
+    public BufferedRandomAccessFileOutputStream(RandomAccessFile randomAccessFile, long position, int bufferSize)
+            throws IllegalArgumentException
+    {
+        super();
+        if (position < 0) throw new IllegalArgumentException("Invalid position: " + position);
+        if (bufferSize < 1) throw new IllegalArgumentException("Invalid buffer size: " + bufferSize);
+        channel = randomAccessFile.getChannel();
+        buffer = new byte[bufferSize];
+        bufferUsed = 0;
+        bufferStart = position;
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Writes the specified byte to this output stream.
+     *
+     * @param b The <code>byte</code> to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void write(int b)
+            throws IOException
+    {
+        ensureOpen();
+        buffer[bufferUsed++] = (byte) b;
+        if (bufferUsed == buffer.length) flush();
+    }
+
+    /**
+     * Writes <code>len</code> bytes from the specified byte array starting at offset <code>off</code> to this output
+     * stream.
+     *
+     * @param data The data to write.
+     * @param off  The start offset in the data.
+     * @param len  The number of bytes to write.
+     * @throws IOException               If an I/O error occurs while writing the data.
+     * @throws IndexOutOfBoundsException If <code>off</code> or <code>len</code> are out of bounds.
+     */
+    public void write(byte[] data, int off, int len)
+            throws IOException
+    {
+        ensureOpen();
+        if ((off < 0) || (len < 0) || (len > data.length - off)) throw new IndexOutOfBoundsException();
+        if (len >= buffer.length)
+        {
+            // Large writes go straight from the caller's array
+            flush();
+            writeFile(ByteBuffer.wrap(data, off, len), bufferStart);
+            bufferStart += len;
+            return;
+        }
+        if (len > buffer.length - bufferUsed) flush();
+        System.arraycopy(data, off, buffer, bufferUsed, len);
+        bufferUsed += len;
+        if (bufferUsed == buffer.length) flush();
+    }
+
+    /**
+     * Writes any buffered data to the file.
+     *
+     * @throws IOException If an I/O error occurs while writing buffered data.
+     */
+    public void flush()
+            throws IOException
+    {
+        ensureOpen();
+        if (bufferUsed == 0) return;
+        writeFile(ByteBuffer.wrap(buffer, 0, bufferUsed), bufferStart);
+        bufferStart += bufferUsed;
+        bufferUsed = 0;
+    }
+
+    /**
+     * Flushes this stream and positions it at the specified position in the file.
+     *
+     * @param position The position in the file at which the next byte will be written.
+     * @throws IOException If the position is negative, this stream is closed, or an I/O error occurs while flushing.
+     */
+    public void seek(long position)
+            throws IOException
+    {
+        if (position < 0) throw new IOException("Invalid position: " + position);
+        flush();
+        bufferStart = position;
+    }
+
+    /**
+     * Retrieves the position of this stream.
+     *
+     * @return The position in the file at which the next byte will be written.
+     */
+    public long getPosition()
+    {
+        return bufferStart + bufferUsed;
+    }
+
+    /**
+     * Closes this output stream.  This method implicitly flushes the stream.  The underlying {@link RandomAccessFile}
+     * is not closed.  All future writes to this stream will throw an {@link IOException}.
+     *
+     * @throws IOException If the implicit {@link #flush()} throws an {@link IOException}.  An {@link IOException} will
+     *                     <i>not</i> be thrown if the stream is already closed.
+     */
+    public void close()
+            throws IOException
+    {
+        if (channel != null)
+        {
+            try
+            {
+                flush();
+            } finally
+            {
+                channel = null;
+                buffer = null;
+            }
+        }
+    }
+
+    /**
+     * Writes all of the data in a buffer to the file.
+     *
+     * @param source   The data to write.
+     * @param position The position in the file at which the data is written.
+     * @throws IOException If an I/O error occurs.
+     */
+    protected void writeFile(ByteBuffer source, long position)
+            throws IOException
+    {
+        while (source.hasRemaining())
+        {
+            position += channel.write(source, position);
+        }
+    }
+
+    /**
+     * Ensures that this stream is open.
+     *
+     * @throws IOException If this stream is closed.
+     */
+    protected void ensureOpen()
+            throws IOException
+    {
+        if (channel == null) throw new IOException("Stream closed.");
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+}
+
+// END OF FILE
@@ -0,0 +1,199 @@
+package orioni.jz.io.files;
+
+import orioni.jz.util.ProgressTracker;
+
+import java.io.FileFilter;
+
+/**
+ * This class contains the options which control {@link FileUtilities#copyTree(java.io.File, java.io.File,
+ * CopyOptions)}.  By default, timestamps are preserved, files which appear unchanged are skipped, every file is copied,
+ * and no progress is reported.
+ *
+ * @author Zachary Palmer
+ */
+public class CopyOptions
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+    /**
+     * The default number of worker threads.  Copying is usually bound by I/O latency rather than by processing, so
+     * more threads than processors are used.
+     */
+    public static final int DEFAULT_THREAD_COUNT = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The number of worker threads used to walk and copy the tree.
+     */
+    protected int threadCount;
+    /**
+     * Whether or not the modification times of copied files and directories are set to those of their sources.
+     */
+    protected boolean preserveTimestamps;
+    /**
+     * Whether or not files are skipped if the target already exists with the same length and modification time.
+     */
+    protected boolean skipUnchanged;
+    /**
+     * The filter which selects the regular files to copy, or <code>null</code> if all files are copied.
+     */
+    protected FileFilter filter;
+    /**
+     * The tracker to which progress is reported, or <code>null</code> if progress is not reported.
+     */
+    protected ProgressTracker tracker;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * Skeleton constructor.  Uses the default options.
+     */
+    public CopyOptions()
+    {
+        this(DEFAULT_THREAD_COUNT, true, true, null, null);
+    }
+
+    /**
+     * General constructor.
+     *
+     * @param threadCount        The number of worker threads used to walk and copy the tree.
+     * @param preserveTimestamps <code>true</code> if the modification times of copied files and directories should be
+     *                           set to those of their sources; <code>false</code> otherwise.
+     * @param skipUnchanged      <code>true</code> if files should be skipped when the target already exists with the
+     *                           same length and modification time; <code>false</code> if every file is copied.
+     * @param filter             The filter which selects the regular files to copy, or <code>null</code> if all files
+     *                           are copied.  Directories are always walked.
+     * @param tracker            The tracker to which progress is reported, or <code>null</code> if progress is not
+     *                           reported.
+     * @throws IllegalArgumentException If the thread count is less than one.
+     */
+    public CopyOptions(int threadCount, boolean preserveTimestamps, boolean skipUnchanged, FileFilter filter,
+                       ProgressTracker tracker)
+            throws IllegalArgumentException
+    {
+        super();
+        setThreadCount(threadCount);
+        this.preserveTimestamps = preserveTimestamps;
+        this.skipUnchanged = skipUnchanged;
+        this.filter = filter;
+        this.tracker = tracker;
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Retrieves the number of worker threads.
+     *
+     * @return The number of worker threads used to walk and copy the tree.
+     */
+    public int getThreadCount()
+    {
+        return threadCount;
+    }
+
+    /**
+     * Changes the number of worker threads.
+     *
+     * @param threadCount The number of worker threads used to walk and copy the tree.
+     * @throws IllegalArgumentException If the thread count is less than one.
+     */
+    public void setThreadCount(int threadCount)
+            throws IllegalArgumentException
+    {
+        if (threadCount < 1) throw new IllegalArgumentException("Invalid thread count: " + threadCount);
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Determines whether or not timestamps are preserved.
+     *
+     * @return <code>true</code> if the modification times of copied files and directories are set to those of their
+     *         sources; <code>false</code> otherwise.
+     */
+    public boolean isPreserveTimestamps()
+    {
+        return preserveTimestamps;
+    }
+
+    /**
+     * Changes whether or not timestamps are preserved.
+     *
+     * @param preserveTimestamps <code>true</code> if the modification times of copied files and directories should be
+     *                           set to those of their sources; <code>false</code> otherwise.
+     */
+    public void setPreserveTimestamps(boolean preserveTimestamps)
+    {
+        this.preserveTimestamps = preserveTimestamps;
+    }
+
+    /**
+     * Determines whether or not unchanged files are skipped.
+     *
+     * @return <code>true</code> if files are skipped when the target already exists with the same length and
+     *         modification time; <code>false</code> if every file is copied.
+     */
+    public boolean isSkipUnchanged()
+    {
+        return skipUnchanged;
+    }
+
+    /**
+     * Changes whether or not unchanged files are skipped.
+     *
+     * @param skipUnchanged <code>true</code> if files should be skipped when the target already exists with the same
+     *                      length and modification time; <code>false</code> if every file is copied.
+     */
+    public void setSkipUnchanged(boolean skipUnchanged)
+    {
+        this.skipUnchanged = skipUnchanged;
+    }
+
+    /**
+     * Retrieves the filter which selects the files to copy.
+     *
+     * @return The filter which selects the regular files to copy, or <code>null</code> if all files are copied.
+     */
+    public FileFilter getFilter()
+    {
+        return filter;
+    }
+
+    /**
+     * Changes the filter which selects the files to copy.
+     *
+     * @param filter The filter which selects the regular files to copy, or <code>null</code> if all files are copied.
+     *               Directories are always walked.
+     */
+    public void setFilter(FileFilter filter)
+    {
+        this.filter = filter;
+    }
+
+    /**
+     * Retrieves the tracker to which progress is reported.
+     *
+     * @return The tracker to which progress is reported, or <code>null</code> if progress is not reported.
+     */
+    public ProgressTracker getTracker()
+    {
+        return tracker;
+    }
+
+    /**
+     * Changes the tracker to which progress is reported.
+     *
+     * @param tracker The tracker to which progress is reported, or <code>null</code> if progress is not reported.
+     */
+    public void setTracker(ProgressTracker tracker)
+    {
+        this.tracker = tracker;
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+}
+
+// END OF FILE
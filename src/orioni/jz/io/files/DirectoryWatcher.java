@@ -7,6 +7,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
@@ -14,6 +15,9 @@ import java.util.Set;
  * designed to poll a specified directory for changes.  Whenever a change is noticed, the {@link
  * DirectoryWatcher#fileChanged(File)} method is called for each file which has been changed.  This includes if the file
  * in question has been deleted.
+ * <p/>
+ * Each poll walks the entire watched tree.  {@link EventDirectoryWatcher} receives notifications from the operating
+ * system instead, using this class only where such notifications are not available.
  *
  * @author Zachary Palmer
  */
@@ -79,6 +83,21 @@ public abstract class DirectoryWatcher
      */
     public abstract void fileChanged(File file);
 
+    /**
+     * Called when a group of {@link File}s is seen to have been changed at about the same time.  By default, this
+     * method calls {@link DirectoryWatcher#fileChanged(File)} for each file; it may be overridden to handle the group
+     * as a whole.
+     *
+     * @param files The {@link File}s which were changed.
+     */
+    public void filesChanged(Set<File> files)
+    {
+        for (File file : files)
+        {
+            fileChanged(file);
+        }
+    }
+
     /**
      * Starts the watching thread.  If the watching thread is already running, nothing happens.
      * @throws IOException If an I/O error occurs while creating the initial file list.
@@ -97,13 +116,15 @@ public abstract class DirectoryWatcher
                         while (thread != null)
                         {
                             Set<File> files = getFiles();
+                            Set<File> changed = new LinkedHashSet<File>();
                             // First, check the new image of the directory against the recorded one.
                             for (File file : files)
                             {
-                                if (file.lastModified() != fileChangeMap.get(file))
+                                long modified = file.lastModified();
+                                if (modified != fileChangeMap.get(file))
                                 {
-                                    fileChanged(file);
-                                    fileChangeMap.put(file, file.lastModified());
+                                    changed.add(file);
+                                    fileChangeMap.put(file, modified);
                                 }
                             }
                             // Next, see if any files are not present in the new image which are in the recorded image.
@@ -111,10 +132,11 @@ public abstract class DirectoryWatcher
                             {
                                 if (!files.contains(file))
                                 {
-                                    fileChanged(file);
+                                    changed.add(file);
                                     fileChangeMap.remove(file);
                                 }
                             }
+                            if (!changed.isEmpty()) filesChanged(changed);
                             // Now perform the wait
                             try
                             {
@@ -0,0 +1,358 @@
+package orioni.jz.io.files;
+
+import orioni.jz.util.Utilities;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This {@link DirectoryWatcher} receives notification of changes from the operating system through a {@link
+ * WatchService} rather than polling the watched tree.  When watching recursively, every directory in the tree is
+ * registered with the service, and directories created later are registered as they appear.  Changes are coalesced:
+ * once a change is seen, the watcher collects further changes for a debounce period and then reports them all at once
+ * through {@link DirectoryWatcher#filesChanged(Set)}.  A file changed several times within the period is reported
+ * once.
+ * <p/>
+ * Because this watcher does not record the state of the files it watches, it differs from polling in two ways: <ul>
+ * <li>If the operating system discards events (which it may do when many changes occur at once), every file in the
+ * affected directory (and its subdirectories, if watching recursively) is reported as changed.  The same is done for
+ * the contents of a directory which is created within the watched tree.</li> <li>When a directory is deleted, the
+ * directory itself is reported rather than each of the files it contained.</li> </ul>
+ * <p/>
+ * If a {@link WatchService} cannot be created for the watched file's file system or the file's directories cannot be
+ * registered with it, or if polling is explicitly requested, this watcher polls exactly as a {@link DirectoryWatcher}
+ * does.  Some file systems (such as network file systems) accept registration but do not report changes made by other
+ * hosts; polling should be requested for these.
+ *
+ * @author Zachary Palmer
+ */
+public abstract class EventDirectoryWatcher extends DirectoryWatcher
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+    /**
+     * The default number of milliseconds for which changes are collected before they are reported.
+     */
+    public static final int DEFAULT_DEBOUNCE = 100;
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The number of milliseconds for which changes are collected before they are reported.
+     */
+    protected int debounce;
+    /**
+     * Whether or not this watcher polls rather than using a {@link WatchService}.
+     */
+    protected boolean polling;
+    /**
+     * The {@link WatchService} with which directories are registered, or <code>null</code> if the watcher has not
+     * been started or is polling.
+     */
+    protected WatchService watchService;
+    /**
+     * A mapping between the keys of the registered directories and the directories themselves.  This map is only
+     * accessed by the watching thread once it is running.
+     */
+    protected Map<WatchKey, Path> directories;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * Skeleton constructor.  Uses the default debounce period and polls only if a {@link WatchService} is unavailable.
+     *
+     * @param file      The {@link File} object to be watched.  If this is a regular file, this file is the only one to
+     *                  be watched.  If it is a directory, the <code>recursive</code> parameter defines how it should be
+     *                  handled.
+     * @param wait      The number of milliseconds to wait between directory checks if polling is used.
+     * @param recursive <code>true</code> if the provided {@link File} object should be watched, along with every
+     *                  descendent of that {@link File} object; <code>false</code> if only the {@link File}'s direct
+     *                  children should be watched.
+     */
+    public EventDirectoryWatcher(File file, int wait, boolean recursive)
+    {
+        this(file, wait, recursive, DEFAULT_DEBOUNCE, false);
+    }
+
+    /**
+     * General constructor.
+     *
+     * @param file      The {@link File} object to be watched.  If this is a regular file, this file is the only one to
+     *                  be watched.  If it is a directory, the <code>recursive</code> parameter defines how it should be
+     *                  handled.
+     * @param wait      The number of milliseconds to wait between directory checks if polling is used.
+     * @param recursive <code>true</code> if the provided {@link File} object should be watched, along with every
+     *                  descendent of that {@link File} object; <code>false</code> if only the {@link File}'s direct
+     *                  children should be watched.
+     * @param debounce  The number of milliseconds for which changes are collected before they are reported.
+     * @param polling   <code>true</code> if the watcher should poll even if a {@link WatchService} is available;
+     *                  <code>false</code> if it should only poll if necessary.
+     */
+    public EventDirectoryWatcher(File file, int wait, boolean recursive, int debounce, boolean polling)
+    {
+        super(file, wait, recursive);
+        this.debounce = debounce;
+        this.polling = polling;
+        watchService = null;
+        directories = new HashMap<WatchKey, Path>();
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Starts the watching thread.  If the watching thread is already running, nothing happens.
+     *
+     * @throws IOException If an I/O error occurs while creating the initial file list for polling.
+     */
+    public synchronized void startWatching()
+            throws IOException
+    {
+        if (thread != null) return;
+        if (!polling)
+        {
+            try
+            {
+                register();
+            } catch (IOException e)
+            {
+                polling = true;
+            } catch (UnsupportedOperationException e)
+            {
+                polling = true;
+            }
+        }
+        if (polling)
+        {
+            closeWatchService();
+            watchService = null;
+            super.startWatching();
+            return;
+        }
+        thread = new Thread(this.toString() + " Watch Thread")
+        {
+            public void run()
+            {
+                watch();
+            }
+        };
+        thread.start();
+    }
+
+    /**
+     * Stops the watching thread.  If the watching thread is not running, nothing happens.
+     */
+    public synchronized void stopWatching()
+    {
+        if (polling)
+        {
+            super.stopWatching();
+        } else if (thread != null)
+        {
+            Thread thread = this.thread;
+            this.thread = null;
+            closeWatchService();
+            Utilities.safeJoin(thread);
+        }
+    }
+
+    /**
+     * Determines whether or not this watcher polls.
+     *
+     * @return <code>true</code> if this watcher polls for changes; <code>false</code> if it is notified of them by
+     *         the operating system.  Before the watcher is started, this indicates whether or not polling was
+     *         requested.
+     */
+    public boolean isPolling()
+    {
+        return polling;
+    }
+
+    /**
+     * Creates the {@link WatchService} and registers the watched directories with it.
+     *
+     * @throws IOException If an I/O error occurs while registering the directories.
+     */
+    protected void register()
+            throws IOException
+    {
+        Path path = file.toPath();
+        directories.clear();
+        watchService = path.getFileSystem().newWatchService();
+        if (file.isDirectory())
+        {
+            // Any file found here existed before watching started and is not a change
+            walk(path, null);
+        } else
+        {
+            registerDirectory(path.toAbsolutePath().getParent());
+        }
+    }
+
+    /**
+     * Registers a single directory with the {@link WatchService}.
+     *
+     * @param directory The directory to register.
+     * @throws IOException If an I/O error occurs.
+     */
+    protected void registerDirectory(Path directory)
+            throws IOException
+    {
+        WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                          StandardWatchEventKinds.ENTRY_DELETE,
+                                          StandardWatchEventKinds.ENTRY_MODIFY);
+        directories.put(key, directory);
+    }
+
+    /**
+     * Walks a directory, registering it (and, if watching recursively, its subdirectories) and collecting the files it
+     * contains.
+     *
+     * @param directory The directory to walk.
+     * @param changed   The set to which the files found are added, or <code>null</code> if they should not be
+     *                  collected.
+     * @throws IOException If an I/O error occurs while registering a directory.
+     */
+    protected void walk(Path directory, Set<File> changed)
+            throws IOException
+    {
+        FileFilter descent = recursive ? null : new FileFilter()
+        {
+            public boolean accept(File pathname)
+            {
+                return false;
+            }
+        };
+        for (File found : new FileWalker(directory.toFile(), true, null, descent))
+        {
+            if (found.isDirectory())
+            {
+                // In a non-recursive walk, only the root is descended into and registered
+                if ((recursive) || (found.toPath().equals(directory))) registerDirectory(found.toPath());
+            } else if (changed != null)
+            {
+                changed.add(found);
+            }
+        }
+    }
+
+    /**
+     * Receives events from the {@link WatchService} and reports them until the service is closed.
+     */
+    protected void watch()
+    {
+        Set<File> changed = new LinkedHashSet<File>();
+        long deadline = 0;
+        try
+        {
+            while (true)
+            {
+                WatchKey key;
+                if (changed.isEmpty())
+                {
+                    key = watchService.take();
+                    deadline = System.currentTimeMillis() + debounce;
+                } else
+                {
+                    long remaining = deadline - System.currentTimeMillis();
+                    key = (remaining > 0) ? watchService.poll(remaining, TimeUnit.MILLISECONDS) : null;
+                    if (key == null)
+                    {
+                        filesChanged(changed);
+                        changed = new LinkedHashSet<File>();
+                        continue;
+                    }
+                }
+                Path directory = directories.get(key);
+                if (directory != null) process(key, directory, changed);
+                if (!key.reset()) directories.remove(key);
+            }
+        } catch (InterruptedException e)
+        {
+            // The watcher is being stopped
+        } catch (ClosedWatchServiceException e)
+        {
+            // The watcher is being stopped
+        }
+    }
+
+    /**
+     * Processes the events of a single {@link WatchKey}.
+     *
+     * @param key       The key.
+     * @param directory The directory with which the key is registered.
+     * @param changed   The set to which changed files are added.
+     */
+    protected void process(WatchKey key, Path directory, Set<File> changed)
+    {
+        for (WatchEvent<?> event : key.pollEvents())
+        {
+            try
+            {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+                {
+                    walk(directory, changed);
+                    continue;
+                }
+                Path child = directory.resolve((Path) event.context());
+                File changedFile = child.toFile();
+                if (!file.isDirectory())
+                {
+                    // A watched regular file shares its directory with files which are not watched.  Its directory was
+                    // registered by its absolute path, so the file is reported as it was given upon construction.
+                    if (changedFile.equals(file.getAbsoluteFile())) changed.add(file);
+                    continue;
+                }
+                if (Files.isDirectory(child))
+                {
+                    if ((recursive) && (event.kind() == StandardWatchEventKinds.ENTRY_CREATE))
+                    {
+                        // Files may have been created in the directory before it was registered
+                        walk(child, changed);
+                    }
+                } else
+                {
+                    changed.add(changedFile);
+                }
+            } catch (IOException e)
+            {
+                // The directory vanished before it could be registered; its deletion will be reported
+            }
+        }
+    }
+
+    /**
+     * Closes the {@link WatchService}, if any.  This causes the watching thread to terminate.
+     */
+    protected void closeWatchService()
+    {
+        if (watchService != null)
+        {
+            try
+            {
+                watchService.close();
+            } catch (IOException e)
+            {
+            }
+        }
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+}
+
+// END OF FILE
@@ -0,0 +1,131 @@
+package orioni.jz.io.files;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This {@link InputStream} is designed to provide streaming input for a region of a {@link FileChannel}.  All reads are
+ * positional; the channel's own position is neither used nor changed.  As a result, any number of these streams may
+ * read from the same {@link FileChannel} concurrently.
+ * <p/>
+ * Closing this stream does not close the underlying {@link FileChannel}.
+ *
+ * @author Zachary Palmer
+ */
+public class FileChannelRegionInputStream extends InputStream
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The {@link FileChannel} providing the data.
+     */
+    protected FileChannel channel;
+    /**
+     * The position in the channel of the next byte to read.
+     */
+    protected long position;
+    /**
+     * The position in the channel at which this stream ends.
+     */
+    protected long end;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * General constructor.
+     *
+     * @param channel The {@link FileChannel} from which to read data.
+     * @param start   The position in the channel of the first byte of the region.
+     * @param length  The number of bytes in the region.
+     * @throws IllegalArgumentException If the start or length is negative.
+     */
+    public FileChannelRegionInputStream(FileChannel channel, long start, long length)
+            throws IllegalArgumentException
+    {
+        super();
+        if ((start < 0) || (length < 0))
+        {
+            throw new IllegalArgumentException("Invalid region " + start + "+" + length + ".");
+        }
+        this.channel = channel;
+        position = start;
+        end = start + length;
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Reads the next byte of data from the region.
+     *
+     * @return The next byte of data, or <code>-1</code> if the end of the region is reached.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int read()
+            throws IOException
+    {
+        byte[] b = new byte[1];
+        return (read(b, 0, 1) == -1) ? -1 : (b[0] & 0xFF);
+    }
+
+    /**
+     * Reads up to <code>len</code> bytes of data from the region into an array of bytes.
+     *
+     * @param b   The buffer into which the data is read.
+     * @param off The start offset in array <code>b</code> at which the data is written.
+     * @param len The maximum number of bytes to read.
+     * @return The total number of bytes read into the buffer, or <code>-1</code> if there is no more data because the
+     *         end of the region has been reached.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int read(byte[] b, int off, int len)
+            throws IOException
+    {
+        if (len == 0) return 0;
+        if (position >= end) return -1;
+        ByteBuffer buffer = ByteBuffer.wrap(b, off, (int) Math.min(len, end - position));
+        int read = channel.read(buffer, position);
+        if (read == -1)
+        {
+            // the file is shorter than the region; treat the region as exhausted
+            end = position;
+            return -1;
+        }
+        position += read;
+        return read;
+    }
+
+    /**
+     * Skips over and discards up to <code>n</code> bytes of data from the region.
+     *
+     * @param n The number of bytes to be skipped.
+     * @return The actual number of bytes skipped.
+     */
+    public long skip(long n)
+    {
+        if (n <= 0) return 0;
+        long skipped = Math.min(n, end - position);
+        position += skipped;
+        return skipped;
+    }
+
+    /**
+     * Returns the number of bytes which remain in the region.
+     *
+     * @return The number of bytes remaining, or {@link Integer#MAX_VALUE} if that number is too large to represent.
+     */
+    public int available()
+    {
+        return (int) Math.min(Integer.MAX_VALUE, end - position);
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+}
+
+// END OF FILE
@@ -7,21 +7,41 @@ import orioni.jz.util.DataUnpacker;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This class maintains a list of Files and uses them to create a comprehensive file list.  The Files submitted to this
  * class may be actual files or directory entries; directory entries may be marked recursive or non- recursive.  When a
  * rescan() is called, the directories that have been submitted are appropriately scanned and a list of files that they
- * contain is created.  This list can then be retrieved by getAllFiles(). <BR><BR>The toBytes() method of this object
- * does not reserve the results of the last scan; it merely reserves the contents of the vectors that indicate which
- * directories and files to scan.  After calling fromBytes(), the recreated FileList will not contain any Files
- * (rescan() must be called).
+ * contain is created.  This list can then be retrieved by getAllFiles(). <BR><BR>Each directory which is scanned is
+ * remembered as a snapshot of its modification time and its sorted contents.  On later rescans, a directory whose
+ * modification time has not changed is not listed again; its remembered contents are used instead.  Since a directory's
+ * modification time changes only when entries are added to it, removed from it, or renamed within it, every directory
+ * is still checked, but only changed directories are read.  Directories modified within {@link
+ * #MODIFICATION_TIME_MARGIN} milliseconds of being listed are always listed again, as a change made in the same clock
+ * tick as the listing would not alter the modification time. <BR><BR>The toBytes() method of this object does not
+ * reserve the results of the last scan; it reserves the entries that indicate which directories and files to scan and
+ * the directory snapshots.  After calling fromBytes(), the recreated FileList will not contain any Files (rescan() must
+ * be called), but that rescan will only list the directories which have changed.
  *
  * @author Zachary Palmer
  */
 public class FileList implements ByteConstructable
 {
+    /**
+     * The number of milliseconds after a directory's modification time before a snapshot of its contents is trusted.
+     * This must exceed the modification time granularity of the file system.
+     */
+    public static final long MODIFICATION_TIME_MARGIN = 2000;
+    /**
+     * The modification time recorded for snapshots which must not be trusted.
+     */
+    protected static final long UNKNOWN_MODIFICATION_TIME = -1;
+
     /**
      * The Vector containing the recursive directory entries.
      */
@@ -38,6 +58,10 @@ public class FileList implements ByteConstructable
      * The ArrayList containing the scanned list of Files.
      */
     protected ArrayList<File> scannedFiles;
+    /**
+     * The snapshots of the directories found by the last scan, keyed by canonical directory.
+     */
+    protected Map<File, DirectorySnapshot> snapshots;
 
     /**
      * General constructor.
@@ -48,6 +72,7 @@ public class FileList implements ByteConstructable
         nonRecursiveDirectories = new ArrayList<File>();
         staticFiles = new ArrayList<File>();
         scannedFiles = new ArrayList<File>();
+        snapshots = new HashMap<File, DirectorySnapshot>();
     }
 
     /**
@@ -140,25 +165,28 @@ public class FileList implements ByteConstructable
     }
 
     /**
-     * Scans for the appropriate directories and files and creates a list of the files in those locations.
+     * Scans for the appropriate directories and files and creates a list of the files in those locations.  Only those
+     * directories which have changed since the last scan are listed.
      *
      * @throws IOException If an I/O error occurs while scanning.
      */
     public void rescan()
             throws IOException
     {
+        Map<File, DirectorySnapshot> previous = snapshots;
+        snapshots = new HashMap<File, DirectorySnapshot>();
         scannedFiles.clear();
         for (File file : staticFiles)
         {
-            scan(file, true);
+            scan(file, true, previous);
         }
         for (File file : recursiveDirectories)
         {
-            scan(file, true);
+            scan(file, true, previous);
         }
         for (File file : nonRecursiveDirectories)
         {
-            scan(file, false);
+            scan(file, false, previous);
         }
     }
 
@@ -168,32 +196,88 @@ public class FileList implements ByteConstructable
      *
      * @param file      The File to scan.
      * @param recursion Whether or not to recurse subdirectories if the given File is a directory.
+     * @param previous  The directory snapshots from the last scan.
      * @throws IOException If an I/O error occurs when trying to scan the file.
      */
-    protected void scan(File file, boolean recursion)
+    protected void scan(File file, boolean recursion, Map<File, DirectorySnapshot> previous)
             throws IOException
     {
         file = file.getCanonicalFile();
         if (!file.exists()) return;
         if (file.isDirectory())
         {
-            File[] dirContents = file.listFiles();
-            if (dirContents != null)
-            {
-                for (final File dirFile : dirContents)
-                {
-                    if ((dirFile.isFile()) || (recursion))
-                    {
-                        scan(dirFile, recursion);
-                    }
-                }
-            }
+            scanDirectory(file, recursion, previous);
         } else
         {
             scannedFiles.add(file);
         }
     }
 
+    /**
+     * Scans the contents of a directory.  If the directory has not been modified since its snapshot was taken, the
+     * snapshot is used; otherwise, the directory is listed and a new snapshot is taken.  If recursion is true,
+     * subdirectories are also scanned.
+     *
+     * @param directory The canonical directory to scan.
+     * @param recursion Whether or not to recurse subdirectories.
+     * @param previous  The directory snapshots from the last scan.
+     * @throws IOException If an I/O error occurs when trying to scan the directory.
+     */
+    protected void scanDirectory(File directory, boolean recursion, Map<File, DirectorySnapshot> previous)
+            throws IOException
+    {
+        // The modification time must be read before listing so that changes made during the listing are seen later
+        long modified = directory.lastModified();
+        DirectorySnapshot snapshot = snapshots.get(directory);
+        if (snapshot == null) snapshot = previous.get(directory);
+        if ((snapshot == null) || (modified == 0) || (snapshot.lastModified != modified))
+        {
+            snapshot = takeSnapshot(directory, modified);
+            if (snapshot == null) return;
+        }
+        snapshots.put(directory, snapshot);
+        Collections.addAll(scannedFiles, snapshot.files);
+        if (recursion)
+        {
+            for (File subdirectory : snapshot.directories)
+            {
+                scanDirectory(subdirectory, true, previous);
+            }
+        }
+    }
+
+    /**
+     * Lists a directory and creates a snapshot of its contents.
+     *
+     * @param directory The canonical directory to list.
+     * @param modified  The modification time of the directory, read before it was listed.
+     * @return The snapshot of the directory, or <code>null</code> if the directory could not be listed.
+     * @throws IOException If an I/O error occurs when trying to resolve the directory's contents.
+     */
+    protected DirectorySnapshot takeSnapshot(File directory, long modified)
+            throws IOException
+    {
+        File[] contents = directory.listFiles();
+        if (contents == null) return null;
+        Arrays.sort(contents);
+        List<File> files = new ArrayList<File>();
+        List<File> directories = new ArrayList<File>();
+        for (File file : contents)
+        {
+            file = file.getCanonicalFile();
+            if (file.isDirectory())
+            {
+                directories.add(file);
+            } else if (file.isFile())
+            {
+                files.add(file);
+            }
+        }
+        if (System.currentTimeMillis() - modified < MODIFICATION_TIME_MARGIN) modified = UNKNOWN_MODIFICATION_TIME;
+        return new DirectorySnapshot(modified, files.toArray(new File[files.size()]),
+                                     directories.toArray(new File[directories.size()]));
+    }
+
     /**
      * Retrieves a list of File objects representing the files that were found in the objects listed to be scanned.
      *
@@ -266,6 +350,7 @@ public class FileList implements ByteConstructable
         recursiveDirectories.clear();
         nonRecursiveDirectories.clear();
         scannedFiles.clear();
+        snapshots.clear();
     }
 
     /**
@@ -309,18 +394,64 @@ public class FileList implements ByteConstructable
             dp.addString(file.getPath());
         }
         dp.addInt(nonRecursiveDirectories.size());
-        for (File file : recursiveDirectories)
+        for (File file : nonRecursiveDirectories)
         {
             dp.addString(file.getPath());
         }
         dp.addInt(staticFiles.size());
-        for (File file : recursiveDirectories)
+        for (File file : staticFiles)
         {
             dp.addString(file.getPath());
         }
+        dp.addInt(snapshots.size());
+        for (Map.Entry<File, DirectorySnapshot> entry : snapshots.entrySet())
+        {
+            File directory = entry.getKey();
+            DirectorySnapshot snapshot = entry.getValue();
+            dp.addString(directory.getPath());
+            dp.addLong(snapshot.lastModified);
+            packChildren(dp, directory, snapshot.files);
+            packChildren(dp, directory, snapshot.directories);
+        }
         return dp.pack();
     }
 
+    /**
+     * Adds the contents of a directory snapshot to a {@link DataPacker}.  Children which lie directly within the
+     * directory are stored by name; others (such as the targets of symbolic links) are stored by full path.
+     *
+     * @param dp        The {@link DataPacker} to use.
+     * @param directory The directory.
+     * @param children  The children to store.
+     */
+    protected void packChildren(DataPacker dp, File directory, File[] children)
+    {
+        dp.addInt(children.length);
+        for (File child : children)
+        {
+            dp.addString(directory.equals(child.getParentFile()) ? child.getName() : child.getPath());
+        }
+    }
+
+    /**
+     * Retrieves the contents of a directory snapshot from a {@link DataUnpacker}.
+     *
+     * @param du        The {@link DataUnpacker} to use.
+     * @param directory The directory.
+     * @return The children of the directory.
+     */
+    protected File[] unpackChildren(DataUnpacker du, File directory)
+    {
+        File[] ret = new File[du.getInt()];
+        for (int i = 0; i < ret.length; i++)
+        {
+            String name = du.getString();
+            // A name cannot contain a separator, so anything which does is a full path
+            ret[i] = (name.indexOf(File.separatorChar) == -1) ? new File(directory, name) : new File(name);
+        }
+        return ret;
+    }
+
     /**
      * Builds a FileList from an array of bytes.
      *
@@ -354,5 +485,56 @@ public class FileList implements ByteConstructable
         {
             staticFiles.add(new File(du.getString()));
         }
+
+        // Data written before snapshots were kept ends here
+        snapshots.clear();
+        if (du.getRemainingDataSize() > 0)
+        {
+            maxloop = du.getInt();
+            for (i = 0; i < maxloop; i++)
+            {
+                File directory = new File(du.getString());
+                long modified = du.getLong();
+                File[] files = unpackChildren(du, directory);
+                snapshots.put(directory, new DirectorySnapshot(modified, files, unpackChildren(du, directory)));
+            }
+        }
+    }
+
+    /**
+     * Represents the state of a directory when it was last listed.
+     *
+     * @author Zachary Palmer
+     */
+    protected static class DirectorySnapshot
+    {
+        /**
+         * The modification time of the directory when it was listed, or {@link #UNKNOWN_MODIFICATION_TIME} if the
+         * snapshot must not be trusted.
+         */
+        protected long lastModified;
+        /**
+         * The canonical regular files in the directory, in sorted order.
+         */
+        protected File[] files;
+        /**
+         * The canonical subdirectories of the directory, in sorted order.
+         */
+        protected File[] directories;
+
+        /**
+         * General constructor.
+         *
+         * @param lastModified The modification time of the directory when it was listed.
+         * @param files        The canonical regular files in the directory.
+         * @param directories  The canonical subdirectories of the directory.
+         */
+        public DirectorySnapshot(long lastModified, File[] files, File[] directories)
+        {
+            super();
+            this.lastModified = lastModified;
+            this.files = files;
+            this.directories = directories;
+        }
     }
 }
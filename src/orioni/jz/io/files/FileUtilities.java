@@ -1,9 +1,24 @@
 package orioni.jz.io.files;
 
+import orioni.jz.io.DirectBufferPool;
 import orioni.jz.io.IOUtilities;
+import orioni.jz.util.ProgressTracker;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class contains a series of generic methods that may be useful in various file-based I/O situations.
@@ -25,6 +40,32 @@ public class FileUtilities
      */
     public static final boolean FILESYSTEM_CASE_SENSITIVE;
 
+    /**
+     * The pool of buffers used to copy files whose channels cannot transfer data directly and to compare files.
+     */
+    private static final DirectBufferPool COPY_BUFFERS = new DirectBufferPool(1 << 20, 16);
+    /**
+     * The number of bytes of transfer which {@link #copyTree(File, File, CopyOptions)} considers equivalent to the fixed
+     * cost of copying a file when reporting progress.  Without this, a tree of many small files would appear to make
+     * no progress at all.
+     */
+    private static final long FILE_COPY_OVERHEAD = 16384;
+    /**
+     * The length below which files are compared by reading them rather than by mapping them into memory.  Mapping a
+     * small file costs more than reading it.
+     */
+    private static final long MAPPED_COMPARISON_MINIMUM = 1 << 20;
+    /**
+     * The length above which files are compared in parallel rather than by mapping them into memory.  A mapping is
+     * only released when it is garbage collected, so mapping a very large file window by window could exhaust the
+     * operating system's limit on mappings.
+     */
+    private static final long MAPPED_COMPARISON_MAXIMUM = 64 << 20;
+    /**
+     * The size of the segments into which large files are divided for parallel comparison.
+     */
+    private static final long COMPARISON_SEGMENT_SIZE = 16 << 20;
+
 // STATIC INITIALIZATION /////////////////////////////////////////////////////////
 
     /** Sets the case sensitivity trigger. */
@@ -248,6 +289,10 @@ public class FileUtilities
      * does not exist, an {@link IOException} will occur.  If an {@link IOException} of any kind occurs during the
      * actual copying process, this method will make an attempt to delete the target file (so as not to leave a partial
      * copy).
+     * <p/>
+     * The data is moved with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)} so that
+     * the operating system may copy it without passing it through the virtual machine.  Anything the transfer does not
+     * move is copied through a large direct buffer.
      *
      * @param source The file to copy.
      * @param target The copy.
@@ -264,12 +309,31 @@ public class FileUtilities
             fos = new FileOutputStream(target);
             try
             {
-                byte[] data = new byte[16384];
-                int read = fis.read(data);
-                while (read != -1)
+                FileChannel in = fis.getChannel();
+                FileChannel out = fos.getChannel();
+                long size = in.size();
+                long position = 0;
+                while (position < size)
+                {
+                    long count = in.transferTo(position, size - position, out);
+                    if (count <= 0) break;
+                    position += count;
+                }
+                // Some file systems refuse to transfer; this also picks up data appended since the size was read
+                ByteBuffer buffer = COPY_BUFFERS.acquire();
+                try
+                {
+                    int read;
+                    while ((read = in.read(buffer, position)) != -1)
+                    {
+                        buffer.flip();
+                        while (buffer.hasRemaining()) out.write(buffer);
+                        buffer.clear();
+                        position += read;
+                    }
+                } finally
                 {
-                    fos.write(data, 0, read);
-                    read = fis.read(data);
+                    COPY_BUFFERS.release(buffer);
                 }
             } catch (IOException ioe)
             {
@@ -299,6 +363,79 @@ public class FileUtilities
         }
     }
 
+    /**
+     * Copies a directory tree.  The tree is copied in two phases, each of which runs in parallel on a {@link
+     * ForkJoinPool} with the number of threads specified by the options.  In the first phase, the source tree is walked
+     * and the target directories are created.  In the second, the files are copied using {@link #copyFile(File,
+     * File)}.  Once every file has been copied, the modification times of the target directories are set.
+     * <p/>
+     * Symbolic links are followed, so a directory which can be reached by several paths is copied to each of them.  A
+     * link to a directory which contains it is not followed, as it would form a cycle.  Special
+     * files, such as devices and named pipes, are not copied.  If the source is a regular file, it is copied to the
+     * target as if by {@link #copyFile(File, File)} subject to the options.
+     * <p/>
+     * If the options specify a {@link ProgressTracker}, the tracker's range is divided among the files in proportion to
+     * their lengths (plus a fixed allowance for each file), and each file's share is reported as it is copied or
+     * skipped.  The tracker is updated from the worker threads while holding its lock.
+     * <p/>
+     * If an error occurs, no further files are copied and the first error is thrown once the running copies finish.
+     * A file which was being copied when the error occurred is deleted, but completed copies remain.
+     *
+     * @param source  The file or directory to copy.
+     * @param target  The location of the copy.
+     * @param options The options which control the copy.
+     * @return The number of files copied, not including any which were skipped because they were unchanged.
+     * @throws IOException If an I/O error occurs while copying, or if the target lies within the source directory.
+     */
+    public static long copyTree(File source, File target, CopyOptions options)
+            throws IOException
+    {
+        Path sourcePath = source.toPath();
+        BasicFileAttributes attributes = Files.readAttributes(sourcePath, BasicFileAttributes.class);
+        if (attributes.isDirectory())
+        {
+            if (isAncestorFile(source.getCanonicalFile(), target.getCanonicalFile()))
+            {
+                throw new IOException("Cannot copy " + source + " into itself (" + target + ").");
+            }
+        } else
+        {
+            File parent = target.getAbsoluteFile().getParentFile();
+            if (parent != null) Files.createDirectories(parent.toPath());
+        }
+
+        TreeCopy copy = new TreeCopy(options);
+        ForkJoinPool pool = new ForkJoinPool(options.getThreadCount());
+        try
+        {
+            pool.invoke(new TreeWalkTask(copy, sourcePath, target.toPath(), attributes, null));
+            copy.checkFailure();
+            TreeCopyEntry[] files = copy.getFiles();
+            pool.invoke(new TreeCopyTask(copy, files, 0, files.length));
+            copy.checkFailure();
+        } finally
+        {
+            pool.shutdown();
+        }
+        if (options.isPreserveTimestamps())
+        {
+            // Creating the contents of a directory changes its modification time, so this must be done last
+            for (TreeCopyEntry directory : copy.getDirectories())
+            {
+                Files.setLastModifiedTime(directory.target, directory.modified);
+            }
+        }
+        ProgressTracker tracker = options.getTracker();
+        if (tracker != null)
+        {
+            synchronized (tracker)
+            {
+                tracker.setProgressCompleted();
+            }
+        }
+        return copy.getCopiedCount();
+    }
+
     /**
      * Retrieves all files from the specified directory and all of its subdirectories.  The directories themselves will
      * not be returned.
@@ -317,6 +454,9 @@ public class FileUtilities
      * Retrieves all files from the specified directory and all of its subdirectories.  If the <code>directories</code>
      * parameter is <code>true</code>, then the directories will also be returned, including the root directory (the
      * parameter <code>file</code>).
+     * <p/>
+     * The entire tree is held in memory and walked by a single thread.  For large trees, a {@link FileWalker} should
+     * be used instead.
      *
      * @param file        The file from which to retrieve all files.
      * @param directories <code>true</code> if the directories should be returned as well.
@@ -473,7 +613,7 @@ public class FileUtilities
     }
 
     /**
-     * Compares the contents of two files to determine if they are identical.
+     * Compares the contents of two files to determine if they are identical.  Files of different lengths are not read.
      *
      * @param a The first file to compare.
      * @param b The second file to compare.
@@ -485,26 +625,743 @@ public class FileUtilities
             throws IOException
     {
         if (a.length() != b.length()) return false;
-        FileInputStream ais = null;
-        FileInputStream bis = null;
+        return findMismatch(a, b) == -1;
+    }
+
+    /**
+     * Finds the first difference between the contents of two files.  Large files are compared in parallel on the
+     * common {@link ForkJoinPool}.
+     *
+     * @param a The first file to compare.
+     * @param b The second file to compare.
+     * @return The offset of the first byte which differs between the files, or <code>-1</code> if the files' contents
+     *         are equal.  If one file's contents are a prefix of the other's, the length of the shorter file is
+     *         returned.
+     * @throws IOException If an I/O error occurs while reading the contents of the files.
+     */
+    public static long findMismatch(File a, File b)
+            throws IOException
+    {
+        return findMismatch(a, b, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Finds the first difference between the contents of two files.  The manner in which the files are compared
+     * depends upon their length: <ul> <li>Small files are read into buffers and compared.</li> <li>Files of moderate
+     * length are mapped into memory and compared without copying.</li> <li>Large files are divided into segments
+     * which are compared in parallel using positional reads.  Once a difference has been found, segments after it are
+     * abandoned.</li> </ul> Files which are not regular files (such as devices) are compared as streams.
+     *
+     * @param a    The first file to compare.
+     * @param b    The second file to compare.
+     * @param pool The {@link ForkJoinPool} on which large files are compared.
+     * @return The offset of the first byte which differs between the files, or <code>-1</code> if the files' contents
+     *         are equal.  If one file's contents are a prefix of the other's, the length of the shorter file is
+     *         returned.
+     * @throws IOException If an I/O error occurs while reading the contents of the files.
+     */
+    public static long findMismatch(File a, File b, ForkJoinPool pool)
+            throws IOException
+    {
+        if ((!a.isFile()) || (!b.isFile()))
+        {
+            FileInputStream ais = null;
+            FileInputStream bis = null;
+            try
+            {
+                ais = new FileInputStream(a);
+                bis = new FileInputStream(b);
+                return IOUtilities.findMismatch(ais, bis);
+            } finally
+            {
+                try
+                {
+                    if (ais != null) ais.close();
+                } catch (IOException e)
+                {
+                }
+                try
+                {
+                    if (bis != null) bis.close();
+                } catch (IOException e)
+                {
+                }
+            }
+        }
+
+        FileChannel ac = null;
+        FileChannel bc = null;
         try
         {
-            ais = new FileInputStream(a);
-            bis = new FileInputStream(b);
-            return IOUtilities.compareStreams(ais, bis);
+            ac = FileChannel.open(a.toPath(), StandardOpenOption.READ);
+            bc = FileChannel.open(b.toPath(), StandardOpenOption.READ);
+            long lengthA = ac.size();
+            long lengthB = bc.size();
+            long length = Math.min(lengthA, lengthB);
+            long ret;
+            if ((length >= MAPPED_COMPARISON_MINIMUM) && (length <= MAPPED_COMPARISON_MAXIMUM))
+            {
+                ret = IOUtilities.findMismatch(ac.map(FileChannel.MapMode.READ_ONLY, 0, length),
+                                               bc.map(FileChannel.MapMode.READ_ONLY, 0, length));
+            } else
+            {
+                FileComparison comparison = new FileComparison(ac, bc);
+                if (length <= COMPARISON_SEGMENT_SIZE)
+                {
+                    comparison.compare(0, length);
+                } else
+                {
+                    pool.invoke(new FileComparisonTask(comparison, 0, length));
+                }
+                ret = comparison.getMismatch();
+            }
+            if ((ret == -1) && (lengthA != lengthB)) ret = length;
+            return ret;
         } finally
         {
             try
             {
-                if (ais != null) ais.close();
+                if (ac != null) ac.close();
             } catch (IOException e)
             {
             }
             try
             {
-                if (bis != null) bis.close();
+                if (bc != null) bc.close();
+            } catch (IOException e)
+            {
+            }
+        }
+    }
+
+// CONTAINED CLASSES /////////////////////////////////////////////////////////////
+
+    /**
+     * Contains the state of a comparison of two files by {@link FileUtilities#findMismatch(File, File, ForkJoinPool)}
+     * using positional reads.
+     *
+     * @author Zachary Palmer
+     */
+    private static class FileComparison
+    {
+        /**
+         * The channel of the first file.
+         */
+        protected FileChannel a;
+        /**
+         * The channel of the second file.
+         */
+        protected FileChannel b;
+        /**
+         * The offset of the earliest difference found so far, or {@link Long#MAX_VALUE} if none has been found.
+         */
+        protected AtomicLong mismatch;
+        /**
+         * The first exception which occurred, or <code>null</code> if no exception has occurred.
+         */
+        protected volatile IOException failure;
+
+        /**
+         * General constructor.
+         *
+         * @param a The channel of the first file.
+         * @param b The channel of the second file.
+         */
+        public FileComparison(FileChannel a, FileChannel b)
+        {
+            super();
+            this.a = a;
+            this.b = b;
+            mismatch = new AtomicLong(Long.MAX_VALUE);
+            failure = null;
+        }
+
+        /**
+         * Compares a range of the files.  The comparison stops early if a difference is found before the end of the
+         * range, whether in this range or in an earlier one.
+         *
+         * @param start The offset of the first byte to compare.
+         * @param end   The offset after the last byte to compare.
+         */
+        public void compare(long start, long end)
+        {
+            ByteBuffer bufferA = COPY_BUFFERS.acquire();
+            ByteBuffer bufferB = COPY_BUFFERS.acquire();
+            try
+            {
+                long position = start;
+                while ((position < end) && (position < mismatch.get()) && (failure == null))
+                {
+                    int size = (int) Math.min(bufferA.capacity(), end - position);
+                    int readA = read(a, bufferA, position, size);
+                    int readB = read(b, bufferB, position, size);
+                    int common = Math.min(readA, readB);
+                    bufferA.limit(common);
+                    bufferB.limit(common);
+                    int index = IOUtilities.findMismatch(bufferA, bufferB);
+                    if (index != -1)
+                    {
+                        found(position + index);
+                        return;
+                    }
+                    // A short read means that a file was truncated while it was being compared
+                    if (common < size)
+                    {
+                        found(position + common);
+                        return;
+                    }
+                    position += size;
+                }
+            } catch (IOException e)
+            {
+                synchronized (this)
+                {
+                    if (failure == null) failure = e;
+                }
+            } finally
+            {
+                COPY_BUFFERS.release(bufferA);
+                COPY_BUFFERS.release(bufferB);
+            }
+        }
+
+        /**
+         * Records a difference between the files.
+         *
+         * @param offset The offset of the difference.
+         */
+        protected void found(long offset)
+        {
+            long current = mismatch.get();
+            while ((offset < current) && (!mismatch.compareAndSet(current, offset)))
+            {
+                current = mismatch.get();
+            }
+        }
+
+        /**
+         * Retrieves the result of the comparison.
+         *
+         * @return The offset of the earliest difference found, or <code>-1</code> if none was found.
+         * @throws IOException The first exception which occurred during the comparison.
+         */
+        public long getMismatch()
+                throws IOException
+        {
+            IOException e = failure;
+            if (e != null) throw e;
+            long ret = mismatch.get();
+            return (ret == Long.MAX_VALUE) ? -1 : ret;
+        }
+
+        /**
+         * Reads from a channel at a specific position until the requested number of bytes have been read or the end
+         * of the file is reached.
+         *
+         * @param channel  The channel from which to read.
+         * @param buffer   The buffer into which to read.  The buffer is cleared first and flipped afterward.
+         * @param position The position in the file at which to start reading.
+         * @param size     The number of bytes to read.
+         * @return The number of bytes read.
+         * @throws IOException If an I/O error occurs.
+         */
+        private static int read(FileChannel channel, ByteBuffer buffer, long position, int size)
+                throws IOException
+        {
+            buffer.clear();
+            buffer.limit(size);
+            while (buffer.hasRemaining())
+            {
+                if (channel.read(buffer, position + buffer.position()) == -1) break;
+            }
+            buffer.flip();
+            return buffer.limit();
+        }
+    }
+
+    /**
+     * Compares a range of two files for {@link FileUtilities#findMismatch(File, File, ForkJoinPool)}, splitting the
+     * range in parallel.
+     *
+     * @author Zachary Palmer
+     */
+    private static class FileComparisonTask extends RecursiveAction
+    {
+        /**
+         * The comparison being performed.
+         */
+        protected FileComparison comparison;
+        /**
+         * The offset of the first byte of the range.
+         */
+        protected long start;
+        /**
+         * The offset after the last byte of the range.
+         */
+        protected long end;
+
+        /**
+         * General constructor.
+         *
+         * @param comparison The comparison being performed.
+         * @param start      The offset of the first byte of the range.
+         * @param end        The offset after the last byte of the range.
+         */
+        public FileComparisonTask(FileComparison comparison, long start, long end)
+        {
+            super();
+            this.comparison = comparison;
+            this.start = start;
+            this.end = end;
+        }
+
+        protected void compute()
+        {
+            if (end - start <= COMPARISON_SEGMENT_SIZE)
+            {
+                comparison.compare(start, end);
+            } else
+            {
+                // Split on a segment boundary so that the reads remain aligned
+                long segments = (end - start) / COMPARISON_SEGMENT_SIZE;
+                long middle = start + Math.max(1, segments / 2) * COMPARISON_SEGMENT_SIZE;
+                invokeAll(new FileComparisonTask(comparison, start, middle),
+                          new FileComparisonTask(comparison, middle, end));
+            }
+        }
+    }
+
+    /**
+     * Describes a file or directory found while walking a tree for {@link FileUtilities#copyTree(File, File,
+     * CopyOptions)}.
+     *
+     * @author Zachary Palmer
+     */
+    private static class TreeCopyEntry
+    {
+        /**
+         * The source file.
+         */
+        protected Path source;
+        /**
+         * The location of the copy.
+         */
+        protected Path target;
+        /**
+         * The length of the source file.
+         */
+        protected long size;
+        /**
+         * The modification time of the source file.
+         */
+        protected FileTime modified;
+
+        /**
+         * General constructor.
+         *
+         * @param source     The source file.
+         * @param target     The location of the copy.
+         * @param attributes The attributes of the source file.
+         */
+        public TreeCopyEntry(Path source, Path target, BasicFileAttributes attributes)
+        {
+            super();
+            this.source = source;
+            this.target = target;
+            size = attributes.size();
+            modified = attributes.lastModifiedTime();
+        }
+    }
+
+    /**
+     * Contains the state of a single call to {@link FileUtilities#copyTree(File, File, CopyOptions)}.
+     *
+     * @author Zachary Palmer
+     */
+    private static class TreeCopy
+    {
+        /**
+         * The options which control the copy.
+         */
+        protected CopyOptions options;
+        /**
+         * The directories which have been created.
+         */
+        protected ConcurrentLinkedQueue<TreeCopyEntry> directories;
+        /**
+         * The files which are to be copied.
+         */
+        protected ConcurrentLinkedQueue<TreeCopyEntry> files;
+        /**
+         * The number of files which have been copied.
+         */
+        protected AtomicLong copied;
+        /**
+         * The percentage of progress represented by one byte of work.
+         */
+        protected double share;
+        /**
+         * The first exception which occurred, or <code>null</code> if no exception has occurred.
+         */
+        protected volatile IOException failure;
+
+        /**
+         * General constructor.
+         *
+         * @param options The options which control the copy.
+         */
+        public TreeCopy(CopyOptions options)
+        {
+            super();
+            this.options = options;
+            directories = new ConcurrentLinkedQueue<TreeCopyEntry>();
+            files = new ConcurrentLinkedQueue<TreeCopyEntry>();
+            copied = new AtomicLong(0);
+            share = 0;
+            failure = null;
+        }
+
+        /**
+         * Records a directory which is to be walked.
+         *
+         * @param entry The directory's entry.
+         */
+        public void addDirectory(TreeCopyEntry entry)
+        {
+            directories.add(entry);
+        }
+
+        /**
+         * Records files which are to be copied.
+         *
+         * @param entries The entries of the files.
+         */
+        public void addFiles(Collection<TreeCopyEntry> entries)
+        {
+            files.addAll(entries);
+        }
+
+        /**
+         * Determines whether or not a file should be copied.
+         *
+         * @param file The source file.
+         * @return <code>true</code> if the file is accepted by the filter in the options; <code>false</code> if it is
+         *         not.
+         */
+        public boolean accept(Path file)
+        {
+            FileFilter filter = options.getFilter();
+            return (filter == null) || (filter.accept(file.toFile()));
+        }
+
+        /**
+         * Retrieves the directories found by the walk.
+         *
+         * @return The entries of the directories.
+         */
+        public Collection<TreeCopyEntry> getDirectories()
+        {
+            return directories;
+        }
+
+        /**
+         * Retrieves the files found by the walk and divides the progress range among them.
+         *
+         * @return The entries of the files.
+         */
+        public TreeCopyEntry[] getFiles()
+        {
+            TreeCopyEntry[] ret = files.toArray(new TreeCopyEntry[0]);
+            double work = 0;
+            for (TreeCopyEntry entry : ret) work += entry.size + FILE_COPY_OVERHEAD;
+            share = (work == 0) ? 0 : 100.0 / work;
+            return ret;
+        }
+
+        /**
+         * Copies a file, or skips it if it is unchanged and the options permit.
+         *
+         * @param entry The entry of the file.
+         * @throws IOException If an I/O error occurs while copying.
+         */
+        public void copy(TreeCopyEntry entry)
+                throws IOException
+        {
+            if ((options.isSkipUnchanged()) && (isUnchanged(entry)))
+            {
+                finished(entry);
+                return;
+            }
+            copyFile(entry.source.toFile(), entry.target.toFile());
+            if (options.isPreserveTimestamps()) Files.setLastModifiedTime(entry.target, entry.modified);
+            copied.incrementAndGet();
+            finished(entry);
+        }
+
+        /**
+         * Determines whether or not the target of a file already has the source's length and modification time.
+         *
+         * @param entry The entry of the file.
+         * @return <code>true</code> if the target appears to be unchanged; <code>false</code> if it does not.
+         * @throws IOException If an I/O error occurs while reading the target's attributes.
+         */
+        protected boolean isUnchanged(TreeCopyEntry entry)
+                throws IOException
+        {
+            try
+            {
+                BasicFileAttributes existing = Files.readAttributes(entry.target, BasicFileAttributes.class);
+                // Milliseconds are compared as some file systems store modification times more coarsely than others
+                return (existing.isRegularFile()) && (existing.size() == entry.size) &&
+                       (existing.lastModifiedTime().toMillis() == entry.modified.toMillis());
+            } catch (NoSuchFileException e)
+            {
+                return false;
+            }
+        }
+
+        /**
+         * Reports that a file has been copied or skipped.
+         *
+         * @param entry The entry of the file.
+         */
+        protected void finished(TreeCopyEntry entry)
+        {
+            ProgressTracker tracker = options.getTracker();
+            if (tracker != null)
+            {
+                synchronized (tracker)
+                {
+                    tracker.incrementPercentage(share * (entry.size + FILE_COPY_OVERHEAD));
+                }
+            }
+        }
+
+        /**
+         * Retrieves the number of files copied.
+         *
+         * @return The number of files which have been copied.
+         */
+        public long getCopiedCount()
+        {
+            return copied.get();
+        }
+
+        /**
+         * Records an exception.  Only the first exception is retained.
+         *
+         * @param exception The exception which occurred.
+         */
+        public synchronized void fail(IOException exception)
+        {
+            if (failure == null) failure = exception;
+        }
+
+        /**
+         * Determines whether or not an exception has occurred.
+         *
+         * @return <code>true</code> if the copy has failed; <code>false</code> otherwise.
+         */
+        public boolean isFailed()
+        {
+            return failure != null;
+        }
+
+        /**
+         * Throws the first exception which occurred, if any.
+         *
+         * @throws IOException The first exception which occurred.
+         */
+        public void checkFailure()
+                throws IOException
+        {
+            IOException e = failure;
+            if (e != null) throw e;
+        }
+    }
+
+    /**
+     * Walks a directory for {@link FileUtilities#copyTree(File, File, CopyOptions)}, creating the target directory and
+     * recording the files to copy.  Subdirectories are walked in parallel.
+     *
+     * @author Zachary Palmer
+     */
+    private static class TreeWalkTask extends RecursiveAction
+    {
+        /**
+         * The copy being performed.
+         */
+        protected TreeCopy copy;
+        /**
+         * The source file or directory.
+         */
+        protected Path source;
+        /**
+         * The location of the copy.
+         */
+        protected Path target;
+        /**
+         * The attributes of the source.
+         */
+        protected BasicFileAttributes attributes;
+        /**
+         * The task which is walking the parent directory, or <code>null</code> if this task is walking the root.
+         */
+        protected TreeWalkTask parent;
+
+        /**
+         * General constructor.
+         *
+         * @param copy       The copy being performed.
+         * @param source     The source file or directory.
+         * @param target     The location of the copy.
+         * @param attributes The attributes of the source.
+         * @param parent     The task which is walking the parent directory, or <code>null</code> if this task is
+         *                   walking the root.
+         */
+        public TreeWalkTask(TreeCopy copy, Path source, Path target, BasicFileAttributes attributes,
+                            TreeWalkTask parent)
+        {
+            super();
+            this.copy = copy;
+            this.source = source;
+            this.target = target;
+            this.attributes = attributes;
+            this.parent = parent;
+        }
+
+        protected void compute()
+        {
+            if (copy.isFailed()) return;
+            try
+            {
+                if (!attributes.isDirectory())
+                {
+                    if ((attributes.isRegularFile()) && (copy.accept(source)))
+                    {
+                        copy.addFiles(Collections.singleton(new TreeCopyEntry(source, target, attributes)));
+                    }
+                    return;
+                }
+                copy.addDirectory(new TreeCopyEntry(source, target, attributes));
+                Files.createDirectories(target);
+                List<TreeWalkTask> subdirectories = new ArrayList<TreeWalkTask>();
+                List<TreeCopyEntry> files = new ArrayList<TreeCopyEntry>();
+                DirectoryStream<Path> stream = Files.newDirectoryStream(source);
+                try
+                {
+                    for (Path child : stream)
+                    {
+                        // A link whose target cannot be read is described by its own attributes and so is skipped
+                        AttributedFile attributedChild = FileWalker.getAttributedFile(child);
+                        if (attributedChild == null) continue;
+                        BasicFileAttributes childAttributes = attributedChild.getAttributes();
+                        Path childTarget = target.resolve(child.getFileName().toString());
+                        if (childAttributes.isDirectory())
+                        {
+                            if (!isOnPath(childAttributes))
+                            {
+                                subdirectories.add(new TreeWalkTask(copy, child, childTarget, childAttributes, this));
+                            }
+                        } else if ((childAttributes.isRegularFile()) && (copy.accept(child)))
+                        {
+                            files.add(new TreeCopyEntry(child, childTarget, childAttributes));
+                        }
+                    }
+                } finally
+                {
+                    stream.close();
+                }
+                copy.addFiles(files);
+                invokeAll(subdirectories);
             } catch (IOException e)
             {
+                copy.fail(e);
+            }
+        }
+
+        /**
+         * Determines whether or not a directory is already on the path of this task.
+         *
+         * @param candidate The attributes of the directory.
+         * @return <code>true</code> if walking the directory would form a cycle; <code>false</code> otherwise.
+         */
+        protected boolean isOnPath(BasicFileAttributes candidate)
+        {
+            Object key = candidate.fileKey();
+            if (key == null) return false;
+            for (TreeWalkTask task = this; task != null; task = task.parent)
+            {
+                if (key.equals(task.attributes.fileKey())) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Copies a range of the files found by a {@link TreeWalkTask}, splitting the range in parallel.
+     *
+     * @author Zachary Palmer
+     */
+    private static class TreeCopyTask extends RecursiveAction
+    {
+        /**
+         * The number of files below which the range is not split.
+         */
+        private static final int THRESHOLD = 8;
+
+        /**
+         * The copy being performed.
+         */
+        protected TreeCopy copy;
+        /**
+         * The files to copy.
+         */
+        protected TreeCopyEntry[] files;
+        /**
+         * The first index of the range.
+         */
+        protected int start;
+        /**
+         * The index after the last index of the range.
+         */
+        protected int end;
+
+        /**
+         * General constructor.
+         *
+         * @param copy  The copy being performed.
+         * @param files The files to copy.
+         * @param start The first index of the range.
+         * @param end   The index after the last index of the range.
+         */
+        public TreeCopyTask(TreeCopy copy, TreeCopyEntry[] files, int start, int end)
+        {
+            super();
+            this.copy = copy;
+            this.files = files;
+            this.start = start;
+            this.end = end;
+        }
+
+        protected void compute()
+        {
+            if (end - start <= THRESHOLD)
+            {
+                for (int i = start; (i < end) && (!copy.isFailed()); i++)
+                {
+                    try
+                    {
+                        copy.copy(files[i]);
+                    } catch (IOException e)
+                    {
+                        copy.fail(e);
+                    }
+                }
+            } else
+            {
+                int middle = (start + end) >>> 1;
+                invokeAll(new TreeCopyTask(copy, files, start, middle), new TreeCopyTask(copy, files, middle, end));
             }
         }
     }
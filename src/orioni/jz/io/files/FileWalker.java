@@ -0,0 +1,432 @@
+package orioni.jz.io.files;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class walks the files in a directory tree without collecting them in memory, as {@link
+ * FileUtilities#getRecursiveFiles(File, boolean)} does.  The tree may be walked in two ways: <ul> <li>Sequentially,
+ * by iterating over this object.  The tree is walked depth first and lazily; each directory is listed only when the
+ * iterator reaches it.</li> <li>In parallel, by calling {@link #walk(Visitor, ForkJoinPool)}.  Each directory is
+ * listed by a separate task on the {@link ForkJoinPool}, and every file found is passed to a {@link Visitor}.</li>
+ * </ul> In both cases, a directory is listed all at once and the attributes of its entries are read as it is listed.
+ * The entries are then discarded as they are consumed, so memory use is bounded by the size of the directories along
+ * the current path rather than by the size of the tree.
+ * <p/>
+ * Every file reported by a walker is an {@link AttributedFile}, which answers questions such as {@link File#length()}
+ * and {@link File#isDirectory()} from the attributes already read.  As a result, the existing {@link FileFilter}s may
+ * be applied during the walk without touching the file system again.  A walker accepts two filters: one which selects
+ * the files to report and one which selects the directories to descend into.
+ * <p/>
+ * Symbolic links are followed.  A directory which is one of its own ancestors is not descended into again; a directory
+ * reachable by more than one path is walked once for each.  Cycle detection depends upon {@link
+ * BasicFileAttributes#fileKey()} and is not performed on file systems which do not provide file keys.  As with {@link
+ * FileUtilities#getRecursiveFiles(File, boolean)}, directories which cannot be listed are silently skipped.
+ *
+ * @author Zachary Palmer
+ */
+public class FileWalker implements Iterable<File>
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The root of the tree.
+     */
+    protected File root;
+    /**
+     * Whether or not directories are reported.
+     */
+    protected boolean directories;
+    /**
+     * The filter which selects the files to report, or <code>null</code> if all files are reported.
+     */
+    protected FileFilter filter;
+    /**
+     * The filter which selects the directories to descend into, or <code>null</code> if all directories are walked.
+     */
+    protected FileFilter descentFilter;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * Skeleton constructor.  Reports every file, but not the directories themselves, and walks every directory.
+     *
+     * @param root The root of the tree.
+     */
+    public FileWalker(File root)
+    {
+        this(root, false, null, null);
+    }
+
+    /**
+     * General constructor.
+     *
+     * @param root          The root of the tree.  If this is not a directory, it is the only file reported.
+     * @param directories   <code>true</code> if directories (including the root) should be reported as well as
+     *                      files; <code>false</code> if only files should be reported.
+     * @param filter        The filter which selects the files and directories to report, or <code>null</code> if all
+     *                      are reported.  This filter does not affect which directories are walked.
+     * @param descentFilter The filter which selects the directories to descend into, or <code>null</code> if all
+     *                      directories are walked.  The root is always walked.
+     */
+    public FileWalker(File root, boolean directories, FileFilter filter, FileFilter descentFilter)
+    {
+        super();
+        this.root = root;
+        this.directories = directories;
+        this.filter = filter;
+        this.descentFilter = descentFilter;
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Creates an iterator which walks the tree sequentially.  The iterator does not support removal.
+     *
+     * @return An {@link Iterator} over the files in the tree.
+     */
+    public Iterator<File> iterator()
+    {
+        return new WalkIterator();
+    }
+
+    /**
+     * Walks the tree in parallel on the common {@link ForkJoinPool}.
+     *
+     * @param visitor The {@link Visitor} to which files are reported.
+     */
+    public void walk(Visitor visitor)
+    {
+        walk(visitor, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Walks the tree in parallel.  This method returns once the entire tree has been walked.
+     *
+     * @param visitor The {@link Visitor} to which files are reported.  The visitor is called from the worker threads
+     *                of the provided pool and must be threadsafe.
+     * @param pool    The {@link ForkJoinPool} on which directories are listed.
+     */
+    public void walk(Visitor visitor, ForkJoinPool pool)
+    {
+        AttributedFile start = getAttributedFile(root.toPath());
+        if (start == null) return;
+        if (isReported(start)) visitor.visit(start);
+        if (start.isDirectory()) pool.invoke(new WalkTask(start, null, visitor));
+    }
+
+    /**
+     * Determines whether or not a file found during the walk should be reported.
+     *
+     * @param file The file.
+     * @return <code>true</code> if the file should be reported; <code>false</code> if it should not.
+     */
+    protected boolean isReported(AttributedFile file)
+    {
+        if ((!directories) && (file.isDirectory())) return false;
+        return (filter == null) || (filter.accept(file));
+    }
+
+    /**
+     * Determines whether or not a directory found during the walk should be descended into.
+     *
+     * @param directory The directory.
+     * @return <code>true</code> if the directory should be walked; <code>false</code> if it should not.
+     */
+    protected boolean isDescended(AttributedFile directory)
+    {
+        return (descentFilter == null) || (descentFilter.accept(directory));
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+    /**
+     * Reads the attributes of a file.  Symbolic links are followed; if the target of a link cannot be read, the
+     * attributes of the link itself are used.
+     *
+     * @param path The path of the file.
+     * @return The file with its attributes, or <code>null</code> if its attributes could not be read.
+     */
+    protected static AttributedFile getAttributedFile(Path path)
+    {
+        try
+        {
+            return new AttributedFile(path, Files.readAttributes(path, BasicFileAttributes.class));
+        } catch (IOException e)
+        {
+            try
+            {
+                return new AttributedFile(
+                        path, Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+            } catch (IOException ioe)
+            {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Lists the contents of a directory, reading the attributes of each entry.  If an error occurs while listing the
+     * directory, the entries read before the error are returned.
+     *
+     * @param directory The directory to list.
+     * @return The entries of the directory.
+     */
+    protected static AttributedFile[] list(AttributedFile directory)
+    {
+        List<AttributedFile> ret = new ArrayList<AttributedFile>();
+        try
+        {
+            DirectoryStream<Path> stream = Files.newDirectoryStream(directory.toPath());
+            try
+            {
+                for (Path child : stream)
+                {
+                    AttributedFile file = getAttributedFile(child);
+                    if (file != null) ret.add(file);
+                }
+            } finally
+            {
+                stream.close();
+            }
+        } catch (IOException e)
+        {
+            // This may happen if listing permission to the directory is denied
+        } catch (DirectoryIteratorException e)
+        {
+            // This may happen if the directory is removed while it is being listed
+        }
+        return ret.toArray(new AttributedFile[ret.size()]);
+    }
+
+// CONTAINED CLASSES /////////////////////////////////////////////////////////////
+
+    /**
+     * This interface is implemented by objects which receive the files found by {@link FileWalker#walk(Visitor,
+     * ForkJoinPool)}.
+     *
+     * @author Zachary Palmer
+     */
+    public static interface Visitor
+    {
+        /**
+         * Indicates that a file has been found.
+         *
+         * @param file The file, as an {@link AttributedFile}.
+         */
+        public void visit(File file);
+    }
+
+    /**
+     * Describes a directory on the path of a {@link WalkIterator}.
+     *
+     * @author Zachary Palmer
+     */
+    protected static class Frame
+    {
+        /**
+         * The directory.
+         */
+        protected AttributedFile directory;
+        /**
+         * The entries of the directory, or <code>null</code> if it has not yet been listed.
+         */
+        protected AttributedFile[] entries;
+        /**
+         * The index of the next entry to consider.
+         */
+        protected int index;
+
+        /**
+         * General constructor.
+         *
+         * @param directory The directory.
+         */
+        public Frame(AttributedFile directory)
+        {
+            super();
+            this.directory = directory;
+            entries = null;
+            index = 0;
+        }
+    }
+
+    /**
+     * Walks the tree sequentially, depth first.
+     *
+     * @author Zachary Palmer
+     */
+    protected class WalkIterator implements Iterator<File>
+    {
+        /**
+         * The directories on the current path, the innermost first.
+         */
+        protected ArrayDeque<Frame> stack;
+        /**
+         * The next file to return, or <code>null</code> if it has not yet been found.
+         */
+        protected AttributedFile next;
+
+        /**
+         * General constructor.
+         */
+        public WalkIterator()
+        {
+            super();
+            stack = new ArrayDeque<Frame>();
+            next = null;
+            AttributedFile start = getAttributedFile(root.toPath());
+            if (start != null)
+            {
+                if (isReported(start)) next = start;
+                if (start.isDirectory()) stack.push(new Frame(start));
+            }
+        }
+
+        public boolean hasNext()
+        {
+            if (next == null) advance();
+            return next != null;
+        }
+
+        public File next()
+        {
+            if (!hasNext()) throw new NoSuchElementException();
+            File ret = next;
+            next = null;
+            return ret;
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException("FileWalker iterators do not support removal.");
+        }
+
+        /**
+         * Walks the tree until the next file to report is found or the walk is complete.
+         */
+        protected void advance()
+        {
+            while ((next == null) && (!stack.isEmpty()))
+            {
+                Frame frame = stack.peek();
+                if (frame.entries == null) frame.entries = list(frame.directory);
+                if (frame.index == frame.entries.length)
+                {
+                    stack.pop();
+                    continue;
+                }
+                AttributedFile file = frame.entries[frame.index];
+                // Release the entry so that only the unvisited part of each directory is retained
+                frame.entries[frame.index++] = null;
+                if ((file.isDirectory()) && (isDescended(file)) && (!isOnPath(file))) stack.push(new Frame(file));
+                if (isReported(file)) next = file;
+            }
+        }
+
+        /**
+         * Determines whether or not a directory is already on the current path.
+         *
+         * @param directory The directory.
+         * @return <code>true</code> if walking the directory would form a cycle; <code>false</code> otherwise.
+         */
+        protected boolean isOnPath(AttributedFile directory)
+        {
+            Object key = directory.getAttributes().fileKey();
+            if (key == null) return false;
+            for (Frame frame : stack)
+            {
+                if (key.equals(frame.directory.getAttributes().fileKey())) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Walks a single directory in parallel, forking a task for each of its subdirectories.
+     *
+     * @author Zachary Palmer
+     */
+    protected class WalkTask extends RecursiveAction
+    {
+        /**
+         * The directory to walk.
+         */
+        protected AttributedFile directory;
+        /**
+         * The task which is walking the parent directory, or <code>null</code> if this task is walking the root.
+         */
+        protected WalkTask parent;
+        /**
+         * The visitor to which files are reported.
+         */
+        protected Visitor visitor;
+
+        /**
+         * General constructor.
+         *
+         * @param directory The directory to walk.
+         * @param parent    The task which is walking the parent directory, or <code>null</code> if this task is
+         *                  walking the root.
+         * @param visitor   The visitor to which files are reported.
+         */
+        public WalkTask(AttributedFile directory, WalkTask parent, Visitor visitor)
+        {
+            super();
+            this.directory = directory;
+            this.parent = parent;
+            this.visitor = visitor;
+        }
+
+        protected void compute()
+        {
+            List<WalkTask> subdirectories = new ArrayList<WalkTask>();
+            for (AttributedFile file : list(directory))
+            {
+                if ((file.isDirectory()) && (isDescended(file)) && (!isOnPath(file)))
+                {
+                    subdirectories.add(new WalkTask(file, this, visitor));
+                }
+                if (isReported(file)) visitor.visit(file);
+            }
+            invokeAll(subdirectories);
+        }
+
+        /**
+         * Determines whether or not a directory is already on the path of this task.
+         *
+         * @param candidate The directory.
+         * @return <code>true</code> if walking the directory would form a cycle; <code>false</code> otherwise.
+         */
+        protected boolean isOnPath(AttributedFile candidate)
+        {
+            Object key = candidate.getAttributes().fileKey();
+            if (key == null) return false;
+            for (WalkTask task = this; task != null; task = task.parent)
+            {
+                if (key.equals(task.directory.getAttributes().fileKey())) return true;
+            }
+            return false;
+        }
+    }
+}
+
+// END OF FILE //
@@ -19,6 +19,9 @@ import java.io.InputStream;
  * The <code>FilenameFactory.getFilename(int)</code> method is passed a series of numbers from <code>0</code> to
  * <code>n</code> until the stream is closed.  A call to <code>FilenameFactory.getFilename(int)</code> by this class
  * will never have an index value of less than the last call.
+ * <p/>
+ * This stream can only read the files from the beginning.  {@link SegmentedRandomAccessFile} reads the same files at
+ * any position.
  *
  * @author Zachary Palmer
  */
@@ -48,7 +48,7 @@ public class MultiplexSizeLimitedIndexedFileOutputStream extends MultiplexOutput
     /**
      * The number of bytes that have been written to the current output target.
      */
-    protected int writtenThisTarget;
+    protected long writtenThisTarget;
 
 // CONSTRUCTORS //////////////////////////////////////////////////////////////////
 
@@ -8,7 +8,7 @@ import java.io.EOFException;
 /**
  * This {@link InputStream} is designed to provide streaming input for a {@link RandomAccessFile}.  The first read byte
  * is that at which the {@link RandomAccessFile}'s pointer is currently positioned; further reads increment the pointer
- * accordingly.
+ * accordingly.  {@link BufferedRandomAccessFileInputStream} provides buffered input which does not use the pointer.
  *
  * @author Zachary Palmer
  */
@@ -9,7 +9,7 @@ import java.io.RandomAccessFile;
  * streaming fashion, buffering it to a specified degree, and then writing it in units to the {@link RandomAccessFile}
  * in question.  Instances of this class are not invalid if the {@link RandomAccessFile}'s index pointer is modified,
  * but they are unreliable unless the {@link RandomAccessFileOutputStream#flush()} method has been called immediately
- * beforehand.
+ * beforehand.  {@link BufferedRandomAccessFileOutputStream} provides buffered output which does not use the pointer.
  *
  * @author Zachary Palmer
  */
@@ -0,0 +1,611 @@
+package orioni.jz.io.files;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class provides random read access to data which has been split into a series of segment files, such as those
+ * written by {@link MultiplexSizeLimitedIndexedFileOutputStream}.  The segments are treated as a single file whose
+ * contents are the concatenation of the segments in order.  The boundaries between segments are computed from the
+ * segments' sizes on construction, so that any position can be read without reading the segments which precede it;
+ * the segments must not change in size while this object is in use.
+ * <p/>
+ * Like {@link java.io.RandomAccessFile}, this class maintains a file pointer which is used and advanced by {@link
+ * #read()} and {@link #read(byte[], int, int)} and changed by {@link #seek(long)}.  The positional methods, such as
+ * {@link #read(long, byte[], int, int)}, neither use nor change the file pointer and may be called concurrently from
+ * any number of threads.  {@link #readFully(long, byte[], int, int, ForkJoinPool)} reads a large range in parallel.
+ * <p/>
+ * Segments are opened as they are first read and remain open until this object is closed.  The most recently used
+ * segments are also memory-mapped, up to a number specified on construction; reads from a mapped segment do not
+ * require a system call.  Segments larger than {@link Integer#MAX_VALUE} bytes are never mapped.  As a mapping cannot
+ * be explicitly released, the memory of a mapping which leaves the cache is released when the mapping is collected.
+ *
+ * @author Zachary Palmer
+ */
+public class SegmentedRandomAccessFile
+{
+// STATIC FIELDS /////////////////////////////////////////////////////////////////
+
+// CONSTANTS /////////////////////////////////////////////////////////////////////
+
+    /**
+     * The default number of segments which are kept mapped.
+     */
+    public static final int DEFAULT_MAPPED_SEGMENTS = 8;
+    /**
+     * The number of bytes above which a range is divided for parallel reading.
+     */
+    public static final int PARALLEL_READ_SIZE = 1 << 24;
+
+// NON-STATIC FIELDS /////////////////////////////////////////////////////////////
+
+    /**
+     * The segment files.
+     */
+    protected File[] segments;
+    /**
+     * The positions at which the segments start.  This array contains one more element than there are segments; the
+     * last element is the total length.
+     */
+    protected long[] starts;
+    /**
+     * The channels of the segments, or <code>null</code> for segments which have not been opened.  Guarded by this
+     * object.
+     */
+    protected FileChannel[] channels;
+    /**
+     * The cache of mapped segments, keyed by segment index and ordered from least to most recently used.  Guarded by
+     * this object.
+     */
+    protected LinkedHashMap<Integer, MappedByteBuffer> mappings;
+    /**
+     * The maximum number of segments which are kept mapped.
+     */
+    protected int mappedSegments;
+    /**
+     * The file pointer.
+     */
+    protected long pointer;
+    /**
+     * Whether or not this object has been closed.
+     */
+    protected volatile boolean closed;
+
+// CONSTRUCTORS //////////////////////////////////////////////////////////////////
+
+    /**
+     * Skeleton constructor.  Uses the default number of mapped segments.
+     *
+     * @param factory The {@link FilenameFactory} which names the segments.
+     * @param files   The number of segments.
+     * @throws IOException If a segment does not exist.
+     */
+    public SegmentedRandomAccessFile(FilenameFactory factory, int files)
+            throws IOException
+    {
+        this(getSegments(factory, files), DEFAULT_MAPPED_SEGMENTS);
+    }
+
+    /**
+     * General constructor.
+     *
+     * @param segments       The segment files, in order.
+     * @param mappedSegments The maximum number of segments which are kept mapped, or <code>0</code> if segments should
+     *                       not be mapped.
+     * @throws IOException              If a segment does not exist.
+     * @throws IllegalArgumentException If the number of mapped segments is negative.
+     */
+    public SegmentedRandomAccessFile(File[] segments, final int mappedSegments)
+            throws IOException, IllegalArgumentException
+    {
+        super();
+        if (mappedSegments < 0) throw new IllegalArgumentException("Invalid mapped segment count: " + mappedSegments);
+        this.segments = segments.clone();
+        starts = new long[segments.length + 1];
+        for (int i = 0; i < segments.length; i++)
+        {
+            if (!segments[i].isFile()) throw new IOException("Segment " + segments[i] + " does not exist.");
+            starts[i + 1] = starts[i] + segments[i].length();
+        }
+        channels = new FileChannel[segments.length];
+        this.mappedSegments = mappedSegments;
+        mappings = new LinkedHashMap<Integer, MappedByteBuffer>(16, 0.75f, true)
+        {
+            protected boolean removeEldestEntry(Map.Entry<Integer, MappedByteBuffer> eldest)
+            {
+                return size() > mappedSegments;
+            }
+        };
+        pointer = 0;
+        closed = false;
+    }
+
+// NON-STATIC METHODS ////////////////////////////////////////////////////////////
+
+    /**
+     * Retrieves the total length of the segments.
+     *
+     * @return The length of this file in bytes.
+     */
+    public long length()
+    {
+        return starts[segments.length];
+    }
+
+    /**
+     * Retrieves the number of segments.
+     *
+     * @return The number of segments.
+     */
+    public int getSegmentCount()
+    {
+        return segments.length;
+    }
+
+    /**
+     * Retrieves a segment file.
+     *
+     * @param index The index of the segment.
+     * @return The segment file.
+     */
+    public File getSegment(int index)
+    {
+        return segments[index];
+    }
+
+    /**
+     * Retrieves the position at which a segment starts.
+     *
+     * @param index The index of the segment.
+     * @return The position of the segment's first byte.
+     */
+    public long getSegmentStart(int index)
+    {
+        return starts[index];
+    }
+
+    /**
+     * Determines the segment which contains a position.
+     *
+     * @param position The position.
+     * @return The index of the segment containing that position, or the number of segments if the position is at or
+     *         beyond the end of this file.
+     */
+    public int getSegmentIndex(long position)
+    {
+        if (position >= length()) return segments.length;
+        int index = Arrays.binarySearch(starts, position);
+        if (index < 0) return -index - 2;
+        // Empty segments share their start with the following segment
+        while (starts[index + 1] == position) index++;
+        return index;
+    }
+
+    /**
+     * Retrieves the file pointer.
+     *
+     * @return The position at which the next read will occur.
+     */
+    public long getFilePointer()
+    {
+        return pointer;
+    }
+
+    /**
+     * Changes the file pointer.  The pointer may be placed beyond the end of the file, in which case reads will report
+     * the end of the file.
+     *
+     * @param position The position at which the next read will occur.
+     * @throws IOException If the position is negative or this file is closed.
+     */
+    public void seek(long position)
+            throws IOException
+    {
+        ensureOpen();
+        if (position < 0) throw new IOException("Invalid position: " + position);
+        pointer = position;
+    }
+
+    /**
+     * Reads a byte at the file pointer and advances the pointer.
+     *
+     * @return The byte, or <code>-1</code> if the end of the file has been reached.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int read()
+            throws IOException
+    {
+        byte[] b = new byte[1];
+        return (read(b, 0, 1) == -1) ? -1 : (b[0] & 0xFF);
+    }
+
+    /**
+     * Reads data at the file pointer and advances the pointer.
+     *
+     * @param b   The buffer into which the data is read.
+     * @param off The start offset in the buffer at which the data is written.
+     * @param len The maximum number of bytes to read.
+     * @return The number of bytes read, or <code>-1</code> if the end of the file has been reached.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int read(byte[] b, int off, int len)
+            throws IOException
+    {
+        int ret = read(pointer, b, off, len);
+        if (ret > 0) pointer += ret;
+        return ret;
+    }
+
+    /**
+     * Reads data at the specified position.  Data is read across segment boundaries until the requested number of
+     * bytes has been read or the end of the file is reached.  The file pointer is not used or changed.
+     *
+     * @param position The position at which to read.
+     * @param b        The buffer into which the data is read.
+     * @param off      The start offset in the buffer at which the data is written.
+     * @param len      The maximum number of bytes to read.
+     * @return The number of bytes read, or <code>-1</code> if the position is at or beyond the end of the file.
+     * @throws IOException If an I/O error occurs or a segment has been truncated.
+     */
+    public int read(long position, byte[] b, int off, int len)
+            throws IOException
+    {
+        ensureOpen();
+        if ((position < 0) || (off < 0) || (len < 0) || (len > b.length - off)) throw new IndexOutOfBoundsException();
+        if (len == 0) return 0;
+        if (position >= length()) return -1;
+        len = (int) Math.min(len, length() - position);
+        int index = getSegmentIndex(position);
+        int total = 0;
+        while (total < len)
+        {
+            int size = (int) Math.min(len - total, starts[index + 1] - position);
+            readSegment(index, position - starts[index], b, off + total, size);
+            total += size;
+            position += size;
+            index++;
+        }
+        return total;
+    }
+
+    /**
+     * Reads exactly the requested number of bytes at the specified position.  The file pointer is not used or changed.
+     *
+     * @param position The position at which to read.
+     * @param b        The buffer into which the data is read.
+     * @param off      The start offset in the buffer at which the data is written.
+     * @param len      The number of bytes to read.
+     * @throws IOException If an I/O error occurs, or if the end of the file is reached first.
+     */
+    public void readFully(long position, byte[] b, int off, int len)
+            throws IOException
+    {
+        if (position + len > length()) throw new EOFException("Read past the end of " + this + ".");
+        read(position, b, off, len);
+    }
+
+    /**
+     * Reads exactly the requested number of bytes at the specified position, dividing the range among the threads of
+     * a {@link ForkJoinPool}.  Ranges of at most {@link #PARALLEL_READ_SIZE} bytes are read on the calling thread.  The
+     * file pointer is not used or changed.
+     *
+     * @param position The position at which to read.
+     * @param b        The buffer into which the data is read.
+     * @param off      The start offset in the buffer at which the data is written.
+     * @param len      The number of bytes to read.
+     * @param pool     The pool in which to read.
+     * @throws IOException If an I/O error occurs, or if the end of the file is reached first.
+     */
+    public void readFully(long position, byte[] b, int off, int len, ForkJoinPool pool)
+            throws IOException
+    {
+        if (len <= PARALLEL_READ_SIZE)
+        {
+            readFully(position, b, off, len);
+            return;
+        }
+        if ((off < 0) || (len < 0) || (len > b.length - off)) throw new IndexOutOfBoundsException();
+        if (position + len > length()) throw new EOFException("Read past the end of " + this + ".");
+        ParallelRead read = new ParallelRead(b);
+        pool.invoke(new ParallelReadTask(read, position, off, len));
+        IOException e = read.failure;
+        if (e != null) throw e;
+    }
+
+    /**
+     * Creates an {@link InputStream} which reads this file from the specified position.  The stream reads with the
+     * positional methods, so it is independent of the file pointer and of any other stream.  Closing the stream does
+     * not close this file.
+     *
+     * @param position The position at which the stream starts.
+     * @return The stream.
+     */
+    public InputStream getInputStream(final long position)
+    {
+        return new InputStream()
+        {
+            private long streamPosition = position;
+
+            public int read()
+                    throws IOException
+            {
+                byte[] b = new byte[1];
+                return (read(b, 0, 1) == -1) ? -1 : (b[0] & 0xFF);
+            }
+
+            public int read(byte[] b, int off, int len)
+                    throws IOException
+            {
+                int ret = SegmentedRandomAccessFile.this.read(streamPosition, b, off, len);
+                if (ret > 0) streamPosition += ret;
+                return ret;
+            }
+
+            public long skip(long n)
+            {
+                long skipped = Math.max(0, Math.min(n, length() - streamPosition));
+                streamPosition += skipped;
+                return skipped;
+            }
+
+            public int available()
+            {
+                return (int) Math.max(0, Math.min(Integer.MAX_VALUE, length() - streamPosition));
+            }
+        };
+    }
+
+    /**
+     * Closes this file, closing every open segment and discarding every mapping.
+     *
+     * @throws IOException If an I/O error occurs while closing a segment.
+     */
+    public synchronized void close()
+            throws IOException
+    {
+        if (closed) return;
+        closed = true;
+        mappings.clear();
+        IOException failure = null;
+        for (int i = 0; i < channels.length; i++)
+        {
+            if (channels[i] != null)
+            {
+                try
+                {
+                    channels[i].close();
+                } catch (IOException e)
+                {
+                    if (failure == null) failure = e;
+                }
+                channels[i] = null;
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * Reads data which lies entirely within a single segment.
+     *
+     * @param index  The index of the segment.
+     * @param offset The offset within the segment at which to read.
+     * @param b      The buffer into which the data is read.
+     * @param off    The start offset in the buffer at which the data is written.
+     * @param len    The number of bytes to read.
+     * @throws IOException If an I/O error occurs or the segment has been truncated.
+     */
+    protected void readSegment(int index, long offset, byte[] b, int off, int len)
+            throws IOException
+    {
+        MappedByteBuffer mapping = getMapping(index);
+        if (mapping != null)
+        {
+            ByteBuffer view = mapping.duplicate();
+            view.position((int) offset);
+            view.get(b, off, len);
+            return;
+        }
+        FileChannel channel = getChannel(index);
+        ByteBuffer target = ByteBuffer.wrap(b, off, len);
+        while (target.hasRemaining())
+        {
+            if (channel.read(target, offset + target.position() - off) == -1)
+            {
+                throw new EOFException("Segment " + segments[index] + " has been truncated.");
+            }
+        }
+    }
+
+    /**
+     * Retrieves the channel of a segment, opening it if necessary.
+     *
+     * @param index The index of the segment.
+     * @return The channel of the segment.
+     * @throws IOException If the segment could not be opened or this file is closed.
+     */
+    protected synchronized FileChannel getChannel(int index)
+            throws IOException
+    {
+        ensureOpen();
+        if (channels[index] == null)
+        {
+            channels[index] = FileChannel.open(segments[index].toPath(), StandardOpenOption.READ);
+        }
+        return channels[index];
+    }
+
+    /**
+     * Retrieves the mapping of a segment, mapping it if necessary.
+     *
+     * @param index The index of the segment.
+     * @return The mapping of the segment, or <code>null</code> if the segment is not mapped.
+     * @throws IOException If the segment could not be mapped or this file is closed.
+     */
+    protected synchronized MappedByteBuffer getMapping(int index)
+            throws IOException
+    {
+        long size = starts[index + 1] - starts[index];
+        if ((mappedSegments == 0) || (size > Integer.MAX_VALUE)) return null;
+        MappedByteBuffer ret = mappings.get(index);
+        if (ret == null)
+        {
+            ret = getChannel(index).map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mappings.put(index, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Ensures that this file is open.
+     *
+     * @throws IOException If this file is closed.
+     */
+    protected void ensureOpen()
+            throws IOException
+    {
+        if (closed) throw new IOException("File closed.");
+    }
+
+    /**
+     * Describes this file.
+     *
+     * @return A description of this file.
+     */
+    public String toString()
+    {
+        return "SegmentedRandomAccessFile[" + segments.length + " segments, " + length() + " bytes]";
+    }
+
+// STATIC METHODS ////////////////////////////////////////////////////////////////
+
+    /**
+     * Retrieves the segment files named by a {@link FilenameFactory}.
+     *
+     * @param factory The {@link FilenameFactory} which names the segments.
+     * @param files   The number of segments.
+     * @return The segment files.
+     */
+    protected static File[] getSegments(FilenameFactory factory, int files)
+    {
+        File[] ret = new File[files];
+        for (int i = 0; i < files; i++) ret[i] = new File(factory.getFilename(i));
+        return ret;
+    }
+
+// CONTAINED CLASSES /////////////////////////////////////////////////////////////
+
+    /**
+     * Contains the state of a call to {@link SegmentedRandomAccessFile#readFully(long, byte[], int, int,
+     * ForkJoinPool)}.
+     *
+     * @author Zachary Palmer
+     */
+    protected static class ParallelRead
+    {
+        /**
+         * The buffer into which the data is read.
+         */
+        protected byte[] buffer;
+        /**
+         * The first exception which occurred, or <code>null</code> if no exception has occurred.
+         */
+        protected volatile IOException failure;
+
+        /**
+         * General constructor.
+         *
+         * @param buffer The buffer into which the data is read.
+         */
+        public ParallelRead(byte[] buffer)
+        {
+            super();
+            this.buffer = buffer;
+            failure = null;
+        }
+
+        /**
+         * Records an exception.  Only the first exception is kept.
+         *
+         * @param e The exception.
+         */
+        public synchronized void fail(IOException e)
+        {
+            if (failure == null) failure = e;
+        }
+    }
+
+    /**
+     * Reads a range of a {@link SegmentedRandomAccessFile}, splitting the range in parallel.
+     *
+     * @author Zachary Palmer
+     */
+    protected class ParallelReadTask extends RecursiveAction
+    {
+        /**
+         * The read being performed.
+         */
+        protected ParallelRead read;
+        /**
+         * The position of the range.
+         */
+        protected long position;
+        /**
+         * The offset in the buffer at which the range is written.
+         */
+        protected int off;
+        /**
+         * The length of the range.
+         */
+        protected int len;
+
+        /**
+         * General constructor.
+         *
+         * @param read     The read being performed.
+         * @param position The position of the range.
+         * @param off      The offset in the buffer at which the range is written.
+         * @param len      The length of the range.
+         */
+        public ParallelReadTask(ParallelRead read, long position, int off, int len)
+        {
+            super();
+            this.read = read;
+            this.position = position;
+            this.off = off;
+            this.len = len;
+        }
+
+        protected void compute()
+        {
+            if (read.failure != null) return;
+            if (len <= PARALLEL_READ_SIZE)
+            {
+                try
+                {
+                    SegmentedRandomAccessFile.this.read(position, read.buffer, off, len);
+                } catch (IOException e)
+                {
+                    read.fail(e);
+                }
+            } else
+            {
+                int half = len / 2;
+                invokeAll(new ParallelReadTask(read, position, off, half),
+                          new ParallelReadTask(read, position + half, off + half, len - half));
+            }
+        }
+    }
+}
+
+// END OF FILE //
@@ -4,7 +4,9 @@ import orioni.jz.math.MutableInteger;
 
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Set;
 import java.util.TreeSet;
 
 /**
@@ -218,6 +220,45 @@ public class BlockDataMap
         return data;
     }
 
+    /**
+     * Retrieves the mappings which currently indicate valid data blocks.  This method is synchronized to ensure safe
+     * multi-threaded access to the table of contents.
+     *
+     * @return A {@link Set} containing every mapping which currently has a data block.  Changes to this {@link Set} do
+     *         not affect this map.
+     * @throws java.io.IOException If this map has been closed.
+     */
+    public synchronized Set<Integer> getMappings()
+            throws IOException
+    {
+        if (dataStore == null) throw new IOException("BlockDataMap has been closed.");
+        Set<Integer> ret = new HashSet<Integer>();
+        for (MutableInteger mapping : tocMap.keySet())
+        {
+            ret.add(mapping.intValue());
+        }
+        return ret;
+    }
+
+    /**
+     * Determines the amount of space in the store which is not occupied by the table of contents entries in use or by
+     * data blocks.  This is the amount of space which would be recovered by <code>repack(0)</code>.
+     *
+     * @return The number of bytes of wasted space in the store.
+     * @throws java.io.IOException If an I/O error occurs in the underlying {@link BlockDataStore}.
+     */
+    public synchronized long getWastedSpace()
+            throws IOException
+    {
+        if (dataStore == null) throw new IOException("BlockDataMap has been closed.");
+        long used = TOC_HEADER_SIZE + (long) tocEntriesUsed * TOC_ENTRY_SIZE;
+        for (TocEntry entry : tocSet)
+        {
+            used += entry.getSize();
+        }
+        return dataStore.getSize() - used;
+    }
+
     /**
      * Deletes the data block stored at the given mapping. <P> This method is synchronized to ensure safe multi-threaded
      * access to the underlying {@link BlockDataStore}.
@@ -259,9 +300,10 @@ public class BlockDataMap
 
     /**
      * Writes a data block to the given mapping.  This may cause an increase in the size of the store.  If a data block
-     * already exists at the given mapping, it will be deleted first.  No guarantee is made that the new data block will
-     * occupy all or any of the space originally occupied by the old data block. <P> If the data block replaces an older
-     * one and is not identical in size to the older data block, the store will accumulate some wasted space.  This can
+     * of the same size already exists at the given mapping, it is overwritten in place.  Otherwise, any existing data
+     * block will be deleted first, and no guarantee is made that the new data block will occupy all or any of the space
+     * originally occupied by the old data block. <P> If the data block replaces an older one and is not identical in
+     * size to the older data block, the store will accumulate some wasted space.  This can
      * be cleaned up by using the <code>repack()</code> and <code>repack(int)</code> methods.  This is not done
      * automatically because repacking the store is expensive and time consuming. <P> In the event that the TOC runs out
      * of space for entries, this method may reorganize the contents of the store. This may require reading in any one
@@ -287,6 +329,12 @@ public class BlockDataMap
         TocEntry entry = tocMap.get(tocMapKey);
         if (entry != null)
         {
+            if (entry.getSize() == data.length)
+            {
+                dataStore.seek(entry.getOffset());
+                dataStore.writeByteArray(data);
+                return;
+            }
             delete(mapping);
         }
 
@@ -112,7 +112,7 @@ public class DataConversion
                     "The size of the array provided to DataConversion was not eight elements.");
         return (((array[0] & 0xffL) << 56) | ((array[1] & 0xffL) << 48) |
                 ((array[2] & 0xffL) << 40) | ((array[3] & 0xffL) << 32) |
-                ((array[4] & 0xff) << 24) | ((array[5] & 0xff) << 16) |
+                ((array[4] & 0xffL) << 24) | ((array[5] & 0xff) << 16) |
                 ((array[6] & 0xff) << 8) | (array[7] & 0xff));
     }
 